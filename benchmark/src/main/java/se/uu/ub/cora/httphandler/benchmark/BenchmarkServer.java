@@ -0,0 +1,137 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * BenchmarkServer is an in-process http server used as backend by the benchmarks. It serves:
+ * <ul>
+ * <li>/payload, a response body with the configured number of bytes</li>
+ * <li>/headers, a response with many headers and no body</li>
+ * <li>/sink, reads and discards the request body and responds without body</li>
+ * <li>/lines, reads and discards the request body and responds with a multi line xml text with
+ * the configured number of bytes</li>
+ * </ul>
+ */
+final class BenchmarkServer implements AutoCloseable {
+	private static final int NUMBER_OF_HEADERS = 30;
+	private static final int NO_RESPONSE_BODY = -1;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final byte[] payload;
+	private final byte[] linesPayload;
+
+	private BenchmarkServer(int payloadSize) throws IOException {
+		payload = createPayload(payloadSize);
+		linesPayload = createLinesPayload(payloadSize);
+		executor = Executors.newVirtualThreadPerTaskExecutor();
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.setExecutor(executor);
+		server.createContext("/payload", this::respondWithPayload);
+		server.createContext("/headers", this::respondWithHeaders);
+		server.createContext("/sink", this::readAndDiscardRequestBody);
+		server.createContext("/lines", this::respondWithLines);
+		server.start();
+	}
+
+	static BenchmarkServer startWithPayloadSize(int payloadSize) throws IOException {
+		return new BenchmarkServer(payloadSize);
+	}
+
+	static byte[] createPayload(int size) {
+		byte[] bytes = new byte[size];
+		Arrays.fill(bytes, (byte) 'a');
+		return bytes;
+	}
+
+	static byte[] createLinesPayload(int size) {
+		String line = "  <record><id>some-id</id><title>Some title, åäö</title></record>\n";
+		StringBuilder lines = new StringBuilder(size + line.length());
+		while (lines.length() < size) {
+			lines.append(line);
+		}
+		return Arrays.copyOf(lines.toString().getBytes(StandardCharsets.UTF_8), size);
+	}
+
+	private void respondWithPayload(HttpExchange exchange) throws IOException {
+		respondWith(exchange, "text/plain; charset=UTF-8", payload);
+	}
+
+	private void respondWithLines(HttpExchange exchange) throws IOException {
+		respondWith(exchange, "application/xml; charset=UTF-8", linesPayload);
+	}
+
+	private void respondWith(HttpExchange exchange, String contentType, byte[] body)
+			throws IOException {
+		readAndDiscard(exchange.getRequestBody());
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream responseBody = exchange.getResponseBody()) {
+			responseBody.write(body);
+		}
+	}
+
+	private void readAndDiscard(InputStream requestBody) throws IOException {
+		try (requestBody) {
+			requestBody.transferTo(OutputStream.nullOutputStream());
+		}
+	}
+
+	private void respondWithHeaders(HttpExchange exchange) throws IOException {
+		readAndDiscard(exchange.getRequestBody());
+		Headers headers = exchange.getResponseHeaders();
+		for (int i = 0; i < NUMBER_OF_HEADERS; i++) {
+			headers.add("X-Benchmark-Header-" + i, "some value " + i);
+			headers.add("X-Benchmark-Header-" + i, "some other value " + i);
+		}
+		exchange.sendResponseHeaders(200, NO_RESPONSE_BODY);
+		exchange.close();
+	}
+
+	private void readAndDiscardRequestBody(HttpExchange exchange) throws IOException {
+		readAndDiscard(exchange.getRequestBody());
+		exchange.sendResponseHeaders(200, NO_RESPONSE_BODY);
+		exchange.close();
+	}
+
+	String url(String path) {
+		return "http://" + server.getAddress().getHostString() + ":"
+				+ server.getAddress().getPort() + path;
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.close();
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.uu.ub.cora.httphandler.HttpHandler;
+import se.uu.ub.cora.httphandler.HttpHandlerFactoryImp;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HttpHandlerBenchmark {
+
+	@Param({ "1024", "65536", "1048576" })
+	public int payloadSize;
+
+	private BenchmarkServer server;
+	private HttpHandlerFactoryImp factory;
+	private byte[] requestBody;
+	private String requestText;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		server = BenchmarkServer.startWithPayloadSize(payloadSize);
+		factory = new HttpHandlerFactoryImp();
+		requestBody = BenchmarkServer.createPayload(payloadSize);
+		requestText = new String(requestBody, StandardCharsets.UTF_8);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		factory.close();
+		server.close();
+	}
+
+	@Benchmark
+	public String getResponseText() {
+		HttpHandler httpHandler = factory.factor(server.url("/payload"));
+		return httpHandler.getResponseText();
+	}
+
+	@Benchmark
+	public byte[] getResponseBytes() {
+		HttpHandler httpHandler = factory.factor(server.url("/payload"));
+		return httpHandler.getResponseBytes();
+	}
+
+	@Benchmark
+	public List<ByteBuffer> getResponseByteBuffers() {
+		HttpHandler httpHandler = factory.factor(server.url("/payload"));
+		return httpHandler.getResponseByteBuffers();
+	}
+
+	@Benchmark
+	public long getResponseReader() throws IOException {
+		HttpHandler httpHandler = factory.factor(server.url("/payload"));
+		try (Reader responseReader = httpHandler.getResponseReader()) {
+			return responseReader.transferTo(Writer.nullWriter());
+		}
+	}
+
+	@Benchmark
+	public long getResponseBinary() throws IOException {
+		HttpHandler httpHandler = factory.factor(server.url("/payload"));
+		try (InputStream responseBinary = httpHandler.getResponseBinary()) {
+			return responseBinary.transferTo(OutputStream.nullOutputStream());
+		}
+	}
+
+	@Benchmark
+	public Map<String, String> getResponseHeaders() {
+		HttpHandler httpHandler = factory.factor(server.url("/headers"));
+		httpHandler.getResponseCode();
+		return httpHandler.getResponseHeaders();
+	}
+
+	@Benchmark
+	public int setOutput() {
+		HttpHandler httpHandler = factory.factor(server.url("/sink"));
+		httpHandler.setRequestMethod("POST");
+		httpHandler.setOutput(requestText);
+		return httpHandler.getResponseCode();
+	}
+
+	@Benchmark
+	public int setOutputBytes() {
+		HttpHandler httpHandler = factory.factor(server.url("/sink"));
+		httpHandler.setRequestMethod("POST");
+		httpHandler.setOutput(requestBody);
+		return httpHandler.getResponseCode();
+	}
+
+	@Benchmark
+	public int setStreamOutput() {
+		HttpHandler httpHandler = factory.factor(server.url("/sink"));
+		httpHandler.setRequestMethod("POST");
+		httpHandler.setStreamOutput(new ByteArrayInputStream(requestBody));
+		return httpHandler.getResponseCode();
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.uu.ub.cora.httphandler.HttpHandlerFactoryImp;
+import se.uu.ub.cora.httphandler.HttpMultiPartUploader;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HttpMultiPartUploaderBenchmark {
+
+	@Param({ "1024", "1048576", "67108864" })
+	public int fileSize;
+
+	private BenchmarkServer server;
+	private HttpHandlerFactoryImp factory;
+	private byte[] fileContent;
+	private Path file;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		server = BenchmarkServer.startWithPayloadSize(0);
+		factory = new HttpHandlerFactoryImp();
+		fileContent = BenchmarkServer.createPayload(fileSize);
+		file = Files.createTempFile("httphandler-benchmark", ".bin");
+		Files.write(file, fileContent);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		factory.close();
+		server.close();
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public int uploadFromInputStream() throws IOException {
+		HttpMultiPartUploader uploader = factory.factorHttpMultiPartUploader(server.url("/sink"));
+		uploader.addFormField("some", "value");
+		uploader.addFilePart("file", "file.bin", new ByteArrayInputStream(fileContent));
+		uploader.done();
+		return uploader.getResponseCode();
+	}
+
+	@Benchmark
+	public int uploadFromInputStreamWithKnownSize() throws IOException {
+		HttpMultiPartUploader uploader = factory.factorHttpMultiPartUploader(server.url("/sink"));
+		uploader.addFormField("some", "value");
+		uploader.addFilePart("file", "file.bin", new ByteArrayInputStream(fileContent),
+				fileSize);
+		uploader.done();
+		return uploader.getResponseCode();
+	}
+
+	@Benchmark
+	public int uploadFromPath() throws IOException {
+		HttpMultiPartUploader uploader = factory.factorHttpMultiPartUploader(server.url("/sink"));
+		uploader.addFormField("some", "value");
+		uploader.addFilePart("file", file);
+		uploader.done();
+		return uploader.getResponseCode();
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import se.uu.ub.cora.httphandler.HttpHandlerFactoryImp;
+import se.uu.ub.cora.httphandler.HttpMultiPartUploader;
+
+/**
+ * MultipartResponseTextBenchmark measures reading a large, multi line, text response after a
+ * multipart upload. Run it with <em>-prof gc</em> to see the bytes allocated per upload when the
+ * response text is decoded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MultipartResponseTextBenchmark {
+
+	@Param({ "1048576", "8388608" })
+	public int responseSize;
+
+	private BenchmarkServer server;
+	private HttpHandlerFactoryImp factory;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		server = BenchmarkServer.startWithPayloadSize(responseSize);
+		factory = new HttpHandlerFactoryImp();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		factory.close();
+		server.close();
+	}
+
+	@Benchmark
+	public String getResponseText() throws IOException {
+		HttpMultiPartUploader uploader = factory.factorHttpMultiPartUploader(server.url("/lines"));
+		uploader.addFormField("some", "value");
+		uploader.done();
+		return uploader.getResponseText();
+	}
+}
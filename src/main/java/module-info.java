@@ -1,4 +1,4 @@
 module se.uu.ub.cora.httphandler {
 	exports se.uu.ub.cora.httphandler;
-	requires java.net.http;
+	requires transitive java.net.http;
 }
\ No newline at end of file
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * AsyncHttpHandler is an interface to do a single, non blocking, http request to a specified url.
+ * AsyncHttpHandlers should be factored by using a {@link HttpHandlerFactory} usually
+ * {@link HttpHandlerFactoryImp}. An AsyncHttpHandler cannot be re-used and needs to be factored for
+ * every call.
+ * <p>
+ * Unlike {@link HttpHandler} no method except {@link #sendAsync()} triggers the request to be sent,
+ * so that many requests can be prepared and then be in flight at the same time without using one
+ * thread per request.
+ * <p>
+ * The request method SHOULD by default be set to GET by implementing classes, so that a call to the
+ * {@link #setRequestMethod(String)} only is necessary if a diffrent request method is to be used.
+ */
+public interface AsyncHttpHandler {
+
+	/**
+	 * setRequestMethod set the request method to use in the http request.
+	 * <p>
+	 * Currently supported request methods are the same as for
+	 * {@link HttpHandler#setRequestMethod(String)}.
+	 * 
+	 * @param requestMethod
+	 *            A String with the requestMethod to use.
+	 */
+	void setRequestMethod(String requestMethod);
+
+	/**
+	 * Set a header for the request call.
+	 * <p>
+	 * Call with null values will not be set.
+	 * 
+	 * @param key
+	 *            The header key
+	 * @param value
+	 *            The header value
+	 */
+	void setRequestProperty(String key, String value);
+
+	/**
+	 * Set the basic authorization as a header for the request call
+	 * 
+	 * @param username
+	 *            The username to use
+	 * @param password
+	 *            The password to use
+	 */
+	void setBasicAuthorization(String username, String password);
+
+	/**
+	 * Set outgoing body from a String. This does not trigger the request to be sent.
+	 * 
+	 * @param outputString
+	 *            The String to set as output
+	 */
+	void setOutput(String outputString);
+
+	/**
+	 * Set outgoing body as an InputStream. This does not trigger the request to be sent.
+	 * <p>
+	 * The stream can only be read once, so the request fails if the body is asked for a second
+	 * time, such as when the request is resent, instead of sending an empty body.
+	 * 
+	 * @param stream
+	 *            The stream to use as output
+	 */
+	void setStreamOutput(InputStream stream);
+
+	/**
+	 * sendAsync sends the request without blocking the calling thread. The returned
+	 * CompletableFuture is completed with the response when the whole response body has been
+	 * received, or completed exceptionally if the request fails.
+	 * <p>
+	 * Calling sendAsync more than once returns the same CompletableFuture, the request is only sent
+	 * once.
+	 * 
+	 * @return A CompletableFuture with a {@link HttpHandlerResponse} for the request
+	 */
+	CompletableFuture<HttpHandlerResponse> sendAsync();
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * AsyncHttpMultiPartUploader is an interface to do a single, non blocking, multipart/form-data
+ * http request to a specified url. It is the non blocking variant of {@link HttpMultiPartUploader}
+ * and is factored using {@link HttpHandlerFactory#factorAsyncHttpMultiPartUploader(String)}.
+ * <p>
+ * Form fields and file parts are collected as they are added and are streamed to the server after
+ * {@link #sendAsync()} has been called, so streams added with addFilePart must be kept open until
+ * the returned CompletableFuture is completed.
+ */
+public interface AsyncHttpMultiPartUploader {
+
+	/**
+	 * Add the header to the request. Headers must be added before any form field or file part.
+	 * 
+	 * @param name
+	 *            It is the name of the header
+	 * @param value
+	 *            It is the value of the header
+	 */
+	void addHeaderField(String name, String value);
+
+	void addFormField(String name, String value);
+
+	void addFilePart(String fieldName, String fileName, InputStream stream);
+
+	/**
+	 * Add a file part with a known size, see
+	 * {@link HttpMultiPartUploader#addFilePart(String, String, InputStream, long)}.
+	 */
+	void addFilePart(String fieldName, String fileName, InputStream stream, long size);
+
+	/**
+	 * Add a file part read from a file, see
+	 * {@link HttpMultiPartUploader#addFilePart(String, Path)}.
+	 */
+	void addFilePart(String fieldName, Path file) throws IOException;
+
+	/**
+	 * Add a file part read from a FileChannel, see
+	 * {@link HttpMultiPartUploader#addFilePart(String, String, FileChannel)}.
+	 */
+	void addFilePart(String fieldName, String fileName, FileChannel channel) throws IOException;
+
+	/**
+	 * sendAsync sends the request without blocking the calling thread. The returned
+	 * CompletableFuture is completed with the response when the whole response has been received,
+	 * or completed exceptionally if the upload fails.
+	 * <p>
+	 * Calling sendAsync more than once returns the same CompletableFuture, the request is only sent
+	 * once.
+	 * 
+	 * @return A CompletableFuture with a {@link HttpHandlerResponse} for the request
+	 */
+	CompletableFuture<HttpHandlerResponse> sendAsync();
+}
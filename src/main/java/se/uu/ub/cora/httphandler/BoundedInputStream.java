@@ -0,0 +1,79 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * BoundedInputStream reads at most a given number of bytes from another stream, used by the
+ * default implementation of {@link HttpHandler#setStreamOutput(java.nio.file.Path, long, long)}
+ * to send a range of a file. Closing it closes the other stream.
+ */
+final class BoundedInputStream extends FilterInputStream {
+	private long remaining;
+
+	BoundedInputStream(InputStream in, long length) {
+		super(in);
+		remaining = length;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (remaining == 0) {
+			return -1;
+		}
+		int read = super.read();
+		if (read != -1) {
+			remaining--;
+		}
+		return read;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (remaining == 0) {
+			return -1;
+		}
+		int read = super.read(b, off, (int) Math.min(len, remaining));
+		if (read > 0) {
+			remaining -= read;
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(Math.min(n, remaining));
+		remaining -= skipped;
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return (int) Math.min(super.available(), remaining);
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import java.time.Duration;
+
+/**
+ * CircuitBreakerPolicy describes when requests from {@link HttpHandler}s to a host are stopped
+ * because the host is failing or slow. Policies are immutable, {@link #defaults()} returns the
+ * default policy and each with method returns a new policy with one setting changed:
+ * 
+ * <pre>
+ * CircuitBreakerPolicy circuitBreaker = CircuitBreakerPolicy.defaults()
+ * 		.withOpenDuration(Duration.ofSeconds(10));
+ * HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults()
+ * 		.withCircuitBreaker(circuitBreaker);
+ * </pre>
+ * <p>
+ * The outcome of the latest requests to each host (host and port) is kept in a sliding window. A
+ * request fails if no response is received or the response has a 5xx status code, and it is slow
+ * if it takes longer than the slow call duration to get the response. When the window is full and
+ * the rate of failed or slow requests in it reaches its threshold, the circuit opens and requests
+ * to the host are rejected at once with a {@link HttpRequestRejectedException}. After the open
+ * duration one request is let through as a probe. If it succeeds the circuit is closed, otherwise
+ * it is opened again. If the probe has not finished within another open duration, a new probe is
+ * let through, so that a probe that hangs does not keep the circuit open.
+ */
+public final class CircuitBreakerPolicy {
+	private int windowSize = 20;
+	private int failureRateThreshold = 50;
+	private Duration slowCallDuration = Duration.ofSeconds(10);
+	private int slowCallRateThreshold = 100;
+	private Duration openDuration = Duration.ofSeconds(30);
+
+	private CircuitBreakerPolicy() {
+	}
+
+	private CircuitBreakerPolicy(CircuitBreakerPolicy policy) {
+		windowSize = policy.windowSize;
+		failureRateThreshold = policy.failureRateThreshold;
+		slowCallDuration = policy.slowCallDuration;
+		slowCallRateThreshold = policy.slowCallRateThreshold;
+		openDuration = policy.openDuration;
+	}
+
+	/**
+	 * defaults returns a policy with a window of 20 requests, that opens the circuit for 30
+	 * seconds when half of them have failed or all of them have taken longer than 10 seconds.
+	 * 
+	 * @return A CircuitBreakerPolicy with default settings
+	 */
+	public static CircuitBreakerPolicy defaults() {
+		return new CircuitBreakerPolicy();
+	}
+
+	/**
+	 * withWindowSize returns a new policy with the specified number of requests in the sliding
+	 * window.
+	 * 
+	 * @param size
+	 *            The number of requests in the window, must be one or larger
+	 * @return A new CircuitBreakerPolicy with the window size
+	 */
+	public CircuitBreakerPolicy withWindowSize(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Window size must be at least 1: " + size);
+		}
+		CircuitBreakerPolicy policy = new CircuitBreakerPolicy(this);
+		policy.windowSize = size;
+		return policy;
+	}
+
+	/**
+	 * withFailureRateThreshold returns a new policy that opens the circuit when the specified
+	 * percentage of the requests in the window have failed.
+	 * 
+	 * @param percent
+	 *            The failure rate in percent, from 1 to 100
+	 * @return A new CircuitBreakerPolicy with the failure rate threshold
+	 */
+	public CircuitBreakerPolicy withFailureRateThreshold(int percent) {
+		ensureValidPercent("Failure rate threshold", percent);
+		CircuitBreakerPolicy policy = new CircuitBreakerPolicy(this);
+		policy.failureRateThreshold = percent;
+		return policy;
+	}
+
+	private static void ensureValidPercent(String name, int percent) {
+		if (percent < 1 || percent > 100) {
+			throw new IllegalArgumentException(
+					name + " must be between 1 and 100 percent: " + percent);
+		}
+	}
+
+	/**
+	 * withSlowCallThreshold returns a new policy that opens the circuit when the specified
+	 * percentage of the requests in the window have taken longer than the specified duration.
+	 * 
+	 * @param duration
+	 *            The time to get a response after which a request is slow
+	 * @param percent
+	 *            The slow call rate in percent, from 1 to 100
+	 * @return A new CircuitBreakerPolicy with the slow call threshold
+	 */
+	public CircuitBreakerPolicy withSlowCallThreshold(Duration duration, int percent) {
+		ensurePositive("Slow call duration", duration);
+		ensureValidPercent("Slow call rate threshold", percent);
+		CircuitBreakerPolicy policy = new CircuitBreakerPolicy(this);
+		policy.slowCallDuration = duration;
+		policy.slowCallRateThreshold = percent;
+		return policy;
+	}
+
+	private static void ensurePositive(String name, Duration duration) {
+		if (duration.isNegative() || duration.isZero()) {
+			throw new IllegalArgumentException(name + " must be positive: " + duration);
+		}
+	}
+
+	/**
+	 * withOpenDuration returns a new policy where an opened circuit rejects requests for the
+	 * specified duration before a probe is let through.
+	 * 
+	 * @param duration
+	 *            The time the circuit stays open
+	 * @return A new CircuitBreakerPolicy with the open duration
+	 */
+	public CircuitBreakerPolicy withOpenDuration(Duration duration) {
+		ensurePositive("Open duration", duration);
+		CircuitBreakerPolicy policy = new CircuitBreakerPolicy(this);
+		policy.openDuration = duration;
+		return policy;
+	}
+
+	/**
+	 * getWindowSize returns the number of requests in the sliding window.
+	 * 
+	 * @return An int with the window size
+	 */
+	public int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * getFailureRateThreshold returns the percentage of failed requests that opens the circuit.
+	 * 
+	 * @return An int with the failure rate threshold in percent
+	 */
+	public int getFailureRateThreshold() {
+		return failureRateThreshold;
+	}
+
+	/**
+	 * getSlowCallDuration returns the time to get a response after which a request is slow.
+	 * 
+	 * @return A Duration with the slow call duration
+	 */
+	public Duration getSlowCallDuration() {
+		return slowCallDuration;
+	}
+
+	/**
+	 * getSlowCallRateThreshold returns the percentage of slow requests that opens the circuit.
+	 * 
+	 * @return An int with the slow call rate threshold in percent
+	 */
+	public int getSlowCallRateThreshold() {
+		return slowCallRateThreshold;
+	}
+
+	/**
+	 * getOpenDuration returns the time an opened circuit rejects requests before a probe is let
+	 * through.
+	 * 
+	 * @return A Duration with the open duration
+	 */
+	public Duration getOpenDuration() {
+		return openDuration;
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016, 2019, 2023, 2024 Uppsala University Library
+ * Copyright 2016, 2019, 2023, 2024, 2026 Uppsala University Library
  * Copyright 2023 Olov McKie
  *
  * This file is part of Cora.
@@ -20,8 +20,24 @@
 
 package se.uu.ub.cora.httphandler;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * HttpHandler is an interface to do a single http request to a specified url. HttpHandlers should
@@ -30,7 +46,12 @@ import java.util.Map;
  * <p>
  * The request method SHOULD by default be set to GET by implementing classes, so that a call to the
  * {@link #setRequestMethod(String)} only is necessary if a diffrent request method is to be used.
- * 
+ * <p>
+ * The methods that trigger the request to be sent block the calling thread until the response
+ * has been received. They are safe and cheap to call from virtual threads, as the waiting parks the
+ * virtual thread without pinning its carrier thread. Using a factory created with
+ * {@link HttpHandlerFactorySettings#withVirtualThreads()} and calling the HttpHandlers from virtual
+ * threads lets many thousand requests run at the same time without any tuning of thread pools.
  */
 public interface HttpHandler {
 
@@ -57,7 +78,8 @@ public interface HttpHandler {
 
 	/**
 	 * getResponseCode returns the response code for the request, or 500 if there is a problem with
-	 * the request.
+	 * the request. If a timeout is exceeded a {@link HttpHandlerTimeoutException} is thrown
+	 * instead.
 	 * <p>
 	 * getResponseCode triggers the request to be sent, if it has not been sent since before.
 	 * 
@@ -76,6 +98,66 @@ public interface HttpHandler {
 	 */
 	String getResponseText();
 
+	/**
+	 * Reads the body of the Response from a call to a Http service as bytes, exactly as received
+	 * and without decoding them as text. If the response has a Content-Length header, the bytes
+	 * are read into an array of that size.
+	 * <p>
+	 * getResponseBytes triggers the request to be sent, if it has not been sent since before.
+	 * 
+	 * Can throw a {@link RuntimeException} if any problem occurs while reading the bytes
+	 * <p>
+	 * The default implementation reads all bytes from {@link #getResponseBinary()}.
+	 * 
+	 * @return A byte array with the body of the response
+	 */
+	default byte[] getResponseBytes() {
+		try (InputStream responseBinary = getResponseBinary()) {
+			return responseBinary.readAllBytes();
+		} catch (IOException e) {
+			throw new RuntimeException("Error getting response bytes: ", e);
+		}
+	}
+
+	/**
+	 * Reads the body of the Response from a call to a Http service as a list of read only
+	 * buffers, that together hold the bytes of the body exactly as received. The buffers are not
+	 * joined, so a large body does not need a single large array.
+	 * <p>
+	 * getResponseByteBuffers triggers the request to be sent, if it has not been sent since
+	 * before.
+	 * 
+	 * Can throw a {@link RuntimeException} if any problem occurs while reading the bytes
+	 * <p>
+	 * The default implementation wraps the bytes from {@link #getResponseBytes()} in one buffer.
+	 * 
+	 * @return A List of ByteBuffers with the body of the response, empty if the body is empty
+	 */
+	default List<ByteBuffer> getResponseByteBuffers() {
+		byte[] responseBytes = getResponseBytes();
+		if (responseBytes.length == 0) {
+			return List.of();
+		}
+		return List.of(ByteBuffer.wrap(responseBytes).asReadOnlyBuffer());
+	}
+
+	/**
+	 * getResponseReader returns a Reader that decodes the response text while it is read, for
+	 * callers that can parse the response incrementally instead of holding the whole text in
+	 * memory. The Reader should be closed when it is no longer needed.
+	 * <p>
+	 * getResponseReader triggers the request to be sent, if it has not been sent since before.
+	 * 
+	 * Can throw a {@link RuntimeException} if any problem occurs while sending the request
+	 * <p>
+	 * The default implementation decodes {@link #getResponseBinary()} as UTF-8.
+	 * 
+	 * @return A Reader with the response text from the request
+	 */
+	default Reader getResponseReader() {
+		return new InputStreamReader(getResponseBinary(), StandardCharsets.UTF_8);
+	}
+
 	/**
 	 * Reads a binary from the Response from a call to a Http service
 	 * 
@@ -87,6 +169,118 @@ public interface HttpHandler {
 	 */
 	InputStream getResponseBinary();
 
+	/**
+	 * downloadTo writes the response body to the specified file, without holding more than a small
+	 * buffer of it in memory at a time. The body is first written to a temporary file in the same
+	 * directory, which is flushed to disk and then atomically renamed to the specified file when
+	 * the whole body has been received, so that the file is either replaced by the complete body
+	 * or left untouched. If the file system can not rename atomically, the file is replaced by an
+	 * ordinary move.
+	 * <p>
+	 * downloadTo triggers the request to be sent, if it has not been sent since before. Can throw a
+	 * {@link RuntimeException} if any problem occurs while downloading, or if the response code is
+	 * not a 2xx success code, in which case nothing is written.
+	 * <p>
+	 * The default implementation checks {@link #getResponseCode()} and copies
+	 * {@link #getResponseBinary()} to a temporary file that is moved to the specified file, without
+	 * flushing it to disk first.
+	 * 
+	 * @param file
+	 *            The Path of the file to write the response body to
+	 * @return A long with the number of bytes written to the file
+	 */
+	default long downloadTo(Path file) {
+		try {
+			return downloadToTemporaryFileAndMove(file.toAbsolutePath());
+		} catch (IOException e) {
+			throw new RuntimeException("Error downloading response to file: ", e);
+		}
+	}
+
+	private long downloadToTemporaryFileAndMove(Path file) throws IOException {
+		int responseCode = getResponseCode();
+		if (responseCode < 200 || responseCode > 299) {
+			throw new IOException("Not a successful response code: " + responseCode);
+		}
+		Path temporaryFile = Files.createTempFile(file.getParent(),
+				file.getFileName().toString(), ".part");
+		try (InputStream responseBinary = getResponseBinary()) {
+			long written = Files.copy(responseBinary, temporaryFile,
+					StandardCopyOption.REPLACE_EXISTING);
+			moveReplacingExisting(temporaryFile, file);
+			return written;
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temporaryFile);
+			throw e;
+		}
+	}
+
+	private static void moveReplacingExisting(Path temporaryFile, Path file) throws IOException {
+		try {
+			Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * downloadTo writes the response body to the specified file as {@link #downloadTo(Path)}, but
+	 * if the server supports range requests, a transfer that fails halfway is resumed from where
+	 * it failed instead of from the beginning, and a large body is fetched in up to the specified
+	 * number of segments in parallel, over separate requests. Segments are at least one MiB.
+	 * Transfers are only resumed within the call, if the download fails nothing is kept for a
+	 * later call to resume from.
+	 * <p>
+	 * Range requests are used if the response has a known length, Accept-Ranges: bytes and a
+	 * strong ETag or a Last-Modified date, which is sent as If-Range so that a resource that
+	 * changes during the download fails it. Otherwise the body is written without resuming. The
+	 * request method must be GET. An {@link IllegalArgumentException} is thrown, before the
+	 * request is sent, if segments is less than one.
+	 * <p>
+	 * downloadTo triggers the request to be sent, if it has not been sent since before. Can throw a
+	 * {@link RuntimeException} if any problem occurs while downloading, or if the response code is
+	 * not a 2xx success code, in which case nothing is written.
+	 * <p>
+	 * The default implementation calls {@link #downloadTo(Path)} without resuming or segments.
+	 * 
+	 * @param file
+	 *            The Path of the file to write the response body to
+	 * @param segments
+	 *            The maximum number of segments to fetch in parallel, 1 to only resume, must be 1
+	 *            or more
+	 * @return A long with the number of bytes written to the file
+	 */
+	default long downloadTo(Path file, int segments) {
+		if (segments < 1) {
+			throw new IllegalArgumentException("Segments must be 1 or more: " + segments);
+		}
+		return downloadTo(file);
+	}
+
+	/**
+	 * downloadTo writes the response body to the specified channel, without holding more than a
+	 * small buffer of it in memory at a time. The channel is not closed.
+	 * <p>
+	 * downloadTo triggers the request to be sent, if it has not been sent since before. Can throw a
+	 * {@link RuntimeException} if any problem occurs while downloading, or if the response code is
+	 * not a 2xx success code, in which case nothing is written.
+	 * <p>
+	 * The default implementation copies {@link #getResponseBinary()} to the channel, without
+	 * checking the response code.
+	 * 
+	 * @param channel
+	 *            The WritableByteChannel to write the response body to
+	 * @return A long with the number of bytes written to the channel
+	 */
+	default long downloadTo(WritableByteChannel channel) {
+		try (InputStream responseBinary = getResponseBinary()) {
+			return responseBinary.transferTo(Channels.newOutputStream(channel));
+		} catch (IOException e) {
+			throw new RuntimeException("Error downloading response to channel: ", e);
+		}
+	}
+
 	/**
 	 * Set a header for the request call.
 	 * <p>
@@ -101,6 +295,10 @@ public interface HttpHandler {
 
 	/**
 	 * getResponseHeaders return all the headers from the response.
+	 * <p>
+	 * The returned map is a read only view of the response headers, where header names are case
+	 * insensitive. The values of a header that occurs more than once are joined with ", ". The
+	 * same map is returned every time for a response.
 	 * 
 	 * * Can throw a {@link RuntimeException} if any problem occurs while returning the headers
 	 * 
@@ -111,13 +309,36 @@ public interface HttpHandler {
 	/**
 	 * Get value of specific header field This does not trigger a request to be sent and must
 	 * therefore be used after an actual request have been made using triggering methods.
+	 * <p>
+	 * If the header occurs more than once, the first value is returned. If no request has been
+	 * made, null is returned.
 	 * 
 	 * @param name
-	 *            The name of the header field
-	 * @return The value of the header field
+	 *            The name of the header field, case insensitive
+	 * @return The value of the header field, or null if the response has no such header or no
+	 *         request has been made
 	 */
 	String getHeaderField(String name);
 
+	/**
+	 * Get all values of a specific header field, in the order they were received, without joining
+	 * them. This does not trigger a request to be sent and must therefore be used after an actual
+	 * request have been made using triggering methods.
+	 * <p>
+	 * If no request has been made, an empty list is returned.
+	 * <p>
+	 * The default implementation returns the value from {@link #getHeaderField(String)} only.
+	 * 
+	 * @param name
+	 *            The name of the header field, case insensitive
+	 * @return An unmodifiable List with the values of the header field, empty if the response has
+	 *         no such header or no request has been made
+	 */
+	default List<String> getHeaderFields(String name) {
+		String value = getHeaderField(name);
+		return value == null ? List.of() : List.of(value);
+	}
+
 	/**
 	 * Read the body of the request
 	 * 
@@ -139,17 +360,144 @@ public interface HttpHandler {
 	 */
 	void setOutput(String outputString);
 
+	/**
+	 * Set outgoing body from bytes, sent as they are with a Content-Length header. The array is not
+	 * copied, and must not be changed until the request has been sent.
+	 * 
+	 * setOutput triggers the request to be sent, if it has not been sent since before. Can throw a
+	 * {@link RuntimeException} if any problem occurs while sending the body
+	 * <p>
+	 * The default implementation sends the bytes using {@link #setStreamOutput(InputStream)}.
+	 * 
+	 * @param output
+	 *            The bytes to set as output
+	 */
+	default void setOutput(byte[] output) {
+		setStreamOutput(new ByteArrayInputStream(output));
+	}
+
+	/**
+	 * Set outgoing body from the remaining bytes of buffers, sent as they are, in order, with a
+	 * Content-Length header. The content of the buffers is not copied, and must not be changed
+	 * until the request has been sent. The positions of the buffers are not changed.
+	 * 
+	 * setOutput triggers the request to be sent, if it has not been sent since before. Can throw a
+	 * {@link RuntimeException} if any problem occurs while sending the body
+	 * <p>
+	 * The default implementation copies the buffers to an array and calls
+	 * {@link #setOutput(byte[])}.
+	 * 
+	 * @param output
+	 *            The buffers to set as output
+	 */
+	default void setOutput(ByteBuffer... output) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (ByteBuffer buffer : output) {
+			ByteBuffer remaining = buffer.duplicate();
+			byte[] chunk = new byte[remaining.remaining()];
+			remaining.get(chunk);
+			bytes.writeBytes(chunk);
+		}
+		setOutput(bytes.toByteArray());
+	}
+
 	/**
 	 * Set outgoing body as an InputStream.
 	 * 
 	 * setStreamOutput triggers the request to be sent, if it has not been sent since before. Can
 	 * throw a {@link RuntimeException} if any problem occurs while sending the body
+	 * <p>
+	 * The stream can only be read once, so a request with a body set using this method is never
+	 * retried, and fails if the body is asked for a second time. Use
+	 * {@link #setStreamOutput(Supplier, long)} or {@link #setStreamOutput(Path)} for bodies that
+	 * can be sent again.
 	 * 
 	 * @param stream
 	 *            The stream to use as output
 	 */
 	void setStreamOutput(InputStream stream);
 
+	/**
+	 * Set outgoing body as streams from a supplier, that is asked for a new stream each time the
+	 * body is sent, so that the request can be retried. The supplied streams are closed after they
+	 * are read.
+	 * <p>
+	 * If the content length is known, the body is sent with a Content-Length header, otherwise it
+	 * is sent using chunked transfer encoding.
+	 * <p>
+	 * setStreamOutput triggers the request to be sent, if it has not been sent since before. Can
+	 * throw a {@link RuntimeException} if any problem occurs while sending the body
+	 * <p>
+	 * The default implementation sends one supplied stream using
+	 * {@link #setStreamOutput(InputStream)}, so the body can not be sent again.
+	 * 
+	 * @param streamSupplier
+	 *            The supplier of streams to use as output
+	 * @param contentLength
+	 *            The number of bytes in each supplied stream, or -1 if not known
+	 */
+	default void setStreamOutput(Supplier<InputStream> streamSupplier, long contentLength) {
+		try (InputStream stream = streamSupplier.get()) {
+			setStreamOutput(stream);
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing output from stream: ", e);
+		}
+	}
+
+	/**
+	 * Set outgoing body as the content of a file, sent with a Content-Length header. The file is
+	 * read again if the request is retried.
+	 * <p>
+	 * setStreamOutput triggers the request to be sent, if it has not been sent since before. Can
+	 * throw a {@link RuntimeException} if the file can not be read or any problem occurs while
+	 * sending the body
+	 * <p>
+	 * The default implementation sends the file using {@link #setStreamOutput(InputStream)}, so
+	 * the body can not be sent again.
+	 * 
+	 * @param file
+	 *            The file to use as output
+	 */
+	default void setStreamOutput(Path file) {
+		try (InputStream stream = Files.newInputStream(file)) {
+			setStreamOutput(stream);
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing output from file: ", e);
+		}
+	}
+
+	/**
+	 * Set outgoing body as a range of bytes in a file, sent with a Content-Length header. The
+	 * range is read again if the request is retried.
+	 * <p>
+	 * setStreamOutput triggers the request to be sent, if it has not been sent since before. Can
+	 * throw a {@link RuntimeException} if the range is not within the file, the file can not be
+	 * read or any problem occurs while sending the body
+	 * <p>
+	 * The default implementation sends the range using {@link #setStreamOutput(InputStream)}, so
+	 * the range is read once, without a Content-Length header.
+	 * 
+	 * @param file
+	 *            The file to use as output
+	 * @param offset
+	 *            The position in the file of the first byte to send
+	 * @param length
+	 *            The number of bytes to send
+	 */
+	default void setStreamOutput(Path file, long offset, long length) {
+		try (InputStream stream = Files.newInputStream(file)) {
+			long fileSize = Files.size(file);
+			if (offset < 0 || length < 0 || offset > fileSize - length) {
+				throw new IllegalArgumentException("Range with offset: " + offset
+						+ " and length: " + length + " is outside file of size: " + fileSize);
+			}
+			stream.skipNBytes(offset);
+			setStreamOutput(new BoundedInputStream(stream, length));
+		} catch (IOException e) {
+			throw new RuntimeException("Error writing output from file: ", e);
+		}
+	}
+
 	/**
 	 * Set the basic authorization as a header for the request call
 	 * 
@@ -160,4 +508,45 @@ public interface HttpHandler {
 	 */
 	void setBasicAuthorization(String username, String password);
 
+	/**
+	 * setTimeToFirstByteTimeout sets the longest time to wait from when the request is sent until
+	 * the response headers have been received, overriding the default of the factory. If it is
+	 * exceeded a {@link FirstByteTimeoutException} is thrown. For requests with a body the time
+	 * includes sending the body.
+	 * <p>
+	 * setTimeToFirstByteTimeout must be called before the request is sent.
+	 * <p>
+	 * The default implementation throws an {@link UnsupportedOperationException}, as ignoring the
+	 * timeout could make a caller wait forever.
+	 * 
+	 * @param timeout
+	 *            The time to wait for the response headers
+	 */
+	default void setTimeToFirstByteTimeout(Duration timeout) {
+		throw new UnsupportedOperationException(
+				"setTimeToFirstByteTimeout is not supported by: " + getClass().getName());
+	}
+
+	/**
+	 * setRequestTimeout sets the longest time the whole request may take, from when it is sent
+	 * until its response body has been read, overriding the default of the factory. The time is
+	 * counted once from when the request is sent, so retries, waiting for a free connection, range
+	 * requests of segmented downloads and reading the response body are all given only the time
+	 * that is left. If it is exceeded a {@link RequestTimeoutException} is thrown, and streams
+	 * returned from {@link #getResponseBinary()} and {@link #getResponseReader()} are closed and
+	 * throw a {@link java.net.http.HttpTimeoutException} when read.
+	 * <p>
+	 * setRequestTimeout must be called before the request is sent.
+	 * <p>
+	 * The default implementation throws an {@link UnsupportedOperationException}, as ignoring the
+	 * timeout could make a caller wait forever.
+	 * 
+	 * @param timeout
+	 *            The longest time the request, including reading the response body, may take
+	 */
+	default void setRequestTimeout(Duration timeout) {
+		throw new UnsupportedOperationException(
+				"setRequestTimeout is not supported by: " + getClass().getName());
+	}
+
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016, 2023 Uppsala University Library
+ * Copyright 2016, 2023, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -33,6 +33,20 @@ public interface HttpHandlerFactory {
 	 */
 	HttpHandler factor(String url);
 
+	/**
+	 * factorAsync factors an {@link AsyncHttpHandler} to use for a non blocking http request.
+	 * <p>
+	 * The default implementation throws an {@link UnsupportedOperationException}.
+	 * 
+	 * @param url
+	 *            A String with the URL to do a request to
+	 * @return An AsyncHttpHandler
+	 */
+	default AsyncHttpHandler factorAsync(String url) {
+		throw new UnsupportedOperationException(
+				"factorAsync is not supported by: " + getClass().getName());
+	}
+
 	/**
 	 * factorHttpMulitPartUploader factors a {@link HttpMultiPartUploader} to use for a multipart
 	 * http request.
@@ -42,4 +56,19 @@ public interface HttpHandlerFactory {
 	 * @return A HttpMultiPartUploader
 	 */
 	HttpMultiPartUploader factorHttpMultiPartUploader(String url);
+
+	/**
+	 * factorAsyncHttpMultiPartUploader factors an {@link AsyncHttpMultiPartUploader} to use for a
+	 * non blocking multipart http request.
+	 * <p>
+	 * The default implementation throws an {@link UnsupportedOperationException}.
+	 * 
+	 * @param url
+	 *            A String with the URL to do a request to
+	 * @return An AsyncHttpMultiPartUploader
+	 */
+	default AsyncHttpMultiPartUploader factorAsyncHttpMultiPartUploader(String url) {
+		throw new UnsupportedOperationException(
+				"factorAsyncHttpMultiPartUploader is not supported by: " + getClass().getName());
+	}
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016, 2018, 2023 Uppsala University Library
+ * Copyright 2016, 2018, 2023, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -20,17 +20,176 @@
 package se.uu.ub.cora.httphandler;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URL;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.Builder;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
 
+import se.uu.ub.cora.httphandler.internal.AsyncHttpHandlerImp;
+import se.uu.ub.cora.httphandler.internal.AsyncHttpMultiPartUploaderImp;
+import se.uu.ub.cora.httphandler.internal.AsyncRequestSender;
+import se.uu.ub.cora.httphandler.internal.BulkheadRequestSender;
+import se.uu.ub.cora.httphandler.internal.CachingRequestSender;
+import se.uu.ub.cora.httphandler.internal.CircuitBreakingRequestSender;
+import se.uu.ub.cora.httphandler.internal.CoalescingRequestSender;
+import se.uu.ub.cora.httphandler.internal.DecompressingRequestSender;
+import se.uu.ub.cora.httphandler.internal.HttpClientAsyncSender;
+import se.uu.ub.cora.httphandler.internal.HttpClientSender;
 import se.uu.ub.cora.httphandler.internal.HttpHandlerImp;
 import se.uu.ub.cora.httphandler.internal.HttpMultiPartUploaderImp;
+import se.uu.ub.cora.httphandler.internal.InFlightRequests;
+import se.uu.ub.cora.httphandler.internal.InstrumentedRequestSender;
+import se.uu.ub.cora.httphandler.internal.RequestBodyCompressor;
+import se.uu.ub.cora.httphandler.internal.RequestSender;
+import se.uu.ub.cora.httphandler.internal.RetryingRequestSender;
+import se.uu.ub.cora.httphandler.internal.SizeLimitingRequestSender;
 
-public class HttpHandlerFactoryImp implements HttpHandlerFactory {
+/**
+ * HttpHandlerFactoryImp factors {@link HttpHandler}s, {@link HttpMultiPartUploader}s and their non
+ * blocking variants that all share one long-lived {@link HttpClient}, owned by the factory. The
+ * client keeps a pool of keep-alive connections per scheme and authority, so repeated requests to
+ * the same backend reuse warm connections instead of doing a new TCP and TLS handshake for every
+ * request.
+ * <p>
+ * The shared client is configured using {@link HttpHandlerFactorySettings}. With HTTP/2, which is
+ * the default of the JDK http client, concurrent requests to the same host are multiplexed over
+ * one connection. If the settings have a {@link HttpRequestListener}, all requests from the
+ * factored handlers and uploaders are reported to it. If the settings have a maximum response
+ * size, larger response bodies fail when read. If the settings use response compression, the
+ * blocking handlers and uploaders ask for and decompress gzip and deflate encoded responses. If
+ * the settings use request compression, request bodies from the blocking handlers are gzip
+ * compressed while they are sent. If the settings have a response cache, responses to GET requests
+ * from the blocking handlers are cached and revalidated, binary responses optionally outside the
+ * heap. Responses served from the cache without a request are not reported to the listener. If the
+ * settings use request coalescing, identical concurrent GET requests from the blocking handlers
+ * are sent as one request. If the settings have a retry policy, requests from the blocking
+ * handlers and uploaders that fail temporarily are retried. If the settings have a circuit breaker
+ * or a maximum number of concurrent requests per host, requests from the blocking handlers and
+ * uploaders to a failing or overloaded host are rejected without being sent. The connect timeout
+ * of the settings is used by the shared client, and the time to first byte and request timeouts
+ * are the defaults of the factored handlers. Uploaders and the non blocking variants use the
+ * shorter of them as the time to wait for the response headers.
+ * <p>
+ * The size of the connection pool and how long idle connections are kept are JVM wide settings of
+ * the JDK http client, and can be tuned using the system properties
+ * <em>jdk.httpclient.connectionPoolSize</em> and <em>jdk.httpclient.keepalive.timeout</em>.
+ * <p>
+ * A factory should be created once and then be used for the lifetime of the application. When it
+ * is no longer needed, {@link #close()} should be called to release the pooled connections and
+ * the threads used by the client, for instance from a shutdown hook.
+ */
+public class HttpHandlerFactoryImp implements HttpHandlerFactory, AutoCloseable {
+	private final ExecutorService executor;
+	private final HttpClient httpClient;
+	private final HttpRequestListener requestListener;
+	private final long maxResponseSize;
+	private final InFlightRequests inFlightRequests = new InFlightRequests();
+	private final RequestSender requestSender;
+	private final AsyncRequestSender asyncRequestSender;
+	private final RequestBodyCompressor requestBodyCompressor;
+	private final Duration timeToFirstByteTimeout;
+	private final Duration requestTimeout;
+
+	/**
+	 * Creates a factory using {@link HttpHandlerFactorySettings#defaults()}.
+	 */
+	public HttpHandlerFactoryImp() {
+		this(HttpHandlerFactorySettings.defaults());
+	}
+
+	/**
+	 * Creates a factory whose shared http client is configured from the specified settings.
+	 * 
+	 * @param settings
+	 *            The HttpHandlerFactorySettings to use
+	 */
+	public HttpHandlerFactoryImp(HttpHandlerFactorySettings settings) {
+		executor = possiblyCreateExecutor(settings);
+		httpClient = createHttpClient(settings);
+		requestListener = settings.getRequestListener().orElse(null);
+		maxResponseSize = settings.getMaxResponseSize().orElse(HttpClientAsyncSender.UNLIMITED);
+		requestSender = createRequestSender(settings);
+		asyncRequestSender = new HttpClientAsyncSender(httpClient, requestListener,
+				maxResponseSize, inFlightRequests);
+		requestBodyCompressor = possiblyCreateRequestBodyCompressor(settings);
+		timeToFirstByteTimeout = settings.getTimeToFirstByteTimeout().orElse(null);
+		requestTimeout = settings.getRequestTimeout().orElse(null);
+	}
+
+	private ExecutorService possiblyCreateExecutor(HttpHandlerFactorySettings settings) {
+		if (settings.usesVirtualThreads()) {
+			return Executors.newVirtualThreadPerTaskExecutor();
+		}
+		return null;
+	}
+
+	private RequestBodyCompressor possiblyCreateRequestBodyCompressor(
+			HttpHandlerFactorySettings settings) {
+		OptionalInt minimumSize = settings.getRequestCompressionMinimumSize();
+		if (minimumSize.isPresent()) {
+			return new RequestBodyCompressor(minimumSize.getAsInt());
+		}
+		return null;
+	}
+
+	private HttpClient createHttpClient(HttpHandlerFactorySettings settings) {
+		HttpClient.Builder clientBuilder = HttpClient.newBuilder();
+		if (executor != null) {
+			clientBuilder.executor(executor);
+		}
+		settings.getHttpVersion().ifPresent(clientBuilder::version);
+		settings.getConnectTimeout().ifPresent(clientBuilder::connectTimeout);
+		return clientBuilder.build();
+	}
+
+	private RequestSender createRequestSender(HttpHandlerFactorySettings settings) {
+		RequestSender sender = new HttpClientSender(httpClient);
+		if (settings.usesResponseCompression()) {
+			sender = new DecompressingRequestSender(sender);
+		}
+		if (maxResponseSize != HttpClientAsyncSender.UNLIMITED) {
+			sender = new SizeLimitingRequestSender(sender, maxResponseSize);
+		}
+		if (requestListener != null) {
+			sender = new InstrumentedRequestSender(sender, requestListener, inFlightRequests);
+		}
+		if (settings.getRetryPolicy().isPresent()) {
+			sender = new RetryingRequestSender(sender, settings.getRetryPolicy().get(),
+					requestListener);
+		}
+		if (settings.getCircuitBreakerPolicy().isPresent()) {
+			sender = new CircuitBreakingRequestSender(sender,
+					settings.getCircuitBreakerPolicy().get());
+		}
+		OptionalInt maxConcurrentRequestsPerHost = settings.getMaxConcurrentRequestsPerHost();
+		if (maxConcurrentRequestsPerHost.isPresent()) {
+			sender = new BulkheadRequestSender(sender, maxConcurrentRequestsPerHost.getAsInt());
+		}
+		OptionalLong coalescedBodySize = settings.getCoalescedBodySize();
+		if (coalescedBodySize.isPresent()) {
+			sender = new CoalescingRequestSender(sender, coalescedBodySize.getAsLong());
+		}
+		return possiblyAddCache(settings, sender);
+	}
+
+	private RequestSender possiblyAddCache(HttpHandlerFactorySettings settings,
+			RequestSender sender) {
+		OptionalLong responseCacheSize = settings.getResponseCacheSize();
+		OptionalLong offHeapResponseCacheSize = settings.getOffHeapResponseCacheSize();
+		if (responseCacheSize.isEmpty() && offHeapResponseCacheSize.isEmpty()) {
+			return sender;
+		}
+		return new CachingRequestSender(sender, responseCacheSize.orElse(0),
+				offHeapResponseCacheSize.orElse(CachingRequestSender.NO_OFF_HEAP_CACHE));
+	}
 
 	@Override
 	public HttpHandler factor(String urlString) {
@@ -43,23 +202,88 @@ public class HttpHandlerFactoryImp implements HttpHandlerFactory {
 
 	private HttpHandler tryToFactor(String urlString) throws IOException {
 		Builder builder = HttpRequest.newBuilder().uri(URI.create(urlString));
-		HttpClient httpClient = HttpClient.newHttpClient();
-		return HttpHandlerImp.usingBuilderAndHttpClient(builder, httpClient);
+		HttpHandler httpHandler = HttpHandlerImp
+				.usingBuilderAndRequestSenderAndRequestBodyCompressor(builder, requestSender,
+						requestBodyCompressor);
+		if (timeToFirstByteTimeout != null) {
+			httpHandler.setTimeToFirstByteTimeout(timeToFirstByteTimeout);
+		}
+		if (requestTimeout != null) {
+			httpHandler.setRequestTimeout(requestTimeout);
+		}
+		return httpHandler;
+	}
+
+	private Builder createBuilderWithTimeout(String urlString) {
+		Builder builder = HttpRequest.newBuilder().uri(URI.create(urlString));
+		getShortestTimeout().ifPresent(builder::timeout);
+		return builder;
+	}
+
+	private Optional<Duration> getShortestTimeout() {
+		return Stream.of(timeToFirstByteTimeout, requestTimeout).filter(Objects::nonNull)
+				.min(Duration::compareTo);
+	}
+
+	@Override
+	public AsyncHttpHandler factorAsync(String urlString) {
+		try {
+			Builder builder = createBuilderWithTimeout(urlString);
+			return AsyncHttpHandlerImp.usingBuilderAndAsyncRequestSender(builder,
+					asyncRequestSender);
+		} catch (Exception e) {
+			throw new RuntimeException("Error factoring AsyncHttpHandler: ", e);
+		}
 	}
 
 	@Override
 	public HttpMultiPartUploader factorHttpMultiPartUploader(String urlString) {
 		try {
-			return tryToFactorHttpMultiPartUploader(urlString);
+			Builder builder = createBuilderWithTimeout(urlString);
+			return HttpMultiPartUploaderImp.usingBuilderAndRequestSender(builder,
+					requestSender);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public AsyncHttpMultiPartUploader factorAsyncHttpMultiPartUploader(String urlString) {
+		try {
+			Builder builder = createBuilderWithTimeout(urlString);
+			return AsyncHttpMultiPartUploaderImp.usingBuilderAndAsyncRequestSender(builder,
+					asyncRequestSender);
 		} catch (Exception e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	private HttpMultiPartUploader tryToFactorHttpMultiPartUploader(String urlString)
-			throws IOException {
-		URL url = new URL(urlString);
-		HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-		return HttpMultiPartUploaderImp.usingURLConnection(urlConnection);
+	/**
+	 * close shuts down the shared {@link HttpClient} and its executor, waiting for already started
+	 * requests to finish. HttpHandlers factored after close has been called will fail when sending
+	 * their request.
+	 */
+	@Override
+	public void close() {
+		httpClient.close();
+		if (executor != null) {
+			executor.close();
+		}
+	}
+
+	HttpClient onlyForTestGetHttpClient() {
+		return httpClient;
+	}
+
+	RequestSender onlyForTestGetRequestSender() {
+		return requestSender;
+	}
+
+	AsyncRequestSender onlyForTestGetAsyncRequestSender() {
+		return asyncRequestSender;
+	}
+
+	RequestBodyCompressor onlyForTestGetRequestBodyCompressor() {
+		return requestBodyCompressor;
 	}
 }
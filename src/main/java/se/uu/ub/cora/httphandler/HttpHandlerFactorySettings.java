@@ -0,0 +1,609 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Version;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+
+/**
+ * HttpHandlerFactorySettings holds the configuration used by {@link HttpHandlerFactoryImp} when it
+ * creates its shared http client. Settings are immutable, {@link #defaults()} returns the default
+ * settings and each with method returns a new settings instance with one setting changed, so
+ * settings can be chained as:
+ * 
+ * <pre>
+ * HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults().withVirtualThreads();
+ * HttpHandlerFactory factory = new HttpHandlerFactoryImp(settings);
+ * </pre>
+ */
+public final class HttpHandlerFactorySettings {
+	private static final long UNLIMITED = -1;
+	private static final int NO_REQUEST_COMPRESSION = -1;
+	private static final long NO_RESPONSE_CACHE = -1;
+	private static final int UNLIMITED_CONCURRENT_REQUESTS = -1;
+	private static final long NO_REQUEST_COALESCING = -1;
+	private static final long DEFAULT_COALESCED_BODY_SIZE = 1_048_576;
+	private boolean virtualThreads = false;
+	private HttpRequestListener requestListener = null;
+	private long maxResponseSize = UNLIMITED;
+	private boolean responseCompression = false;
+	private int requestCompressionMinimumSize = NO_REQUEST_COMPRESSION;
+	private Version httpVersion = null;
+	private long responseCacheSize = NO_RESPONSE_CACHE;
+	private long offHeapResponseCacheSize = NO_RESPONSE_CACHE;
+	private long coalescedBodySize = NO_REQUEST_COALESCING;
+	private RetryPolicy retryPolicy = null;
+	private CircuitBreakerPolicy circuitBreakerPolicy = null;
+	private int maxConcurrentRequestsPerHost = UNLIMITED_CONCURRENT_REQUESTS;
+	private Duration connectTimeout = null;
+	private Duration timeToFirstByteTimeout = null;
+	private Duration requestTimeout = null;
+
+	private HttpHandlerFactorySettings() {
+	}
+
+	private HttpHandlerFactorySettings(HttpHandlerFactorySettings settings) {
+		virtualThreads = settings.virtualThreads;
+		requestListener = settings.requestListener;
+		maxResponseSize = settings.maxResponseSize;
+		responseCompression = settings.responseCompression;
+		requestCompressionMinimumSize = settings.requestCompressionMinimumSize;
+		httpVersion = settings.httpVersion;
+		responseCacheSize = settings.responseCacheSize;
+		offHeapResponseCacheSize = settings.offHeapResponseCacheSize;
+		coalescedBodySize = settings.coalescedBodySize;
+		retryPolicy = settings.retryPolicy;
+		circuitBreakerPolicy = settings.circuitBreakerPolicy;
+		maxConcurrentRequestsPerHost = settings.maxConcurrentRequestsPerHost;
+		connectTimeout = settings.connectTimeout;
+		timeToFirstByteTimeout = settings.timeToFirstByteTimeout;
+		requestTimeout = settings.requestTimeout;
+	}
+
+	/**
+	 * defaults returns settings with the default configuration of the JDK http client.
+	 * 
+	 * @return A HttpHandlerFactorySettings with default settings
+	 */
+	public static HttpHandlerFactorySettings defaults() {
+		return new HttpHandlerFactorySettings();
+	}
+
+	/**
+	 * withVirtualThreads returns new settings where the http client uses a virtual thread per task
+	 * executor instead of the default executor of the JDK http client.
+	 * <p>
+	 * Virtual threads are cheap to create and block, so with this setting many thousand requests
+	 * can be in flight at the same time without any tuning of thread pools.
+	 * 
+	 * @return A new HttpHandlerFactorySettings using virtual threads
+	 */
+	public HttpHandlerFactorySettings withVirtualThreads() {
+		HttpHandlerFactorySettings settings = new HttpHandlerFactorySettings(this);
+		settings.virtualThreads = true;
+		return settings;
+	}
+
+	/**
+	 * usesVirtualThreads returns if the http client should use virtual threads.
+	 * 
+	 * @return A boolean, true if virtual threads should be used
+	 */
+	public boolean usesVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * withRequestListener returns new settings where every request sent by handlers and uploaders
+	 * from the factory is reported to the specified listener, for instance an
+	 * {@link InMemoryHttpMetrics}. Without a listener no measurements are made.
+	 * 
+	 * @param listener
+	 *            The HttpRequestListener to report requests to
+	 * @return A new HttpHandlerFactorySettings using the listener
+	 */
+	public HttpHandlerFactorySettings withRequestListener(HttpRequestListener listener) {
+		HttpHandlerFactorySettings settings = new HttpHandlerFactorySettings(this);
+		settings.requestListener = listener;
+		return settings;
+	}
+
+	/**
+	 * getRequestListener returns the listener requests should be reported to.
+	 * 
+	 * @return An Optional with the HttpRequestListener, empty if no listener is set
+	 */
+	public Optional<HttpRequestListener> getRequestListener() {
+		return Optional.ofNullable(requestListener);
+	}
+
+	/**
+	 * withMaxResponseSize returns new settings where response bodies larger than the specified
+	 * number of bytes fail with an exception when they are read, instead of being read until the
+	 * application runs out of memory. A response that declares a larger Content-Length fails
+	 * before any of its body is read.
+	 * <p>
+	 * The limit applies to all response bodies read through handlers and uploaders from the
+	 * factory, including streams returned from {@link HttpHandler#getResponseBinary()}. By default
+	 * response size is not limited.
+	 * 
+	 * @param maxBytes
+	 *            The maximum number of bytes in a response body, must be zero or larger
+	 * @return A new HttpHandlerFactorySettings using the maximum response size
+	 */
+	public HttpHandlerFactorySettings withMaxResponseSize(long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("Max response size can not be negative: " + maxBytes);
+		}
+		HttpHandlerFactorySettings settings = new HttpHandlerFactorySettings(this);
+		settings.maxResponseSize = maxBytes;
+		return settings;
+	}
+
+	/**
+	 * getMaxResponseSize returns the maximum number of bytes allowed in a response body.
+	 * 
+	 * @return An OptionalLong with the maximum response size, empty if response size is not
+	 *         limited
+	 */
+	public OptionalLong getMaxResponseSize() {
+		if (maxResponseSize == UNLIMITED) {
+			return OptionalLong.empty();
+		}
+		return OptionalLong.of(maxResponseSize);
+	}
+
+	/**
+	 * withResponseCompression returns new settings where requests from {@link HttpHandler}s and
+	 * {@link HttpMultiPartUploader}s ask for compressed responses using
+	 * <em>Accept-Encoding: gzip, deflate</em>, and compressed responses are decompressed while
+	 * they are read, so that getResponseText and getResponseBinary return the uncompressed
+	 * content. The Content-Encoding and Content-Length headers are removed from decompressed
+	 * responses.
+	 * <p>
+	 * Requests where the caller has set an Accept-Encoding header are left as they are, and their
+	 * responses are not decompressed. A maximum response size applies to the decompressed body.
+	 * 
+	 * @return A new HttpHandlerFactorySettings using response compression
+	 */
+	public HttpHandlerFactorySettings withResponseCompression() {
+		HttpHandlerFactorySettings settings = new HttpHandlerFactorySettings(this);
+		settings.responseCompression = true;
+		return settings;
+	}
+
+	/**
+	 * usesResponseCompression returns if compressed responses should be asked for and
+	 * decompressed.
+	 * 
+	 * @return A boolean, true if response compression should be used
+	 */
+	public boolean usesResponseCompression() {
+		return responseCompression;
+	}
+
+	/**
+	 * withRequestCompression returns new settings where {@link HttpHandler}s gzip compress request
+	 * bodies set using any of the setOutput or setStreamOutput methods, such as
+	 * {@link HttpHandler#setOutput(String)} or
+	 * {@link HttpHandler#setStreamOutput(java.io.InputStream)}, while they are sent, and set the
+	 * header <em>Content-Encoding: gzip</em>. The compressed body is never held in memory.
+	 * <p>
+	 * Bodies smaller than minimumSize bytes are sent uncompressed, as compressing small bodies
+	 * costs more than it saves. To decide the size of a stream, at most minimumSize bytes are read
+	 * from it before the request is sent. Bodies of unknown length from a stream supplier are
+	 * always compressed. Requests where the caller has set a Content-Encoding header are sent as
+	 * they are.
+	 * <p>
+	 * The receiving server must accept gzip encoded request bodies.
+	 * 
+	 * @param minimumSize
+	 *            The smallest number of bytes in a request body that is compressed, must be zero
+	 *            or larger
+	 * @return A new HttpHandlerFactorySettings using request compression
+	 */
+	public HttpHandlerFactorySettings withRequestCompression(int minimumSize) {
+		if (minimumSize < 0) {
+			throw new IllegalArgumentException(
+					"Request compression minimum size can not be negative: " + minimumSize);
+		}
+		HttpHandlerFactorySettings settings = new HttpHandlerFactorySettings(this);
+		settings.requestCompressionMinimumSize = minimumSize;
+		return settings;
+	}
+
+	/**
+	 * getRequestCompressionMinimumSize returns the smallest number of bytes in a request body that
+	 * is compressed.
+	 * 
+	 * @return An OptionalInt with the minimum size, empty if request bodies should not be
+	 *         compressed
+	 */
+	public OptionalInt getRequestCompressionMinimumSize() {
+		if (requestCompressionMinimumSize == NO_REQUEST_COMPRESSION) {
+			return OptionalInt.empty();
+		}
+		return OptionalInt.of(requestCompressionMinimumSize);
+	}
+
+	/**
+	 * withHttpVersion returns new settings where the http client prefers the specified http
+	 * version. Without this setting the default of the JDK http client is used, which is HTTP/2.
+	 * <p>
+	 * With HTTP/2, concurrent requests from all handlers and uploaders of the factory to the same
+	 * host share one connection as multiplexed streams, instead of opening one connection each.
+	 * For https the version is negotiated using ALPN. For plain http the first request to a host is
+	 * sent as HTTP/1.1 with an upgrade to h2c, and the connection is used for HTTP/2 if the server
+	 * accepts the upgrade. The JDK http client does not support h2c with prior knowledge. If the
+	 * server does not support HTTP/2, HTTP/1.1 is used. The version used for each response is
+	 * reported to the {@link HttpRequestListener}, if set.
+	 * <p>
+	 * Use {@link HttpClient.Version#HTTP_1_1} for servers that misbehave when upgrade or HTTP/2 is
+	 * attempted.
+	 * 
+	 * @param version
+	 *            The http version to prefer
+	 * @return A new HttpHandlerFactorySettings using the http version
+	 */
+	public HttpHandlerFactorySettings withHttpVersion(Version version) {
+		HttpHandlerFactorySettings settings = new HttpHandlerFactorySettings(this);
+		settings.httpVersion = version;
+		return settings;
+	}
+
+	/**
+	 * getHttpVersion returns the http version the http client should prefer.
+	 * 
+	 * @return An Optional with the http version, empty if the default of the JDK http client
+	 *         should be used
+	 */
+	public Optional<Version> getHttpVersion() {
+		return Optional.ofNullable(httpVersion);
+	}
+
+	/**
+	 * withResponseCache returns new settings where responses to GET requests from
+	 * {@link HttpHandler}s are cached in memory, following the Cache-Control, ETag and Last-Modified
+	 * headers of the responses.
+	 * <p>
+	 * A cached response is returned without sending a request while it is fresh according to its
+	 * Cache-Control max-age. After that, or if it has Cache-Control no-cache, the request is sent
+	 * with If-None-Match and If-Modified-Since headers, and if the server answers 304 Not Modified
+	 * the cached response is returned, so that only headers are transferred. Responses with
+	 * Cache-Control no-store, and responses without max-age or validators, are not cached. A
+	 * request with Cache-Control no-cache or max-age=0 always revalidates the cached response.
+	 * Requests with other headers, for instance other credentials, are cached separately, and
+	 * requests using other methods than GET and HEAD remove cached responses for their URI.
+	 * <p>
+	 * The cache holds at most maxBytes bytes of response bodies, and evicts the least recently used
+	 * responses when it is full. Responses larger than a quarter of the cache are not cached.
+	 * 
+	 * @param maxBytes
+	 *            The maximum number of response body bytes to keep in the cache, must be zero or
+	 *            larger
+	 * @return A new HttpHandlerFactorySettings using a response cache
+	 */
+	public HttpHandlerFactorySettings withResponseCache(long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException(
+					"Response cache size can not be negative: " + maxBytes);
+		}
+		HttpHandlerFactorySettings settings = new HttpHandlerFactorySettings(this);
+		settings.responseCacheSize = maxBytes;
+		return settings;
+	}
+
+	/**
+	 * getResponseCacheSize returns the maximum number of response body bytes to keep in the
+	 * response cache.
+	 * 
+	 * @return An OptionalLong with the cache size, empty if responses should not be cached
+	 */
+	public OptionalLong getResponseCacheSize() {
+		if (responseCacheSize == NO_RESPONSE_CACHE) {
+			return OptionalLong.empty();
+		}
+		return OptionalLong.of(responseCacheSize);
+	}
+
+	/**
+	 * withOffHeapResponseCache returns new settings where binary responses to GET requests from
+	 * {@link HttpHandler}s, those whose Content-Type is not text, xml or json, are cached in
+	 * direct memory outside the Java heap. Streams from {@link HttpHandler#getResponseBinary()}
+	 * for cached responses read directly from that memory, so a warm cache adds no garbage
+	 * collection work, however high the hit rate is.
+	 * <p>
+	 * Binary responses are cached and revalidated as described for
+	 * {@link #withResponseCache(long)}, which sets the size of the cache for text responses. If no
+	 * such size is set, only binary responses are cached. The direct memory is also limited by the
+	 * JVM option <em>-XX:MaxDirectMemorySize</em>, which must be at least maxBytes.
+	 * 
+	 * @param maxBytes
+	 *            The maximum number of binary response body bytes to keep outside the heap, must
+	 *            be zero or larger
+	 * @return A new HttpHandlerFactorySettings using an off heap response cache
+	 */
+	public HttpHandlerFactorySettings withOffHeapResponseCache(long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException(
+					"Off heap response cache size can not be negative: " + maxBytes);
+		}
+		HttpHandlerFactorySettings settings = new HttpHandlerFactorySettings(this);
+		settings.offHeapResponseCacheSize = maxBytes;
+		return settings;
+	}
+
+	/**
+	 * getOffHeapResponseCacheSize returns the maximum number of binary response body bytes to keep
+	 * in the off heap response cache.
+	 * 
+	 * @return An OptionalLong with the cache size, empty if binary responses should not be cached
+	 *         off heap
+	 */
+	public OptionalLong getOffHeapResponseCacheSize() {
+		if (offHeapResponseCacheSize == NO_RESPONSE_CACHE) {
+			return OptionalLong.empty();
+		}
+		return OptionalLong.of(offHeapResponseCacheSize);
+	}
+
+	/**
+	 * withRequestCoalescing returns new settings where identical GET and HEAD requests from
+	 * {@link HttpHandler}s that are sent at the same time are collapsed into one request to the
+	 * backend, sharing responses with a Content-Length of at most 1 MiB, as described for
+	 * {@link #withRequestCoalescing(long)}.
+	 * 
+	 * @return A new HttpHandlerFactorySettings using request coalescing
+	 */
+	public HttpHandlerFactorySettings withRequestCoalescing() {
+		return withRequestCoalescing(DEFAULT_COALESCED_BODY_SIZE);
+	}
+
+	/**
+	 * withRequestCoalescing returns new settings where identical GET and HEAD requests from
+	 * {@link HttpHandler}s that are sent at the same time are collapsed into one request to the
+	 * backend. Requests are identical if they have the same method, URI and headers. Callers that
+	 * wait for a coalesced request wait no longer than their request timeout.
+	 * <p>
+	 * Only responses with a Content-Length of at most maxBodyBytes are shared. Their bodies are
+	 * read into memory, and each caller reads it from its own stream. Any other response, for
+	 * instance a large download or a response of unknown length, is streamed to the caller that
+	 * sent the request, and the waiting callers send their own requests.
+	 * <p>
+	 * If a response cache is used, only requests that are not answered from the cache are
+	 * coalesced.
+	 * 
+	 * @param maxBodyBytes
+	 *            The maximum Content-Length of a response that is shared between coalesced
+	 *            requests, must be zero or larger
+	 * @return A new HttpHandlerFactorySettings using request coalescing
+	 */
+	public HttpHandlerFactorySettings withRequestCoalescing(long maxBodyBytes) {
+		if (maxBodyBytes < 0) {
+			throw new IllegalArgumentException(
+					"Coalesced body size can not be negative: " + maxBodyBytes);
+		}
+		HttpHandlerFactorySettings settings = new HttpHandlerFactorySettings(this);
+		settings.coalescedBodySize = maxBodyBytes;
+		return settings;
+	}
+
+	/**
+	 * usesRequestCoalescing returns if identical concurrent requests should be coalesced.
+	 * 
+	 * @return A boolean, true if request coalescing should be used
+	 */
+	public boolean usesRequestCoalescing() {
+		return coalescedBodySize != NO_REQUEST_COALESCING;
+	}
+
+	/**
+	 * getCoalescedBodySize returns the maximum Content-Length of a response that is shared between
+	 * coalesced requests.
+	 * 
+	 * @return An OptionalLong with the maximum body size, empty if requests should not be
+	 *         coalesced
+	 */
+	public OptionalLong getCoalescedBodySize() {
+		if (coalescedBodySize == NO_REQUEST_COALESCING) {
+			return OptionalLong.empty();
+		}
+		return OptionalLong.of(coalescedBodySize);
+	}
+
+	/**
+	 * withRetryPolicy returns new settings where requests from {@link HttpHandler}s and
+	 * {@link HttpMultiPartUploader}s that fail in a way that is likely to be temporary are retried
+	 * as described by the {@link RetryPolicy}. Every attempt is reported to the
+	 * {@link HttpRequestListener}, if set, and every retry to
+	 * {@link HttpRequestListener#requestRetried(HttpRetryEvent)}. By default requests are not
+	 * retried.
+	 * 
+	 * @param policy
+	 *            The RetryPolicy to use
+	 * @return A new HttpHandlerFactorySettings using the retry policy
+	 */
+	public HttpHandlerFactorySettings withRetryPolicy(RetryPolicy policy) {
+		HttpHandlerFactorySettings settings = new HttpHandlerFactorySettings(this);
+		settings.retryPolicy = policy;
+		return settings;
+	}
+
+	/**
+	 * getRetryPolicy returns the policy for retrying failed requests.
+	 * 
+	 * @return An Optional with the RetryPolicy, empty if requests should not be retried
+	 */
+	public Optional<RetryPolicy> getRetryPolicy() {
+		return Optional.ofNullable(retryPolicy);
+	}
+
+	/**
+	 * withCircuitBreaker returns new settings where requests from {@link HttpHandler}s and
+	 * {@link HttpMultiPartUploader}s to a host that is failing or slow are rejected with a
+	 * {@link HttpRequestRejectedException} without being sent, as described by the
+	 * {@link CircuitBreakerPolicy}. Each host (host and port) has its own circuit. If a retry
+	 * policy is used, a request and its retries count as one request. By default no circuit
+	 * breaker is used.
+	 * 
+	 * @param policy
+	 *            The CircuitBreakerPolicy to use
+	 * @return A new HttpHandlerFactorySettings using the circuit breaker
+	 */
+	public HttpHandlerFactorySettings withCircuitBreaker(CircuitBreakerPolicy policy) {
+		HttpHandlerFactorySettings settings = new HttpHandlerFactorySettings(this);
+		settings.circuitBreakerPolicy = policy;
+		return settings;
+	}
+
+	/**
+	 * getCircuitBreakerPolicy returns the policy for stopping requests to failing hosts.
+	 * 
+	 * @return An Optional with the CircuitBreakerPolicy, empty if no circuit breaker is used
+	 */
+	public Optional<CircuitBreakerPolicy> getCircuitBreakerPolicy() {
+		return Optional.ofNullable(circuitBreakerPolicy);
+	}
+
+	/**
+	 * withMaxConcurrentRequestsPerHost returns new settings where at most the specified number of
+	 * requests from {@link HttpHandler}s and {@link HttpMultiPartUploader}s wait for a response
+	 * from each host (host and port) at the same time. Further requests to the host are rejected
+	 * at once with a {@link HttpRequestRejectedException}, so that a slow host can not hold all
+	 * threads of the application. By default the number of concurrent requests is not limited.
+	 * 
+	 * @param maxRequests
+	 *            The maximum number of concurrent requests per host, must be one or larger
+	 * @return A new HttpHandlerFactorySettings using the maximum number of concurrent requests
+	 */
+	public HttpHandlerFactorySettings withMaxConcurrentRequestsPerHost(int maxRequests) {
+		if (maxRequests < 1) {
+			throw new IllegalArgumentException(
+					"Max concurrent requests per host must be at least 1: " + maxRequests);
+		}
+		HttpHandlerFactorySettings settings = new HttpHandlerFactorySettings(this);
+		settings.maxConcurrentRequestsPerHost = maxRequests;
+		return settings;
+	}
+
+	/**
+	 * getMaxConcurrentRequestsPerHost returns the maximum number of requests waiting for a
+	 * response from each host.
+	 * 
+	 * @return An OptionalInt with the maximum number of concurrent requests per host, empty if
+	 *         it is not limited
+	 */
+	public OptionalInt getMaxConcurrentRequestsPerHost() {
+		if (maxConcurrentRequestsPerHost == UNLIMITED_CONCURRENT_REQUESTS) {
+			return OptionalInt.empty();
+		}
+		return OptionalInt.of(maxConcurrentRequestsPerHost);
+	}
+
+	/**
+	 * withConnectTimeout returns new settings where the shared http client gives up connecting to
+	 * a server after the specified time. Requests from {@link HttpHandler}s then fail with a
+	 * {@link ConnectTimeoutException}. The connect timeout applies to all handlers and uploaders
+	 * from the factory and can not be changed per handler. By default the client waits as long as
+	 * the operating system does.
+	 * 
+	 * @param timeout
+	 *            The time to wait for a connection, must be positive
+	 * @return A new HttpHandlerFactorySettings using the connect timeout
+	 */
+	public HttpHandlerFactorySettings withConnectTimeout(Duration timeout) {
+		ensurePositive("Connect timeout", timeout);
+		HttpHandlerFactorySettings settings = new HttpHandlerFactorySettings(this);
+		settings.connectTimeout = timeout;
+		return settings;
+	}
+
+	private static void ensurePositive(String name, Duration timeout) {
+		if (timeout.isNegative() || timeout.isZero()) {
+			throw new IllegalArgumentException(name + " must be positive: " + timeout);
+		}
+	}
+
+	/**
+	 * getConnectTimeout returns the time the shared http client waits for a connection.
+	 * 
+	 * @return An Optional with the connect timeout, empty if no connect timeout is set
+	 */
+	public Optional<Duration> getConnectTimeout() {
+		return Optional.ofNullable(connectTimeout);
+	}
+
+	/**
+	 * withTimeToFirstByteTimeout returns new settings where the factored {@link HttpHandler}s by
+	 * default wait at most the specified time from when a request is sent until its response
+	 * headers have been received, see {@link HttpHandler#setTimeToFirstByteTimeout(Duration)}. By
+	 * default handlers wait until the response is received.
+	 * 
+	 * @param timeout
+	 *            The time to wait for the response headers, must be positive
+	 * @return A new HttpHandlerFactorySettings using the time to first byte timeout
+	 */
+	public HttpHandlerFactorySettings withTimeToFirstByteTimeout(Duration timeout) {
+		ensurePositive("Time to first byte timeout", timeout);
+		HttpHandlerFactorySettings settings = new HttpHandlerFactorySettings(this);
+		settings.timeToFirstByteTimeout = timeout;
+		return settings;
+	}
+
+	/**
+	 * getTimeToFirstByteTimeout returns the default time handlers wait for response headers.
+	 * 
+	 * @return An Optional with the time to first byte timeout, empty if no timeout is set
+	 */
+	public Optional<Duration> getTimeToFirstByteTimeout() {
+		return Optional.ofNullable(timeToFirstByteTimeout);
+	}
+
+	/**
+	 * withRequestTimeout returns new settings where requests from the factored {@link HttpHandler}s
+	 * by default take at most the specified time, including reading the response body, see
+	 * {@link HttpHandler#setRequestTimeout(Duration)}. By default requests may take any time.
+	 * 
+	 * @param timeout
+	 *            The longest time a request, including reading the response body, may take, must
+	 *            be positive
+	 * @return A new HttpHandlerFactorySettings using the request timeout
+	 */
+	public HttpHandlerFactorySettings withRequestTimeout(Duration timeout) {
+		ensurePositive("Request timeout", timeout);
+		HttpHandlerFactorySettings settings = new HttpHandlerFactorySettings(this);
+		settings.requestTimeout = timeout;
+		return settings;
+	}
+
+	/**
+	 * getRequestTimeout returns the default longest time a request, including reading the response
+	 * body, may take.
+	 * 
+	 * @return An Optional with the request timeout, empty if no timeout is set
+	 */
+	public Optional<Duration> getRequestTimeout() {
+		return Optional.ofNullable(requestTimeout);
+	}
+}
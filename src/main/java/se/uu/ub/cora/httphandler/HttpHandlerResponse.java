@@ -0,0 +1,36 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import java.util.Map;
+
+/**
+ * HttpHandlerResponse holds a fully read response from a http request.
+ * 
+ * @param statusCode
+ *            An int with the response code from the request
+ * @param headers
+ *            A Map with the response headers, multiple values for the same header are comma
+ *            separated
+ * @param body
+ *            A String with the response body
+ */
+public record HttpHandlerResponse(int statusCode, Map<String, String> headers, String body) {
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+/**
+ * HttpHandlerTimeoutException is thrown by {@link HttpHandler}s when a request takes longer than
+ * one of its timeouts, instead of the RuntimeException or the 500 response code used for other
+ * problems. The subclasses tell which timeout was exceeded, {@link ConnectTimeoutException},
+ * {@link FirstByteTimeoutException} or {@link RequestTimeoutException}.
+ */
+public abstract class HttpHandlerTimeoutException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	protected HttpHandlerTimeoutException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import java.net.http.HttpClient.Version;
+import java.util.Map;
+
+/**
+ * HttpMetricsSnapshot holds the metrics collected by {@link InMemoryHttpMetrics} for one backend
+ * and request method, at the time the snapshot was taken.
+ * 
+ * @param authority
+ *            The host and port of the backend
+ * @param method
+ *            The request method
+ * @param requests
+ *            The number of requests
+ * @param failures
+ *            The number of requests where no response was received
+ * @param retries
+ *            The number of attempts that were retried
+ * @param statusCodes
+ *            The number of responses per status code
+ * @param versions
+ *            The number of responses per http version
+ * @param requestBytes
+ *            The total number of known request body bytes
+ * @param responseBytes
+ *            The total number of response body bytes
+ * @param maxConcurrentRequests
+ *            The largest number of requests to the backend that were in flight at the same time,
+ *            for HTTP/2 the largest number of streams that shared the connection
+ * @param timeToFirstByte
+ *            Latency until the response headers were received
+ * @param totalTime
+ *            Latency until the whole response was read
+ */
+public record HttpMetricsSnapshot(String authority, String method, long requests, long failures,
+		long retries, Map<Integer, Long> statusCodes, Map<Version, Long> versions, long requestBytes,
+		long responseBytes, int maxConcurrentRequests, Latency timeToFirstByte,
+		Latency totalTime) {
+
+	/**
+	 * Latency summarizes a latency distribution. Percentiles are approximated from a histogram
+	 * and are within 12.5% of the recorded values.
+	 * 
+	 * @param count
+	 *            The number of recorded values
+	 * @param p50Nanos
+	 *            The median in nanoseconds
+	 * @param p90Nanos
+	 *            The 90th percentile in nanoseconds
+	 * @param p99Nanos
+	 *            The 99th percentile in nanoseconds
+	 * @param maxNanos
+	 *            The largest recorded value in nanoseconds
+	 */
+	public record Latency(long count, long p50Nanos, long p90Nanos, long p99Nanos, long maxNanos) {
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 Uppsala University Library
+ * Copyright 2016, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -21,7 +21,18 @@ package se.uu.ub.cora.httphandler;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 
+/**
+ * HttpMultiPartUploader is an interface to do a single multipart/form-data http request to a
+ * specified url.
+ * <p>
+ * Form fields and file parts are collected as they are added and are streamed to the server when
+ * {@link #done()} is called, so streams added with addFilePart must be kept open until done has
+ * been called. The request body is never buffered in memory as a whole. It is sent with a fixed
+ * length if the size of all file parts is known and chunked otherwise.
+ */
 public interface HttpMultiPartUploader {
 
 	String getResponseText();
@@ -34,6 +45,63 @@ public interface HttpMultiPartUploader {
 
 	void addFilePart(String fieldName, String fileName, InputStream stream) throws IOException;
 
+	/**
+	 * Add a file part with a known size. If the size of all file parts in the request is known,
+	 * the request is sent with a fixed length instead of chunked.
+	 * <p>
+	 * The default implementation adds the stream without its size.
+	 * 
+	 * @param fieldName
+	 *            The name of the form field
+	 * @param fileName
+	 *            The name of the file
+	 * @param stream
+	 *            The stream with the file content
+	 * @param size
+	 *            The exact number of bytes that the stream will return
+	 */
+	default void addFilePart(String fieldName, String fileName, InputStream stream, long size)
+			throws IOException {
+		addFilePart(fieldName, fileName, stream);
+	}
+
+	/**
+	 * Add a file part read from a file. The file name and content type are taken from the file and
+	 * its size is known, so the file does not by itself prevent the request from being sent with a
+	 * fixed length. The file content is transferred using a {@link FileChannel} when done is
+	 * called.
+	 * <p>
+	 * The default implementation throws an {@link UnsupportedOperationException}.
+	 * 
+	 * @param fieldName
+	 *            The name of the form field
+	 * @param file
+	 *            The Path of the file to upload
+	 */
+	default void addFilePart(String fieldName, Path file) throws IOException {
+		throw new UnsupportedOperationException(
+				"addFilePart from a Path is not supported by: " + getClass().getName());
+	}
+
+	/**
+	 * Add a file part read from a FileChannel, from its current position to its end. The content
+	 * type is guessed from the file name. The channel is closed when its content has been sent.
+	 * <p>
+	 * The default implementation throws an {@link UnsupportedOperationException}.
+	 * 
+	 * @param fieldName
+	 *            The name of the form field
+	 * @param fileName
+	 *            The name of the file
+	 * @param channel
+	 *            The FileChannel to read the file content from
+	 */
+	default void addFilePart(String fieldName, String fileName, FileChannel channel)
+			throws IOException {
+		throw new UnsupportedOperationException(
+				"addFilePart from a FileChannel is not supported by: " + getClass().getName());
+	}
+
 	/**
 	 * Add the header to the connection
 	 * 
@@ -45,6 +113,9 @@ public interface HttpMultiPartUploader {
 
 	void addHeaderField(String name, String value);
 
+	/**
+	 * done sends the request, streaming all added form fields and file parts to the server.
+	 */
 	void done() throws IOException;
 
 }
\ No newline at end of file
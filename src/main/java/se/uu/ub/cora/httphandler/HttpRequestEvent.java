@@ -0,0 +1,75 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import java.net.URI;
+import java.net.http.HttpClient.Version;
+
+/**
+ * HttpRequestEvent describes one completed or failed request.
+ * 
+ * @param method
+ *            The request method
+ * @param uri
+ *            The URI the request was sent to
+ * @param statusCode
+ *            The response status code, or -1 if no response was received
+ * @param version
+ *            The http version used for the response, or null if no response was received
+ * @param timeToFirstByteNanos
+ *            Nanoseconds from sending the request until the response headers were received, or -1
+ *            if no response was received
+ * @param totalTimeNanos
+ *            Nanoseconds from sending the request until the response body was read or the request
+ *            failed
+ * @param requestBytes
+ *            The number of bytes in the request body, or -1 if unknown
+ * @param responseBytes
+ *            The number of bytes read from the response body
+ * @param concurrentRequests
+ *            The number of requests to the same authority that were in flight when the request
+ *            was sent, including the request itself. For HTTP/2 this is the number of streams
+ *            sharing the connection
+ * @param failure
+ *            The exception if the request failed, otherwise null
+ */
+public record HttpRequestEvent(String method, URI uri, int statusCode, Version version,
+		long timeToFirstByteNanos, long totalTimeNanos, long requestBytes, long responseBytes,
+		int concurrentRequests, Throwable failure) {
+
+	/**
+	 * failed returns true if no response was received for the request.
+	 * 
+	 * @return A boolean, true if the request failed
+	 */
+	public boolean failed() {
+		return failure != null;
+	}
+
+	/**
+	 * authority returns the host and port the request was sent to, as used when grouping metrics
+	 * per backend.
+	 * 
+	 * @return A String with the authority of the URI
+	 */
+	public String authority() {
+		return uri.getAuthority();
+	}
+}
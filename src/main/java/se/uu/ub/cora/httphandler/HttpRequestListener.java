@@ -0,0 +1,58 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+/**
+ * HttpRequestListener receives an {@link HttpRequestEvent} for every request sent by handlers
+ * factored by a {@link HttpHandlerFactoryImp} configured with
+ * {@link HttpHandlerFactorySettings#withRequestListener(HttpRequestListener)}.
+ * <p>
+ * Listeners are called from the threads doing the requests, possibly from many threads at the
+ * same time, so implementations must be thread safe and should return quickly.
+ * {@link InMemoryHttpMetrics} is a lock free implementation that collects metrics per backend and
+ * request method.
+ */
+@FunctionalInterface
+public interface HttpRequestListener {
+
+	/**
+	 * requestCompleted is called once for each request, when the response body has been read to
+	 * its end or closed, directly when the response has no body, or when the request failed. A
+	 * response body from a {@link HttpHandler} that is never read to its end nor closed is not
+	 * reported.
+	 * 
+	 * @param event
+	 *            A HttpRequestEvent describing the request
+	 */
+	void requestCompleted(HttpRequestEvent event);
+
+	/**
+	 * requestRetried is called when an attempt of a request has failed and the request is about
+	 * to be retried according to the {@link RetryPolicy} of the factory. Each attempt is also
+	 * reported to {@link #requestCompleted(HttpRequestEvent)}. The default implementation does
+	 * nothing.
+	 * 
+	 * @param event
+	 *            A HttpRetryEvent describing the failed attempt
+	 */
+	default void requestRetried(HttpRetryEvent event) {
+		// retries are not reported unless the listener wants them
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import java.io.IOException;
+
+/**
+ * HttpRequestRejectedException is thrown when a request is not sent because the circuit breaker
+ * for its host is open, or because the host already has the maximum number of concurrent requests.
+ * See {@link HttpHandlerFactorySettings#withCircuitBreaker(CircuitBreakerPolicy)} and
+ * {@link HttpHandlerFactorySettings#withMaxConcurrentRequestsPerHost(int)}.
+ */
+public class HttpRequestRejectedException extends IOException {
+	private static final long serialVersionUID = 1L;
+	private final String authority;
+
+	/**
+	 * Creates an HttpRequestRejectedException for a request to the specified authority.
+	 * 
+	 * @param message
+	 *            A String describing why the request was rejected
+	 * @param authority
+	 *            The host and port the request was to be sent to
+	 */
+	public HttpRequestRejectedException(String message, String authority) {
+		super(message);
+		this.authority = authority;
+	}
+
+	/**
+	 * getAuthority returns the host and port the rejected request was to be sent to.
+	 * 
+	 * @return A String with the authority
+	 */
+	public String getAuthority() {
+		return authority;
+	}
+}
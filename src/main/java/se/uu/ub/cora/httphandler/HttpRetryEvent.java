@@ -0,0 +1,53 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import java.net.URI;
+
+/**
+ * HttpRetryEvent describes one failed attempt of a request that is about to be retried.
+ * 
+ * @param method
+ *            The request method
+ * @param uri
+ *            The URI the request was sent to
+ * @param attempt
+ *            The number of the failed attempt, starting at 1
+ * @param statusCode
+ *            The status code of the response that is retried, or -1 if the attempt failed without
+ *            a response
+ * @param failure
+ *            The exception if the attempt failed without a response, otherwise null
+ * @param delayNanos
+ *            Nanoseconds the caller waits before the next attempt
+ */
+public record HttpRetryEvent(String method, URI uri, int attempt, int statusCode,
+		Throwable failure, long delayNanos) {
+
+	/**
+	 * authority returns the host and port the request was sent to, as used when grouping metrics
+	 * per backend.
+	 * 
+	 * @return A String with the authority of the URI
+	 */
+	public String authority() {
+		return uri.getAuthority();
+	}
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import java.net.http.HttpClient.Version;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import se.uu.ub.cora.httphandler.HttpMetricsSnapshot.Latency;
+import se.uu.ub.cora.httphandler.internal.LatencyHistogram;
+
+/**
+ * InMemoryHttpMetrics is a {@link HttpRequestListener} that collects request counts, status codes,
+ * http versions, byte counts, the largest number of concurrent requests, retries and latency
+ * histograms per backend (host and port) and request method. Recording is
+ * lock free, so it can be used by many threads doing requests at the same time. The collected
+ * metrics can be read at any time using {@link #snapshot()}, for instance to be exposed to a
+ * metrics scraper.
+ */
+public final class InMemoryHttpMetrics implements HttpRequestListener {
+	private final Map<MetricsKey, EndpointMetrics> metrics = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates an InMemoryHttpMetrics without any collected metrics.
+	 */
+	public InMemoryHttpMetrics() {
+		// metrics are added as requests are reported
+	}
+
+	@Override
+	public void requestCompleted(HttpRequestEvent event) {
+		getEndpointMetrics(event.authority(), event.method()).record(event);
+	}
+
+	@Override
+	public void requestRetried(HttpRetryEvent event) {
+		getEndpointMetrics(event.authority(), event.method()).retries.increment();
+	}
+
+	private EndpointMetrics getEndpointMetrics(String authority, String method) {
+		MetricsKey key = new MetricsKey(authority, method);
+		return metrics.computeIfAbsent(key, k -> new EndpointMetrics());
+	}
+
+	/**
+	 * snapshot returns the metrics collected so far, one snapshot per backend and request method.
+	 * 
+	 * @return A List of HttpMetricsSnapshot
+	 */
+	public List<HttpMetricsSnapshot> snapshot() {
+		List<HttpMetricsSnapshot> snapshots = new ArrayList<>();
+		metrics.forEach((key, endpointMetrics) -> snapshots.add(endpointMetrics.snapshot(key)));
+		return snapshots;
+	}
+
+	private record MetricsKey(String authority, String method) {
+	}
+
+	private static final class EndpointMetrics {
+		private final LongAdder requests = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		private final LongAdder retries = new LongAdder();
+		private final LongAdder requestBytes = new LongAdder();
+		private final LongAdder responseBytes = new LongAdder();
+		private final Map<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+		private final Map<Version, LongAdder> versions = new ConcurrentHashMap<>();
+		private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+		private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+		private final LatencyHistogram totalTime = new LatencyHistogram();
+
+		void record(HttpRequestEvent event) {
+			requests.increment();
+			if (event.failed()) {
+				failures.increment();
+			} else {
+				statusCodes.computeIfAbsent(event.statusCode(), k -> new LongAdder()).increment();
+				possiblyRecordVersion(event.version());
+				timeToFirstByte.record(event.timeToFirstByteNanos());
+			}
+			if (event.requestBytes() > 0) {
+				requestBytes.add(event.requestBytes());
+			}
+			responseBytes.add(event.responseBytes());
+			maxConcurrentRequests.accumulateAndGet(event.concurrentRequests(), Math::max);
+			totalTime.record(event.totalTimeNanos());
+		}
+
+		private void possiblyRecordVersion(Version version) {
+			if (version != null) {
+				versions.computeIfAbsent(version, k -> new LongAdder()).increment();
+			}
+		}
+
+		HttpMetricsSnapshot snapshot(MetricsKey key) {
+			Map<Integer, Long> statusCodeCounts = new TreeMap<>();
+			statusCodes.forEach((code, count) -> statusCodeCounts.put(code, count.sum()));
+			Map<Version, Long> versionCounts = new EnumMap<>(Version.class);
+			versions.forEach((version, count) -> versionCounts.put(version, count.sum()));
+			return new HttpMetricsSnapshot(key.authority(), key.method(), requests.sum(),
+					failures.sum(), retries.sum(), statusCodeCounts, versionCounts, requestBytes.sum(),
+					responseBytes.sum(), maxConcurrentRequests.get(), toLatency(timeToFirstByte),
+					toLatency(totalTime));
+		}
+
+		private Latency toLatency(LatencyHistogram histogram) {
+			return new Latency(histogram.count(), histogram.percentile(0.5),
+					histogram.percentile(0.9), histogram.percentile(0.99), histogram.max());
+		}
+	}
+}
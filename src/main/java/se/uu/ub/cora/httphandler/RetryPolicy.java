@@ -0,0 +1,141 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import java.time.Duration;
+
+/**
+ * RetryPolicy describes how requests from {@link HttpHandler}s are retried when they fail in a way
+ * that is likely to be temporary. Policies are immutable, {@link #defaults()} returns the default
+ * policy and each with method returns a new policy with one setting changed:
+ * 
+ * <pre>
+ * RetryPolicy retryPolicy = RetryPolicy.defaults().withMaxAttempts(5);
+ * HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults()
+ * 		.withRetryPolicy(retryPolicy);
+ * </pre>
+ * <p>
+ * A request is retried if:
+ * <ul>
+ * <li>it could not connect to the server, as nothing has then been sent</li>
+ * <li>it failed with another I/O error than a timeout waiting for the response, or was answered
+ * with 503 Service Unavailable or 429 Too Many Requests, and its method is idempotent (GET, HEAD,
+ * PUT, DELETE or OPTIONS) and its body can be sent again, that is it has no body, a body of known
+ * length or a body from a stream supplier, not a stream</li>
+ * </ul>
+ * <p>
+ * Between attempts the calling thread waits an exponentially growing backoff, starting at the
+ * initial backoff and doubled for every attempt up to the max backoff, of which a random part
+ * between a half and the whole is used, so that callers retrying at the same time spread out. A
+ * Retry-After header in a 503 or 429 response is used instead, if it is not longer than the max
+ * backoff, in which case the response is returned without retrying.
+ * <p>
+ * All attempts share the request timeout, each retry is only given the time that is left of it,
+ * and a request is not retried if the wait before the retry is not shorter than the time left.
+ */
+public final class RetryPolicy {
+	private int maxAttempts = 3;
+	private Duration initialBackoff = Duration.ofMillis(100);
+	private Duration maxBackoff = Duration.ofSeconds(10);
+
+	private RetryPolicy() {
+	}
+
+	private RetryPolicy(RetryPolicy policy) {
+		maxAttempts = policy.maxAttempts;
+		initialBackoff = policy.initialBackoff;
+		maxBackoff = policy.maxBackoff;
+	}
+
+	/**
+	 * defaults returns a policy with at most 3 attempts, an initial backoff of 100 milliseconds
+	 * and a max backoff of 10 seconds.
+	 * 
+	 * @return A RetryPolicy with default settings
+	 */
+	public static RetryPolicy defaults() {
+		return new RetryPolicy();
+	}
+
+	/**
+	 * withMaxAttempts returns a new policy with the specified maximum number of attempts,
+	 * including the first.
+	 * 
+	 * @param attempts
+	 *            The maximum number of attempts, must be one or larger
+	 * @return A new RetryPolicy with the max attempts
+	 */
+	public RetryPolicy withMaxAttempts(int attempts) {
+		if (attempts < 1) {
+			throw new IllegalArgumentException("Max attempts must be at least 1: " + attempts);
+		}
+		RetryPolicy policy = new RetryPolicy(this);
+		policy.maxAttempts = attempts;
+		return policy;
+	}
+
+	/**
+	 * withBackoff returns a new policy with the specified initial and max backoff.
+	 * 
+	 * @param initial
+	 *            The backoff before the second attempt, must not be negative
+	 * @param max
+	 *            The longest backoff between two attempts, must not be shorter than initial
+	 * @return A new RetryPolicy with the backoff
+	 */
+	public RetryPolicy withBackoff(Duration initial, Duration max) {
+		if (initial.isNegative() || max.compareTo(initial) < 0) {
+			throw new IllegalArgumentException(
+					"Backoff must not be negative and initial not longer than max: " + initial
+							+ ", " + max);
+		}
+		RetryPolicy policy = new RetryPolicy(this);
+		policy.initialBackoff = initial;
+		policy.maxBackoff = max;
+		return policy;
+	}
+
+	/**
+	 * getMaxAttempts returns the maximum number of attempts, including the first.
+	 * 
+	 * @return An int with the max attempts
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * getInitialBackoff returns the backoff before the second attempt.
+	 * 
+	 * @return A Duration with the initial backoff
+	 */
+	public Duration getInitialBackoff() {
+		return initialBackoff;
+	}
+
+	/**
+	 * getMaxBackoff returns the longest backoff between two attempts.
+	 * 
+	 * @return A Duration with the max backoff
+	 */
+	public Duration getMaxBackoff() {
+		return maxBackoff;
+	}
+}
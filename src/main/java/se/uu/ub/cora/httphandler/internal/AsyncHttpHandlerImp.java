@@ -0,0 +1,118 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpRequest.Builder;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+
+import se.uu.ub.cora.httphandler.AsyncHttpHandler;
+import se.uu.ub.cora.httphandler.HttpHandlerResponse;
+
+public final class AsyncHttpHandlerImp implements AsyncHttpHandler {
+
+	private Builder builder;
+	private AsyncRequestSender asyncRequestSender;
+	private String requestMethod = "GET";
+	private BodyPublisher bodyPublisher = BodyPublishers.noBody();
+	private CompletableFuture<HttpHandlerResponse> futureResponse;
+
+	private AsyncHttpHandlerImp(Builder builder, AsyncRequestSender asyncRequestSender) {
+		this.builder = builder;
+		this.asyncRequestSender = asyncRequestSender;
+	}
+
+	public static AsyncHttpHandler usingBuilderAndHttpClient(Builder builder,
+			HttpClient httpClient) {
+		return new AsyncHttpHandlerImp(builder,
+				new HttpClientAsyncSender(httpClient, null, HttpClientAsyncSender.UNLIMITED));
+	}
+
+	public static AsyncHttpHandler usingBuilderAndAsyncRequestSender(Builder builder,
+			AsyncRequestSender asyncRequestSender) {
+		return new AsyncHttpHandlerImp(builder, asyncRequestSender);
+	}
+
+	@Override
+	public void setRequestMethod(String requestMethod) {
+		if (!HttpHandlerImp.REQUEST_METHODS.contains(requestMethod)) {
+			throw new RuntimeException("Not an ok requestMethod: " + requestMethod);
+		}
+		this.requestMethod = requestMethod;
+	}
+
+	@Override
+	public void setRequestProperty(String key, String value) {
+		if (null != key && null != value) {
+			builder.setHeader(key, value);
+		}
+	}
+
+	@Override
+	public void setBasicAuthorization(String username, String password) {
+		String encoded = Base64.getEncoder()
+				.encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+		setRequestProperty("Authorization", "Basic " + encoded);
+	}
+
+	@Override
+	public void setOutput(String outputString) {
+		bodyPublisher = BodyPublishers.ofString(outputString);
+	}
+
+	@Override
+	public void setStreamOutput(InputStream stream) {
+		bodyPublisher = BodyPublishers.ofInputStream(new SingleUseStreamSupplier(stream));
+	}
+
+	@Override
+	public synchronized CompletableFuture<HttpHandlerResponse> sendAsync() {
+		if (futureResponse == null) {
+			futureResponse = buildRequestAndSendAsync();
+		}
+		return futureResponse;
+	}
+
+	private CompletableFuture<HttpHandlerResponse> buildRequestAndSendAsync() {
+		HttpRequest httpRequest = builder.method(requestMethod, bodyPublisher).build();
+		return asyncRequestSender.sendAsync(httpRequest)
+				.thenApply(AsyncHttpHandlerImp::toHttpHandlerResponse);
+	}
+
+	static HttpHandlerResponse toHttpHandlerResponse(HttpResponse<String> response) {
+		return new HttpHandlerResponse(response.statusCode(),
+				ResponseHeaders.toCommaSeparatedMap(response.headers()), response.body());
+	}
+
+	public Builder onlyForTestGetBuilder() {
+		return builder;
+	}
+
+	public AsyncRequestSender onlyForTestGetAsyncRequestSender() {
+		return asyncRequestSender;
+	}
+}
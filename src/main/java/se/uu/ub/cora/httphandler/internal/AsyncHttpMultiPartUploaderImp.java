@@ -0,0 +1,107 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.Builder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+import se.uu.ub.cora.httphandler.AsyncHttpMultiPartUploader;
+import se.uu.ub.cora.httphandler.HttpHandlerResponse;
+
+public final class AsyncHttpMultiPartUploaderImp implements AsyncHttpMultiPartUploader {
+	private static final long UNKNOWN_LENGTH = -1;
+
+	private Builder builder;
+	private AsyncRequestSender asyncRequestSender;
+	private MultipartRequest multipartRequest;
+	private CompletableFuture<HttpHandlerResponse> futureResponse;
+
+	private AsyncHttpMultiPartUploaderImp(Builder builder, AsyncRequestSender asyncRequestSender) {
+		this.builder = builder;
+		this.asyncRequestSender = asyncRequestSender;
+		multipartRequest = new MultipartRequest(builder);
+	}
+
+	public static AsyncHttpMultiPartUploader usingBuilderAndHttpClient(Builder builder,
+			HttpClient httpClient) {
+		return new AsyncHttpMultiPartUploaderImp(builder,
+				new HttpClientAsyncSender(httpClient, null, HttpClientAsyncSender.UNLIMITED));
+	}
+
+	public static AsyncHttpMultiPartUploader usingBuilderAndAsyncRequestSender(Builder builder,
+			AsyncRequestSender asyncRequestSender) {
+		return new AsyncHttpMultiPartUploaderImp(builder, asyncRequestSender);
+	}
+
+	@Override
+	public void addHeaderField(String name, String value) {
+		multipartRequest.addHeaderField(name, value);
+	}
+
+	@Override
+	public void addFormField(String name, String value) {
+		multipartRequest.addFormField(name, value);
+	}
+
+	@Override
+	public void addFilePart(String fieldName, String fileName, InputStream stream) {
+		multipartRequest.addFilePart(fieldName, fileName, stream, UNKNOWN_LENGTH);
+	}
+
+	@Override
+	public void addFilePart(String fieldName, String fileName, InputStream stream, long size) {
+		multipartRequest.addFilePart(fieldName, fileName, stream, size);
+	}
+
+	@Override
+	public void addFilePart(String fieldName, Path file) throws IOException {
+		multipartRequest.addFilePart(fieldName, file);
+	}
+
+	@Override
+	public void addFilePart(String fieldName, String fileName, FileChannel channel)
+			throws IOException {
+		multipartRequest.addFilePart(fieldName, fileName, channel);
+	}
+
+	@Override
+	public synchronized CompletableFuture<HttpHandlerResponse> sendAsync() {
+		if (futureResponse == null) {
+			HttpRequest httpRequest = multipartRequest.createRequest();
+			futureResponse = asyncRequestSender.sendAsync(httpRequest)
+					.thenApply(AsyncHttpHandlerImp::toHttpHandlerResponse);
+		}
+		return futureResponse;
+	}
+
+	public Builder onlyForTestGetBuilder() {
+		return builder;
+	}
+
+	public AsyncRequestSender onlyForTestGetAsyncRequestSender() {
+		return asyncRequestSender;
+	}
+}
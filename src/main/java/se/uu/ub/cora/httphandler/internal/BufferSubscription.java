@@ -0,0 +1,118 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BufferSubscription publishes the buffers of a {@link BufferSource} to a subscriber, one buffer
+ * for each requested item, and completes the subscription when the source is exhausted. Buffers
+ * are only taken from the source when they have been requested, and never from more than one
+ * thread at a time, even if the subscriber requests more items from within onNext.
+ */
+final class BufferSubscription implements Subscription {
+	private final Subscriber<? super ByteBuffer> subscriber;
+	private final BufferSource source;
+	private final AtomicLong demand = new AtomicLong();
+	private final AtomicInteger drainRequests = new AtomicInteger();
+	private volatile boolean done = false;
+
+	BufferSubscription(Subscriber<? super ByteBuffer> subscriber, BufferSource source) {
+		this.subscriber = subscriber;
+		this.source = source;
+	}
+
+	@Override
+	public void request(long n) {
+		if (n <= 0) {
+			cancel();
+			subscriber.onError(
+					new IllegalArgumentException("Requested items must be positive: " + n));
+			return;
+		}
+		demand.getAndAccumulate(n, BufferSubscription::addCapped);
+		drain();
+	}
+
+	private static long addCapped(long current, long added) {
+		long sum = current + added;
+		return sum < 0 ? Long.MAX_VALUE : sum;
+	}
+
+	private void drain() {
+		if (drainRequests.getAndIncrement() != 0) {
+			return;
+		}
+		do {
+			publishWhileDemanded();
+		} while (drainRequests.decrementAndGet() != 0);
+	}
+
+	private void publishWhileDemanded() {
+		try {
+			while (!done && !source.isExhausted() && demand.get() > 0) {
+				demand.decrementAndGet();
+				subscriber.onNext(source.next());
+			}
+			if (!done && source.isExhausted()) {
+				finish();
+				subscriber.onComplete();
+			}
+		} catch (IOException e) {
+			if (!done) {
+				finish();
+				subscriber.onError(e);
+			}
+		}
+	}
+
+	private void finish() {
+		done = true;
+		source.close();
+	}
+
+	@Override
+	public void cancel() {
+		if (!done) {
+			finish();
+		}
+	}
+
+	/**
+	 * BufferSource is the source of the buffers published by a {@link BufferSubscription}.
+	 */
+	interface BufferSource {
+		boolean isExhausted();
+
+		ByteBuffer next() throws IOException;
+
+		/**
+		 * close is called once when the subscription is completed, failed or cancelled.
+		 */
+		default void close() {
+			// nothing to close
+		}
+	}
+}
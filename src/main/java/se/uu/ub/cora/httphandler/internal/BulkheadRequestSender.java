@@ -0,0 +1,91 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import se.uu.ub.cora.httphandler.HttpRequestRejectedException;
+
+/**
+ * BulkheadRequestSender limits the number of threads waiting for a response from each authority
+ * (host and port). A request to an authority that already has the maximum number of requests
+ * waiting is rejected at once with a {@link HttpRequestRejectedException}, so that a slow backend
+ * can not hold all threads of the service.
+ * <p>
+ * A request counts from when it is sent until the wrapped sender returns, as the response headers
+ * have then been received.
+ */
+public final class BulkheadRequestSender implements RequestSender {
+	private final RequestSender requestSender;
+	private final int maxConcurrentRequests;
+	private final Map<String, AtomicInteger> concurrentRequests = new ConcurrentHashMap<>();
+
+	public BulkheadRequestSender(RequestSender requestSender, int maxConcurrentRequests) {
+		this.requestSender = requestSender;
+		this.maxConcurrentRequests = maxConcurrentRequests;
+	}
+
+	@Override
+	public HttpResponse<InputStream> send(HttpRequest request)
+			throws IOException, InterruptedException {
+		String authority = String.valueOf(request.uri().getAuthority());
+		AtomicInteger concurrent = concurrentRequests.computeIfAbsent(authority,
+				k -> new AtomicInteger());
+		if (!tryToAcquire(concurrent)) {
+			throw new HttpRequestRejectedException("Too many concurrent requests to: " + authority
+					+ ", max is " + maxConcurrentRequests, authority);
+		}
+		try {
+			return requestSender.send(request);
+		} finally {
+			concurrent.decrementAndGet();
+		}
+	}
+
+	private boolean tryToAcquire(AtomicInteger concurrent) {
+		int current = concurrent.get();
+		while (current < maxConcurrentRequests) {
+			if (concurrent.compareAndSet(current, current + 1)) {
+				return true;
+			}
+			current = concurrent.get();
+		}
+		return false;
+	}
+
+	int onlyForTestGetConcurrentRequests(String authority) {
+		AtomicInteger concurrent = concurrentRequests.get(authority);
+		return concurrent == null ? 0 : concurrent.get();
+	}
+
+	public RequestSender onlyForTestGetRequestSender() {
+		return requestSender;
+	}
+
+	public int onlyForTestGetMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Flow.Subscriber;
+
+/**
+ * ByteBufferBodyPublisher publishes the remaining bytes of a number of buffers as a request body
+ * of known length, handing read only views of the buffers to the client instead of copying their
+ * content. The positions and limits of the buffers are read when the publisher is created, and
+ * every subscription publishes the same bytes, so the body can be sent again.
+ * <p>
+ * The content of the buffers must not be changed until the request has been sent.
+ */
+final class ByteBufferBodyPublisher implements BodyPublisher {
+	private final ByteBuffer[] buffers;
+	private final long contentLength;
+
+	ByteBufferBodyPublisher(ByteBuffer... buffers) {
+		this.buffers = new ByteBuffer[buffers.length];
+		long length = 0;
+		for (int i = 0; i < buffers.length; i++) {
+			this.buffers[i] = buffers[i].asReadOnlyBuffer();
+			length += buffers[i].remaining();
+		}
+		contentLength = length;
+	}
+
+	InputStream openStream() {
+		return new SequenceInputStream(Collections.enumeration(Arrays.stream(buffers)
+				.map(buffer -> new ByteBufferInputStream(buffer.duplicate())).toList()));
+	}
+
+	@Override
+	public long contentLength() {
+		return contentLength;
+	}
+
+	@Override
+	public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+		subscriber.onSubscribe(new BufferSubscription(subscriber, new BuffersSource()));
+	}
+
+	private final class BuffersSource implements BufferSubscription.BufferSource {
+		private int next = 0;
+
+		@Override
+		public boolean isExhausted() {
+			return next == buffers.length;
+		}
+
+		@Override
+		public ByteBuffer next() {
+			return buffers[next++].duplicate();
+		}
+	}
+}
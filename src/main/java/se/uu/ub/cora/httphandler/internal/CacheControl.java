@@ -0,0 +1,58 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.net.http.HttpHeaders;
+import java.util.Locale;
+
+/**
+ * CacheControl holds the Cache-Control directives of a request or response that are used by
+ * {@link CachingRequestSender}. Unknown directives are ignored.
+ */
+record CacheControl(boolean noStore, boolean noCache, long maxAgeSeconds) {
+	static final long NO_MAX_AGE = -1;
+
+	static CacheControl parse(HttpHeaders headers) {
+		boolean noStore = false;
+		boolean noCache = false;
+		long maxAge = NO_MAX_AGE;
+		for (String value : headers.allValues("Cache-Control")) {
+			for (String directive : value.split(",")) {
+				String trimmed = directive.trim().toLowerCase(Locale.ROOT);
+				if ("no-store".equals(trimmed)) {
+					noStore = true;
+				} else if (trimmed.startsWith("no-cache")) {
+					noCache = true;
+				} else if (trimmed.startsWith("max-age=")) {
+					maxAge = parseSeconds(trimmed.substring("max-age=".length()));
+				}
+			}
+		}
+		return new CacheControl(noStore, noCache, maxAge);
+	}
+
+	private static long parseSeconds(String seconds) {
+		try {
+			return Math.max(0, Long.parseLong(seconds.replace("\"", "")));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+}
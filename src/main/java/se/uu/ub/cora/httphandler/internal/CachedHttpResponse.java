@@ -0,0 +1,72 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Optional;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * CachedHttpResponse is a response to a request, served from a {@link CachedResponse}.
+ */
+record CachedHttpResponse(HttpRequest request, CachedResponse cachedResponse)
+		implements HttpResponse<InputStream> {
+
+	@Override
+	public int statusCode() {
+		return cachedResponse.statusCode();
+	}
+
+	@Override
+	public HttpHeaders headers() {
+		return cachedResponse.headers();
+	}
+
+	@Override
+	public InputStream body() {
+		return new ByteBufferInputStream(cachedResponse.body().duplicate());
+	}
+
+	@Override
+	public Optional<HttpResponse<InputStream>> previousResponse() {
+		return Optional.empty();
+	}
+
+	@Override
+	public Optional<SSLSession> sslSession() {
+		return Optional.empty();
+	}
+
+	@Override
+	public URI uri() {
+		return request.uri();
+	}
+
+	@Override
+	public Version version() {
+		return cachedResponse.version();
+	}
+}
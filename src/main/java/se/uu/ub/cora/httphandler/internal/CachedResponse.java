@@ -0,0 +1,55 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpHeaders;
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+/**
+ * CachedResponse is a response whose body has been read into memory, stored in a
+ * {@link ResponseCache} with the time until which it can be used without being revalidated, or
+ * shared between coalesced requests. The body is a read only buffer, on the heap or in direct
+ * memory, that is shared by all responses served from it.
+ */
+record CachedResponse(int statusCode, HttpHeaders headers, Version version, ByteBuffer body,
+		long freshUntilNanos) {
+
+	int size() {
+		return body.capacity();
+	}
+
+	boolean isFresh(long nowNanos) {
+		return nowNanos - freshUntilNanos < 0;
+	}
+
+	Optional<String> etag() {
+		return headers.firstValue("ETag");
+	}
+
+	Optional<String> lastModified() {
+		return headers.firstValue("Last-Modified");
+	}
+
+	CachedResponse refreshed(HttpHeaders updatedHeaders, long freshUntil) {
+		return new CachedResponse(statusCode, updatedHeaders, version, body, freshUntil);
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CachingRequestSender caches responses to GET requests in a {@link ResponseCache}, following
+ * the Cache-Control, ETag and Last-Modified headers of the responses.
+ * <p>
+ * A 200 response is stored if it has a validator (ETag or Last-Modified) or a max-age, and does
+ * not have Cache-Control no-store. While a stored response is fresh according to its max-age it
+ * is served without any request being sent. When it is no longer fresh, or has Cache-Control
+ * no-cache, the request is sent with If-None-Match and If-Modified-Since headers, and a 304 Not
+ * Modified response is answered with the stored response, so that only headers are transferred.
+ * The headers of the 304 response replace those with the same name in the stored response, as in
+ * RFC 9111 section 4.3.4, except the headers that describe the transfer of the stored body, and
+ * the freshness of the stored response is calculated again from the updated headers.
+ * <p>
+ * Requests where the caller has set Cache-Control no-cache or max-age=0 are always revalidated,
+ * even if the stored response is fresh. The Cache-Control of requests is not part of the key
+ * responses are stored under, so such a request revalidates the response stored for requests
+ * without it. Requests where the caller has set Cache-Control no-store, or a conditional header,
+ * bypass the cache. Requests with other methods than GET and HEAD remove stored responses for their URI, as
+ * they are expected to change the resource.
+ * <p>
+ * The body of a response that is stored is read before the response is returned, and must be read
+ * within the timeout of the request. A body larger than the cache can hold is returned to be read
+ * by the caller without that limit, as is any response that is not stored.
+ * <p>
+ * If an off heap size is set, binary responses, those whose Content-Type is not text, xml or json,
+ * are stored in a separate off heap cache of that size, and text responses in the heap cache.
+ */
+public final class CachingRequestSender implements RequestSender {
+	public static final long NO_OFF_HEAP_CACHE = -1;
+	private static final int STATUS_OK = 200;
+	private static final int STATUS_NOT_MODIFIED = 304;
+	private static final String CACHE_CONTROL = "Cache-Control";
+	private static final String AGE = "Age";
+	private static final Set<String> NOT_UPDATED_HEADERS = createNotUpdatedHeaders();
+	private static final String IF_NONE_MATCH = "If-None-Match";
+	private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
+	private final RequestSender requestSender;
+	private final ResponseCache cache;
+	private final ResponseCache offHeapCache;
+
+	private static Set<String> createNotUpdatedHeaders() {
+		Set<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		names.addAll(List.of("Content-Length", "Content-Encoding", "Content-Range",
+				"Transfer-Encoding", "Connection"));
+		return names;
+	}
+
+	public CachingRequestSender(RequestSender requestSender, long maxBytes) {
+		this(requestSender, maxBytes, NO_OFF_HEAP_CACHE);
+	}
+
+	public CachingRequestSender(RequestSender requestSender, long maxBytes, long offHeapMaxBytes) {
+		this.requestSender = requestSender;
+		cache = new ResponseCache(maxBytes, false);
+		offHeapCache = possiblyCreateOffHeapCache(offHeapMaxBytes);
+	}
+
+	private ResponseCache possiblyCreateOffHeapCache(long offHeapMaxBytes) {
+		if (offHeapMaxBytes == NO_OFF_HEAP_CACHE) {
+			return null;
+		}
+		return new ResponseCache(offHeapMaxBytes, true);
+	}
+
+	@Override
+	public HttpResponse<InputStream> send(HttpRequest request)
+			throws IOException, InterruptedException {
+		if (!"GET".equals(request.method())) {
+			return sendAndPossiblyInvalidate(request);
+		}
+		if (bypassesCache(request)) {
+			return requestSender.send(request);
+		}
+		return sendUsingCache(request);
+	}
+
+	private HttpResponse<InputStream> sendAndPossiblyInvalidate(HttpRequest request)
+			throws IOException, InterruptedException {
+		if (!"HEAD".equals(request.method())) {
+			cache.removeAllFor(request.uri());
+			if (offHeapCache != null) {
+				offHeapCache.removeAllFor(request.uri());
+			}
+		}
+		return requestSender.send(request);
+	}
+
+	private boolean bypassesCache(HttpRequest request) {
+		HttpHeaders headers = request.headers();
+		return CacheControl.parse(headers).noStore()
+				|| headers.firstValue(IF_NONE_MATCH).isPresent()
+				|| headers.firstValue(IF_MODIFIED_SINCE).isPresent();
+	}
+
+	private HttpResponse<InputStream> sendUsingCache(HttpRequest request)
+			throws IOException, InterruptedException {
+		RequestDeadline deadline = RequestDeadline.of(request);
+		RequestKey key = RequestKey.ignoringHeader(request, CACHE_CONTROL);
+		CachedResponse cached = getFromCaches(key);
+		if (cached == null) {
+			return possiblyStore(key, request, deadline, requestSender.send(request));
+		}
+		if (cached.isFresh(System.nanoTime()) && !requiresRevalidation(request)) {
+			return new CachedHttpResponse(request, cached);
+		}
+		return revalidate(key, request, deadline, cached);
+	}
+
+	private boolean requiresRevalidation(HttpRequest request) {
+		CacheControl cacheControl = CacheControl.parse(request.headers());
+		return cacheControl.noCache() || cacheControl.maxAgeSeconds() == 0;
+	}
+
+	private CachedResponse getFromCaches(RequestKey key) {
+		CachedResponse cached = cache.get(key);
+		if (cached == null && offHeapCache != null) {
+			return offHeapCache.get(key);
+		}
+		return cached;
+	}
+
+	private void removeFromCaches(RequestKey key) {
+		cache.remove(key);
+		if (offHeapCache != null) {
+			offHeapCache.remove(key);
+		}
+	}
+
+	private HttpResponse<InputStream> revalidate(RequestKey key, HttpRequest request,
+			RequestDeadline deadline, CachedResponse cached)
+			throws IOException, InterruptedException {
+		HttpResponse<InputStream> response = requestSender
+				.send(createConditionalRequest(request, cached));
+		if (response.statusCode() == STATUS_NOT_MODIFIED) {
+			response.body().close();
+			HttpHeaders updatedHeaders = updateHeaders(cached.headers(), response.headers());
+			CachedResponse refreshed = cached.refreshed(updatedHeaders,
+					calculateFreshUntil(updatedHeaders));
+			getCacheFor(cached.headers()).put(key, refreshed);
+			return new CachedHttpResponse(request, refreshed);
+		}
+		removeFromCaches(key);
+		return possiblyStore(key, request, deadline, response);
+	}
+
+	private HttpHeaders updateHeaders(HttpHeaders stored, HttpHeaders notModified) {
+		Map<String, List<String>> updated = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+		updated.putAll(stored.map());
+		updated.remove(AGE);
+		notModified.map().forEach((name, values) -> {
+			if (!NOT_UPDATED_HEADERS.contains(name)) {
+				updated.put(name, values);
+			}
+		});
+		return HttpHeaders.of(updated, (name, value) -> true);
+	}
+
+	private HttpRequest createConditionalRequest(HttpRequest request, CachedResponse cached) {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(request, (name, value) -> true);
+		cached.etag().ifPresent(etag -> builder.setHeader(IF_NONE_MATCH, etag));
+		cached.lastModified()
+				.ifPresent(lastModified -> builder.setHeader(IF_MODIFIED_SINCE, lastModified));
+		return builder.build();
+	}
+
+	private HttpResponse<InputStream> possiblyStore(RequestKey key, HttpRequest request,
+			RequestDeadline deadline, HttpResponse<InputStream> response) throws IOException {
+		if (!isStorable(response)) {
+			return response;
+		}
+		ResponseCache storeIn = getCacheFor(response.headers());
+		long maxEntrySize = storeIn.getMaxEntrySize();
+		if (response.headers().firstValueAsLong("Content-Length").orElse(0) > maxEntrySize) {
+			return response;
+		}
+		InputStream body = deadline.limit(response);
+		byte[] bytes = body.readNBytes((int) Math.min(maxEntrySize + 1, Integer.MAX_VALUE));
+		if (bytes.length > maxEntrySize) {
+			return new ResponseWithBody(response, new SequenceInputStream(
+					new ByteArrayInputStream(bytes), removeDeadline(body)));
+		}
+		body.close();
+		CachedResponse cached = new CachedResponse(response.statusCode(), response.headers(),
+				response.version(), storeIn.createBody(bytes),
+				calculateFreshUntil(response.headers()));
+		storeIn.put(key, cached);
+		return new CachedHttpResponse(request, cached);
+	}
+
+	private InputStream removeDeadline(InputStream body) {
+		if (body instanceof DeadlineInputStream deadlineBody) {
+			return deadlineBody.withoutDeadline();
+		}
+		return body;
+	}
+
+	private ResponseCache getCacheFor(HttpHeaders headers) {
+		if (offHeapCache == null || isText(headers)) {
+			return cache;
+		}
+		return offHeapCache;
+	}
+
+	private boolean isText(HttpHeaders headers) {
+		String contentType = headers.firstValue("Content-Type").orElse("")
+				.toLowerCase(Locale.ROOT);
+		return contentType.startsWith("text/") || contentType.contains("xml")
+				|| contentType.contains("json");
+	}
+
+	private boolean isStorable(HttpResponse<InputStream> response) {
+		HttpHeaders headers = response.headers();
+		CacheControl cacheControl = CacheControl.parse(headers);
+		return response.statusCode() == STATUS_OK && !cacheControl.noStore()
+				&& (cacheControl.maxAgeSeconds() > 0 || hasValidator(headers));
+	}
+
+	private boolean hasValidator(HttpHeaders headers) {
+		return headers.firstValue("ETag").isPresent()
+				|| headers.firstValue("Last-Modified").isPresent();
+	}
+
+	private long calculateFreshUntil(HttpHeaders headers) {
+		long now = System.nanoTime();
+		CacheControl cacheControl = CacheControl.parse(headers);
+		if (cacheControl.noCache() || cacheControl.maxAgeSeconds() == CacheControl.NO_MAX_AGE) {
+			return now;
+		}
+		long age = headers.firstValueAsLong(AGE).orElse(0);
+		long freshSeconds = Math.max(0, cacheControl.maxAgeSeconds() - age);
+		return now + TimeUnit.SECONDS.toNanos(freshSeconds);
+	}
+
+	public RequestSender onlyForTestGetRequestSender() {
+		return requestSender;
+	}
+
+	ResponseCache onlyForTestGetCache() {
+		return cache;
+	}
+
+	ResponseCache onlyForTestGetOffHeapCache() {
+		return offHeapCache;
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import se.uu.ub.cora.httphandler.CircuitBreakerPolicy;
+
+/**
+ * CircuitBreaker keeps the state of the circuit for one host, as described in
+ * {@link CircuitBreakerPolicy}. It uses no locks, the state is replaced atomically on transitions
+ * and a closed circuit records outcomes in a ring of the latest requests, so that a successful
+ * request only costs a few atomic updates.
+ * <p>
+ * Outcomes recorded concurrently with a transition are counted in the window of the earlier state,
+ * which is then discarded. A half open circuit keeps the time its probe was let through, so that
+ * a new probe can be let through if the probe has not finished within the open duration. A probe
+ * that finishes after a later probe has closed or opened the circuit again is ignored.
+ */
+final class CircuitBreaker {
+	enum Permit {
+		REJECTED, GRANTED, PROBE
+	}
+
+	private enum Kind {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private record State(Kind kind, Window window, long changedAtNanos) {
+	}
+
+	private final CircuitBreakerPolicy policy;
+	private final LongSupplier nanoClock;
+	private final AtomicReference<State> state;
+
+	CircuitBreaker(CircuitBreakerPolicy policy, LongSupplier nanoClock) {
+		this.policy = policy;
+		this.nanoClock = nanoClock;
+		state = new AtomicReference<>(createClosed());
+	}
+
+	private State createClosed() {
+		return new State(Kind.CLOSED, new Window(policy), 0);
+	}
+
+	private State createOpen(long openedAtNanos) {
+		return new State(Kind.OPEN, null, openedAtNanos);
+	}
+
+	Permit acquirePermit() {
+		State current = state.get();
+		if (current.kind == Kind.CLOSED) {
+			return Permit.GRANTED;
+		}
+		long now = nanoClock.getAsLong();
+		if (openDurationHasPassed(current, now)
+				&& state.compareAndSet(current, new State(Kind.HALF_OPEN, null, now))) {
+			return Permit.PROBE;
+		}
+		return Permit.REJECTED;
+	}
+
+	private boolean openDurationHasPassed(State openOrProbing, long now) {
+		return now - openOrProbing.changedAtNanos >= policy.getOpenDuration().toNanos();
+	}
+
+	void recordOutcome(Permit permit, boolean failed, long durationNanos) {
+		boolean slow = durationNanos > policy.getSlowCallDuration().toNanos();
+		State current = state.get();
+		if (permit == Permit.PROBE) {
+			replaceIfProbing(current,
+					failed || slow ? createOpen(nanoClock.getAsLong()) : createClosed());
+			return;
+		}
+		if (current.kind == Kind.CLOSED && current.window.recordAndCheckIfTripped(failed, slow)) {
+			state.compareAndSet(current, createOpen(nanoClock.getAsLong()));
+		}
+	}
+
+	private void replaceIfProbing(State current, State next) {
+		if (current.kind == Kind.HALF_OPEN) {
+			state.compareAndSet(current, next);
+		}
+	}
+
+	void cancel(Permit permit) {
+		if (permit == Permit.PROBE) {
+			long openedLongEnoughAgo = nanoClock.getAsLong()
+					- policy.getOpenDuration().toNanos();
+			replaceIfProbing(state.get(), createOpen(openedLongEnoughAgo));
+		}
+	}
+
+	boolean isOpen() {
+		return state.get().kind != Kind.CLOSED;
+	}
+
+	private static final class Window {
+		private static final int RECORDED = 1;
+		private static final int FAILED = 2;
+		private static final int SLOW = 4;
+		private final AtomicIntegerArray outcomes;
+		private final AtomicLong recorded = new AtomicLong();
+		private final AtomicInteger failures = new AtomicInteger();
+		private final AtomicInteger slowCalls = new AtomicInteger();
+		private final int size;
+		private final long failuresToTrip;
+		private final long slowCallsToTrip;
+
+		Window(CircuitBreakerPolicy policy) {
+			size = policy.getWindowSize();
+			outcomes = new AtomicIntegerArray(size);
+			failuresToTrip = ceilPercentOfSize(policy.getFailureRateThreshold());
+			slowCallsToTrip = ceilPercentOfSize(policy.getSlowCallRateThreshold());
+		}
+
+		private long ceilPercentOfSize(int percent) {
+			return ((long) size * percent + 99) / 100;
+		}
+
+		boolean recordAndCheckIfTripped(boolean failed, boolean slow) {
+			int outcome = RECORDED | (failed ? FAILED : 0) | (slow ? SLOW : 0);
+			long position = recorded.getAndIncrement();
+			int replaced = outcomes.getAndSet((int) (position % size), outcome);
+			updateCount(failures, outcome, replaced, FAILED);
+			updateCount(slowCalls, outcome, replaced, SLOW);
+			return position + 1 >= size
+					&& (failures.get() >= failuresToTrip || slowCalls.get() >= slowCallsToTrip);
+		}
+
+		private void updateCount(AtomicInteger count, int outcome, int replaced, int flag) {
+			boolean added = (outcome & flag) != 0;
+			boolean removed = (replaced & flag) != 0;
+			if (added && !removed) {
+				count.incrementAndGet();
+			} else if (removed && !added) {
+				count.decrementAndGet();
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import se.uu.ub.cora.httphandler.CircuitBreakerPolicy;
+import se.uu.ub.cora.httphandler.HttpRequestRejectedException;
+import se.uu.ub.cora.httphandler.internal.CircuitBreaker.Permit;
+
+/**
+ * CircuitBreakingRequestSender keeps one {@link CircuitBreaker} per authority (host and port) and
+ * rejects requests to authorities whose circuit is open with a
+ * {@link HttpRequestRejectedException}, without sending them.
+ * <p>
+ * A request fails if the wrapped sender throws an IOException or the response has a 5xx status
+ * code. Its duration is the time until the wrapped sender returns, as the response headers have
+ * then been received.
+ */
+public final class CircuitBreakingRequestSender implements RequestSender {
+	private static final int FIRST_SERVER_ERROR = 500;
+	private final RequestSender requestSender;
+	private final CircuitBreakerPolicy policy;
+	private final LongSupplier nanoClock;
+	private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+	public CircuitBreakingRequestSender(RequestSender requestSender,
+			CircuitBreakerPolicy policy) {
+		this(requestSender, policy, System::nanoTime);
+	}
+
+	CircuitBreakingRequestSender(RequestSender requestSender, CircuitBreakerPolicy policy,
+			LongSupplier nanoClock) {
+		this.requestSender = requestSender;
+		this.policy = policy;
+		this.nanoClock = nanoClock;
+	}
+
+	@Override
+	public HttpResponse<InputStream> send(HttpRequest request)
+			throws IOException, InterruptedException {
+		String authority = String.valueOf(request.uri().getAuthority());
+		CircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(authority,
+				k -> new CircuitBreaker(policy, nanoClock));
+		Permit permit = circuitBreaker.acquirePermit();
+		if (permit == Permit.REJECTED) {
+			throw new HttpRequestRejectedException("Circuit breaker is open for: " + authority,
+					authority);
+		}
+		return sendAndRecordOutcome(request, circuitBreaker, permit);
+	}
+
+	private HttpResponse<InputStream> sendAndRecordOutcome(HttpRequest request,
+			CircuitBreaker circuitBreaker, Permit permit)
+			throws IOException, InterruptedException {
+		long start = nanoClock.getAsLong();
+		try {
+			HttpResponse<InputStream> response = requestSender.send(request);
+			circuitBreaker.recordOutcome(permit, response.statusCode() >= FIRST_SERVER_ERROR,
+					nanoClock.getAsLong() - start);
+			return response;
+		} catch (IOException e) {
+			circuitBreaker.recordOutcome(permit, true, nanoClock.getAsLong() - start);
+			throw e;
+		} catch (InterruptedException | RuntimeException e) {
+			circuitBreaker.cancel(permit);
+			throw e;
+		}
+	}
+
+	boolean onlyForTestIsOpen(String authority) {
+		CircuitBreaker circuitBreaker = circuitBreakers.get(authority);
+		return circuitBreaker != null && circuitBreaker.isOpen();
+	}
+
+	public RequestSender onlyForTestGetRequestSender() {
+		return requestSender;
+	}
+
+	public CircuitBreakerPolicy onlyForTestGetPolicy() {
+		return policy;
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpTimeoutException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * CoalescingRequestSender collapses identical GET and HEAD requests that are sent at the same
+ * time into one request. The first request is sent, and requests with the same method, URI and
+ * headers that are sent before its response has arrived wait for it instead of being sent. If the
+ * failure or response can be shared, all waiting callers get it, each response with its own
+ * stream over the same bytes. If the request that was sent timed out or its caller was
+ * interrupted, the waiting callers send their own requests, as the failure belongs to the caller
+ * and not to the response.
+ * <p>
+ * Only responses to HEAD requests and responses with a Content-Length of at most the maximum body
+ * size are shared, as their bodies are read into memory. Any other response is streamed to the
+ * caller that sent the request, and the waiting callers send their own requests. A shared body is
+ * read within the timeout of the request that was sent, and waiting callers wait no longer than
+ * the timeout of their request.
+ * <p>
+ * Only requests sent at the same time are coalesced, requests sent after the response has been
+ * read are sent again.
+ */
+public final class CoalescingRequestSender implements RequestSender {
+	private static final Optional<CachedResponse> NOT_SHARED = Optional.empty();
+	private final RequestSender requestSender;
+	private final long maxBodySize;
+	private final Map<RequestKey, CompletableFuture<Optional<CachedResponse>>> inFlight = new ConcurrentHashMap<>();
+
+	public CoalescingRequestSender(RequestSender requestSender, long maxBodySize) {
+		this.requestSender = requestSender;
+		this.maxBodySize = maxBodySize;
+	}
+
+	@Override
+	public HttpResponse<InputStream> send(HttpRequest request)
+			throws IOException, InterruptedException {
+		if (!isCoalescable(request)) {
+			return requestSender.send(request);
+		}
+		RequestKey key = RequestKey.of(request);
+		CompletableFuture<Optional<CachedResponse>> sent = new CompletableFuture<>();
+		CompletableFuture<Optional<CachedResponse>> alreadySent = inFlight.putIfAbsent(key, sent);
+		if (alreadySent != null) {
+			return useResponseOrSend(request, waitForResponse(request, alreadySent));
+		}
+		return sendForAll(key, request, sent);
+	}
+
+	private boolean isCoalescable(HttpRequest request) {
+		String method = request.method();
+		return ("GET".equals(method) || "HEAD".equals(method))
+				&& request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength)
+						.orElse(0L) == 0;
+	}
+
+	private Optional<CachedResponse> waitForResponse(HttpRequest request,
+			CompletableFuture<Optional<CachedResponse>> alreadySent)
+			throws IOException, InterruptedException {
+		try {
+			return waitForResponseUsingTimeout(request.timeout(), alreadySent);
+		} catch (TimeoutException e) {
+			throw new HttpTimeoutException("request timed out");
+		} catch (ExecutionException e) {
+			Throwable failure = e.getCause();
+			if (isFailureOfSender(failure)) {
+				return NOT_SHARED;
+			}
+			if (failure instanceof IOException ioException) {
+				throw ioException;
+			}
+			if (failure instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new IOException(failure);
+		}
+	}
+
+	private boolean isFailureOfSender(Throwable failure) {
+		return failure instanceof InterruptedException || failure instanceof HttpTimeoutException;
+	}
+
+	private Optional<CachedResponse> waitForResponseUsingTimeout(Optional<Duration> timeout,
+			CompletableFuture<Optional<CachedResponse>> alreadySent)
+			throws InterruptedException, ExecutionException, TimeoutException {
+		if (timeout.isEmpty()) {
+			return alreadySent.get();
+		}
+		return alreadySent.get(timeout.get().toNanos(), TimeUnit.NANOSECONDS);
+	}
+
+	private HttpResponse<InputStream> useResponseOrSend(HttpRequest request,
+			Optional<CachedResponse> response) throws IOException, InterruptedException {
+		if (response.isPresent()) {
+			return new CachedHttpResponse(request, response.get());
+		}
+		return requestSender.send(request);
+	}
+
+	private HttpResponse<InputStream> sendForAll(RequestKey key, HttpRequest request,
+			CompletableFuture<Optional<CachedResponse>> sent)
+			throws IOException, InterruptedException {
+		RequestDeadline deadline = RequestDeadline.of(request);
+		try {
+			HttpResponse<InputStream> response = requestSender.send(request);
+			if (!isShareable(request, response)) {
+				sent.complete(NOT_SHARED);
+				return response;
+			}
+			CachedResponse readResponse = readBody(deadline, response);
+			sent.complete(Optional.of(readResponse));
+			return new CachedHttpResponse(request, readResponse);
+		} catch (IOException | InterruptedException | RuntimeException e) {
+			sent.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, sent);
+		}
+	}
+
+	private boolean isShareable(HttpRequest request, HttpResponse<InputStream> response) {
+		if ("HEAD".equals(request.method())) {
+			return true;
+		}
+		long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+		return contentLength >= 0 && contentLength <= maxBodySize;
+	}
+
+	private CachedResponse readBody(RequestDeadline deadline, HttpResponse<InputStream> response)
+			throws IOException {
+		try (InputStream body = deadline.limit(response)) {
+			ByteBuffer bytes = ByteBuffer
+					.wrap(body.readNBytes((int) Math.min(maxBodySize, Integer.MAX_VALUE)))
+					.asReadOnlyBuffer();
+			return new CachedResponse(response.statusCode(), response.headers(),
+					response.version(), bytes, 0);
+		}
+	}
+
+	public RequestSender onlyForTestGetRequestSender() {
+		return requestSender;
+	}
+
+	public long onlyForTestGetMaxBodySize() {
+		return maxBodySize;
+	}
+
+	int onlyForTestGetNumberOfRequestsInFlight() {
+		return inFlight.size();
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow.Subscription;
+import java.util.function.LongConsumer;
+
+/**
+ * CountingBodySubscriber counts the bytes passed to the wrapped subscriber and calls the onEnd
+ * consumer with the number of bytes when the body is complete.
+ */
+final class CountingBodySubscriber<T> implements BodySubscriber<T> {
+	private final BodySubscriber<T> subscriber;
+	private final LongConsumer onEnd;
+	private long bytesReceived = 0;
+
+	CountingBodySubscriber(BodySubscriber<T> subscriber, LongConsumer onEnd) {
+		this.subscriber = subscriber;
+		this.onEnd = onEnd;
+	}
+
+	@Override
+	public void onSubscribe(Subscription subscription) {
+		subscriber.onSubscribe(subscription);
+	}
+
+	@Override
+	public void onNext(List<ByteBuffer> item) {
+		for (ByteBuffer buffer : item) {
+			bytesReceived += buffer.remaining();
+		}
+		subscriber.onNext(item);
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		subscriber.onError(throwable);
+	}
+
+	@Override
+	public void onComplete() {
+		subscriber.onComplete();
+		onEnd.accept(bytesReceived);
+	}
+
+	@Override
+	public CompletionStage<T> getBody() {
+		return subscriber.getBody();
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.LongConsumer;
+
+/**
+ * CountingInputStream counts the bytes read from the wrapped stream and calls the onEnd consumer
+ * with the number of bytes read, once, when the end of the stream is reached or the stream is
+ * closed.
+ */
+final class CountingInputStream extends FilterInputStream {
+	private final LongConsumer onEnd;
+	private long bytesRead = 0;
+	private boolean ended = false;
+
+	CountingInputStream(InputStream in, LongConsumer onEnd) {
+		super(in);
+		this.onEnd = onEnd;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int read = super.read();
+		if (read == -1) {
+			end();
+		} else {
+			bytesRead++;
+		}
+		return read;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = super.read(b, off, len);
+		if (read == -1) {
+			end();
+		} else {
+			bytesRead += read;
+		}
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		bytesRead += skipped;
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			super.close();
+		} finally {
+			end();
+		}
+	}
+
+	private void end() {
+		if (!ended) {
+			ended = true;
+			onEnd.accept(bytesRead);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * DeadlineInputStream aborts the connection of the wrapped response body when the time that was
+ * left of the request timeout when the stream was created has passed, so that a read blocked on a
+ * server that has stopped sending returns. Reads after the deadline throw a
+ * {@link RequestTimeoutIOException}. Streams are created by {@link RequestDeadline}, that keeps
+ * the deadline of the whole request.
+ * <p>
+ * Only the stream of the connection, as returned from the http client, is closed at the deadline,
+ * as it can be closed while another thread reads from it. The wrapped stream, that may for
+ * instance hold a pooled Inflater, is only closed when this stream is closed by its reader.
+ * <p>
+ * The deadlines of all streams are kept by one shared daemon thread, and a deadline is removed
+ * when its stream has been read to its end or closed.
+ */
+final class DeadlineInputStream extends FilterInputStream {
+	private final Closeable connection;
+	private final Duration timeout;
+	private final AtomicBoolean expired = new AtomicBoolean();
+	private final ScheduledFuture<?> scheduledClose;
+
+	DeadlineInputStream(InputStream in, Closeable connection, Duration timeout,
+			long remainingNanos) {
+		this(in, connection, timeout, remainingNanos, Scheduler.INSTANCE);
+	}
+
+	DeadlineInputStream(InputStream in, Closeable connection, Duration timeout,
+			long remainingNanos, ScheduledExecutorService scheduler) {
+		super(in);
+		this.connection = connection;
+		this.timeout = timeout;
+		if (remainingNanos <= 0) {
+			expire();
+		}
+		scheduledClose = scheduler.schedule(this::expire, remainingNanos, TimeUnit.NANOSECONDS);
+	}
+
+	private void expire() {
+		if (expired.getAndSet(true)) {
+			return;
+		}
+		try {
+			connection.close();
+		} catch (IOException e) {
+			// the stream is unusable after the deadline in any case
+		}
+	}
+
+	@Override
+	public int read() throws IOException {
+		ensureNotExpired();
+		try {
+			return endIfLast(super.read());
+		} catch (IOException e) {
+			throw timeoutIfExpired(e);
+		}
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		ensureNotExpired();
+		try {
+			return endIfLast(super.read(b, off, len));
+		} catch (IOException e) {
+			throw timeoutIfExpired(e);
+		}
+	}
+
+	private void ensureNotExpired() throws RequestTimeoutIOException {
+		if (expired.get()) {
+			throw new RequestTimeoutIOException(timeout);
+		}
+	}
+
+	private int endIfLast(int read) {
+		if (read == -1) {
+			scheduledClose.cancel(false);
+		}
+		return read;
+	}
+
+	private IOException timeoutIfExpired(IOException e) {
+		if (expired.get()) {
+			RequestTimeoutIOException timeoutException = new RequestTimeoutIOException(timeout);
+			timeoutException.initCause(e);
+			return timeoutException;
+		}
+		return e;
+	}
+
+	/**
+	 * withoutDeadline cancels the deadline without closing the stream, and returns the wrapped
+	 * stream so that the rest of it can be read without a deadline.
+	 */
+	InputStream withoutDeadline() {
+		scheduledClose.cancel(false);
+		return in;
+	}
+
+	@Override
+	public void close() throws IOException {
+		scheduledClose.cancel(false);
+		super.close();
+	}
+
+	private static final class Scheduler {
+		private static final ScheduledExecutorService INSTANCE = createScheduler();
+
+		private static ScheduledExecutorService createScheduler() {
+			ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+					runnable -> Thread.ofPlatform().name("httphandler-request-timeouts")
+							.daemon().unstarted(runnable));
+			scheduler.setRemoveOnCancelPolicy(true);
+			return scheduler;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * DecompressingInputStream decompresses a gzip or deflate encoded response body while it is read.
+ * The start of the body is not read until the first read from this stream, so that creating the
+ * stream does not wait for the body to arrive. An empty body is read as an empty stream.
+ * <p>
+ * A deflate encoded body should be zlib data, but as some servers send raw deflate data, the
+ * format is detected from the first two bytes.
+ */
+final class DecompressingInputStream extends InputStream {
+	private static final int GZIP_MAGIC_1 = 0x1f;
+	private static final int GZIP_MAGIC_2 = 0x8b;
+	private static final int DEFLATE_METHOD = 8;
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+	private static final int ZLIB_HEADER_SIZE = 2;
+	private static final int ZLIB_CHECK_DIVISOR = 31;
+
+	enum Encoding {
+		GZIP, DEFLATE
+	}
+
+	private final InputStream compressed;
+	private final Encoding encoding;
+	private final InflaterPool rawInflaterPool;
+	private final InflaterPool zlibInflaterPool;
+	private InputStream decompressed;
+
+	DecompressingInputStream(InputStream compressed, Encoding encoding,
+			InflaterPool rawInflaterPool, InflaterPool zlibInflaterPool) {
+		this.compressed = compressed;
+		this.encoding = encoding;
+		this.rawInflaterPool = rawInflaterPool;
+		this.zlibInflaterPool = zlibInflaterPool;
+	}
+
+	@Override
+	public int read() throws IOException {
+		return getDecompressed().read();
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		return getDecompressed().read(b, off, len);
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (decompressed == null) {
+			return 0;
+		}
+		return decompressed.available();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (decompressed == null) {
+			compressed.close();
+		} else {
+			decompressed.close();
+		}
+	}
+
+	private InputStream getDecompressed() throws IOException {
+		if (decompressed == null) {
+			decompressed = createDecompressed();
+		}
+		return decompressed;
+	}
+
+	private InputStream createDecompressed() throws IOException {
+		PushbackInputStream in = new PushbackInputStream(compressed, ZLIB_HEADER_SIZE);
+		int first = in.read();
+		if (first == -1) {
+			return InputStream.nullInputStream();
+		}
+		in.unread(first);
+		if (encoding == Encoding.GZIP) {
+			skipGzipHeader(in);
+			return new PooledInflaterInputStream(in, rawInflaterPool, true);
+		}
+		return new PooledInflaterInputStream(in, choosePoolForDeflate(in), false);
+	}
+
+	private void skipGzipHeader(InputStream in) throws IOException {
+		if (readByte(in) != GZIP_MAGIC_1 || readByte(in) != GZIP_MAGIC_2
+				|| readByte(in) != DEFLATE_METHOD) {
+			throw new ZipException("Not in GZIP format");
+		}
+		int flags = readByte(in);
+		skipBytes(in, 6);
+		if ((flags & FEXTRA) != 0) {
+			skipBytes(in, readByte(in) | readByte(in) << 8);
+		}
+		if ((flags & FNAME) != 0) {
+			skipZeroTerminated(in);
+		}
+		if ((flags & FCOMMENT) != 0) {
+			skipZeroTerminated(in);
+		}
+		if ((flags & FHCRC) != 0) {
+			skipBytes(in, 2);
+		}
+	}
+
+	private int readByte(InputStream in) throws IOException {
+		int read = in.read();
+		if (read == -1) {
+			throw new EOFException("Unexpected end of gzip header");
+		}
+		return read;
+	}
+
+	private void skipBytes(InputStream in, int numberOfBytes) throws IOException {
+		for (int i = 0; i < numberOfBytes; i++) {
+			readByte(in);
+		}
+	}
+
+	private void skipZeroTerminated(InputStream in) throws IOException {
+		while (readByte(in) != 0) {
+			// skip until terminating zero
+		}
+	}
+
+	private InflaterPool choosePoolForDeflate(PushbackInputStream in) throws IOException {
+		byte[] header = in.readNBytes(ZLIB_HEADER_SIZE);
+		in.unread(header);
+		if (isZlibHeader(header)) {
+			return zlibInflaterPool;
+		}
+		return rawInflaterPool;
+	}
+
+	private boolean isZlibHeader(byte[] header) {
+		if (header.length < ZLIB_HEADER_SIZE) {
+			return false;
+		}
+		int compressionMethodAndFlags = header[0] & 0xff;
+		int flags = header[1] & 0xff;
+		return (compressionMethodAndFlags & 0x0f) == DEFLATE_METHOD
+				&& (compressionMethodAndFlags << 8 | flags) % ZLIB_CHECK_DIVISOR == 0;
+	}
+}
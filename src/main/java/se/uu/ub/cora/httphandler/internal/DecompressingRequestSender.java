@@ -0,0 +1,103 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Locale;
+
+import se.uu.ub.cora.httphandler.internal.DecompressingInputStream.Encoding;
+
+/**
+ * DecompressingRequestSender asks for compressed responses by adding
+ * <em>Accept-Encoding: gzip, deflate</em> to requests, and decompresses gzip and deflate encoded
+ * response bodies while they are read. The Content-Encoding and Content-Length headers of a
+ * decompressed response are removed, as they describe the compressed body.
+ * <p>
+ * Requests that already have an Accept-Encoding header, set by the caller, are sent as they are and
+ * their responses are not decompressed, as the caller then handles the encoding.
+ * <p>
+ * The native zlib state of the inflaters is pooled and reused between responses.
+ */
+public final class DecompressingRequestSender implements RequestSender {
+	private static final String ACCEPT_ENCODING = "Accept-Encoding";
+	private static final String CONTENT_ENCODING = "Content-Encoding";
+	private static final String CONTENT_LENGTH = "Content-Length";
+	private static final int MAX_POOLED_INFLATERS = 64;
+
+	private final RequestSender requestSender;
+	private final InflaterPool rawInflaterPool = new InflaterPool(true, MAX_POOLED_INFLATERS);
+	private final InflaterPool zlibInflaterPool = new InflaterPool(false, MAX_POOLED_INFLATERS);
+
+	public DecompressingRequestSender(RequestSender requestSender) {
+		this.requestSender = requestSender;
+	}
+
+	@Override
+	public HttpResponse<InputStream> send(HttpRequest request)
+			throws IOException, InterruptedException {
+		if (request.headers().firstValue(ACCEPT_ENCODING).isPresent()) {
+			return requestSender.send(request);
+		}
+		HttpResponse<InputStream> response = requestSender.send(addAcceptEncoding(request));
+		return possiblyDecompress(response);
+	}
+
+	private HttpRequest addAcceptEncoding(HttpRequest request) {
+		return HttpRequest.newBuilder(request, (name, value) -> true)
+				.header(ACCEPT_ENCODING, "gzip, deflate").build();
+	}
+
+	private HttpResponse<InputStream> possiblyDecompress(HttpResponse<InputStream> response) {
+		HttpHeaders headers = response.headers();
+		String contentEncoding = headers.firstValue(CONTENT_ENCODING).orElse("").trim()
+				.toLowerCase(Locale.ROOT);
+		return switch (contentEncoding) {
+			case "gzip", "x-gzip" -> decompress(response, Encoding.GZIP);
+			case "deflate" -> decompress(response, Encoding.DEFLATE);
+			default -> response;
+		};
+	}
+
+	private HttpResponse<InputStream> decompress(HttpResponse<InputStream> response,
+			Encoding encoding) {
+		InputStream body = new DecompressingInputStream(response.body(), encoding,
+				rawInflaterPool, zlibInflaterPool);
+		HttpHeaders headers = HttpHeaders.of(response.headers().map(),
+				(name, value) -> !CONTENT_ENCODING.equalsIgnoreCase(name)
+						&& !CONTENT_LENGTH.equalsIgnoreCase(name));
+		return new ResponseWithBody(response, body, headers);
+	}
+
+	public RequestSender onlyForTestGetRequestSender() {
+		return requestSender;
+	}
+
+	InflaterPool onlyForTestGetRawInflaterPool() {
+		return rawInflaterPool;
+	}
+
+	InflaterPool onlyForTestGetZlibInflaterPool() {
+		return zlibInflaterPool;
+	}
+}
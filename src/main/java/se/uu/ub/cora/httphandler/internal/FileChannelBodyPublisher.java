@@ -0,0 +1,96 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Flow.Subscriber;
+
+/**
+ * FileChannelBodyPublisher publishes the content of a FileChannel from its current position to
+ * its end. The content is read in chunks into heap buffers, one chunk for each buffer the client
+ * requests, so a large file is sent with bounded memory. Heap buffers are used as the client may
+ * hold a buffer after it has been handed over, so buffers can not be reused, and a direct buffer
+ * for every chunk would leave large uploads waiting for the garbage collector to free direct
+ * memory. The channel is closed when the content has been published or the subscription ends
+ * early.
+ */
+final class FileChannelBodyPublisher implements BodyPublisher {
+	private static final int BUFFER_SIZE = 65536;
+	private final FileChannel channel;
+	private final long start;
+	private final long contentLength;
+
+	FileChannelBodyPublisher(FileChannel channel) throws IOException {
+		this.channel = channel;
+		start = channel.position();
+		contentLength = Math.max(0, channel.size() - start);
+	}
+
+	@Override
+	public long contentLength() {
+		return contentLength;
+	}
+
+	@Override
+	public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+		subscriber.onSubscribe(new BufferSubscription(subscriber, new ChannelSource()));
+	}
+
+	private final class ChannelSource implements BufferSubscription.BufferSource {
+		private long position = start;
+		private final long end = start + contentLength;
+
+		@Override
+		public boolean isExhausted() {
+			return position == end;
+		}
+
+		@Override
+		public ByteBuffer next() throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, end - position));
+			while (buffer.hasRemaining()) {
+				readIntoBuffer(buffer);
+			}
+			position += buffer.flip().remaining();
+			return buffer;
+		}
+
+		private void readIntoBuffer(ByteBuffer buffer) throws IOException {
+			int read = channel.read(buffer, position + buffer.position());
+			if (read == -1) {
+				throw new EOFException("File channel ended before its announced size: "
+						+ contentLength);
+			}
+		}
+
+		@Override
+		public void close() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// the content has been read, nothing more to do
+			}
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * GzipCompressingInputStream reads an uncompressed source stream and returns it gzip compressed.
+ * The source is compressed a buffer at a time while the stream is read, so neither the
+ * uncompressed nor the compressed content is held in memory.
+ */
+final class GzipCompressingInputStream extends InputStream {
+	private static final int BUFFER_SIZE = 8192;
+	private static final int TRAILER_SIZE = 8;
+	private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0,
+			0, (byte) 0xff };
+
+	private final InputStream source;
+	private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+	private final CRC32 crc = new CRC32();
+	private final byte[] input = new byte[BUFFER_SIZE];
+	private byte[] pending = HEADER;
+	private int pendingPosition = 0;
+	private int pendingLength = HEADER.length;
+	private final byte[] output = new byte[BUFFER_SIZE];
+	private boolean sourceEnded = false;
+	private boolean trailerWritten = false;
+	private boolean closed = false;
+
+	GzipCompressingInputStream(InputStream source) {
+		this.source = source;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] singleByte = new byte[1];
+		int read = read(singleByte, 0, 1);
+		return read == -1 ? -1 : singleByte[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		Objects.checkFromIndexSize(off, len, b.length);
+		ensureOpen();
+		if (len == 0) {
+			return 0;
+		}
+		while (pendingPosition == pendingLength) {
+			if (trailerWritten) {
+				return -1;
+			}
+			fillPending();
+		}
+		int read = Math.min(len, pendingLength - pendingPosition);
+		System.arraycopy(pending, pendingPosition, b, off, read);
+		pendingPosition += read;
+		return read;
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	private void fillPending() throws IOException {
+		if (deflater.finished()) {
+			setPending(createTrailer(), TRAILER_SIZE);
+			trailerWritten = true;
+			return;
+		}
+		if (deflater.needsInput() && !sourceEnded) {
+			readFromSource();
+		}
+		setPending(output, deflater.deflate(output));
+	}
+
+	private void readFromSource() throws IOException {
+		int read = source.read(input);
+		if (read == -1) {
+			sourceEnded = true;
+			deflater.finish();
+		} else {
+			crc.update(input, 0, read);
+			deflater.setInput(input, 0, read);
+		}
+	}
+
+	private void setPending(byte[] bytes, int length) {
+		pending = bytes;
+		pendingPosition = 0;
+		pendingLength = length;
+	}
+
+	private byte[] createTrailer() {
+		byte[] trailer = new byte[TRAILER_SIZE];
+		writeUnsignedInt(trailer, 0, crc.getValue());
+		writeUnsignedInt(trailer, 4, deflater.getBytesRead());
+		return trailer;
+	}
+
+	private static void writeUnsignedInt(byte[] bytes, int offset, long value) {
+		bytes[offset] = (byte) value;
+		bytes[offset + 1] = (byte) (value >> 8);
+		bytes[offset + 2] = (byte) (value >> 16);
+		bytes[offset + 3] = (byte) (value >> 24);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			deflater.end();
+			source.close();
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.util.concurrent.CompletableFuture;
+
+import se.uu.ub.cora.httphandler.HttpRequestListener;
+
+/**
+ * HttpClientAsyncSender sends requests using the non blocking api of the http client. The body is
+ * decoded using the charset from the Content-Type of the response, or UTF-8. If a listener is set,
+ * requests are reported to it, and if a maximum response size is set, larger responses fail
+ * instead of being buffered. Senders that share an {@link InFlightRequests} count their requests
+ * in flight together.
+ */
+public final class HttpClientAsyncSender implements AsyncRequestSender {
+	public static final long UNLIMITED = -1;
+
+	private HttpClient httpClient;
+	private HttpRequestListener listener;
+	private long maxResponseSize;
+	private InFlightRequests inFlightRequests;
+
+	public HttpClientAsyncSender(HttpClient httpClient, HttpRequestListener listener,
+			long maxResponseSize) {
+		this(httpClient, listener, maxResponseSize, new InFlightRequests());
+	}
+
+	public HttpClientAsyncSender(HttpClient httpClient, HttpRequestListener listener,
+			long maxResponseSize, InFlightRequests inFlightRequests) {
+		this.httpClient = httpClient;
+		this.listener = listener;
+		this.maxResponseSize = maxResponseSize;
+		this.inFlightRequests = inFlightRequests;
+	}
+
+	@Override
+	public CompletableFuture<HttpResponse<String>> sendAsync(HttpRequest request) {
+		if (listener == null) {
+			return httpClient.sendAsync(request, this::createBodySubscriber);
+		}
+		return sendAsyncAndReport(request);
+	}
+
+	private CompletableFuture<HttpResponse<String>> sendAsyncAndReport(HttpRequest request) {
+		RequestTimer timer = RequestTimer.start(listener, request, inFlightRequests);
+		BodyHandler<String> bodyHandler = responseInfo -> {
+			timer.headersReceived();
+			return new CountingBodySubscriber<>(createBodySubscriber(responseInfo),
+					bytesReceived -> timer.completed(responseInfo.statusCode(),
+							responseInfo.version(), bytesReceived));
+		};
+		return httpClient.sendAsync(request, bodyHandler)
+				.whenComplete((response, failure) -> possiblyReportFailure(timer, failure));
+	}
+
+	private BodySubscriber<String> createBodySubscriber(ResponseInfo responseInfo) {
+		BodySubscriber<String> subscriber = BodySubscribers
+				.ofString(ResponseText.getCharset(responseInfo.headers()));
+		if (maxResponseSize == UNLIMITED) {
+			return subscriber;
+		}
+		return new SizeLimitingBodySubscriber<>(subscriber, maxResponseSize,
+				() -> new IOException("Response body is larger than the maximum response size of "
+						+ maxResponseSize + " bytes"));
+	}
+
+	private void possiblyReportFailure(RequestTimer timer, Throwable failure) {
+		if (failure != null) {
+			timer.failed(failure);
+		}
+	}
+
+	public HttpClient onlyForTestGetHttpClient() {
+		return httpClient;
+	}
+
+	public HttpRequestListener onlyForTestGetListener() {
+		return listener;
+	}
+
+	public long onlyForTestGetMaxResponseSize() {
+		return maxResponseSize;
+	}
+
+	public InFlightRequests onlyForTestGetInFlightRequests() {
+		return inFlightRequests;
+	}
+}
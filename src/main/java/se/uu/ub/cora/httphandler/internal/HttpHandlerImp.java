@@ -1,5 +1,5 @@
 /*
- * Copyright 2016, 2018, 2019, 2023, 2024 Uppsala University Library
+ * Copyright 2016, 2018, 2019, 2023, 2024, 2026 Uppsala University Library
  * Copyright 2023 Olov McKie
  *
  * This file is part of Cora.
@@ -22,40 +22,68 @@ package se.uu.ub.cora.httphandler.internal;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.net.http.HttpClient;
-import java.net.http.HttpHeaders;
+import java.net.http.HttpConnectTimeoutException;
 import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.BodyPublisher;
 import java.net.http.HttpRequest.BodyPublishers;
 import java.net.http.HttpRequest.Builder;
 import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Base64;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.function.Supplier;
 
+import se.uu.ub.cora.httphandler.ConnectTimeoutException;
+import se.uu.ub.cora.httphandler.FirstByteTimeoutException;
 import se.uu.ub.cora.httphandler.HttpHandler;
+import se.uu.ub.cora.httphandler.RequestTimeoutException;
 
 public final class HttpHandlerImp implements HttpHandler {
 
 	private Builder builder;
-	private HttpClient httpClient;
+	private RequestSender requestSender;
 	private String requestMetod = "GET";
 	private HttpResponse<InputStream> response;
+	private Map<String, String> responseHeaders;
 	private BodyPublisher bodyPublisher = HttpRequest.BodyPublishers.noBody();
-	private static final List<String> REQUEST_METHODS = List.of("GET", "HEAD", "POST", "PUT",
+	private RequestBodyCompressor requestBodyCompressor;
+	private boolean contentEncodingSetByCaller = false;
+	private Duration timeToFirstByteTimeout;
+	private Duration requestTimeout;
+	private RequestDeadline deadline = RequestDeadline.NONE;
+	private boolean requestTimeoutApplied = false;
+	static final List<String> REQUEST_METHODS = List.of("GET", "HEAD", "POST", "PUT",
 			"DELETE", "PATCH");
 
-	private HttpHandlerImp(Builder builder, HttpClient newHttpClient) {
+	private HttpHandlerImp(Builder builder, RequestSender requestSender,
+			RequestBodyCompressor requestBodyCompressor) {
 		this.builder = builder;
-		this.httpClient = newHttpClient;
+		this.requestSender = requestSender;
+		this.requestBodyCompressor = requestBodyCompressor;
 	}
 
 	public static HttpHandler usingBuilderAndHttpClient(Builder builder, HttpClient newHttpClient) {
-		return new HttpHandlerImp(builder, newHttpClient);
+		return new HttpHandlerImp(builder, new HttpClientSender(newHttpClient), null);
+	}
+
+	public static HttpHandler usingBuilderAndRequestSender(Builder builder,
+			RequestSender requestSender) {
+		return new HttpHandlerImp(builder, requestSender, null);
+	}
+
+	public static HttpHandler usingBuilderAndRequestSenderAndRequestBodyCompressor(
+			Builder builder, RequestSender requestSender,
+			RequestBodyCompressor requestBodyCompressor) {
+		return new HttpHandlerImp(builder, requestSender, requestBodyCompressor);
 	}
 
 	@Override
@@ -70,6 +98,7 @@ public final class HttpHandlerImp implements HttpHandler {
 	public void setRequestProperty(String key, String value) {
 		if (bothKeyAndValueExist(key, value)) {
 			builder.setHeader(key, value);
+			contentEncodingSetByCaller |= RequestBodyCompressor.isContentEncodingHeader(key);
 		}
 	}
 
@@ -82,7 +111,7 @@ public final class HttpHandlerImp implements HttpHandler {
 		try {
 			return tryToGetResponseText();
 		} catch (Exception e) {
-			throw new RuntimeException("Error getting response text: ", e);
+			throw createException("Error getting response text: ", e);
 		}
 	}
 
@@ -92,7 +121,27 @@ public final class HttpHandlerImp implements HttpHandler {
 	}
 
 	private String inputStreamToString() throws IOException {
-		return new String(response.body().readAllBytes(), StandardCharsets.UTF_8);
+		return ResponseText.read(response);
+	}
+
+	@Override
+	public byte[] getResponseBytes() {
+		try {
+			possiblyBuildRequestAndSend();
+			return ResponseBytes.read(response);
+		} catch (Exception e) {
+			throw createException("Error getting response bytes: ", e);
+		}
+	}
+
+	@Override
+	public List<ByteBuffer> getResponseByteBuffers() {
+		try {
+			possiblyBuildRequestAndSend();
+			return ResponseBytes.readBuffers(response);
+		} catch (Exception e) {
+			throw createException("Error getting response byte buffers: ", e);
+		}
 	}
 
 	private void possiblyBuildRequestAndSend() throws IOException, InterruptedException {
@@ -100,10 +149,62 @@ public final class HttpHandlerImp implements HttpHandler {
 			return;
 		}
 
+		deadline = RequestDeadline.after(requestTimeout);
 		Builder methodBuilder = builder.method(requestMetod, bodyPublisher);
+		possiblySetTimeout(methodBuilder);
 		HttpRequest httpRequest = methodBuilder.build();
-		BodyHandler<InputStream> bodyHandler = HttpResponse.BodyHandlers.ofInputStream();
-		response = httpClient.send(httpRequest, bodyHandler);
+		response = deadline.limitBody(requestSender.send(httpRequest));
+	}
+
+	private void possiblySetTimeout(Builder methodBuilder) {
+		Duration remaining = deadline.isSet() ? deadline.remaining() : null;
+		Duration timeout = getShortestTimeout(remaining);
+		requestTimeoutApplied = timeout != null && timeout.equals(remaining);
+		if (timeout != null) {
+			methodBuilder.timeout(timeout);
+		}
+	}
+
+	private Duration getShortestTimeout(Duration remaining) {
+		if (remaining == null) {
+			return timeToFirstByteTimeout;
+		}
+		if (timeToFirstByteTimeout == null || remaining.compareTo(timeToFirstByteTimeout) <= 0) {
+			return remaining;
+		}
+		return timeToFirstByteTimeout;
+	}
+
+	private RuntimeException createException(String message, Exception e) {
+		if (isCausedBy(e, HttpConnectTimeoutException.class)) {
+			return new ConnectTimeoutException(message, e);
+		}
+		if (isCausedBy(e, HttpTimeoutException.class)) {
+			return createTimeoutException(message, e);
+		}
+		return new RuntimeException(message, e);
+	}
+
+	private RuntimeException createTimeoutException(String message, Exception e) {
+		if (requestTimeoutApplied || timedOutReadingBody(e)) {
+			return new RequestTimeoutException(message, e);
+		}
+		return new FirstByteTimeoutException(message, e);
+	}
+
+	private boolean timedOutReadingBody(Exception e) {
+		return response != null && isCausedBy(e, RequestTimeoutIOException.class);
+	}
+
+	private boolean isCausedBy(Throwable exception, Class<? extends Throwable> type) {
+		Throwable cause = exception;
+		while (cause != null) {
+			if (type.isInstance(cause)) {
+				return true;
+			}
+			cause = cause.getCause();
+		}
+		return false;
 	}
 
 	@Override
@@ -111,6 +212,9 @@ public final class HttpHandlerImp implements HttpHandler {
 		try {
 			return tryToGetResponseCode();
 		} catch (Exception e) {
+			if (isCausedBy(e, HttpTimeoutException.class)) {
+				throw createException("Error getting response code: ", e);
+			}
 			return 500;
 		}
 	}
@@ -125,7 +229,7 @@ public final class HttpHandlerImp implements HttpHandler {
 		try {
 			return tryToGetBinary();
 		} catch (Exception e) {
-			throw new RuntimeException("Error getting response binary: ", e);
+			throw createException("Error getting response binary: ", e);
 		}
 	}
 
@@ -134,26 +238,127 @@ public final class HttpHandlerImp implements HttpHandler {
 		return response.body();
 	}
 
+	@Override
+	public long downloadTo(Path file) {
+		try {
+			possiblyBuildRequestAndSend();
+			return ResponseDownload.toFile(response, file);
+		} catch (Exception e) {
+			throw createException("Error downloading response to file: ", e);
+		}
+	}
+
+	@Override
+	public long downloadTo(Path file, int segments) {
+		if (segments < 1) {
+			throw new IllegalArgumentException("Segments must be 1 or more: " + segments);
+		}
+		try {
+			ensureGetRequest();
+			possiblyBuildRequestAndSend();
+			return SegmentedDownload.toFile(requestSender, this::createRangeRequestBuilder,
+					deadline, response, file, segments);
+		} catch (Exception e) {
+			throw createException("Error downloading response to file: ", e);
+		}
+	}
+
+	private void ensureGetRequest() {
+		if (!"GET".equals(requestMetod)) {
+			throw new IllegalStateException("Only GET requests can be downloaded in segments");
+		}
+	}
+
+	private Builder createRangeRequestBuilder() {
+		Builder rangeBuilder = builder.copy();
+		possiblySetTimeout(rangeBuilder);
+		return rangeBuilder;
+	}
+
+	@Override
+	public long downloadTo(WritableByteChannel channel) {
+		try {
+			possiblyBuildRequestAndSend();
+			return ResponseDownload.toChannel(response, channel);
+		} catch (Exception e) {
+			throw createException("Error downloading response to channel: ", e);
+		}
+	}
+
+	@Override
+	public Reader getResponseReader() {
+		try {
+			possiblyBuildRequestAndSend();
+			return ResponseText.createReader(response);
+		} catch (Exception e) {
+			throw createException("Error getting response reader: ", e);
+		}
+	}
+
 	@Override
 	public void setOutput(String outputString) {
 		try {
 			tryToSetOutput(outputString);
 		} catch (Exception e) {
-			throw new RuntimeException("Error setting output: " + e.getMessage(), e);
+			throw createException("Error setting output: " + e.getMessage(), e);
 		}
 	}
 
 	private void tryToSetOutput(String outputString) throws IOException, InterruptedException {
-		bodyPublisher = BodyPublishers.ofString(outputString);
+		bodyPublisher = createStringPublisher(outputString);
 		possiblyBuildRequestAndSend();
 	}
 
+	private BodyPublisher createStringPublisher(String outputString) {
+		if (shouldCompressRequestBody()) {
+			return requestBodyCompressor.createPublisher(builder,
+					outputString.getBytes(StandardCharsets.UTF_8));
+		}
+		return BodyPublishers.ofString(outputString);
+	}
+
+	@Override
+	public void setOutput(byte[] output) {
+		try {
+			tryToSetByteOutput(ByteBuffer.wrap(output));
+		} catch (Exception e) {
+			throw createException("Error setting output: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void setOutput(ByteBuffer... output) {
+		try {
+			tryToSetByteOutput(output);
+		} catch (Exception e) {
+			throw createException("Error setting output: " + e.getMessage(), e);
+		}
+	}
+
+	private void tryToSetByteOutput(ByteBuffer... output)
+			throws IOException, InterruptedException {
+		bodyPublisher = createByteBufferPublisher(new ByteBufferBodyPublisher(output));
+		possiblyBuildRequestAndSend();
+	}
+
+	private BodyPublisher createByteBufferPublisher(ByteBufferBodyPublisher publisher) {
+		if (shouldCompressRequestBody()) {
+			return requestBodyCompressor.createPublisher(builder, publisher::openStream,
+					publisher.contentLength());
+		}
+		return publisher;
+	}
+
+	private boolean shouldCompressRequestBody() {
+		return requestBodyCompressor != null && !contentEncodingSetByCaller;
+	}
+
 	@Override
 	public String getErrorText() {
 		try {
 			return tryToGetResponseText();
 		} catch (Exception e) {
-			throw new RuntimeException("Error getting error text: ", e);
+			throw createException("Error getting error text: ", e);
 		}
 	}
 
@@ -162,49 +367,102 @@ public final class HttpHandlerImp implements HttpHandler {
 		try {
 			tryToSetStreamOutput(stream);
 		} catch (Exception e) {
-			throw new RuntimeException("Error writing output from stream: ", e);
+			throw createException("Error writing output from stream: ", e);
 		}
 	}
 
 	private void tryToSetStreamOutput(InputStream stream) throws IOException, InterruptedException {
-		bodyPublisher = BodyPublishers.ofInputStream(() -> stream);
+		bodyPublisher = createStreamPublisher(stream);
 		possiblyBuildRequestAndSend();
 	}
 
+	private BodyPublisher createStreamPublisher(InputStream stream) throws IOException {
+		if (shouldCompressRequestBody()) {
+			return requestBodyCompressor.createPublisher(builder, stream);
+		}
+		return BodyPublishers.ofInputStream(new SingleUseStreamSupplier(stream));
+	}
+
 	@Override
-	public Map<String, String> getResponseHeaders() {
+	public void setStreamOutput(Supplier<InputStream> streamSupplier, long contentLength) {
 		try {
-			return tryToGetResponseHeaders();
+			tryToSetReplayableOutput(
+					ReplayableBodyPublisher.ofSupplier(streamSupplier, contentLength));
 		} catch (Exception e) {
-			throw new RuntimeException("Error getting response headers: ", e);
+			throw createException("Error writing output from stream: ", e);
 		}
 	}
 
-	private Map<String, String> tryToGetResponseHeaders() {
-		HttpHeaders responseHeaders = response.headers();
-		Map<String, List<String>> headersMapList = responseHeaders.map();
-		return transformHeadersListBasedToStringBased(headersMapList);
+	private void tryToSetReplayableOutput(ReplayableBodyPublisher publisher)
+			throws IOException, InterruptedException {
+		bodyPublisher = createReplayablePublisher(publisher);
+		possiblyBuildRequestAndSend();
+	}
+
+	private BodyPublisher createReplayablePublisher(ReplayableBodyPublisher publisher) {
+		if (shouldCompressRequestBody()) {
+			return requestBodyCompressor.createPublisher(builder, publisher::openStream,
+					publisher.contentLength());
+		}
+		return publisher;
+	}
+
+	@Override
+	public void setStreamOutput(Path file) {
+		try {
+			tryToSetReplayableOutput(
+					ReplayableBodyPublisher.ofFileRange(file, 0, Files.size(file)));
+		} catch (Exception e) {
+			throw createException("Error writing output from file: ", e);
+		}
+	}
+
+	@Override
+	public void setStreamOutput(Path file, long offset, long length) {
+		try {
+			tryToSetReplayableOutput(ReplayableBodyPublisher.ofFileRange(file, offset, length));
+		} catch (Exception e) {
+			throw createException("Error writing output from file: ", e);
+		}
 	}
 
-	private Map<String, String> transformHeadersListBasedToStringBased(
-			Map<String, List<String>> headersMapList) {
-		Map<String, String> headersMapString = new HashMap<>();
-		for (Entry<String, List<String>> entry : headersMapList.entrySet()) {
-			headersMapString.put(entry.getKey(), createCommaSeparatedString(entry));
+	@Override
+	public Map<String, String> getResponseHeaders() {
+		try {
+			return tryToGetResponseHeaders();
+		} catch (Exception e) {
+			throw new RuntimeException("Error getting response headers: ", e);
 		}
-		return headersMapString;
 	}
 
-	private String createCommaSeparatedString(Entry<String, List<String>> entry) {
-		return String.join(", ", entry.getValue());
+	private Map<String, String> tryToGetResponseHeaders() {
+		if (responseHeaders == null) {
+			responseHeaders = ResponseHeaders.toCommaSeparatedMap(response.headers());
+		}
+		return responseHeaders;
 	}
 
 	@Override
 	public String getHeaderField(String name) {
+		if (response == null) {
+			return null;
+		}
 		try {
 			return response.headers().firstValue(name).orElse(null);
 		} catch (Exception e) {
-			return null;
+			throw new RuntimeException("Error getting header field: ", e);
+		}
+	}
+
+	@Override
+	public List<String> getHeaderFields(String name) {
+		if (response == null) {
+			return List.of();
+		}
+		try {
+			return response.headers().allValues(name);
+		} catch (Exception e) {
+			throw new RuntimeException("Error getting header fields: ", e);
 		}
 	}
 
@@ -215,11 +473,33 @@ public final class HttpHandlerImp implements HttpHandler {
 		setRequestProperty("Authorization", "Basic " + encoded);
 	}
 
+	@Override
+	public void setTimeToFirstByteTimeout(Duration timeout) {
+		timeToFirstByteTimeout = timeout;
+	}
+
+	@Override
+	public void setRequestTimeout(Duration timeout) {
+		requestTimeout = timeout;
+	}
+
 	public Builder onlyForTestGetBuilder() {
 		return builder;
 	}
 
-	public HttpClient onlyForTestGetHttpClient() {
-		return httpClient;
+	public RequestSender onlyForTestGetRequestSender() {
+		return requestSender;
+	}
+
+	public RequestBodyCompressor onlyForTestGetRequestBodyCompressor() {
+		return requestBodyCompressor;
+	}
+
+	public Duration onlyForTestGetTimeToFirstByteTimeout() {
+		return timeToFirstByteTimeout;
+	}
+
+	public Duration onlyForTestGetRequestTimeout() {
+		return requestTimeout;
 	}
 }
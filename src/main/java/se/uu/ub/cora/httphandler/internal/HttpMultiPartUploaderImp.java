@@ -1,5 +1,5 @@
 /*
- * Copyright 2016, 2018 Uppsala University Library
+ * Copyright 2016, 2018, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -21,150 +21,111 @@ package se.uu.ub.cora.httphandler.internal;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.net.HttpURLConnection;
-import java.net.URLConnection;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.Builder;
+import java.net.http.HttpResponse;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
 
 import se.uu.ub.cora.httphandler.HttpMultiPartUploader;
-import se.uu.ub.cora.httphandler.urlconnection.HttpURLConnectionHandler;
 
 public final class HttpMultiPartUploaderImp implements HttpMultiPartUploader {
+	private static final int STATUS_INTERNAL_SERVER_ERROR = 500;
+	private static final long UNKNOWN_LENGTH = -1;
 
-	private static final String CONTENT_DISPOSITION = "Content-Disposition";
-	private static final String CONTENT_TYPE = "Content-Type";
-	private static final int INITIAL_BUFFER_SIZE = 4096;
-	private HttpURLConnection urlConnection;
-
-	private static final String BOUNDARY = "xxxYYYxxx";
-	private static final String LINE_FEED = "\n";
-	private static final Charset UTF_8 = StandardCharsets.UTF_8;
-	private OutputStream outputStream;
-	private PrintWriter writer;
-	private boolean connectionSetUp = false;
-	private HttpURLConnectionHandler httpURLConnectionHandler;
-
-	private HttpMultiPartUploaderImp(HttpURLConnection httpUrlConnection) {
-		this.urlConnection = httpUrlConnection;
-		httpURLConnectionHandler = new HttpURLConnectionHandler(httpUrlConnection);
+	private Builder builder;
+	private RequestSender requestSender;
+	private MultipartRequest multipartRequest;
+	private HttpResponse<InputStream> response;
+
+	private HttpMultiPartUploaderImp(Builder builder, RequestSender requestSender) {
+		this.builder = builder;
+		this.requestSender = requestSender;
+		multipartRequest = new MultipartRequest(builder);
+	}
+
+	public static HttpMultiPartUploader usingBuilderAndHttpClient(Builder builder,
+			HttpClient httpClient) {
+		return new HttpMultiPartUploaderImp(builder, new HttpClientSender(httpClient));
 	}
 
-	public static HttpMultiPartUploader usingURLConnection(HttpURLConnection httpUrlConnection) {
-		return new HttpMultiPartUploaderImp(httpUrlConnection);
+	public static HttpMultiPartUploader usingBuilderAndRequestSender(Builder builder,
+			RequestSender requestSender) {
+		return new HttpMultiPartUploaderImp(builder, requestSender);
 	}
 
 	@Override
 	public String getResponseText() {
-		return httpURLConnectionHandler.getResponseText();
+		try {
+			return ResponseText.read(response);
+		} catch (Exception e) {
+			throw new RuntimeException("Error getting response text: ", e);
+		}
 	}
 
 	@Override
 	public int getResponseCode() {
-		return httpURLConnectionHandler.getResponseCode();
+		if (response == null) {
+			return STATUS_INTERNAL_SERVER_ERROR;
+		}
+		return response.statusCode();
 	}
 
 	@Override
 	public String getErrorText() {
-		return httpURLConnectionHandler.getErrorText();
+		return getResponseText();
 	}
 
 	@Override
 	public void addFormField(String name, String value) {
-		tryToSetUpUrlConnectionAndCreateWriter();
-		appendBoundaryToWriter();
-		writer.append(CONTENT_DISPOSITION + ": form-data; name=\"" + name + "\"").append(LINE_FEED);
-		writer.append(CONTENT_TYPE + ":" + " text/plain; charset=" + UTF_8).append(LINE_FEED);
-		writer.append(LINE_FEED);
-		writer.append(value).append(LINE_FEED);
-		writer.flush();
-	}
-
-	private void tryToSetUpUrlConnectionAndCreateWriter() {
-		if (!connectionSetUp) {
-			setUpUrlConnectionAndCreateWriter();
-		}
+		multipartRequest.addFormField(name, value);
 	}
 
-	private void setUpUrlConnectionAndCreateWriter() {
-		setUpUrlConnection();
-		try {
-			createWriter();
-		} catch (IOException e) {
-			throw new RuntimeException("Failed to upload multipart", e);
-		}
-	}
-
-	private void setUpUrlConnection() {
-		connectionSetUp = true;
-		this.urlConnection.setUseCaches(false);
-		this.urlConnection.setDoOutput(true);
-		this.urlConnection.setDoInput(true);
-		this.urlConnection.setRequestProperty(CONTENT_TYPE,
-				"multipart/form-data; boundary=" + BOUNDARY);
-		this.urlConnection.setRequestProperty("User-Agent", "HttpMultipartUploader Agent");
-
-	}
-
-	private void createWriter() throws IOException {
-		outputStream = this.urlConnection.getOutputStream();
-		writer = new PrintWriter(new OutputStreamWriter(outputStream, UTF_8), true);
-	}
-
-	private PrintWriter appendBoundaryToWriter() {
-		return writer.append("--" + BOUNDARY).append(LINE_FEED);
+	@Override
+	public void addFilePart(String fieldName, String fileName, InputStream stream)
+			throws IOException {
+		multipartRequest.addFilePart(fieldName, fileName, stream, UNKNOWN_LENGTH);
 	}
 
 	@Override
-	public void addFilePart(String fieldName, String fileName, InputStream stream)
+	public void addFilePart(String fieldName, String fileName, InputStream stream, long size)
 			throws IOException {
-		tryToSetUpUrlConnectionAndCreateWriter();
-		addFileInfo(fieldName, fileName);
-		streamData(stream);
-		writer.flush();
+		multipartRequest.addFilePart(fieldName, fileName, stream, size);
 	}
 
-	private void addFileInfo(String fieldName, String fileName) {
-		appendBoundaryToWriter();
-		writer.append(CONTENT_DISPOSITION + ": form-data; name=\"" + fieldName + "\"; filename=\""
-				+ fileName + "\"").append(LINE_FEED);
-		writer.append(CONTENT_TYPE + ": " + URLConnection.guessContentTypeFromName(fileName))
-				.append(LINE_FEED);
-		writer.append("Content-Transfer-Encoding: binary").append(LINE_FEED);
-		writer.append(LINE_FEED);
-		writer.flush();
+	@Override
+	public void addFilePart(String fieldName, Path file) throws IOException {
+		multipartRequest.addFilePart(fieldName, file);
 	}
 
-	private void streamData(InputStream stream) throws IOException {
-		byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
-		int bytesRead;
-		while ((bytesRead = stream.read(buffer)) != -1) {
-			outputStream.write(buffer, 0, bytesRead);
-		}
-		outputStream.flush();
-		stream.close();
+	@Override
+	public void addFilePart(String fieldName, String fileName, FileChannel channel)
+			throws IOException {
+		multipartRequest.addFilePart(fieldName, fileName, channel);
 	}
 
 	@Override
 	public void addHeaderField(String name, String value) {
-		throwErrorIfConnectionAlreadySetUp(name, value);
-		urlConnection.setRequestProperty(name, value);
+		multipartRequest.addHeaderField(name, value);
 	}
 
-	private void throwErrorIfConnectionAlreadySetUp(String name, String value) {
-		if (connectionSetUp) {
-			throw new RuntimeException(
-					"Headers can not be set after connection is setup on multipart requests, headerName: "
-							+ name + " headerValue: " + value);
+	@Override
+	public void done() throws IOException {
+		HttpRequest httpRequest = multipartRequest.createRequest();
+		try {
+			response = requestSender.send(httpRequest);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Failed to upload multipart", e);
 		}
 	}
 
-	@Override
-	public void done() throws IOException {
-		writer.append(LINE_FEED).flush();
-		writer.append("--" + BOUNDARY + "--").append(LINE_FEED);
-		writer.close();
+	public Builder onlyForTestGetBuilder() {
+		return builder;
+	}
+
+	public RequestSender onlyForTestGetRequestSender() {
+		return requestSender;
 	}
 }
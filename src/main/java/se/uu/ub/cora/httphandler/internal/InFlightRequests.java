@@ -0,0 +1,53 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * InFlightRequests counts the requests per authority that have been sent but not yet completed.
+ * The JDK http client sends all HTTP/2 requests to one authority over a single connection, so for
+ * HTTP/2 the count is the number of streams sharing that connection.
+ */
+public final class InFlightRequests {
+	private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates an InFlightRequests without any requests in flight.
+	 */
+	public InFlightRequests() {
+		// counters are added per authority as requests are started
+	}
+
+	int started(String authority) {
+		return requests.computeIfAbsent(authority, k -> new AtomicInteger()).incrementAndGet();
+	}
+
+	void completed(String authority) {
+		requests.get(authority).decrementAndGet();
+	}
+
+	int getInFlight(String authority) {
+		AtomicInteger inFlight = requests.get(authority);
+		return inFlight == null ? 0 : inFlight.get();
+	}
+}
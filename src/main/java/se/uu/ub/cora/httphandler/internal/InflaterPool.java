@@ -0,0 +1,65 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+/**
+ * InflaterPool keeps released {@link Inflater}s so that they can be reused, instead of creating
+ * and ending the native zlib state of a new Inflater for every response. At most maxPooled idle
+ * inflaters are kept, inflaters released when the pool is full are ended.
+ */
+final class InflaterPool {
+	private final boolean nowrap;
+	private final int maxPooled;
+	private final Queue<Inflater> pooled = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger numberOfPooled = new AtomicInteger();
+
+	InflaterPool(boolean nowrap, int maxPooled) {
+		this.nowrap = nowrap;
+		this.maxPooled = maxPooled;
+	}
+
+	Inflater acquire() {
+		Inflater inflater = pooled.poll();
+		if (inflater == null) {
+			return new Inflater(nowrap);
+		}
+		numberOfPooled.decrementAndGet();
+		return inflater;
+	}
+
+	void release(Inflater inflater) {
+		inflater.reset();
+		if (numberOfPooled.incrementAndGet() <= maxPooled) {
+			pooled.offer(inflater);
+		} else {
+			numberOfPooled.decrementAndGet();
+			inflater.end();
+		}
+	}
+
+	int getNumberOfPooled() {
+		return numberOfPooled.get();
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import se.uu.ub.cora.httphandler.HttpRequestListener;
+
+/**
+ * InstrumentedRequestSender reports a {@link se.uu.ub.cora.httphandler.HttpRequestEvent} to a
+ * {@link HttpRequestListener} for each request sent through it. The time to first byte is taken
+ * when the wrapped sender returns, as the response headers have then been received, and the
+ * request then leaves the requests in flight, as callers that only read the status code or a
+ * header may never read or close the body. The response body is wrapped so that the event, with
+ * the total time and the number of body bytes read, is reported when the body has been read to its
+ * end or closed, or at once for responses that have no body.
+ * <p>
+ * The JDK http client does not tell if a request used a new or a pooled connection, so connection
+ * reuse is not reported. Instead the number of requests in flight to the same authority is
+ * reported, which for HTTP/2 is the number of streams sharing the connection. Senders that share
+ * an {@link InFlightRequests} count their requests together.
+ */
+public final class InstrumentedRequestSender implements RequestSender {
+	private static final int STATUS_NO_CONTENT = 204;
+	private static final int STATUS_NOT_MODIFIED = 304;
+
+	private RequestSender requestSender;
+	private HttpRequestListener listener;
+	private InFlightRequests inFlightRequests;
+
+	public InstrumentedRequestSender(RequestSender requestSender, HttpRequestListener listener) {
+		this(requestSender, listener, new InFlightRequests());
+	}
+
+	public InstrumentedRequestSender(RequestSender requestSender, HttpRequestListener listener,
+			InFlightRequests inFlightRequests) {
+		this.requestSender = requestSender;
+		this.listener = listener;
+		this.inFlightRequests = inFlightRequests;
+	}
+
+	@Override
+	public HttpResponse<InputStream> send(HttpRequest request)
+			throws IOException, InterruptedException {
+		RequestTimer timer = RequestTimer.start(listener, request, inFlightRequests);
+		HttpResponse<InputStream> response = sendAndReportFailure(request, timer);
+		timer.headersReceived();
+		if (hasNoBody(request, response)) {
+			timer.completed(response.statusCode(), response.version(), 0);
+			return response;
+		}
+		CountingInputStream body = new CountingInputStream(response.body(),
+				bytesRead -> timer.completed(response.statusCode(), response.version(), bytesRead));
+		return new ResponseWithBody(response, body);
+	}
+
+	private HttpResponse<InputStream> sendAndReportFailure(HttpRequest request,
+			RequestTimer timer) throws IOException, InterruptedException {
+		try {
+			return requestSender.send(request);
+		} catch (IOException | InterruptedException | RuntimeException e) {
+			timer.failed(e);
+			throw e;
+		}
+	}
+
+	private boolean hasNoBody(HttpRequest request, HttpResponse<InputStream> response) {
+		int statusCode = response.statusCode();
+		return "HEAD".equals(request.method()) || statusCode == STATUS_NO_CONTENT
+				|| statusCode == STATUS_NOT_MODIFIED
+				|| response.headers().firstValueAsLong("Content-Length").orElse(-1) == 0;
+	}
+
+	public RequestSender onlyForTestGetRequestSender() {
+		return requestSender;
+	}
+
+	public HttpRequestListener onlyForTestGetListener() {
+		return listener;
+	}
+
+	public InFlightRequests onlyForTestGetInFlightRequests() {
+		return inFlightRequests;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram is a lock free histogram of non negative long values, such as latencies in
+ * nanoseconds. Values are counted in buckets where each power of two range is split into eight
+ * sub buckets, so percentiles read from the histogram are within 12.5% of the recorded values
+ * while the histogram uses a fixed and small amount of memory.
+ */
+public final class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_MASK = SUB_BUCKETS - 1;
+	private static final int NUMBER_OF_BUCKETS = SUB_BUCKETS
+			+ (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(NUMBER_OF_BUCKETS);
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long value) {
+		long nonNegativeValue = Math.max(0, value);
+		buckets.incrementAndGet(indexOf(nonNegativeValue));
+		max.accumulateAndGet(nonNegativeValue, Math::max);
+	}
+
+	static int indexOf(long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) ((value >>> shift) & SUB_BUCKET_MASK);
+		return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+	}
+
+	static long highestValueInBucket(int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		long lowestValue = (SUB_BUCKETS + subBucket) << shift;
+		return lowestValue + (1L << shift) - 1;
+	}
+
+	public long count() {
+		long count = 0;
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			count += buckets.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * percentile returns an approximation of the value below which the specified fraction of the
+	 * recorded values are, never more than the largest recorded value.
+	 * 
+	 * @param fraction
+	 *            The fraction, between 0 and 1, for instance 0.99 for the 99th percentile
+	 * @return A long with the value at the percentile, 0 if no values are recorded
+	 */
+	public long percentile(double fraction) {
+		long count = count();
+		if (count == 0) {
+			return 0;
+		}
+		long wanted = Math.max(1, (long) Math.ceil(fraction * count));
+		long seen = 0;
+		for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= wanted) {
+				return Math.min(highestValueInBucket(i), max());
+			}
+		}
+		return max();
+	}
+
+	public long max() {
+		return max.get();
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpRequest.Builder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * MultipartRequest builds a multipart/form-data request. The request body is a
+ * {@link BodyPublisher} that concatenates the publishers of each part. Part content is only read
+ * when the request is sent, one part at a time and at the pace the http client requests data, so
+ * the body is never held in memory as a whole. If the length of every part is known the body gets
+ * a known content length and is sent with a fixed length, otherwise it is sent chunked.
+ * <p>
+ * Each request uses its own long random boundary, so that the boundary does not occur in the
+ * content of the parts. The boundary lines and the fixed parts of the part headers are encoded to
+ * bytes once and are then published as they are.
+ */
+final class MultipartRequest {
+	private static final String CONTENT_TYPE = "Content-Type";
+	private static final String DEFAULT_FILE_CONTENT_TYPE = "application/octet-stream";
+	private static final String BOUNDARY_PREFIX = "----CoraFormBoundary";
+	private static final int BOUNDARY_RANDOM_BYTES = 16;
+	private static final SecureRandom RANDOM = new SecureRandom();
+	private static final Charset UTF_8 = StandardCharsets.UTF_8;
+	private static final byte[] CRLF = "\r\n".getBytes(UTF_8);
+	private static final byte[] DASHES = "--".getBytes(UTF_8);
+	private static final byte[] FORM_DATA_NAME = "Content-Disposition: form-data; name=\""
+			.getBytes(UTF_8);
+	private static final byte[] FILENAME = "\"; filename=\"".getBytes(UTF_8);
+	private static final byte[] END_QUOTE = "\"".getBytes(UTF_8);
+	private static final byte[] FORM_FIELD_CONTENT_TYPE = ("Content-Type: text/plain; charset="
+			+ UTF_8).getBytes(UTF_8);
+	private static final byte[] CONTENT_TYPE_PREFIX = "Content-Type: ".getBytes(UTF_8);
+	private static final byte[] BINARY_TRANSFER_ENCODING = "Content-Transfer-Encoding: binary"
+			.getBytes(UTF_8);
+
+	private Builder builder;
+	private String boundary;
+	private byte[] boundaryLine;
+	private byte[] closingBoundaryLine;
+	private List<BodyPublisher> publishers = new ArrayList<>();
+
+	MultipartRequest(Builder builder) {
+		this.builder = builder;
+		boundary = createRandomBoundary();
+		boundaryLine = concat(DASHES, boundary.getBytes(UTF_8), CRLF);
+		closingBoundaryLine = concat(DASHES, boundary.getBytes(UTF_8), DASHES, CRLF);
+	}
+
+	private String createRandomBoundary() {
+		byte[] randomBytes = new byte[BOUNDARY_RANDOM_BYTES];
+		RANDOM.nextBytes(randomBytes);
+		return BOUNDARY_PREFIX + HexFormat.of().formatHex(randomBytes);
+	}
+
+	private static byte[] concat(byte[]... parts) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (byte[] part : parts) {
+			out.writeBytes(part);
+		}
+		return out.toByteArray();
+	}
+
+	void addHeaderField(String name, String value) {
+		throwErrorIfPartsAlreadyAdded(name, value);
+		builder.setHeader(name, value);
+	}
+
+	private void throwErrorIfPartsAlreadyAdded(String name, String value) {
+		if (!publishers.isEmpty()) {
+			throw new RuntimeException(
+					"Headers can not be set after connection is setup on multipart requests, headerName: "
+							+ name + " headerValue: " + value);
+		}
+	}
+
+	void addFormField(String name, String value) {
+		byte[] formFieldInfo = concat(FORM_DATA_NAME, name.getBytes(UTF_8), END_QUOTE, CRLF,
+				FORM_FIELD_CONTENT_TYPE, CRLF, CRLF);
+		addPart(formFieldInfo, BodyPublishers.ofString(value, UTF_8));
+	}
+
+	private void addPart(byte[] partInfo, BodyPublisher partBody) {
+		publishers.add(BodyPublishers.ofByteArray(boundaryLine));
+		publishers.add(BodyPublishers.ofByteArray(partInfo));
+		publishers.add(partBody);
+		publishers.add(BodyPublishers.ofByteArray(CRLF));
+	}
+
+	void addFilePart(String fieldName, String fileName, InputStream stream, long size) {
+		String contentType = guessContentType(fileName);
+		addPart(createFileInfo(fieldName, fileName, contentType),
+				createPublisherWithLength(
+						BodyPublishers.ofInputStream(new SingleUseStreamSupplier(stream)), size));
+	}
+
+	private BodyPublisher createPublisherWithLength(BodyPublisher publisher, long size) {
+		if (size == 0) {
+			return BodyPublishers.noBody();
+		}
+		if (size > 0) {
+			return BodyPublishers.fromPublisher(publisher, size);
+		}
+		return publisher;
+	}
+
+	private byte[] createFileInfo(String fieldName, String fileName, String contentType) {
+		return concat(FORM_DATA_NAME, fieldName.getBytes(UTF_8), FILENAME,
+				fileName.getBytes(UTF_8), END_QUOTE, CRLF,
+				CONTENT_TYPE_PREFIX, contentType.getBytes(UTF_8), CRLF,
+				BINARY_TRANSFER_ENCODING, CRLF, CRLF);
+	}
+
+	void addFilePart(String fieldName, Path file) throws IOException {
+		String fileName = file.getFileName().toString();
+		String contentType = probeContentType(file, fileName);
+		addPart(createFileInfo(fieldName, fileName, contentType), BodyPublishers.ofFile(file));
+	}
+
+	private String probeContentType(Path file, String fileName) throws IOException {
+		String contentType = Files.probeContentType(file);
+		return contentType != null ? contentType : guessContentType(fileName);
+	}
+
+	void addFilePart(String fieldName, String fileName, FileChannel channel) throws IOException {
+		String contentType = guessContentType(fileName);
+		addPart(createFileInfo(fieldName, fileName, contentType),
+				new FileChannelBodyPublisher(channel));
+	}
+
+	private String guessContentType(String fileName) {
+		String contentType = URLConnection.guessContentTypeFromName(fileName);
+		return contentType != null ? contentType : DEFAULT_FILE_CONTENT_TYPE;
+	}
+
+	HttpRequest createRequest() {
+		builder.setHeader(CONTENT_TYPE, "multipart/form-data; boundary=" + boundary);
+		builder.setHeader("User-Agent", "HttpMultipartUploader Agent");
+		return builder.method("POST", createBodyPublisher()).build();
+	}
+
+	private BodyPublisher createBodyPublisher() {
+		List<BodyPublisher> allPublishers = new ArrayList<>(publishers);
+		allPublishers.add(BodyPublishers.ofByteArray(closingBoundaryLine));
+		return BodyPublishers.concat(allPublishers.toArray(BodyPublisher[]::new));
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * PooledInflaterInputStream inflates a stream using an Inflater from an {@link InflaterPool}, and
+ * returns the Inflater to the pool when the stream is closed. If gzip is set the stream is the
+ * deflate data of a gzip member, whose header has already been read, and the crc and size in the
+ * gzip trailer are verified when the end of the data is reached.
+ */
+final class PooledInflaterInputStream extends InflaterInputStream {
+	private static final int BUFFER_SIZE = 8192;
+	private static final int TRAILER_SIZE = 8;
+	private static final long UINT_MASK = 0xffffffffL;
+
+	private final InflaterPool pool;
+	private final boolean gzip;
+	private final CRC32 crc = new CRC32();
+	private boolean trailerVerified = false;
+	private boolean closed = false;
+
+	PooledInflaterInputStream(InputStream in, InflaterPool pool, boolean gzip) {
+		this(in, pool.acquire(), pool, gzip);
+	}
+
+	private PooledInflaterInputStream(InputStream in, Inflater inflater, InflaterPool pool,
+			boolean gzip) {
+		super(in, inflater, BUFFER_SIZE);
+		this.pool = pool;
+		this.gzip = gzip;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int length) throws IOException {
+		int read = super.read(b, off, length);
+		if (gzip) {
+			updateCrcOrVerifyTrailer(b, off, read);
+		}
+		return read;
+	}
+
+	private void updateCrcOrVerifyTrailer(byte[] b, int off, int read) throws IOException {
+		if (read > 0) {
+			crc.update(b, off, read);
+		} else if (read == -1 && !trailerVerified) {
+			trailerVerified = true;
+			verifyTrailer(readTrailer());
+		}
+	}
+
+	private byte[] readTrailer() throws IOException {
+		int remaining = inf.getRemaining();
+		InputStream trailerStream = new SequenceInputStream(
+				new ByteArrayInputStream(buf, len - remaining, remaining), in);
+		byte[] trailer = trailerStream.readNBytes(TRAILER_SIZE);
+		if (trailer.length < TRAILER_SIZE) {
+			throw new EOFException("Unexpected end of gzip trailer");
+		}
+		return trailer;
+	}
+
+	private void verifyTrailer(byte[] trailer) throws IOException {
+		if (readUnsignedInt(trailer, 0) != crc.getValue()
+				|| readUnsignedInt(trailer, 4) != (inf.getBytesWritten() & UINT_MASK)) {
+			throw new ZipException("Corrupt gzip trailer");
+		}
+	}
+
+	private static long readUnsignedInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xffL) | (bytes[offset + 1] & 0xffL) << 8
+				| (bytes[offset + 2] & 0xffL) << 16 | (bytes[offset + 3] & 0xffL) << 24;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			try {
+				super.close();
+			} finally {
+				pool.release(inf);
+			}
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.function.Supplier;
+
+/**
+ * ReplayableBodyPublisher publishes a request body that can be sent more than once, such as when a
+ * request is retried, by opening a new stream from its supplier for every subscription.
+ * <p>
+ * A body of known length is sent with a Content-Length header, a body of unknown length is sent
+ * using chunked transfer encoding.
+ */
+final class ReplayableBodyPublisher implements BodyPublisher {
+	static final long UNKNOWN_LENGTH = -1;
+	private final Supplier<InputStream> streamSupplier;
+	private final BodyPublisher publisher;
+
+	private ReplayableBodyPublisher(Supplier<InputStream> streamSupplier, long contentLength) {
+		this.streamSupplier = streamSupplier;
+		publisher = createPublisher(streamSupplier, contentLength);
+	}
+
+	static ReplayableBodyPublisher ofSupplier(Supplier<InputStream> streamSupplier,
+			long contentLength) {
+		if (contentLength < UNKNOWN_LENGTH) {
+			throw new IllegalArgumentException(
+					"Content length must be " + UNKNOWN_LENGTH + " or larger: " + contentLength);
+		}
+		return new ReplayableBodyPublisher(streamSupplier, contentLength);
+	}
+
+	private static BodyPublisher createPublisher(Supplier<InputStream> streamSupplier,
+			long contentLength) {
+		if (contentLength == 0) {
+			return BodyPublishers.noBody();
+		}
+		BodyPublisher streamPublisher = BodyPublishers.ofInputStream(streamSupplier);
+		if (contentLength == UNKNOWN_LENGTH) {
+			return streamPublisher;
+		}
+		return BodyPublishers.fromPublisher(streamPublisher, contentLength);
+	}
+
+	static ReplayableBodyPublisher ofFileRange(Path file, long offset, long length)
+			throws IOException {
+		long fileSize = Files.size(file);
+		if (offset < 0 || length < 0 || offset > fileSize - length) {
+			throw new IllegalArgumentException("Range with offset: " + offset + " and length: "
+					+ length + " is outside file of size: " + fileSize);
+		}
+		return ofSupplier(() -> openRange(file, offset, length), length);
+	}
+
+	private static InputStream openRange(Path file, long offset, long length) {
+		try {
+			return openRange(FileChannel.open(file), offset, length);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	static InputStream openRange(FileChannel channel, long offset, long length)
+			throws IOException {
+		try {
+			channel.position(offset);
+			return new RangeInputStream(Channels.newInputStream(channel), length);
+		} catch (IOException | RuntimeException e) {
+			closeAfterFailure(channel, e);
+			throw e;
+		}
+	}
+
+	private static void closeAfterFailure(FileChannel channel, Exception failure) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			failure.addSuppressed(e);
+		}
+	}
+
+	InputStream openStream() {
+		return streamSupplier.get();
+	}
+
+	@Override
+	public long contentLength() {
+		return publisher.contentLength();
+	}
+
+	@Override
+	public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+		publisher.subscribe(subscriber);
+	}
+
+	private static final class RangeInputStream extends FilterInputStream {
+		private long remaining;
+
+		RangeInputStream(InputStream in, long length) {
+			super(in);
+			remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining == 0) {
+				return -1;
+			}
+			int read = super.read();
+			if (read != -1) {
+				remaining--;
+			}
+			return read;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining == 0) {
+				return -1;
+			}
+			int read = super.read(b, off, (int) Math.min(len, remaining));
+			if (read > 0) {
+				remaining -= read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(super.available(), remaining);
+		}
+	}
+}
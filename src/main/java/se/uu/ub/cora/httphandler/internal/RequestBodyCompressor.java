@@ -0,0 +1,88 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpRequest.Builder;
+import java.util.function.Supplier;
+
+/**
+ * RequestBodyCompressor creates body publishers that gzip compress request bodies of at least
+ * minimumSize bytes while they are sent, and sets the Content-Encoding header for them. Smaller
+ * bodies are sent uncompressed, as compressing them costs more than it saves.
+ * <p>
+ * The size of a stream body is not known in advance, so at most minimumSize bytes are read from
+ * the stream before deciding if it is to be compressed. A stream that ends before that is sent
+ * uncompressed from the bytes read. A body from a stream supplier is sent uncompressed if its
+ * known length is smaller than minimumSize, and compressed otherwise, without reading it in
+ * advance.
+ */
+public final class RequestBodyCompressor {
+	private static final String CONTENT_ENCODING = "Content-Encoding";
+	private static final String GZIP = "gzip";
+	private final int minimumSize;
+
+	public RequestBodyCompressor(int minimumSize) {
+		this.minimumSize = minimumSize;
+	}
+
+	BodyPublisher createPublisher(Builder builder, byte[] body) {
+		if (body.length == 0 || body.length < minimumSize) {
+			return BodyPublishers.ofByteArray(body);
+		}
+		builder.setHeader(CONTENT_ENCODING, GZIP);
+		return BodyPublishers
+				.ofInputStream(() -> new GzipCompressingInputStream(new ByteArrayInputStream(body)));
+	}
+
+	BodyPublisher createPublisher(Builder builder, InputStream body) throws IOException {
+		byte[] start = body.readNBytes(Math.max(minimumSize, 1));
+		if (start.length < minimumSize || start.length == 0) {
+			return BodyPublishers.ofByteArray(start);
+		}
+		builder.setHeader(CONTENT_ENCODING, GZIP);
+		SingleUseStreamSupplier wholeBody = new SingleUseStreamSupplier(
+				new SequenceInputStream(new ByteArrayInputStream(start), body));
+		return BodyPublishers.ofInputStream(() -> new GzipCompressingInputStream(wholeBody.get()));
+	}
+
+	BodyPublisher createPublisher(Builder builder, Supplier<InputStream> body, long contentLength) {
+		if (contentLength != ReplayableBodyPublisher.UNKNOWN_LENGTH
+				&& (contentLength < minimumSize || contentLength == 0)) {
+			return ReplayableBodyPublisher.ofSupplier(body, contentLength);
+		}
+		builder.setHeader(CONTENT_ENCODING, GZIP);
+		return ReplayableBodyPublisher.ofSupplier(() -> new GzipCompressingInputStream(body.get()),
+				ReplayableBodyPublisher.UNKNOWN_LENGTH);
+	}
+
+	static boolean isContentEncodingHeader(String name) {
+		return CONTENT_ENCODING.equalsIgnoreCase(name);
+	}
+
+	public int onlyForTestGetMinimumSize() {
+		return minimumSize;
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * RequestDeadline is the point in time by which a request, including reading its response body,
+ * must be complete. It is taken once when the request is started, and every attempt to send the
+ * request and every read of its body is given only the time that is left until the deadline.
+ */
+final class RequestDeadline {
+	static final RequestDeadline NONE = new RequestDeadline(null, 0);
+	private static final long MIN_REMAINING_NANOS = 1;
+	private final Duration timeout;
+	private final long deadlineNanos;
+
+	private RequestDeadline(Duration timeout, long deadlineNanos) {
+		this.timeout = timeout;
+		this.deadlineNanos = deadlineNanos;
+	}
+
+	/**
+	 * after returns a deadline the timeout from now, or {@link #NONE} if the timeout is null.
+	 */
+	static RequestDeadline after(Duration timeout) {
+		if (timeout == null) {
+			return NONE;
+		}
+		return new RequestDeadline(timeout, System.nanoTime() + timeout.toNanos());
+	}
+
+	/**
+	 * of returns a deadline the timeout of the request from now, or {@link #NONE} if the request
+	 * has no timeout. Request senders that read the body of a response before returning it use it
+	 * to read the body within the time the request was given.
+	 */
+	static RequestDeadline of(HttpRequest request) {
+		return after(request.timeout().orElse(null));
+	}
+
+	boolean isSet() {
+		return timeout != null;
+	}
+
+	Duration getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * remainingNanos returns the time left until the deadline, that is zero or less once the
+	 * deadline has passed.
+	 */
+	long remainingNanos() {
+		return deadlineNanos - System.nanoTime();
+	}
+
+	/**
+	 * remaining returns the time left until the deadline, to be used as the timeout of a request.
+	 * As the timeout of a request must be positive, at least one nanosecond is returned, so that a
+	 * request sent after the deadline times out at once.
+	 */
+	Duration remaining() {
+		return Duration.ofNanos(Math.max(MIN_REMAINING_NANOS, remainingNanos()));
+	}
+
+	/**
+	 * limit returns the body of the response wrapped in a {@link DeadlineInputStream} that closes
+	 * the connection of the response at the deadline, or the body as is if no deadline is set.
+	 */
+	InputStream limit(HttpResponse<InputStream> response) {
+		if (!isSet()) {
+			return response.body();
+		}
+		return new DeadlineInputStream(response.body(),
+				ResponseWithBody.getConnectionBody(response), timeout, remainingNanos());
+	}
+
+	/**
+	 * limitBody returns the response with its body limited as by
+	 * {@link #limit(HttpResponse)}.
+	 */
+	HttpResponse<InputStream> limitBody(HttpResponse<InputStream> response) {
+		if (!isSet()) {
+			return response;
+		}
+		return new ResponseWithBody(response, limit(response));
+	}
+}
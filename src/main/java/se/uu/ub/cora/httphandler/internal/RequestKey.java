@@ -0,0 +1,53 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * RequestKey identifies a request by its method, URI and headers, so that requests with different
+ * headers, for instance different credentials or Accept headers, are kept apart. Header names are
+ * compared ignoring case. A header that does not identify the response, such as the Cache-Control
+ * of a request to a cache, can be left out of the key.
+ */
+record RequestKey(String method, URI uri, Map<String, List<String>> headers) {
+
+	static RequestKey of(HttpRequest request) {
+		return new RequestKey(request.method(), request.uri(), getHeaders(request));
+	}
+
+	static RequestKey ignoringHeader(HttpRequest request, String ignoredHeader) {
+		Map<String, List<String>> headers = getHeaders(request);
+		headers.remove(ignoredHeader.toLowerCase(Locale.ROOT));
+		return new RequestKey(request.method(), request.uri(), headers);
+	}
+
+	private static Map<String, List<String>> getHeaders(HttpRequest request) {
+		Map<String, List<String>> headers = new TreeMap<>();
+		request.headers().map()
+				.forEach((name, values) -> headers.put(name.toLowerCase(Locale.ROOT), values));
+		return headers;
+	}
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+
+/**
+ * RequestTimeoutIOException is thrown when the response body of a request is read after the
+ * deadline of the request, see {@link RequestDeadline}.
+ */
+final class RequestTimeoutIOException extends HttpTimeoutException {
+	private static final long serialVersionUID = 1L;
+
+	RequestTimeoutIOException(Duration timeout) {
+		super("Request timed out after " + timeout);
+	}
+}
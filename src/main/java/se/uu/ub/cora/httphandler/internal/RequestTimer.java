@@ -0,0 +1,100 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpRequest;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import se.uu.ub.cora.httphandler.HttpRequestEvent;
+import se.uu.ub.cora.httphandler.HttpRequestListener;
+
+/**
+ * RequestTimer measures one request and reports it to a {@link HttpRequestListener}. The event is
+ * reported only once, even if both completed and failed are called, or are called more than once.
+ * The request is counted as in flight from when the timer is started until its response headers
+ * are received or it is reported, whichever comes first.
+ */
+final class RequestTimer {
+	private static final int NO_STATUS = -1;
+	private static final long UNKNOWN = -1;
+
+	private final HttpRequestListener listener;
+	private final HttpRequest request;
+	private final InFlightRequests inFlightRequests;
+	private final int concurrentRequests;
+	private final long startNanos;
+	private final AtomicBoolean reported = new AtomicBoolean();
+	private final AtomicBoolean inFlight = new AtomicBoolean(true);
+	private volatile long timeToFirstByteNanos = UNKNOWN;
+
+	private RequestTimer(HttpRequestListener listener, HttpRequest request,
+			InFlightRequests inFlightRequests) {
+		this.listener = listener;
+		this.request = request;
+		this.inFlightRequests = inFlightRequests;
+		concurrentRequests = inFlightRequests.started(getAuthority());
+		startNanos = System.nanoTime();
+	}
+
+	static RequestTimer start(HttpRequestListener listener, HttpRequest request,
+			InFlightRequests inFlightRequests) {
+		return new RequestTimer(listener, request, inFlightRequests);
+	}
+
+	private String getAuthority() {
+		return request.uri().getAuthority();
+	}
+
+	void headersReceived() {
+		timeToFirstByteNanos = System.nanoTime() - startNanos;
+		leaveInFlight();
+	}
+
+	private void leaveInFlight() {
+		if (inFlight.compareAndSet(true, false)) {
+			inFlightRequests.completed(getAuthority());
+		}
+	}
+
+	void completed(int statusCode, Version version, long responseBytes) {
+		report(statusCode, version, timeToFirstByteNanos, responseBytes, null);
+	}
+
+	void failed(Throwable failure) {
+		report(NO_STATUS, null, UNKNOWN, 0, failure);
+	}
+
+	private void report(int statusCode, Version version, long timeToFirstByte,
+			long responseBytes, Throwable failure) {
+		if (reported.compareAndSet(false, true)) {
+			long totalTimeNanos = System.nanoTime() - startNanos;
+			leaveInFlight();
+			listener.requestCompleted(new HttpRequestEvent(request.method(), request.uri(),
+					statusCode, version, timeToFirstByte, totalTimeNanos, getRequestBytes(),
+					responseBytes, concurrentRequests, failure));
+		}
+	}
+
+	private long getRequestBytes() {
+		return request.bodyPublisher().map(HttpRequest.BodyPublisher::contentLength)
+				.orElse(0L);
+	}
+}
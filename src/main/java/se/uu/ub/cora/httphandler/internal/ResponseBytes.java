@@ -0,0 +1,123 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ResponseBytes reads the body of a response as bytes, without decoding it. The body is read into
+ * memory presized from the Content-Length of the response, so a body of the announced length is
+ * read without growing or copying it.
+ * <p>
+ * The memory is only presized once the first byte of the body has been read. A body whose
+ * Content-Length is larger than the maximum response size fails on its first read, so the presize
+ * never exceeds the maximum response size.
+ */
+final class ResponseBytes {
+	private static final int CHUNK_SIZE = 65536;
+	private static final int MAX_PRESIZE = 1 << 24;
+
+	private ResponseBytes() {
+		// prevent instantiation
+	}
+
+	static byte[] read(HttpResponse<InputStream> response) throws IOException {
+		try (InputStream body = response.body()) {
+			int firstByte = body.read();
+			if (firstByte == -1) {
+				return new byte[0];
+			}
+			byte[] bytes = new byte[Math.max(calculateInitialSize(response), 1)];
+			bytes[0] = (byte) firstByte;
+			int length = 1;
+			int read;
+			while ((read = body.read(bytes, length, bytes.length - length)) != -1) {
+				length += read;
+				if (length == bytes.length) {
+					int nextByte = body.read();
+					if (nextByte == -1) {
+						return bytes;
+					}
+					bytes = Arrays.copyOf(bytes, calculateGrownSize(bytes.length));
+					bytes[length++] = (byte) nextByte;
+				}
+			}
+			return Arrays.copyOf(bytes, length);
+		}
+	}
+
+	private static int calculateInitialSize(HttpResponse<InputStream> response) {
+		long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+		if (contentLength < 0) {
+			return CHUNK_SIZE;
+		}
+		return (int) Math.min(contentLength, MAX_PRESIZE);
+	}
+
+	private static int calculateGrownSize(int size) {
+		int grownSize = Math.max(size * 2, CHUNK_SIZE);
+		if (grownSize < 0) {
+			throw new OutOfMemoryError("Response body is too large for a byte array");
+		}
+		return grownSize;
+	}
+
+	/**
+	 * readBuffers reads the body into a list of read only buffers, that together hold the whole
+	 * body. The body is read in chunks that are never joined, so a large body does not need a
+	 * single large array.
+	 */
+	static List<ByteBuffer> readBuffers(HttpResponse<InputStream> response) throws IOException {
+		try (InputStream body = response.body()) {
+			List<ByteBuffer> buffers = new ArrayList<>();
+			int firstByte = body.read();
+			if (firstByte == -1) {
+				return buffers;
+			}
+			byte[] chunk = new byte[Math.max(calculateInitialSize(response), 1)];
+			chunk[0] = (byte) firstByte;
+			int length = 1 + body.readNBytes(chunk, 1, chunk.length - 1);
+			while (length == chunk.length) {
+				buffers.add(wrapReadOnly(chunk, length));
+				int nextByte = body.read();
+				if (nextByte == -1) {
+					return buffers;
+				}
+				chunk = new byte[CHUNK_SIZE];
+				chunk[0] = (byte) nextByte;
+				length = 1 + body.readNBytes(chunk, 1, CHUNK_SIZE - 1);
+			}
+			if (length > 0) {
+				buffers.add(wrapReadOnly(chunk, length));
+			}
+			return buffers;
+		}
+	}
+
+	private static ByteBuffer wrapReadOnly(byte[] chunk, int length) {
+		return ByteBuffer.wrap(chunk, 0, length).asReadOnlyBuffer();
+	}
+}
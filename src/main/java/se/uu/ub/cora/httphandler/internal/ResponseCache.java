@@ -0,0 +1,115 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * ResponseCache keeps cached responses, bounded by the total number of body bytes. When a new
+ * response does not fit, the least recently used responses are evicted until it does. A response
+ * larger than a quarter of the cache size is never stored, so that one large response can not
+ * evict all others.
+ * <p>
+ * An off heap cache stores bodies in direct buffers outside the Java heap, so that cached bodies
+ * are not copied or scanned by the garbage collector. The direct memory of evicted bodies is
+ * released when their buffers are collected, and is limited by the JVM option
+ * <em>-XX:MaxDirectMemorySize</em>.
+ */
+final class ResponseCache {
+	private final long maxBytes;
+	private final boolean offHeap;
+	private final LinkedHashMap<RequestKey, CachedResponse> responses = new LinkedHashMap<>(16,
+			0.75f, true);
+	private long sizeInBytes = 0;
+
+	ResponseCache(long maxBytes, boolean offHeap) {
+		this.maxBytes = maxBytes;
+		this.offHeap = offHeap;
+	}
+
+	ByteBuffer createBody(byte[] bytes) {
+		if (offHeap) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+			buffer.put(bytes).flip();
+			return buffer.asReadOnlyBuffer();
+		}
+		return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+	}
+
+	boolean isOffHeap() {
+		return offHeap;
+	}
+
+	long getMaxEntrySize() {
+		return maxBytes / 4;
+	}
+
+	synchronized CachedResponse get(RequestKey key) {
+		return responses.get(key);
+	}
+
+	synchronized void put(RequestKey key, CachedResponse response) {
+		if (response.size() > getMaxEntrySize()) {
+			return;
+		}
+		remove(key);
+		responses.put(key, response);
+		sizeInBytes += response.size();
+		evictLeastRecentlyUsed();
+	}
+
+	private void evictLeastRecentlyUsed() {
+		Iterator<CachedResponse> iterator = responses.values().iterator();
+		while (sizeInBytes > maxBytes) {
+			sizeInBytes -= iterator.next().size();
+			iterator.remove();
+		}
+	}
+
+	synchronized void remove(RequestKey key) {
+		CachedResponse removed = responses.remove(key);
+		if (removed != null) {
+			sizeInBytes -= removed.size();
+		}
+	}
+
+	synchronized void removeAllFor(URI uri) {
+		Iterator<Entry<RequestKey, CachedResponse>> iterator = responses.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Entry<RequestKey, CachedResponse> entry = iterator.next();
+			if (entry.getKey().uri().equals(uri)) {
+				sizeInBytes -= entry.getValue().size();
+				iterator.remove();
+			}
+		}
+	}
+
+	synchronized long getSizeInBytes() {
+		return sizeInBytes;
+	}
+
+	synchronized int getNumberOfResponses() {
+		return responses.size();
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * ResponseDownload writes the body of a successful response to a file or channel through one
+ * fixed buffer, so that bodies of any size can be saved without being held in memory.
+ * <p>
+ * The JDK http client hands over the body in heap buffers whatever body handler is used, so
+ * reading it from the stream of the request senders costs no more heap than
+ * {@link HttpResponse.BodyHandlers#ofFile(Path)}, and keeps decompression, size limits, timeouts
+ * and instrumentation working for downloads.
+ */
+final class ResponseDownload {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String TEMPORARY_SUFFIX = ".part";
+
+	private ResponseDownload() {
+		// prevent instantiation
+	}
+
+	static long toFile(HttpResponse<InputStream> response, Path file) throws IOException {
+		ensureSuccessfulResponse(response);
+		Path absoluteFile = file.toAbsolutePath();
+		Path temporaryFile = createTemporaryFileNextTo(absoluteFile);
+		try {
+			long written = writeToTemporaryFile(response, temporaryFile);
+			moveAtomically(temporaryFile, absoluteFile);
+			return written;
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temporaryFile);
+			throw e;
+		}
+	}
+
+	static Path createTemporaryFileNextTo(Path absoluteFile) throws IOException {
+		return Files.createTempFile(absoluteFile.getParent(),
+				absoluteFile.getFileName().toString(), TEMPORARY_SUFFIX);
+	}
+
+	private static long writeToTemporaryFile(HttpResponse<InputStream> response,
+			Path temporaryFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+			long written = writeBody(response, channel);
+			channel.force(false);
+			return written;
+		}
+	}
+
+	static void moveAtomically(Path temporaryFile, Path file) throws IOException {
+		try {
+			Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	static long toChannel(HttpResponse<InputStream> response, WritableByteChannel channel)
+			throws IOException {
+		ensureSuccessfulResponse(response);
+		return writeBody(response, channel);
+	}
+
+	static void ensureSuccessfulResponse(HttpResponse<InputStream> response)
+			throws IOException {
+		int statusCode = response.statusCode();
+		if (statusCode < 200 || statusCode > 299) {
+			response.body().close();
+			throw new IOException("Not a successful response code: " + statusCode);
+		}
+	}
+
+	private static long writeBody(HttpResponse<InputStream> response, WritableByteChannel channel)
+			throws IOException {
+		try (InputStream body = response.body()) {
+			byte[] bytes = new byte[BUFFER_SIZE];
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			long written = 0;
+			int read;
+			while ((read = body.read(bytes)) != -1) {
+				buffer.clear().limit(read);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				written += read;
+			}
+			return written;
+		}
+	}
+}
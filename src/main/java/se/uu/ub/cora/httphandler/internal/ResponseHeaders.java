@@ -0,0 +1,119 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.net.http.HttpHeaders;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ResponseHeaders is a read only view of the headers of a response as a map from header name to
+ * value, where names are case insensitive. The headers are not copied. A header with one value
+ * is returned as it is, and the comma separated value of a header with many values is joined the
+ * first time it is asked for, in any casing, and then kept.
+ */
+final class ResponseHeaders extends AbstractMap<String, String> {
+	private static final String SEPARATOR = ", ";
+	private final Map<String, List<String>> headers;
+	private final Map<String, String> joinedValues = new ConcurrentHashMap<>();
+	private Set<Entry<String, String>> entrySet;
+
+	private ResponseHeaders(HttpHeaders headers) {
+		this.headers = headers.map();
+	}
+
+	static Map<String, String> toCommaSeparatedMap(HttpHeaders responseHeaders) {
+		return new ResponseHeaders(responseHeaders);
+	}
+
+	@Override
+	public String get(Object name) {
+		if (!(name instanceof String headerName)) {
+			return null;
+		}
+		List<String> values = headers.get(headerName);
+		if (values == null) {
+			return null;
+		}
+		return toCommaSeparatedValue(headerName, values);
+	}
+
+	private String toCommaSeparatedValue(String name, List<String> values) {
+		if (values.size() == 1) {
+			return values.get(0);
+		}
+		return joinedValues.computeIfAbsent(name.toLowerCase(Locale.ROOT),
+				key -> String.join(SEPARATOR, values));
+	}
+
+	@Override
+	public boolean containsKey(Object name) {
+		return name instanceof String && headers.containsKey(name);
+	}
+
+	@Override
+	public int size() {
+		return headers.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return headers.isEmpty();
+	}
+
+	@Override
+	public Set<Entry<String, String>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new EntrySet();
+		}
+		return entrySet;
+	}
+
+	private final class EntrySet extends AbstractSet<Entry<String, String>> {
+		@Override
+		public Iterator<Entry<String, String>> iterator() {
+			Iterator<Entry<String, List<String>>> headerIterator = headers.entrySet().iterator();
+			return new Iterator<>() {
+				@Override
+				public boolean hasNext() {
+					return headerIterator.hasNext();
+				}
+
+				@Override
+				public Entry<String, String> next() {
+					Entry<String, List<String>> header = headerIterator.next();
+					return new SimpleImmutableEntry<>(header.getKey(),
+							toCommaSeparatedValue(header.getKey(), header.getValue()));
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return headers.size();
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * ResponseText decodes the body of a response to text. The body is decoded while it is read, into
+ * a StringBuilder presized from the Content-Length of the response, so the body is never held
+ * both as bytes and as text. The text is kept exactly as sent, including line breaks.
+ * <p>
+ * The StringBuilder is only created once the first part of the body has been read. A body whose
+ * Content-Length is larger than the maximum response size fails on its first read, so the presize
+ * never exceeds the maximum response size.
+ * <p>
+ * The body is decoded using the charset from the Content-Type of the response, or UTF-8 if the
+ * response has no charset or a charset that is not supported.
+ */
+final class ResponseText {
+	private static final int BUFFER_SIZE = 8192;
+	private static final int MAX_PRESIZE = 1 << 24;
+	private static final String CHARSET_PARAMETER = "charset=";
+
+	private ResponseText() {
+		// prevent instantiation
+	}
+
+	static String read(HttpResponse<InputStream> response) throws IOException {
+		try (Reader reader = createReader(response)) {
+			char[] buffer = new char[BUFFER_SIZE];
+			int read = reader.read(buffer);
+			if (read == -1) {
+				return "";
+			}
+			StringBuilder text = new StringBuilder(calculateInitialCapacity(response, read));
+			do {
+				text.append(buffer, 0, read);
+			} while ((read = reader.read(buffer)) != -1);
+			return text.toString();
+		}
+	}
+
+	private static int calculateInitialCapacity(HttpResponse<InputStream> response,
+			int firstRead) {
+		long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+		if (contentLength < 0) {
+			return BUFFER_SIZE;
+		}
+		return (int) Math.max(firstRead, Math.min(contentLength, MAX_PRESIZE));
+	}
+
+	static Reader createReader(HttpResponse<InputStream> response) {
+		return new InputStreamReader(response.body(), getCharset(response.headers()));
+	}
+
+	static Charset getCharset(HttpHeaders headers) {
+		return headers.firstValue("Content-Type").flatMap(ResponseText::findCharsetParameter)
+				.flatMap(ResponseText::toSupportedCharset).orElse(StandardCharsets.UTF_8);
+	}
+
+	private static Optional<String> findCharsetParameter(String contentType) {
+		String[] parameters = contentType.split(";");
+		for (int i = 1; i < parameters.length; i++) {
+			String parameter = parameters[i].trim();
+			if (parameter.regionMatches(true, 0, CHARSET_PARAMETER, 0,
+					CHARSET_PARAMETER.length())) {
+				return Optional.of(removeQuotes(parameter.substring(CHARSET_PARAMETER.length())));
+			}
+		}
+		return Optional.empty();
+	}
+
+	private static String removeQuotes(String value) {
+		String trimmed = value.trim();
+		if (trimmed.length() > 1 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+			return trimmed.substring(1, trimmed.length() - 1);
+		}
+		return trimmed;
+	}
+
+	private static Optional<Charset> toSupportedCharset(String charsetName) {
+		try {
+			return Optional.of(Charset.forName(charsetName));
+		} catch (IllegalArgumentException e) {
+			return Optional.empty();
+		}
+	}
+}
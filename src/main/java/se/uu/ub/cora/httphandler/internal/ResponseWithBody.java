@@ -0,0 +1,89 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Optional;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * ResponseWithBody is a response that delegates everything but the body and headers to another
+ * response, used by request senders that need to replace the body of a response with a wrapping
+ * stream.
+ */
+record ResponseWithBody(HttpResponse<InputStream> response, InputStream body, HttpHeaders headers)
+		implements HttpResponse<InputStream> {
+
+	ResponseWithBody(HttpResponse<InputStream> response, InputStream body) {
+		this(response, body, response.headers());
+	}
+
+	/**
+	 * getConnectionBody returns the body of the innermost wrapped response, that for responses
+	 * from the http client is the stream reading from the connection.
+	 * 
+	 * @param response
+	 *            A response, possibly wrapped in one or more ResponseWithBody
+	 * @return The InputStream of the innermost response
+	 */
+	static InputStream getConnectionBody(HttpResponse<InputStream> response) {
+		HttpResponse<InputStream> innermost = response;
+		while (innermost instanceof ResponseWithBody wrapped) {
+			innermost = wrapped.response();
+		}
+		return innermost.body();
+	}
+
+	@Override
+	public int statusCode() {
+		return response.statusCode();
+	}
+
+	@Override
+	public HttpRequest request() {
+		return response.request();
+	}
+
+	@Override
+	public Optional<HttpResponse<InputStream>> previousResponse() {
+		return response.previousResponse();
+	}
+
+	@Override
+	public Optional<SSLSession> sslSession() {
+		return response.sslSession();
+	}
+
+	@Override
+	public URI uri() {
+		return response.uri();
+	}
+
+	@Override
+	public Version version() {
+		return response.version();
+	}
+}
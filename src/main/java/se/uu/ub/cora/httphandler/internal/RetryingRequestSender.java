@@ -0,0 +1,234 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import se.uu.ub.cora.httphandler.HttpRequestListener;
+import se.uu.ub.cora.httphandler.HttpRetryEvent;
+import se.uu.ub.cora.httphandler.RetryPolicy;
+
+/**
+ * RetryingRequestSender retries requests that fail in a way that is likely to be temporary,
+ * according to a {@link RetryPolicy}. Each retry is reported to the listener, if set.
+ * <p>
+ * All attempts share the timeout of the request, each retry is sent with the time that is left of
+ * it, and a retry is not made if the time left is not longer than the delay before it. A request
+ * that has timed out waiting for its response is not retried, as it may have been processed and
+ * has used up its time, but a request that timed out connecting is.
+ * <p>
+ * If the last attempt fails with an exception, it is thrown with the exceptions of the earlier
+ * attempts added as suppressed exceptions. If the last attempt is answered with 503 or 429, that
+ * response is returned.
+ */
+public final class RetryingRequestSender implements RequestSender {
+	private static final int NO_STATUS = -1;
+	private static final long NO_RETRY = -1;
+	private static final Set<Integer> RETRYABLE_STATUS_CODES = Set.of(429, 503);
+	private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "PUT", "DELETE",
+			"OPTIONS");
+
+	private final RequestSender requestSender;
+	private final RetryPolicy retryPolicy;
+	private final HttpRequestListener listener;
+	private final Sleeper sleeper;
+
+	public RetryingRequestSender(RequestSender requestSender, RetryPolicy retryPolicy,
+			HttpRequestListener listener) {
+		this(requestSender, retryPolicy, listener, TimeUnit.NANOSECONDS::sleep);
+	}
+
+	RetryingRequestSender(RequestSender requestSender, RetryPolicy retryPolicy,
+			HttpRequestListener listener, Sleeper sleeper) {
+		this.requestSender = requestSender;
+		this.retryPolicy = retryPolicy;
+		this.listener = listener;
+		this.sleeper = sleeper;
+	}
+
+	@Override
+	public HttpResponse<InputStream> send(HttpRequest request)
+			throws IOException, InterruptedException {
+		RequestDeadline deadline = RequestDeadline.of(request);
+		List<Exception> earlierFailures = new ArrayList<>();
+		for (int attempt = 1;; attempt++) {
+			HttpResponse<InputStream> response = sendAttempt(request, deadline, attempt,
+					earlierFailures);
+			if (response != null) {
+				long retryDelay = calculateRetryDelay(request, attempt, response);
+				if (retryDelay == NO_RETRY || !leavesTimeToRetry(deadline, retryDelay)) {
+					return response;
+				}
+				response.body().close();
+				waitBeforeRetry(new HttpRetryEvent(request.method(), request.uri(), attempt,
+						response.statusCode(), null, retryDelay));
+			}
+		}
+	}
+
+	private HttpResponse<InputStream> sendAttempt(HttpRequest request, RequestDeadline deadline,
+			int attempt, List<Exception> earlierFailures)
+			throws IOException, InterruptedException {
+		try {
+			return requestSender.send(createAttemptRequest(request, deadline, attempt));
+		} catch (IOException | RuntimeException e) {
+			long backoff = calculateBackoff(attempt);
+			if (attempt >= retryPolicy.getMaxAttempts() || !isRetryable(request, e)
+					|| !leavesTimeToRetry(deadline, backoff)) {
+				earlierFailures.forEach(e::addSuppressed);
+				throw e;
+			}
+			earlierFailures.add(e);
+			waitBeforeRetry(new HttpRetryEvent(request.method(), request.uri(), attempt,
+					NO_STATUS, e, backoff));
+			return null;
+		}
+	}
+
+	private HttpRequest createAttemptRequest(HttpRequest request, RequestDeadline deadline,
+			int attempt) {
+		if (attempt == 1 || !deadline.isSet()) {
+			return request;
+		}
+		return HttpRequest.newBuilder(request, (name, value) -> true)
+				.timeout(deadline.remaining()).build();
+	}
+
+	private boolean leavesTimeToRetry(RequestDeadline deadline, long delayNanos) {
+		return !deadline.isSet() || delayNanos < deadline.remainingNanos();
+	}
+
+	private boolean isRetryable(HttpRequest request, Exception failure) {
+		return isConnectFailure(failure) || (failure instanceof IOException
+				&& !(failure instanceof HttpTimeoutException)
+				&& isIdempotentAndReplayable(request));
+	}
+
+	private boolean isConnectFailure(Throwable failure) {
+		Throwable cause = failure;
+		while (cause != null) {
+			if (cause instanceof ConnectException || cause instanceof HttpConnectTimeoutException) {
+				return true;
+			}
+			cause = cause.getCause();
+		}
+		return false;
+	}
+
+	private boolean isIdempotentAndReplayable(HttpRequest request) {
+		return IDEMPOTENT_METHODS.contains(request.method())
+				&& request.bodyPublisher().map(this::isReplayable).orElse(true);
+	}
+
+	private boolean isReplayable(HttpRequest.BodyPublisher bodyPublisher) {
+		return bodyPublisher.contentLength() >= 0
+				|| bodyPublisher instanceof ReplayableBodyPublisher;
+	}
+
+	private long calculateRetryDelay(HttpRequest request, int attempt,
+			HttpResponse<InputStream> response) {
+		if (attempt >= retryPolicy.getMaxAttempts()
+				|| !RETRYABLE_STATUS_CODES.contains(response.statusCode())
+				|| !isIdempotentAndReplayable(request)) {
+			return NO_RETRY;
+		}
+		return response.headers().firstValue("Retry-After").map(this::parseRetryAfter)
+				.orElseGet(() -> calculateBackoff(attempt));
+	}
+
+	private long parseRetryAfter(String retryAfter) {
+		long delayNanos = parseRetryAfterAsNanos(retryAfter.trim());
+		if (delayNanos > retryPolicy.getMaxBackoff().toNanos()) {
+			return NO_RETRY;
+		}
+		return Math.max(0, delayNanos);
+	}
+
+	private long parseRetryAfterAsNanos(String retryAfter) {
+		try {
+			return TimeUnit.SECONDS.toNanos(Long.parseLong(retryAfter));
+		} catch (NumberFormatException e) {
+			return parseRetryAfterDate(retryAfter);
+		}
+	}
+
+	private long parseRetryAfterDate(String retryAfter) {
+		try {
+			ZonedDateTime retryAt = ZonedDateTime.parse(retryAfter,
+					DateTimeFormatter.RFC_1123_DATE_TIME);
+			return Duration.between(ZonedDateTime.now(retryAt.getZone()), retryAt).toNanos();
+		} catch (DateTimeParseException e) {
+			return 0;
+		}
+	}
+
+	private long calculateBackoff(int attempt) {
+		long initial = retryPolicy.getInitialBackoff().toNanos();
+		long max = retryPolicy.getMaxBackoff().toNanos();
+		long backoff = initial << Math.min(attempt - 1, 30);
+		if (backoff > max || backoff < initial) {
+			backoff = max;
+		}
+		long half = backoff / 2;
+		return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+	}
+
+	private void waitBeforeRetry(HttpRetryEvent event) throws InterruptedException {
+		if (listener != null) {
+			listener.requestRetried(event);
+		}
+		sleeper.sleep(event.delayNanos());
+	}
+
+	public RequestSender onlyForTestGetRequestSender() {
+		return requestSender;
+	}
+
+	public RetryPolicy onlyForTestGetRetryPolicy() {
+		return retryPolicy;
+	}
+
+	public HttpRequestListener onlyForTestGetListener() {
+		return listener;
+	}
+
+	/**
+	 * Sleeper waits between attempts.
+	 */
+	@FunctionalInterface
+	interface Sleeper {
+		void sleep(long nanos) throws InterruptedException;
+	}
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.Builder;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SegmentedDownload writes the body of a response to a file, resuming the transfer with a range
+ * request if it fails halfway, and fetching large bodies in parallel segments. Transfers are only
+ * resumed within one download, if the download fails its temporary file is removed and a later
+ * download starts from the beginning.
+ * <p>
+ * Resuming and segments are used only if the response has a known length, is not content encoded,
+ * has Accept-Ranges: bytes and a strong ETag or a Last-Modified date. The validator is sent as
+ * If-Range with every range request, so that a resource changed during the download fails it
+ * instead of mixing two versions in the file. Range requests ask for Accept-Encoding: identity,
+ * as the ranges are offsets in the unencoded body. Otherwise the body is written as by
+ * {@link ResponseDownload#toFile(HttpResponse, Path)}.
+ * <p>
+ * The body is written to a temporary file with the length of the body, using positional writes so
+ * that segments can be written in any order. Every segment is written on its own virtual thread,
+ * the first from the body of the response and the others from range requests. The file is renamed
+ * to its final name when all segments are complete. If a segment fails the others are cancelled,
+ * and the temporary file is removed once they have all stopped. The Content-Range of every range
+ * response must start where the range was requested, end within it and give the length of the
+ * whole body.
+ * <p>
+ * The range requests are built by the given request builders, that set the time left of the
+ * request timeout as their timeout, and the body of every range response is closed at the
+ * deadline of the request, as the body of the first response is.
+ */
+final class SegmentedDownload {
+	static final int MIN_SEGMENT_SIZE = 1024 * 1024;
+	private static final int MAX_RESUMES_PER_SEGMENT = 5;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int STATUS_PARTIAL_CONTENT = 206;
+	private static final Pattern CONTENT_RANGE = Pattern
+			.compile("bytes (\\d{1,18})-(\\d{1,18})/(\\d{1,18})");
+
+	private final RequestSender requestSender;
+	private final Supplier<Builder> requestBuilders;
+	private final RequestDeadline deadline;
+	private final String validator;
+	private final long length;
+
+	private SegmentedDownload(RequestSender requestSender, Supplier<Builder> requestBuilders,
+			RequestDeadline deadline, String validator, long length) {
+		this.requestSender = requestSender;
+		this.requestBuilders = requestBuilders;
+		this.deadline = deadline;
+		this.validator = validator;
+		this.length = length;
+	}
+
+	static long toFile(RequestSender requestSender, Supplier<Builder> requestBuilders,
+			RequestDeadline deadline, HttpResponse<InputStream> response, Path file,
+			int segments)
+			throws IOException, InterruptedException {
+		ResponseDownload.ensureSuccessfulResponse(response);
+		OptionalLong length = getUnencodedLength(response.headers());
+		Optional<String> validator = getValidator(response.headers());
+		if (length.isEmpty() || validator.isEmpty() || !acceptsByteRanges(response.headers())) {
+			return ResponseDownload.toFile(response, file);
+		}
+		SegmentedDownload download = new SegmentedDownload(requestSender, requestBuilders,
+				deadline, validator.get(), length.getAsLong());
+		return download.downloadToFile(response.body(), file, segments);
+	}
+
+	private static OptionalLong getUnencodedLength(HttpHeaders headers) {
+		if (headers.firstValue("Content-Encoding").isPresent()) {
+			return OptionalLong.empty();
+		}
+		return headers.firstValueAsLong("Content-Length");
+	}
+
+	private static Optional<String> getValidator(HttpHeaders headers) {
+		Optional<String> etag = headers.firstValue("ETag").filter(tag -> !tag.startsWith("W/"));
+		if (etag.isPresent()) {
+			return etag;
+		}
+		return headers.firstValue("Last-Modified");
+	}
+
+	private static boolean acceptsByteRanges(HttpHeaders headers) {
+		return headers.allValues("Accept-Ranges").stream()
+				.anyMatch(value -> "bytes".equalsIgnoreCase(value.trim()));
+	}
+
+	private long downloadToFile(InputStream body, Path file, int segments)
+			throws IOException, InterruptedException {
+		Path absoluteFile = file.toAbsolutePath();
+		Path temporaryFile = ResponseDownload.createTemporaryFileNextTo(absoluteFile);
+		try {
+			writeSegments(body, temporaryFile, calculateSegmentCount(segments));
+			ResponseDownload.moveAtomically(temporaryFile, absoluteFile);
+			return length;
+		} catch (IOException | InterruptedException | RuntimeException e) {
+			body.close();
+			Files.deleteIfExists(temporaryFile);
+			throw e;
+		}
+	}
+
+	private int calculateSegmentCount(int segments) {
+		long segmentsOfMinSize = Math.max(1, length / MIN_SEGMENT_SIZE);
+		return (int) Math.min(segments, segmentsOfMinSize);
+	}
+
+	private void writeSegments(InputStream body, Path temporaryFile, int segmentCount)
+			throws IOException, InterruptedException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(temporaryFile.toFile(),
+				"rw")) {
+			randomAccessFile.setLength(length);
+			FileChannel channel = randomAccessFile.getChannel();
+			writeSegmentsInParallel(channel, body, segmentCount);
+			channel.force(false);
+		}
+	}
+
+	private void writeSegmentsInParallel(FileChannel channel, InputStream body,
+			int segmentCount) throws IOException, InterruptedException {
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+			List<Future<Void>> segments = startSegments(completionService, channel, body,
+					segmentCount);
+			try {
+				waitForSegments(completionService, segmentCount);
+			} finally {
+				segments.forEach(segment -> segment.cancel(true));
+			}
+		}
+	}
+
+	private List<Future<Void>> startSegments(CompletionService<Void> completionService,
+			FileChannel channel, InputStream body, int segmentCount) {
+		List<Future<Void>> segments = new ArrayList<>();
+		for (int i = 0; i < segmentCount; i++) {
+			long start = i == 0 ? 0 : segmentEnd(i - 1, segmentCount);
+			long end = segmentEnd(i, segmentCount);
+			InputStream firstBody = i == 0 ? body : null;
+			segments.add(completionService.submit(() -> {
+				writeSegment(channel, start, end, firstBody);
+				return null;
+			}));
+		}
+		return segments;
+	}
+
+	private long segmentEnd(int segment, int segmentCount) {
+		return length * (segment + 1) / segmentCount;
+	}
+
+	private void waitForSegments(CompletionService<Void> completionService, int segmentCount)
+			throws IOException, InterruptedException {
+		for (int i = 0; i < segmentCount; i++) {
+			try {
+				completionService.take().get();
+			} catch (ExecutionException e) {
+				throw rethrowCause(e.getCause());
+			}
+		}
+	}
+
+	private IOException rethrowCause(Throwable cause) throws InterruptedException {
+		if (cause instanceof IOException ioException) {
+			return ioException;
+		}
+		if (cause instanceof InterruptedException interruptedException) {
+			throw interruptedException;
+		}
+		if (cause instanceof RuntimeException runtimeException) {
+			throw runtimeException;
+		}
+		return new IOException(cause);
+	}
+
+	private void writeSegment(FileChannel channel, long start, long end, InputStream firstBody)
+			throws IOException, InterruptedException {
+		new Segment(channel, start, end).write(firstBody);
+	}
+
+	private InputStream requestRange(long start, long end)
+			throws IOException, InterruptedException {
+		String range = "bytes=" + start + "-" + (end - 1);
+		HttpRequest request = requestBuilders.get().setHeader("Range", range)
+				.setHeader("If-Range", validator).setHeader("Accept-Encoding", "identity").GET()
+				.build();
+		HttpResponse<InputStream> response = requestSender.send(request);
+		Optional<String> contentRange = response.headers().firstValue("Content-Range");
+		if (response.statusCode() != STATUS_PARTIAL_CONTENT
+				|| !isContentRangeWithin(contentRange, start, end)) {
+			response.body().close();
+			throw new ResourceChangedException("Requested " + range + " but got response code: "
+					+ response.statusCode() + " with Content-Range: " + contentRange.orElse(""));
+		}
+		return deadline.limit(response);
+	}
+
+	private boolean isContentRangeWithin(Optional<String> contentRange, long start, long end) {
+		Matcher range = CONTENT_RANGE.matcher(contentRange.orElse(""));
+		if (!range.matches()) {
+			return false;
+		}
+		long first = Long.parseLong(range.group(1));
+		long last = Long.parseLong(range.group(2));
+		long total = Long.parseLong(range.group(3));
+		return first == start && last >= first && last < end && total == length;
+	}
+
+	private void closeQuietly(InputStream body) {
+		if (body == null) {
+			return;
+		}
+		try {
+			body.close();
+		} catch (IOException e) {
+			// the body is not needed any more
+		}
+	}
+
+	private final class Segment {
+		private final FileChannel channel;
+		private final long end;
+		private long position;
+		private final List<IOException> failures = new ArrayList<>();
+
+		Segment(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.position = start;
+			this.end = end;
+		}
+
+		void write(InputStream firstBody) throws IOException, InterruptedException {
+			InputStream body = firstBody;
+			while (position < end) {
+				try {
+					if (body == null) {
+						body = requestRange(position, end);
+					}
+					copy(body);
+				} catch (ResourceChangedException | HttpTimeoutException | InterruptedIOException
+						| ClosedChannelException e) {
+					throw e;
+				} catch (IOException e) {
+					addFailureOrThrow(e);
+				} finally {
+					closeQuietly(body);
+					body = null;
+				}
+			}
+		}
+
+		private void copy(InputStream body) throws IOException {
+			byte[] bytes = new byte[BUFFER_SIZE];
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (position < end) {
+				int read = body.read(bytes, 0, (int) Math.min(bytes.length, end - position));
+				if (read == -1) {
+					throw new IOException("Response ended at byte " + position + " of " + end);
+				}
+				buffer.clear().limit(read);
+				while (buffer.hasRemaining()) {
+					position += channel.write(buffer, position);
+				}
+			}
+		}
+
+		private void addFailureOrThrow(IOException failure) throws IOException {
+			if (failures.size() == MAX_RESUMES_PER_SEGMENT) {
+				failures.forEach(failure::addSuppressed);
+				throw failure;
+			}
+			failures.add(failure);
+		}
+	}
+
+	private static final class ResourceChangedException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		ResourceChangedException(String message) {
+			super(message);
+		}
+	}
+}
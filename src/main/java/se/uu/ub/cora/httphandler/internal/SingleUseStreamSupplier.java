@@ -0,0 +1,48 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * SingleUseStreamSupplier supplies its stream once. A request body read from a stream can not be
+ * sent again, such as when a request is retried, as the stream is then already read. Asking for
+ * the stream a second time therefore fails the request, instead of silently sending an empty
+ * body.
+ */
+final class SingleUseStreamSupplier implements Supplier<InputStream> {
+	private final AtomicReference<InputStream> stream;
+
+	SingleUseStreamSupplier(InputStream stream) {
+		this.stream = new AtomicReference<>(stream);
+	}
+
+	@Override
+	public InputStream get() {
+		InputStream unusedStream = stream.getAndSet(null);
+		if (unusedStream == null) {
+			throw new IllegalStateException(
+					"Stream output can only be sent once, use a stream supplier to send it again");
+		}
+		return unusedStream;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.IOException;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow.Subscription;
+import java.util.function.Supplier;
+
+/**
+ * SizeLimitingBodySubscriber passes the body on to the wrapped subscriber until more than the
+ * maximum number of bytes has been received, it then cancels the subscription and fails the
+ * wrapped subscriber.
+ */
+final class SizeLimitingBodySubscriber<T> implements BodySubscriber<T> {
+	private final BodySubscriber<T> subscriber;
+	private final long maxBytes;
+	private final Supplier<IOException> exceptionSupplier;
+	private Subscription subscription;
+	private long bytesReceived = 0;
+	private boolean failed = false;
+
+	SizeLimitingBodySubscriber(BodySubscriber<T> subscriber, long maxBytes,
+			Supplier<IOException> exceptionSupplier) {
+		this.subscriber = subscriber;
+		this.maxBytes = maxBytes;
+		this.exceptionSupplier = exceptionSupplier;
+	}
+
+	@Override
+	public void onSubscribe(Subscription subscription) {
+		this.subscription = subscription;
+		subscriber.onSubscribe(subscription);
+	}
+
+	@Override
+	public void onNext(List<ByteBuffer> item) {
+		if (failed) {
+			return;
+		}
+		for (ByteBuffer buffer : item) {
+			bytesReceived += buffer.remaining();
+		}
+		if (bytesReceived > maxBytes) {
+			failed = true;
+			subscription.cancel();
+			subscriber.onError(exceptionSupplier.get());
+			return;
+		}
+		subscriber.onNext(item);
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		if (!failed) {
+			subscriber.onError(throwable);
+		}
+	}
+
+	@Override
+	public void onComplete() {
+		if (!failed) {
+			subscriber.onComplete();
+		}
+	}
+
+	@Override
+	public CompletionStage<T> getBody() {
+		return subscriber.getBody();
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+/**
+ * SizeLimitingRequestSender limits the size of response bodies. A body that is declared, using
+ * Content-Length, or turns out to be larger than the maximum response size fails with an
+ * IOException when it is read, instead of being read until memory runs out.
+ */
+public final class SizeLimitingRequestSender implements RequestSender {
+	private RequestSender requestSender;
+	private long maxResponseSize;
+
+	public SizeLimitingRequestSender(RequestSender requestSender, long maxResponseSize) {
+		this.requestSender = requestSender;
+		this.maxResponseSize = maxResponseSize;
+	}
+
+	@Override
+	public HttpResponse<InputStream> send(HttpRequest request)
+			throws IOException, InterruptedException {
+		HttpResponse<InputStream> response = requestSender.send(request);
+		long declaredSize = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+		return new ResponseWithBody(response,
+				new SizeLimitedInputStream(response.body(), declaredSize));
+	}
+
+	private IOException createTooLargeException() {
+		return new IOException("Response body is larger than the maximum response size of "
+				+ maxResponseSize + " bytes");
+	}
+
+	public RequestSender onlyForTestGetRequestSender() {
+		return requestSender;
+	}
+
+	public long onlyForTestGetMaxResponseSize() {
+		return maxResponseSize;
+	}
+
+	private final class SizeLimitedInputStream extends FilterInputStream {
+		private final long declaredSize;
+		private long bytesRead = 0;
+
+		SizeLimitedInputStream(InputStream in, long declaredSize) {
+			super(in);
+			this.declaredSize = declaredSize;
+		}
+
+		@Override
+		public int read() throws IOException {
+			ensureDeclaredSizeIsAllowed();
+			int read = super.read();
+			if (read != -1) {
+				countAndEnsureAllowed(1);
+			}
+			return read;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			ensureDeclaredSizeIsAllowed();
+			int read = super.read(b, off, len);
+			if (read > 0) {
+				countAndEnsureAllowed(read);
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			ensureDeclaredSizeIsAllowed();
+			long skipped = super.skip(n);
+			countAndEnsureAllowed(skipped);
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		private void ensureDeclaredSizeIsAllowed() throws IOException {
+			if (declaredSize > maxResponseSize) {
+				throw createTooLargeException();
+			}
+		}
+
+		private void countAndEnsureAllowed(long bytes) throws IOException {
+			bytesRead += bytes;
+			if (bytesRead > maxResponseSize) {
+				throw createTooLargeException();
+			}
+		}
+	}
+}
@@ -25,6 +25,17 @@ import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.nio.charset.StandardCharsets;
 
+import se.uu.ub.cora.httphandler.HttpHandler;
+import se.uu.ub.cora.httphandler.HttpHandlerFactory;
+
+/**
+ * HttpURLConnectionHandler reads responses from a {@link HttpURLConnection}.
+ * 
+ * @deprecated The library no longer uses HttpURLConnection, use {@link HttpHandler} factored from
+ *             a {@link HttpHandlerFactory} instead. This class will be removed in a future
+ *             release.
+ */
+@Deprecated(since = "2.18", forRemoval = true)
 public class HttpURLConnectionHandler {
 	private static final int STATUS_INTERNAL_SERVER_ERROR = 500;
 
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.internal.AsyncHttpHandlerImp;
+import se.uu.ub.cora.httphandler.spy.BodyPublisherSubscriber;
+import se.uu.ub.cora.httphandler.spy.BuilderSpy;
+import se.uu.ub.cora.httphandler.spy.HttpClientSpy;
+import se.uu.ub.cora.httphandler.spy.HttpRequestSpy;
+import se.uu.ub.cora.httphandler.spy.HttpResponseSpy;
+
+public class AsyncHttpHandlerTest {
+
+	private static final String PUBLISHER_NO_BODY = "jdk.internal.net.http.RequestPublishers$EmptyPublisher";
+	private static final String PUBLISHER_STRING = "jdk.internal.net.http.RequestPublishers$StringPublisher";
+	private static final String PUBLISHER_INPUTSTREAM = "jdk.internal.net.http.RequestPublishers$InputStreamPublisher";
+	private BuilderSpy builderSpy;
+	private HttpClientSpy httpClientSpy;
+	private AsyncHttpHandler asyncHttpHandler;
+
+	@BeforeMethod
+	public void setUp() {
+		builderSpy = new BuilderSpy();
+		httpClientSpy = new HttpClientSpy();
+		asyncHttpHandler = AsyncHttpHandlerImp.usingBuilderAndHttpClient(builderSpy,
+				httpClientSpy);
+	}
+
+	@Test
+	public void testDefaultMethodIsGET() {
+		asyncHttpHandler.sendAsync().join();
+
+		assertRequestMethodHasBeenSetInBuilder("GET");
+		assertCreatedBodyPublisherIs(PUBLISHER_NO_BODY);
+	}
+
+	@Test
+	public void testNothingIsSentBeforeSendAsync() {
+		asyncHttpHandler.setRequestMethod("POST");
+		asyncHttpHandler.setOutput("some output");
+
+		httpClientSpy.MCR.assertMethodNotCalled("sendAsync");
+		httpClientSpy.MCR.assertMethodNotCalled("send");
+	}
+
+	@Test
+	public void testSendAsyncReturnsResponse() {
+		HttpResponseSpy<String> responseSpy = new HttpResponseSpy<>();
+		responseSpy.MRV.setDefaultReturnValuesSupplier("statusCode", () -> 201);
+		responseSpy.MRV.setDefaultReturnValuesSupplier("body", () -> "some body");
+		responseSpy.MRV.setDefaultReturnValuesSupplier("headers",
+				() -> createHttpHeaders("someHeader", "someValue", "someHeader", "someOtherValue"));
+		httpClientSpy.MRV.setDefaultReturnValuesSupplier("sendAsync",
+				() -> CompletableFuture.completedFuture(responseSpy));
+
+		HttpHandlerResponse response = asyncHttpHandler.sendAsync().join();
+
+		assertSendAsyncOnHttpClientUsingBuiltRequest();
+		assertEquals(response.statusCode(), 201);
+		assertEquals(response.body(), "some body");
+		assertEquals(response.headers().size(), 1);
+		assertEquals(response.headers().get("someHeader"), "someValue, someOtherValue");
+	}
+
+	private HttpHeaders createHttpHeaders(String... headers) {
+		HttpRequest.Builder newBuilder = HttpRequest.newBuilder().uri(URI.create("http://uu.se"));
+		for (int i = 0; i < headers.length; i = i + 2) {
+			newBuilder.header(headers[i], headers[i + 1]);
+		}
+		return newBuilder.build().headers();
+	}
+
+	@Test
+	public void testSendAsyncUsesStringBodyHandler() {
+		asyncHttpHandler.sendAsync().join();
+
+		var bodyHandler = httpClientSpy.MCR.getValueForMethodNameAndCallNumberAndParameterName(
+				"sendAsync", 0, "responseBodyHandler");
+		assertTrue(bodyHandler instanceof HttpResponse.BodyHandler);
+	}
+
+	@Test
+	public void testSendAsyncOnlySendsOnce() {
+		CompletableFuture<HttpHandlerResponse> first = asyncHttpHandler.sendAsync();
+		CompletableFuture<HttpHandlerResponse> second = asyncHttpHandler.sendAsync();
+
+		assertSame(first, second);
+		httpClientSpy.MCR.assertNumberOfCallsToMethod("sendAsync", 1);
+	}
+
+	@Test
+	public void testSendAsyncFailsExceptionally() {
+		RuntimeException sendException = new RuntimeException("someMessage");
+		httpClientSpy.MRV.setDefaultReturnValuesSupplier("sendAsync",
+				() -> CompletableFuture.failedFuture(sendException));
+
+		try {
+			asyncHttpHandler.sendAsync().join();
+			fail("Exception should have been thrown");
+		} catch (CompletionException e) {
+			assertSame(e.getCause(), sendException);
+		}
+	}
+
+	@Test
+	public void testSetRequestMethodAndSetOutput() {
+		asyncHttpHandler.setRequestMethod("PUT");
+		asyncHttpHandler.setOutput("hejsan");
+		asyncHttpHandler.sendAsync().join();
+
+		assertRequestMethodHasBeenSetInBuilder("PUT");
+		assertCreatedBodyPublisherIs(PUBLISHER_STRING);
+	}
+
+	@Test
+	public void testSetRequestMethodAndSetStreamOutput() {
+		InputStream inputStream = new ByteArrayInputStream("some inputStream".getBytes());
+
+		asyncHttpHandler.setRequestMethod("POST");
+		asyncHttpHandler.setStreamOutput(inputStream);
+		asyncHttpHandler.sendAsync().join();
+
+		assertRequestMethodHasBeenSetInBuilder("POST");
+		assertCreatedBodyPublisherIs(PUBLISHER_INPUTSTREAM);
+	}
+
+	@Test
+	public void testSetStreamOutputCanOnlyBeSentOnce() {
+		asyncHttpHandler.setStreamOutput(new ByteArrayInputStream("some body".getBytes()));
+		asyncHttpHandler.sendAsync().join();
+
+		HttpRequest.BodyPublisher bodyPublisher = (HttpRequest.BodyPublisher) builderSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("method", 0, "bodyPublisher");
+		BodyPublisherSubscriber subscriber = new BodyPublisherSubscriber();
+		bodyPublisher.subscribe(subscriber);
+		assertEquals(subscriber.getReceivedAsString(), "some body");
+		try {
+			bodyPublisher.subscribe(new BodyPublisherSubscriber());
+			fail("Exception should have been thrown");
+		} catch (IllegalStateException e) {
+			assertEquals(e.getMessage(),
+					"Stream output can only be sent once, use a stream supplier to send it again");
+		}
+	}
+
+	@Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = ""
+			+ "Not an ok requestMethod: UNKNOWN_REQUEST_METHOD")
+	public void testSetRequestMethodBadRequestMethodThrowsRuntimeException() {
+		asyncHttpHandler.setRequestMethod("UNKNOWN_REQUEST_METHOD");
+	}
+
+	@Test
+	public void testSetRequestProperty() {
+		asyncHttpHandler.setRequestProperty("someKey", "someValue");
+		builderSpy.MCR.assertParameters("setHeader", 0, "someKey", "someValue");
+	}
+
+	@Test
+	public void testSetRequestPropertyWithNullValuesShouldNotBeSet() {
+		asyncHttpHandler.setRequestProperty("someKey", null);
+		asyncHttpHandler.setRequestProperty(null, "someValue");
+		builderSpy.MCR.assertMethodNotCalled("setHeader");
+	}
+
+	@Test
+	public void testSetBasicAuthorization() {
+		asyncHttpHandler.setBasicAuthorization("someUserId", "somePassword");
+
+		String encoded = Base64.getEncoder()
+				.encodeToString("someUserId:somePassword".getBytes(StandardCharsets.UTF_8));
+		builderSpy.MCR.assertParameters("setHeader", 0, "Authorization", "Basic " + encoded);
+	}
+
+	private void assertSendAsyncOnHttpClientUsingBuiltRequest() {
+		BuilderSpy builder2Spy = (BuilderSpy) builderSpy.MCR.getReturnValue("method", 0);
+		HttpRequestSpy httpRequestSpy = (HttpRequestSpy) builder2Spy.MCR.getReturnValue("build", 0);
+		httpClientSpy.MCR.assertParameter("sendAsync", 0, "request", httpRequestSpy);
+	}
+
+	private void assertCreatedBodyPublisherIs(String publisherType) {
+		var bodyPublisher = builderSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("method", 0, "bodyPublisher");
+		assertEquals(bodyPublisher.getClass().getName(), publisherType);
+	}
+
+	private void assertRequestMethodHasBeenSetInBuilder(String requestMethod) {
+		builderSpy.MCR.assertParameter("method", 0, "method", requestMethod);
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.internal.AsyncHttpMultiPartUploaderImp;
+import se.uu.ub.cora.httphandler.spy.BodyPublisherSubscriber;
+import se.uu.ub.cora.httphandler.spy.BuilderSpy;
+import se.uu.ub.cora.httphandler.spy.HttpClientSpy;
+import se.uu.ub.cora.httphandler.spy.HttpRequestSpy;
+
+public class AsyncHttpMultiPartUploaderTest {
+	private BuilderSpy builderSpy;
+	private HttpClientSpy httpClientSpy;
+	private AsyncHttpMultiPartUploader uploader;
+
+	@BeforeMethod
+	public void setUp() {
+		builderSpy = new BuilderSpy();
+		httpClientSpy = new HttpClientSpy();
+		uploader = AsyncHttpMultiPartUploaderImp.usingBuilderAndHttpClient(builderSpy,
+				httpClientSpy);
+	}
+
+	@Test
+	public void testNothingIsSentBeforeSendAsync() {
+		uploader.addFormField("some", "value");
+
+		builderSpy.MCR.assertMethodNotCalled("method");
+		httpClientSpy.MCR.assertMethodNotCalled("sendAsync");
+	}
+
+	@Test
+	public void testSendAsync() {
+		uploader.addHeaderField("Accept", "application/vnd.cora.record+json");
+		uploader.addFormField("some", "value");
+		uploader.addFilePart("file", "adele.png",
+				new ByteArrayInputStream("a string".getBytes(StandardCharsets.UTF_8)), 8);
+
+		HttpHandlerResponse response = uploader.sendAsync().join();
+
+		builderSpy.MCR.assertParameters("setHeader", 0, "Accept",
+				"application/vnd.cora.record+json");
+		builderSpy.MCR.assertParameter("method", 0, "method", "POST");
+		BuilderSpy builder2Spy = (BuilderSpy) builderSpy.MCR.getReturnValue("method", 0);
+		HttpRequestSpy httpRequestSpy = (HttpRequestSpy) builder2Spy.MCR.getReturnValue("build", 0);
+		httpClientSpy.MCR.assertParameter("sendAsync", 0, "request", httpRequestSpy);
+		assertEquals(response.statusCode(), 200);
+		assertEquals(response.body(), "a response body");
+	}
+
+	@Test
+	public void testSendAsyncStreamsMultipartBody() {
+		uploader.addFormField("some", "value");
+
+		uploader.sendAsync().join();
+
+		BodyPublisher bodyPublisher = (BodyPublisher) builderSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("method", 0, "bodyPublisher");
+		BodyPublisherSubscriber subscriber = new BodyPublisherSubscriber();
+		bodyPublisher.subscribe(subscriber);
+		String contentType = (String) builderSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("setHeader", 0, "value");
+		String boundary = contentType.substring("multipart/form-data; boundary=".length());
+		String expected = "--" + boundary + "\r\n"
+				+ "Content-Disposition: form-data; name=\"some\"\r\n"
+				+ "Content-Type: text/plain; charset=UTF-8\r\n\r\nvalue\r\n--" + boundary
+				+ "--\r\n";
+		assertEquals(subscriber.getReceivedAsString(), expected);
+		assertEquals(bodyPublisher.contentLength(), expected.length());
+	}
+
+	@Test
+	public void testSendAsyncOnlySendsOnce() {
+		uploader.addFormField("some", "value");
+
+		CompletableFuture<HttpHandlerResponse> first = uploader.sendAsync();
+		CompletableFuture<HttpHandlerResponse> second = uploader.sendAsync();
+
+		assertSame(first, second);
+		httpClientSpy.MCR.assertNumberOfCallsToMethod("sendAsync", 1);
+	}
+
+	@Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = ""
+			+ "Headers can not be set after connection is setup on multipart requests, "
+			+ "headerName: SomeHeader headerValue: someHeaderValue")
+	public void testSetHeaderAfterPartsHaveBeenAdded() {
+		uploader.addFormField("some", "value");
+
+		uploader.addHeaderField("SomeHeader", "someHeaderValue");
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+
+import java.time.Duration;
+
+import org.testng.annotations.Test;
+
+public class CircuitBreakerPolicyTest {
+
+	@Test
+	public void testDefaults() {
+		CircuitBreakerPolicy policy = CircuitBreakerPolicy.defaults();
+
+		assertEquals(policy.getWindowSize(), 20);
+		assertEquals(policy.getFailureRateThreshold(), 50);
+		assertEquals(policy.getSlowCallDuration(), Duration.ofSeconds(10));
+		assertEquals(policy.getSlowCallRateThreshold(), 100);
+		assertEquals(policy.getOpenDuration(), Duration.ofSeconds(30));
+	}
+
+	@Test
+	public void testWithMethodsKeepOtherSettings() {
+		CircuitBreakerPolicy defaults = CircuitBreakerPolicy.defaults();
+
+		CircuitBreakerPolicy policy = defaults.withWindowSize(10).withFailureRateThreshold(30)
+				.withSlowCallThreshold(Duration.ofSeconds(2), 80)
+				.withOpenDuration(Duration.ofSeconds(5));
+
+		assertNotSame(policy, defaults);
+		assertEquals(policy.getWindowSize(), 10);
+		assertEquals(policy.getFailureRateThreshold(), 30);
+		assertEquals(policy.getSlowCallDuration(), Duration.ofSeconds(2));
+		assertEquals(policy.getSlowCallRateThreshold(), 80);
+		assertEquals(policy.getOpenDuration(), Duration.ofSeconds(5));
+		assertEquals(defaults.getWindowSize(), 20);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Window size must be at least 1: 0")
+	public void testWithWindowSizeLessThanOne() {
+		CircuitBreakerPolicy.defaults().withWindowSize(0);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Failure rate threshold must be between 1 and 100 percent: 101")
+	public void testWithFailureRateThresholdAboveHundred() {
+		CircuitBreakerPolicy.defaults().withFailureRateThreshold(101);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Slow call rate threshold must be between 1 and 100 percent: 0")
+	public void testWithSlowCallRateThresholdZero() {
+		CircuitBreakerPolicy.defaults().withSlowCallThreshold(Duration.ofSeconds(1), 0);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Slow call duration must be positive: PT0S")
+	public void testWithSlowCallDurationZero() {
+		CircuitBreakerPolicy.defaults().withSlowCallThreshold(Duration.ZERO, 50);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Open duration must be positive: PT-1S")
+	public void testWithOpenDurationNegative() {
+		CircuitBreakerPolicy.defaults().withOpenDuration(Duration.ofSeconds(-1));
+	}
+}
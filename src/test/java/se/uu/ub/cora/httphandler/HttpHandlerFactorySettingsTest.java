@@ -0,0 +1,268 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.net.http.HttpClient.Version;
+import java.time.Duration;
+
+import org.testng.annotations.Test;
+
+public class HttpHandlerFactorySettingsTest {
+
+	@Test
+	public void testDefaults() {
+		HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults();
+
+		assertFalse(settings.usesVirtualThreads());
+		assertTrue(settings.getRequestListener().isEmpty());
+		assertTrue(settings.getMaxResponseSize().isEmpty());
+		assertFalse(settings.usesResponseCompression());
+		assertTrue(settings.getRequestCompressionMinimumSize().isEmpty());
+		assertTrue(settings.getHttpVersion().isEmpty());
+		assertTrue(settings.getResponseCacheSize().isEmpty());
+		assertTrue(settings.getOffHeapResponseCacheSize().isEmpty());
+		assertFalse(settings.usesRequestCoalescing());
+		assertTrue(settings.getCoalescedBodySize().isEmpty());
+		assertTrue(settings.getRetryPolicy().isEmpty());
+		assertTrue(settings.getCircuitBreakerPolicy().isEmpty());
+		assertTrue(settings.getMaxConcurrentRequestsPerHost().isEmpty());
+		assertTrue(settings.getConnectTimeout().isEmpty());
+		assertTrue(settings.getTimeToFirstByteTimeout().isEmpty());
+		assertTrue(settings.getRequestTimeout().isEmpty());
+	}
+
+	@Test
+	public void testWithTimeouts() {
+		HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults()
+				.withConnectTimeout(Duration.ofSeconds(2))
+				.withTimeToFirstByteTimeout(Duration.ofSeconds(10))
+				.withRequestTimeout(Duration.ofSeconds(30));
+
+		assertEquals(settings.getConnectTimeout().get(), Duration.ofSeconds(2));
+		assertEquals(settings.getTimeToFirstByteTimeout().get(), Duration.ofSeconds(10));
+		assertEquals(settings.getRequestTimeout().get(), Duration.ofSeconds(30));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Connect timeout must be positive: PT0S")
+	public void testWithConnectTimeoutZero() {
+		HttpHandlerFactorySettings.defaults().withConnectTimeout(Duration.ZERO);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Time to first byte timeout must be positive: PT-1S")
+	public void testWithTimeToFirstByteTimeoutNegative() {
+		HttpHandlerFactorySettings.defaults().withTimeToFirstByteTimeout(Duration.ofSeconds(-1));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Request timeout must be positive: PT0S")
+	public void testWithRequestTimeoutZero() {
+		HttpHandlerFactorySettings.defaults().withRequestTimeout(Duration.ZERO);
+	}
+
+	@Test
+	public void testWithCircuitBreaker() {
+		CircuitBreakerPolicy policy = CircuitBreakerPolicy.defaults();
+		HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults()
+				.withCircuitBreaker(policy);
+
+		assertSame(settings.getCircuitBreakerPolicy().get(), policy);
+	}
+
+	@Test
+	public void testWithMaxConcurrentRequestsPerHost() {
+		HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults()
+				.withMaxConcurrentRequestsPerHost(50);
+
+		assertEquals(settings.getMaxConcurrentRequestsPerHost().getAsInt(), 50);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Max concurrent requests per host must be at least 1: 0")
+	public void testWithMaxConcurrentRequestsPerHostLessThanOne() {
+		HttpHandlerFactorySettings.defaults().withMaxConcurrentRequestsPerHost(0);
+	}
+
+	@Test
+	public void testWithRetryPolicy() {
+		RetryPolicy policy = RetryPolicy.defaults().withMaxAttempts(5);
+		HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults()
+				.withRetryPolicy(policy);
+
+		assertSame(settings.getRetryPolicy().get(), policy);
+	}
+
+	@Test
+	public void testWithRequestCoalescing() {
+		HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults()
+				.withRequestCoalescing();
+
+		assertTrue(settings.usesRequestCoalescing());
+		assertEquals(settings.getCoalescedBodySize().getAsLong(), 1_048_576);
+	}
+
+	@Test
+	public void testWithRequestCoalescingMaxBodySize() {
+		HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults()
+				.withRequestCoalescing(4096);
+
+		assertTrue(settings.usesRequestCoalescing());
+		assertEquals(settings.getCoalescedBodySize().getAsLong(), 4096);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Coalesced body size can not be negative: -1")
+	public void testWithRequestCoalescingNegativeMaxBodySize() {
+		HttpHandlerFactorySettings.defaults().withRequestCoalescing(-1);
+	}
+
+	@Test
+	public void testWithOffHeapResponseCache() {
+		HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults()
+				.withOffHeapResponseCache(100_000_000);
+
+		assertEquals(settings.getOffHeapResponseCacheSize().getAsLong(), 100_000_000);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Off heap response cache size can not be negative: -1")
+	public void testWithNegativeOffHeapResponseCacheSize() {
+		HttpHandlerFactorySettings.defaults().withOffHeapResponseCache(-1);
+	}
+
+	@Test
+	public void testWithResponseCache() {
+		HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults()
+				.withResponseCache(10_000_000);
+
+		assertEquals(settings.getResponseCacheSize().getAsLong(), 10_000_000);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Response cache size can not be negative: -1")
+	public void testWithNegativeResponseCacheSize() {
+		HttpHandlerFactorySettings.defaults().withResponseCache(-1);
+	}
+
+	@Test
+	public void testWithHttpVersion() {
+		HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults()
+				.withHttpVersion(Version.HTTP_1_1);
+
+		assertEquals(settings.getHttpVersion().get(), Version.HTTP_1_1);
+	}
+
+	@Test
+	public void testWithVirtualThreads() {
+		HttpHandlerFactorySettings defaults = HttpHandlerFactorySettings.defaults();
+
+		HttpHandlerFactorySettings settings = defaults.withVirtualThreads();
+
+		assertTrue(settings.usesVirtualThreads());
+		assertNotSame(settings, defaults);
+		assertFalse(defaults.usesVirtualThreads());
+	}
+
+	@Test
+	public void testWithRequestListener() {
+		InMemoryHttpMetrics metrics = new InMemoryHttpMetrics();
+
+		HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults()
+				.withRequestListener(metrics);
+
+		assertSame(settings.getRequestListener().get(), metrics);
+	}
+
+	@Test
+	public void testWithMaxResponseSize() {
+		HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults()
+				.withMaxResponseSize(1024);
+
+		assertEquals(settings.getMaxResponseSize().getAsLong(), 1024);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Max response size can not be negative: -1")
+	public void testWithNegativeMaxResponseSize() {
+		HttpHandlerFactorySettings.defaults().withMaxResponseSize(-1);
+	}
+
+	@Test
+	public void testWithResponseCompression() {
+		HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults()
+				.withResponseCompression();
+
+		assertTrue(settings.usesResponseCompression());
+	}
+
+	@Test
+	public void testWithRequestCompression() {
+		HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults()
+				.withRequestCompression(1024);
+
+		assertEquals(settings.getRequestCompressionMinimumSize().getAsInt(), 1024);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Request compression minimum size can not be negative: -1")
+	public void testWithNegativeRequestCompressionMinimumSize() {
+		HttpHandlerFactorySettings.defaults().withRequestCompression(-1);
+	}
+
+	@Test
+	public void testWithMethodsKeepOtherSettings() {
+		InMemoryHttpMetrics metrics = new InMemoryHttpMetrics();
+		RetryPolicy policy = RetryPolicy.defaults();
+		CircuitBreakerPolicy circuitBreaker = CircuitBreakerPolicy.defaults();
+
+		HttpHandlerFactorySettings settings = HttpHandlerFactorySettings.defaults()
+				.withVirtualThreads().withRequestListener(metrics).withMaxResponseSize(1024)
+				.withResponseCompression().withRequestCompression(512)
+				.withHttpVersion(Version.HTTP_2).withResponseCache(2048)
+				.withOffHeapResponseCache(4096).withRequestCoalescing(8192)
+				.withRetryPolicy(policy).withCircuitBreaker(circuitBreaker)
+				.withMaxConcurrentRequestsPerHost(8).withConnectTimeout(Duration.ofSeconds(1))
+				.withTimeToFirstByteTimeout(Duration.ofSeconds(2))
+				.withRequestTimeout(Duration.ofSeconds(3));
+
+		assertTrue(settings.usesVirtualThreads());
+		assertSame(settings.getRequestListener().get(), metrics);
+		assertEquals(settings.getMaxResponseSize().getAsLong(), 1024);
+		assertTrue(settings.usesResponseCompression());
+		assertEquals(settings.getRequestCompressionMinimumSize().getAsInt(), 512);
+		assertEquals(settings.getHttpVersion().get(), Version.HTTP_2);
+		assertEquals(settings.getResponseCacheSize().getAsLong(), 2048);
+		assertEquals(settings.getOffHeapResponseCacheSize().getAsLong(), 4096);
+		assertEquals(settings.getCoalescedBodySize().getAsLong(), 8192);
+		assertSame(settings.getRetryPolicy().get(), policy);
+		assertSame(settings.getCircuitBreakerPolicy().get(), circuitBreaker);
+		assertEquals(settings.getMaxConcurrentRequestsPerHost().getAsInt(), 8);
+		assertEquals(settings.getConnectTimeout().get(), Duration.ofSeconds(1));
+		assertEquals(settings.getTimeToFirstByteTimeout().get(), Duration.ofSeconds(2));
+		assertEquals(settings.getRequestTimeout().get(), Duration.ofSeconds(3));
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016, 2018, 2023 Uppsala University Library
+ * Copyright 2016, 2018, 2023, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -21,17 +21,36 @@ package se.uu.ub.cora.httphandler;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
-import java.net.http.HttpClient;
+import java.net.http.HttpClient.Version;
 import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.Builder;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import se.uu.ub.cora.httphandler.internal.AsyncHttpHandlerImp;
+import se.uu.ub.cora.httphandler.internal.AsyncHttpMultiPartUploaderImp;
+import se.uu.ub.cora.httphandler.internal.BulkheadRequestSender;
+import se.uu.ub.cora.httphandler.internal.CachingRequestSender;
+import se.uu.ub.cora.httphandler.internal.CircuitBreakingRequestSender;
+import se.uu.ub.cora.httphandler.internal.CoalescingRequestSender;
+import se.uu.ub.cora.httphandler.internal.DecompressingRequestSender;
+import se.uu.ub.cora.httphandler.internal.HttpClientAsyncSender;
+import se.uu.ub.cora.httphandler.internal.HttpClientSender;
 import se.uu.ub.cora.httphandler.internal.HttpHandlerImp;
 import se.uu.ub.cora.httphandler.internal.HttpMultiPartUploaderImp;
+import se.uu.ub.cora.httphandler.internal.InstrumentedRequestSender;
+import se.uu.ub.cora.httphandler.internal.RequestBodyCompressor;
+import se.uu.ub.cora.httphandler.internal.RetryingRequestSender;
+import se.uu.ub.cora.httphandler.internal.SizeLimitingRequestSender;
 
 public class HttpHandlerFactoryTest {
 	private HttpHandlerFactory factory;
@@ -57,8 +76,328 @@ public class HttpHandlerFactoryTest {
 		HttpRequest httpRequest = httpRequestBuilder.build();
 		assertEquals(httpRequest.uri().toString(), url);
 
-		HttpClient httpClient = httpHandler.onlyForTestGetHttpClient();
-		assertNotNull(httpClient);
+		assertNotNull(httpHandler.onlyForTestGetRequestSender());
+		assertNull(httpHandler.onlyForTestGetRequestBodyCompressor());
+	}
+
+	@Test
+	public void testFactorHttpHandlerWithRequestCompression() throws Exception {
+		HttpHandlerFactoryImp factoryImp = new HttpHandlerFactoryImp(
+				HttpHandlerFactorySettings.defaults().withRequestCompression(2048));
+
+		HttpHandlerImp httpHandler = (HttpHandlerImp) factoryImp.factor(url);
+
+		RequestBodyCompressor compressor = httpHandler.onlyForTestGetRequestBodyCompressor();
+		assertSame(compressor, factoryImp.onlyForTestGetRequestBodyCompressor());
+		assertEquals(compressor.onlyForTestGetMinimumSize(), 2048);
+		factoryImp.close();
+	}
+
+	@Test
+	public void testFactoredHttpHandlersShareHttpClient() throws Exception {
+		HttpHandlerImp httpHandler = (HttpHandlerImp) factory.factor(url);
+		HttpHandlerImp httpHandler2 = (HttpHandlerImp) factory.factor("http://uu.se");
+
+		HttpHandlerFactoryImp factoryImp = (HttpHandlerFactoryImp) factory;
+		assertSame(httpHandler.onlyForTestGetRequestSender(),
+				factoryImp.onlyForTestGetRequestSender());
+		assertSame(httpHandler2.onlyForTestGetRequestSender(),
+				factoryImp.onlyForTestGetRequestSender());
+	}
+
+	@Test
+	public void testDefaultRequestSenderUsesSharedHttpClient() throws Exception {
+		HttpHandlerFactoryImp factoryImp = (HttpHandlerFactoryImp) factory;
+
+		HttpClientSender requestSender = (HttpClientSender) factoryImp
+				.onlyForTestGetRequestSender();
+		assertSame(requestSender.onlyForTestGetHttpClient(),
+				factoryImp.onlyForTestGetHttpClient());
+	}
+
+	@Test
+	public void testRequestSenderWithListenerReportsToListener() throws Exception {
+		InMemoryHttpMetrics metrics = new InMemoryHttpMetrics();
+		HttpHandlerFactoryImp factoryImp = new HttpHandlerFactoryImp(
+				HttpHandlerFactorySettings.defaults().withRequestListener(metrics));
+
+		InstrumentedRequestSender requestSender = (InstrumentedRequestSender) factoryImp
+				.onlyForTestGetRequestSender();
+		assertSame(requestSender.onlyForTestGetListener(), metrics);
+		HttpClientSender httpClientSender = (HttpClientSender) requestSender
+				.onlyForTestGetRequestSender();
+		assertSame(httpClientSender.onlyForTestGetHttpClient(),
+				factoryImp.onlyForTestGetHttpClient());
+		factoryImp.close();
+	}
+
+	@Test
+	public void testFactorAsyncWithListener() throws Exception {
+		InMemoryHttpMetrics metrics = new InMemoryHttpMetrics();
+		HttpHandlerFactoryImp factoryImp = new HttpHandlerFactoryImp(
+				HttpHandlerFactorySettings.defaults().withRequestListener(metrics));
+
+		AsyncHttpHandlerImp handler = (AsyncHttpHandlerImp) factoryImp.factorAsync(url);
+		AsyncHttpMultiPartUploaderImp uploader = (AsyncHttpMultiPartUploaderImp) factoryImp
+				.factorAsyncHttpMultiPartUploader(url);
+
+		HttpClientAsyncSender asyncSender = (HttpClientAsyncSender) handler
+				.onlyForTestGetAsyncRequestSender();
+		assertSame(asyncSender.onlyForTestGetListener(), metrics);
+		assertSame(uploader.onlyForTestGetAsyncRequestSender(), asyncSender);
+		factoryImp.close();
+	}
+
+	@Test
+	public void testRequestSenderWithMaxResponseSize() throws Exception {
+		HttpHandlerFactoryImp factoryImp = new HttpHandlerFactoryImp(
+				HttpHandlerFactorySettings.defaults().withMaxResponseSize(1000));
+
+		SizeLimitingRequestSender requestSender = (SizeLimitingRequestSender) factoryImp
+				.onlyForTestGetRequestSender();
+		assertEquals(requestSender.onlyForTestGetMaxResponseSize(), 1000);
+		assertTrue(requestSender.onlyForTestGetRequestSender() instanceof HttpClientSender);
+		HttpClientAsyncSender asyncSender = (HttpClientAsyncSender) factoryImp
+				.onlyForTestGetAsyncRequestSender();
+		assertEquals(asyncSender.onlyForTestGetMaxResponseSize(), 1000);
+		factoryImp.close();
+	}
+
+	@Test
+	public void testRequestSenderWithResponseCompressionIsInsideSizeLimit() throws Exception {
+		HttpHandlerFactoryImp factoryImp = new HttpHandlerFactoryImp(HttpHandlerFactorySettings
+				.defaults().withResponseCompression().withMaxResponseSize(1000));
+
+		SizeLimitingRequestSender requestSender = (SizeLimitingRequestSender) factoryImp
+				.onlyForTestGetRequestSender();
+		DecompressingRequestSender decompressingSender = (DecompressingRequestSender) requestSender
+				.onlyForTestGetRequestSender();
+		assertTrue(decompressingSender.onlyForTestGetRequestSender() instanceof HttpClientSender);
+		factoryImp.close();
+	}
+
+	@Test
+	public void testRequestSenderWithResponseCacheIsOutermost() throws Exception {
+		HttpHandlerFactoryImp factoryImp = new HttpHandlerFactoryImp(
+				HttpHandlerFactorySettings.defaults().withRequestListener(new InMemoryHttpMetrics())
+						.withResponseCache(1_000_000));
+
+		CachingRequestSender requestSender = (CachingRequestSender) factoryImp
+				.onlyForTestGetRequestSender();
+		assertTrue(requestSender.onlyForTestGetRequestSender() instanceof InstrumentedRequestSender);
+		factoryImp.close();
+	}
+
+	@Test
+	public void testRequestSenderWithRequestCoalescingIsInsideCache() throws Exception {
+		HttpHandlerFactoryImp factoryImp = new HttpHandlerFactoryImp(HttpHandlerFactorySettings
+				.defaults().withRequestCoalescing(2048).withResponseCache(1_000_000));
+
+		CachingRequestSender requestSender = (CachingRequestSender) factoryImp
+				.onlyForTestGetRequestSender();
+		CoalescingRequestSender coalescingSender = (CoalescingRequestSender) requestSender
+				.onlyForTestGetRequestSender();
+		assertTrue(coalescingSender.onlyForTestGetRequestSender() instanceof HttpClientSender);
+		assertEquals(coalescingSender.onlyForTestGetMaxBodySize(), 2048);
+		factoryImp.close();
+	}
+
+	@Test
+	public void testRequestSenderWithRetryPolicyIsInsideCoalescing() throws Exception {
+		RetryPolicy policy = RetryPolicy.defaults();
+		InMemoryHttpMetrics metrics = new InMemoryHttpMetrics();
+		HttpHandlerFactoryImp factoryImp = new HttpHandlerFactoryImp(
+				HttpHandlerFactorySettings.defaults().withRequestListener(metrics)
+						.withRetryPolicy(policy).withRequestCoalescing());
+
+		CoalescingRequestSender coalescingSender = (CoalescingRequestSender) factoryImp
+				.onlyForTestGetRequestSender();
+		RetryingRequestSender retryingSender = (RetryingRequestSender) coalescingSender
+				.onlyForTestGetRequestSender();
+		assertSame(retryingSender.onlyForTestGetRetryPolicy(), policy);
+		assertSame(retryingSender.onlyForTestGetListener(), metrics);
+		assertTrue(retryingSender
+				.onlyForTestGetRequestSender() instanceof InstrumentedRequestSender);
+		factoryImp.close();
+	}
+
+	@Test
+	public void testRequestSenderWithCircuitBreakerAndBulkheadIsOutsideRetry() throws Exception {
+		CircuitBreakerPolicy policy = CircuitBreakerPolicy.defaults();
+		HttpHandlerFactoryImp factoryImp = new HttpHandlerFactoryImp(HttpHandlerFactorySettings
+				.defaults().withRetryPolicy(RetryPolicy.defaults()).withCircuitBreaker(policy)
+				.withMaxConcurrentRequestsPerHost(10));
+
+		BulkheadRequestSender bulkheadSender = (BulkheadRequestSender) factoryImp
+				.onlyForTestGetRequestSender();
+		assertEquals(bulkheadSender.onlyForTestGetMaxConcurrentRequests(), 10);
+		CircuitBreakingRequestSender circuitBreaker = (CircuitBreakingRequestSender) bulkheadSender
+				.onlyForTestGetRequestSender();
+		assertSame(circuitBreaker.onlyForTestGetPolicy(), policy);
+		assertTrue(circuitBreaker
+				.onlyForTestGetRequestSender() instanceof RetryingRequestSender);
+		factoryImp.close();
+	}
+
+	@Test
+	public void testRequestSenderWithOnlyOffHeapResponseCache() throws Exception {
+		HttpHandlerFactoryImp factoryImp = new HttpHandlerFactoryImp(
+				HttpHandlerFactorySettings.defaults().withOffHeapResponseCache(1_000_000));
+
+		assertTrue(factoryImp.onlyForTestGetRequestSender() instanceof CachingRequestSender);
+		factoryImp.close();
+	}
+
+	@Test
+	public void testDefaultFactoryUsesDefaultHttpVersion() {
+		HttpHandlerFactoryImp factoryImp = (HttpHandlerFactoryImp) factory;
+
+		assertEquals(factoryImp.onlyForTestGetHttpClient().version(), Version.HTTP_2);
+	}
+
+	@Test
+	public void testFactoryWithHttpVersion() throws Exception {
+		HttpHandlerFactoryImp factoryImp = new HttpHandlerFactoryImp(
+				HttpHandlerFactorySettings.defaults().withHttpVersion(Version.HTTP_1_1));
+
+		assertEquals(factoryImp.onlyForTestGetHttpClient().version(), Version.HTTP_1_1);
+		factoryImp.close();
+	}
+
+	@Test
+	public void testDefaultFactoryUsesNoTimeouts() {
+		HttpHandlerFactoryImp factoryImp = (HttpHandlerFactoryImp) factory;
+
+		HttpHandlerImp httpHandler = (HttpHandlerImp) factoryImp.factor(url);
+
+		assertTrue(factoryImp.onlyForTestGetHttpClient().connectTimeout().isEmpty());
+		assertNull(httpHandler.onlyForTestGetTimeToFirstByteTimeout());
+		assertNull(httpHandler.onlyForTestGetRequestTimeout());
+		HttpMultiPartUploaderImp uploader = (HttpMultiPartUploaderImp) factoryImp
+				.factorHttpMultiPartUploader(url);
+		assertTrue(uploader.onlyForTestGetBuilder().build().timeout().isEmpty());
+	}
+
+	@Test
+	public void testFactoryWithTimeouts() throws Exception {
+		HttpHandlerFactoryImp factoryImp = new HttpHandlerFactoryImp(
+				HttpHandlerFactorySettings.defaults().withConnectTimeout(Duration.ofSeconds(1))
+						.withTimeToFirstByteTimeout(Duration.ofSeconds(5))
+						.withRequestTimeout(Duration.ofSeconds(20)));
+
+		HttpHandlerImp httpHandler = (HttpHandlerImp) factoryImp.factor(url);
+
+		assertEquals(factoryImp.onlyForTestGetHttpClient().connectTimeout().get(),
+				Duration.ofSeconds(1));
+		assertEquals(httpHandler.onlyForTestGetTimeToFirstByteTimeout(), Duration.ofSeconds(5));
+		assertEquals(httpHandler.onlyForTestGetRequestTimeout(), Duration.ofSeconds(20));
+		HttpMultiPartUploaderImp uploader = (HttpMultiPartUploaderImp) factoryImp
+				.factorHttpMultiPartUploader(url);
+		assertEquals(uploader.onlyForTestGetBuilder().build().timeout().get(),
+				Duration.ofSeconds(5));
+		AsyncHttpHandlerImp asyncHandler = (AsyncHttpHandlerImp) factoryImp.factorAsync(url);
+		assertEquals(asyncHandler.onlyForTestGetBuilder().build().timeout().get(),
+				Duration.ofSeconds(5));
+		factoryImp.close();
+	}
+
+	@Test
+	public void testFactoryWithOnlyRequestTimeoutUsesItForUploaders() throws Exception {
+		HttpHandlerFactoryImp factoryImp = new HttpHandlerFactoryImp(
+				HttpHandlerFactorySettings.defaults().withRequestTimeout(Duration.ofSeconds(20)));
+
+		AsyncHttpMultiPartUploaderImp uploader = (AsyncHttpMultiPartUploaderImp) factoryImp
+				.factorAsyncHttpMultiPartUploader(url);
+
+		assertEquals(uploader.onlyForTestGetBuilder().build().timeout().get(),
+				Duration.ofSeconds(20));
+		factoryImp.close();
+	}
+
+	@Test
+	public void testSendersWithListenerShareInFlightRequests() throws Exception {
+		HttpHandlerFactoryImp factoryImp = new HttpHandlerFactoryImp(HttpHandlerFactorySettings
+				.defaults().withRequestListener(new InMemoryHttpMetrics()));
+
+		InstrumentedRequestSender requestSender = (InstrumentedRequestSender) factoryImp
+				.onlyForTestGetRequestSender();
+		HttpClientAsyncSender asyncRequestSender = (HttpClientAsyncSender) factoryImp
+				.onlyForTestGetAsyncRequestSender();
+		assertSame(requestSender.onlyForTestGetInFlightRequests(),
+				asyncRequestSender.onlyForTestGetInFlightRequests());
+		factoryImp.close();
+	}
+
+	@Test
+	public void testRequestSenderWithMaxResponseSizeAndListener() throws Exception {
+		HttpHandlerFactoryImp factoryImp = new HttpHandlerFactoryImp(HttpHandlerFactorySettings
+				.defaults().withMaxResponseSize(1000).withRequestListener(event -> {
+				}));
+
+		InstrumentedRequestSender requestSender = (InstrumentedRequestSender) factoryImp
+				.onlyForTestGetRequestSender();
+		assertTrue(requestSender
+				.onlyForTestGetRequestSender() instanceof SizeLimitingRequestSender);
+		factoryImp.close();
+	}
+
+	@Test
+	public void testFactoriesDoNotShareHttpClient() throws Exception {
+		HttpHandlerFactoryImp factory2 = new HttpHandlerFactoryImp();
+
+		HttpHandlerFactoryImp factoryImp = (HttpHandlerFactoryImp) factory;
+		assertNotSame(factory2.onlyForTestGetHttpClient(), factoryImp.onlyForTestGetHttpClient());
+	}
+
+	@Test
+	public void testCloseShutsDownHttpClient() throws Exception {
+		HttpHandlerFactoryImp factoryImp = (HttpHandlerFactoryImp) factory;
+
+		factoryImp.close();
+
+		assertTrue(factoryImp.onlyForTestGetHttpClient().isTerminated());
+	}
+
+	@Test
+	public void testFactorAsync() {
+		AsyncHttpHandler asyncHttpHandler = factory.factorAsync(url);
+
+		AsyncHttpHandlerImp asyncHttpHandlerImp = (AsyncHttpHandlerImp) asyncHttpHandler;
+		HttpRequest httpRequest = asyncHttpHandlerImp.onlyForTestGetBuilder().build();
+		assertEquals(httpRequest.uri().toString(), url);
+		HttpHandlerFactoryImp factoryImp = (HttpHandlerFactoryImp) factory;
+		HttpClientAsyncSender asyncSender = (HttpClientAsyncSender) asyncHttpHandlerImp
+				.onlyForTestGetAsyncRequestSender();
+		assertSame(asyncSender, factoryImp.onlyForTestGetAsyncRequestSender());
+		assertSame(asyncSender.onlyForTestGetHttpClient(), factoryImp.onlyForTestGetHttpClient());
+		assertNull(asyncSender.onlyForTestGetListener());
+		assertEquals(asyncSender.onlyForTestGetMaxResponseSize(), HttpClientAsyncSender.UNLIMITED);
+	}
+
+	@Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = ""
+			+ "Error factoring AsyncHttpHandler: ")
+	public void testBrokenFactorAsync() {
+		factory.factorAsync("notAnValidProtocol://google.se");
+	}
+
+	@Test
+	public void testDefaultFactoryUsesDefaultExecutor() {
+		HttpHandlerFactoryImp factoryImp = (HttpHandlerFactoryImp) factory;
+
+		assertTrue(factoryImp.onlyForTestGetHttpClient().executor().isEmpty());
+	}
+
+	@Test
+	public void testFactoryWithVirtualThreadsUsesVirtualThreadExecutor() throws Exception {
+		HttpHandlerFactoryImp factoryImp = new HttpHandlerFactoryImp(
+				HttpHandlerFactorySettings.defaults().withVirtualThreads());
+
+		Executor executor = factoryImp.onlyForTestGetHttpClient().executor().get();
+		CompletableFuture<Boolean> runOnVirtualThread = new CompletableFuture<>();
+		executor.execute(() -> runOnVirtualThread.complete(Thread.currentThread().isVirtual()));
+
+		assertTrue(runOnVirtualThread.get());
+		factoryImp.close();
 	}
 
 	@Test(expectedExceptions = RuntimeException.class)
@@ -73,6 +412,35 @@ public class HttpHandlerFactoryTest {
 		assertTrue(factored instanceof HttpMultiPartUploaderImp);
 	}
 
+	@Test
+	public void testFactorHttpMultiPartUploaderUsesSharedHttpClient() {
+		HttpMultiPartUploaderImp uploader = (HttpMultiPartUploaderImp) factory
+				.factorHttpMultiPartUploader("http://www.uu.se");
+
+		HttpRequest httpRequest = uploader.onlyForTestGetBuilder().build();
+		assertEquals(httpRequest.uri().toString(), "http://www.uu.se");
+		HttpHandlerFactoryImp factoryImp = (HttpHandlerFactoryImp) factory;
+		assertSame(uploader.onlyForTestGetRequestSender(),
+				factoryImp.onlyForTestGetRequestSender());
+	}
+
+	@Test
+	public void testFactorAsyncHttpMultiPartUploader() {
+		AsyncHttpMultiPartUploaderImp uploader = (AsyncHttpMultiPartUploaderImp) factory
+				.factorAsyncHttpMultiPartUploader("http://www.uu.se");
+
+		HttpRequest httpRequest = uploader.onlyForTestGetBuilder().build();
+		assertEquals(httpRequest.uri().toString(), "http://www.uu.se");
+		HttpHandlerFactoryImp factoryImp = (HttpHandlerFactoryImp) factory;
+		assertSame(uploader.onlyForTestGetAsyncRequestSender(),
+				factoryImp.onlyForTestGetAsyncRequestSender());
+	}
+
+	@Test(expectedExceptions = RuntimeException.class)
+	public void testFactorAsyncHttpMultiPartUploaderNonExistingClassName() {
+		factory.factorAsyncHttpMultiPartUploader("/()&/()%&");
+	}
+
 	@Test(expectedExceptions = RuntimeException.class)
 	public void testFactorHttpMultiPartUploaderNonExistingClassName() {
 		factory.factorHttpMultiPartUploader("/()&/()%&");
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016, 2019, 2023, 2024 Uppsala University Library
+ * Copyright 2016, 2019, 2023, 2024, 2026 Uppsala University Library
  * Copyright 2023 Olov McKie
  *
  * This file is part of Cora.
@@ -21,25 +21,46 @@
 package se.uu.ub.cora.httphandler;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
 import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpRequest.Builder;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import se.uu.ub.cora.httphandler.internal.HttpClientSender;
 import se.uu.ub.cora.httphandler.internal.HttpHandlerImp;
+import se.uu.ub.cora.httphandler.internal.RequestBodyCompressor;
+import se.uu.ub.cora.httphandler.internal.RequestSender;
+import se.uu.ub.cora.httphandler.spy.BodyPublisherSubscriber;
 import se.uu.ub.cora.httphandler.spy.BuilderSpy;
 import se.uu.ub.cora.httphandler.spy.HttpClientSpy;
 import se.uu.ub.cora.httphandler.spy.HttpRequestSpy;
@@ -51,6 +72,8 @@ public class HttpHandlerTest {
 	private static final String PUBLISHER_NO_BODY = "jdk.internal.net.http.RequestPublishers$EmptyPublisher";
 	private static final String PUBLISHER_STRING = "jdk.internal.net.http.RequestPublishers$StringPublisher";
 	private static final String PUBLISHER_INPUTSTREAM = "jdk.internal.net.http.RequestPublishers$InputStreamPublisher";
+	private static final String PUBLISHER_BYTE_ARRAY = "jdk.internal.net.http.RequestPublishers$ByteArrayPublisher";
+	private static final String LARGE_OUTPUT = "<record><id>some id</id></record>".repeat(100);
 	private URL url;
 	private BuilderSpy builderSpy;
 	private HttpClientSpy httpClientSpy;
@@ -66,34 +89,111 @@ public class HttpHandlerTest {
 
 	@Test
 	public void testDefaultMethodIsGET() {
+		createSetAndReturnResponseSpyWithBody("a stream");
+
 		String responseText = httpHandler.getResponseText();
 
 		assertRequestMethodHasBeenSetInBuilder("GET");
 		assertCreatedBodyPublisherIs(PUBLISHER_NO_BODY);
-		HttpResponseSpy<?> responseSpy = assertSendOnHttpClientReturnResponseSpy();
-
-		InputStreamSpy inStreamSpy = (InputStreamSpy) responseSpy.MCR.getReturnValue("body", 0);
-		byte[] bytes = (byte[]) inStreamSpy.MCR.getReturnValue("readAllBytes", 0);
-		assertEquals(responseText.getBytes(), bytes);
+		assertSendOnHttpClientReturnResponseSpy();
+		assertEquals(responseText, "a stream");
 	}
 
 	@Test
 	public void testSetRequestMethodAndGetResponseText() {
+		createSetAndReturnResponseSpyWithBody("a stream");
+
 		httpHandler.setRequestMethod("GET");
 		String responseText = httpHandler.getResponseText();
 
 		assertRequestMethodHasBeenSetInBuilder("GET");
 		assertCreatedBodyPublisherIs(PUBLISHER_NO_BODY);
-		HttpResponseSpy<?> responseSpy = assertSendOnHttpClientReturnResponseSpy();
+		assertSendOnHttpClientReturnResponseSpy();
+		assertEquals(responseText, "a stream");
+	}
+
+	@Test
+	public void testGetResponseTextKeepsContentAsIs() {
+		String body = "<record>\r\n  <name>åäö €</name>\n</record>\n" + "x".repeat(20000);
+		createSetAndReturnResponseSpyWithBody(body);
+
+		String responseText = httpHandler.getResponseText();
+
+		assertEquals(responseText, body);
+	}
+
+	@Test
+	public void testGetResponseTextWithContentLength() {
+		HttpResponseSpy<InputStream> responseSpy = createSetAndReturnResponseSpyWithBody(
+				"a stream");
+		responseSpy.MRV.setDefaultReturnValuesSupplier("headers", () -> HttpHeaders
+				.of(Map.of("Content-Length", List.of("8")), (name, value) -> true));
+
+		String responseText = httpHandler.getResponseText();
+
+		assertEquals(responseText, "a stream");
+	}
+
+	@Test
+	public void testGetResponseTextClosesBody() {
+		HttpResponseSpy<InputStream> responseSpy = createSetAndReturnResponseSpyWithBody(
+				"a stream");
+		ByteArrayInputStreamSpy bodySpy = new ByteArrayInputStreamSpy("a stream");
+		responseSpy.MRV.setDefaultReturnValuesSupplier("body", () -> bodySpy);
+
+		httpHandler.getResponseText();
+
+		assertTrue(bodySpy.closed);
+	}
+
+	private static class ByteArrayInputStreamSpy extends ByteArrayInputStream {
+		boolean closed = false;
+
+		ByteArrayInputStreamSpy(String content) {
+			super(content.getBytes(StandardCharsets.UTF_8));
+		}
 
-		InputStreamSpy inStreamSpy = (InputStreamSpy) responseSpy.MCR.getReturnValue("body", 0);
-		byte[] bytes = (byte[]) inStreamSpy.MCR.getReturnValue("readAllBytes", 0);
-		assertEquals(responseText.getBytes(), bytes);
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			super.close();
+		}
+	}
+
+	@Test
+	public void testGetResponseReader() throws Exception {
+		createSetAndReturnResponseSpyWithBody("first line\nsecond line");
+
+		try (Reader reader = httpHandler.getResponseReader()) {
+			BufferedReader bufferedReader = new BufferedReader(reader);
+
+			assertRequestMethodHasBeenSetInBuilder("GET");
+			assertSendOnHttpClientReturnResponseSpy();
+			assertEquals(bufferedReader.readLine(), "first line");
+			assertEquals(bufferedReader.readLine(), "second line");
+			assertEquals(bufferedReader.readLine(), null);
+		}
+	}
+
+	@Test
+	public void testGetResponseReaderThrowsRuntimeExceptionOnError() {
+		RuntimeException sendException = new RuntimeException("someMessage");
+		httpClientSpy.MRV.setAlwaysThrowException("send", sendException);
+
+		try {
+			httpHandler.getResponseReader();
+			fail("Exception should have been thrown");
+		} catch (Exception e) {
+			assertTrue(e instanceof RuntimeException);
+			assertEquals(e.getMessage(), "Error getting response reader: ");
+			assertEquals(e.getCause(), sendException);
+		}
 	}
 
 	@Test
 	public void testSetRequestMethodAndGetErrorText() {
-		HttpResponseSpy<String> errorResponseSpy = createSetAndReturnStringResponseSpyInHttpClientSpy();
+		HttpResponseSpy<InputStream> errorResponseSpy = createSetAndReturnResponseSpyWithBody(
+				"a stream");
 		errorResponseSpy.MRV.setDefaultReturnValuesSupplier("statusCode", () -> 403);
 
 		httpHandler.setRequestMethod("GET");
@@ -103,22 +203,162 @@ public class HttpHandlerTest {
 		assertRequestMethodHasBeenSetInBuilder("GET");
 		assertCreatedBodyPublisherIs(PUBLISHER_NO_BODY);
 		HttpResponseSpy<?> responseSpy = assertSendOnHttpClientReturnResponseSpy();
-
-		InputStreamSpy inStreamSpy = (InputStreamSpy) responseSpy.MCR.getReturnValue("body", 0);
-		byte[] bytes = (byte[]) inStreamSpy.MCR.getReturnValue("readAllBytes", 0);
-		assertEquals(errorText.getBytes(), bytes);
+		assertEquals(errorText, "a stream");
 
 		responseSpy.MCR.assertReturn("statusCode", 0, responseCode);
 		assertEquals(responseCode, 403);
 	}
 
-	private HttpResponseSpy<String> createSetAndReturnStringResponseSpyInHttpClientSpy() {
-		HttpResponseSpy<String> responseSpy = new HttpResponseSpy<>();
-		responseSpy.MRV.setDefaultReturnValuesSupplier("body", InputStreamSpy::new);
+	private HttpResponseSpy<InputStream> createSetAndReturnResponseSpyWithBody(String body) {
+		HttpResponseSpy<InputStream> responseSpy = new HttpResponseSpy<>();
+		responseSpy.MRV.setDefaultReturnValuesSupplier("body",
+				() -> new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
 		httpClientSpy.MRV.setDefaultReturnValuesSupplier("send", () -> responseSpy);
 		return responseSpy;
 	}
 
+	@Test
+	public void testDownloadToFile() throws Exception {
+		createSetAndReturnResponseSpyWithBody(LARGE_OUTPUT);
+		Path directory = Files.createTempDirectory("download");
+		Path file = directory.resolve("record.xml");
+
+		long written = httpHandler.downloadTo(file);
+
+		assertEquals(written, LARGE_OUTPUT.length());
+		assertEquals(Files.readString(file), LARGE_OUTPUT);
+		assertOnlyFileInDirectory(directory, file);
+	}
+
+	private void assertOnlyFileInDirectory(Path directory, Path file) throws IOException {
+		try (var files = Files.list(directory)) {
+			assertEquals(files.toList(), List.of(file));
+		}
+	}
+
+	@Test
+	public void testDownloadToFileReplacesExistingFile() throws Exception {
+		createSetAndReturnResponseSpyWithBody("new content");
+		Path file = Files.createTempFile("record", ".xml");
+		Files.writeString(file, "old content that is longer");
+
+		httpHandler.downloadTo(file);
+
+		assertEquals(Files.readString(file), "new content");
+	}
+
+	@Test
+	public void testDownloadToFileFailingLeavesExistingFile() throws Exception {
+		HttpResponseSpy<InputStream> responseSpy = createSetAndReturnResponseSpyWithBody("");
+		IOException failure = new IOException("connection reset");
+		responseSpy.MRV.setDefaultReturnValuesSupplier("body", () -> new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw failure;
+			}
+		});
+		Path directory = Files.createTempDirectory("download");
+		Path file = Files.writeString(directory.resolve("record.xml"), "old content");
+
+		try {
+			httpHandler.downloadTo(file);
+			fail("Exception should have been thrown");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "Error downloading response to file: ");
+			assertEquals(e.getCause(), failure);
+		}
+		assertEquals(Files.readString(file), "old content");
+		assertOnlyFileInDirectory(directory, file);
+	}
+
+	@Test
+	public void testDownloadToFileNotSuccessfulResponseWritesNothing() throws Exception {
+		HttpResponseSpy<InputStream> responseSpy = createSetAndReturnResponseSpyWithBody(
+				"not found");
+		responseSpy.MRV.setDefaultReturnValuesSupplier("statusCode", () -> 404);
+		Path directory = Files.createTempDirectory("download");
+
+		try {
+			httpHandler.downloadTo(directory.resolve("record.xml"));
+			fail("Exception should have been thrown");
+		} catch (RuntimeException e) {
+			assertEquals(e.getCause().getMessage(), "Not a successful response code: 404");
+		}
+		try (var files = Files.list(directory)) {
+			assertEquals(files.count(), 0);
+		}
+	}
+
+	@Test
+	public void testDownloadToFileInSegmentsWithoutRangeSupportDownloadsOnce() throws Exception {
+		createSetAndReturnResponseSpyWithBody(LARGE_OUTPUT);
+		httpHandler.setRequestMethod("GET");
+		Path directory = Files.createTempDirectory("download");
+		Path file = directory.resolve("record.xml");
+
+		long written = httpHandler.downloadTo(file, 4);
+
+		assertEquals(written, LARGE_OUTPUT.length());
+		assertEquals(Files.readString(file), LARGE_OUTPUT);
+		assertOnlyFileInDirectory(directory, file);
+		httpClientSpy.MCR.assertNumberOfCallsToMethod("send", 1);
+	}
+
+	@Test
+	public void testDownloadToFileInSegmentsOnlyForGetRequests() throws Exception {
+		httpHandler.setRequestMethod("POST");
+		Path directory = Files.createTempDirectory("download");
+
+		try {
+			httpHandler.downloadTo(directory.resolve("record.xml"), 4);
+			fail("Exception should have been thrown");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "Error downloading response to file: ");
+			assertEquals(e.getCause().getMessage(),
+					"Only GET requests can be downloaded in segments");
+		}
+		httpClientSpy.MCR.assertMethodNotCalled("send");
+	}
+
+	@Test
+	public void testDownloadToFileInZeroSegmentsIsRejectedBeforeSending() throws Exception {
+		httpHandler.setRequestMethod("GET");
+		Path directory = Files.createTempDirectory("download");
+
+		try {
+			httpHandler.downloadTo(directory.resolve("record.xml"), 0);
+			fail("Exception should have been thrown");
+		} catch (IllegalArgumentException e) {
+			assertEquals(e.getMessage(), "Segments must be 1 or more: 0");
+		}
+		httpClientSpy.MCR.assertMethodNotCalled("send");
+	}
+
+	@Test
+	public void testDownloadToChannel() {
+		createSetAndReturnResponseSpyWithBody(LARGE_OUTPUT);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		long written = httpHandler.downloadTo(Channels.newChannel(out));
+
+		assertEquals(written, LARGE_OUTPUT.length());
+		assertEquals(out.toString(StandardCharsets.UTF_8), LARGE_OUTPUT);
+	}
+
+	@Test
+	public void testDownloadToChannelThrowsRuntimeExceptionOnError() {
+		RuntimeException sendException = new RuntimeException("someMessage");
+		httpClientSpy.MRV.setAlwaysThrowException("send", sendException);
+
+		try {
+			httpHandler.downloadTo(Channels.newChannel(new ByteArrayOutputStream()));
+			fail("Exception should have been thrown");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "Error downloading response to channel: ");
+			assertEquals(e.getCause(), sendException);
+		}
+	}
+
 	@Test
 	public void testSetRequestMethodAndGetResponseBinary() {
 		httpHandler.setRequestMethod("GET");
@@ -181,6 +421,166 @@ public class HttpHandlerTest {
 		}
 	}
 
+	@Test
+	public void testSetStreamOutputFromStreamCanOnlyBeSentOnce() {
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setStreamOutput(new ByteArrayInputStream("some body".getBytes()));
+
+		HttpRequest.BodyPublisher bodyPublisher = getSentBodyPublisher();
+		assertEquals(getBody(bodyPublisher), "some body");
+		try {
+			getBody(bodyPublisher);
+			fail("Exception should have been thrown");
+		} catch (IllegalStateException e) {
+			assertEquals(e.getMessage(),
+					"Stream output can only be sent once, use a stream supplier to send it again");
+		}
+	}
+
+	private HttpRequest.BodyPublisher getSentBodyPublisher() {
+		return (HttpRequest.BodyPublisher) builderSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("method", 0, "bodyPublisher");
+	}
+
+	private String getBody(HttpRequest.BodyPublisher bodyPublisher) {
+		BodyPublisherSubscriber subscriber = new BodyPublisherSubscriber();
+		bodyPublisher.subscribe(subscriber);
+		return subscriber.getReceivedAsString();
+	}
+
+	@Test
+	public void testSetStreamOutputFromSupplierCanBeSentAgain() {
+		List<InputStream> suppliedStreams = new ArrayList<>();
+		Supplier<InputStream> streamSupplier = () -> {
+			InputStream stream = new ByteArrayInputStream("some body".getBytes());
+			suppliedStreams.add(stream);
+			return stream;
+		};
+
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setStreamOutput(streamSupplier, 9);
+
+		assertSendOnHttpClientReturnResponseSpy();
+		HttpRequest.BodyPublisher bodyPublisher = getSentBodyPublisher();
+		assertEquals(bodyPublisher.contentLength(), 9);
+		assertEquals(getBody(bodyPublisher), "some body");
+		assertEquals(getBody(bodyPublisher), "some body");
+		assertEquals(suppliedStreams.size(), 2);
+	}
+
+	@Test
+	public void testSetStreamOutputFromSupplierOfUnknownLength() {
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setStreamOutput(() -> new ByteArrayInputStream("some body".getBytes()), -1);
+
+		HttpRequest.BodyPublisher bodyPublisher = getSentBodyPublisher();
+		assertEquals(bodyPublisher.contentLength(), -1);
+		assertEquals(getBody(bodyPublisher), "some body");
+	}
+
+	@Test
+	public void testSetStreamOutputFromSupplierWithInvalidLength() {
+		try {
+			httpHandler.setStreamOutput(() -> new ByteArrayInputStream(new byte[0]), -2);
+			fail("Exception should have been thrown");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "Error writing output from stream: ");
+			assertEquals(e.getCause().getMessage(), "Content length must be -1 or larger: -2");
+		}
+		httpClientSpy.MCR.assertMethodNotCalled("send");
+	}
+
+	@Test
+	public void testSetStreamOutputFromSupplierWithRequestCompression() throws Exception {
+		httpHandler = createHandlerWithRequestCompression(100);
+
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setStreamOutput(() -> new ByteArrayInputStream(LARGE_OUTPUT.getBytes()),
+				LARGE_OUTPUT.length());
+
+		builderSpy.MCR.assertParameters("setHeader", 0, "Content-Encoding", "gzip");
+		assertEquals(getSentBodyPublisher().contentLength(), -1);
+		assertEquals(getSentBodyAsGunzippedString(), LARGE_OUTPUT);
+		assertEquals(getSentBodyAsGunzippedString(), LARGE_OUTPUT);
+	}
+
+	@Test
+	public void testSetStreamOutputFromSupplierWithRequestCompressionSmallerThanMinimumSize() {
+		httpHandler = createHandlerWithRequestCompression(100);
+
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setStreamOutput(() -> new ByteArrayInputStream("x".repeat(99).getBytes()),
+				99);
+
+		builderSpy.MCR.assertMethodNotCalled("setHeader");
+		assertEquals(getSentBodyPublisher().contentLength(), 99);
+	}
+
+	@Test
+	public void testSetStreamOutputFromFile() throws Exception {
+		Path file = Files.writeString(Files.createTempFile("record", ".xml"), LARGE_OUTPUT);
+
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setStreamOutput(file);
+
+		assertSendOnHttpClientReturnResponseSpy();
+		HttpRequest.BodyPublisher bodyPublisher = getSentBodyPublisher();
+		assertEquals(bodyPublisher.contentLength(), LARGE_OUTPUT.length());
+		assertEquals(getBody(bodyPublisher), LARGE_OUTPUT);
+		assertEquals(getBody(bodyPublisher), LARGE_OUTPUT);
+	}
+
+	@Test
+	public void testSetStreamOutputFromMissingFile() throws Exception {
+		Path file = Files.createTempDirectory("upload").resolve("missing.xml");
+
+		try {
+			httpHandler.setStreamOutput(file);
+			fail("Exception should have been thrown");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "Error writing output from file: ");
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		httpClientSpy.MCR.assertMethodNotCalled("send");
+	}
+
+	@Test
+	public void testSetStreamOutputFromFileRange() throws Exception {
+		Path file = Files.writeString(Files.createTempFile("record", ".txt"), "0123456789");
+
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setStreamOutput(file, 3, 5);
+
+		HttpRequest.BodyPublisher bodyPublisher = getSentBodyPublisher();
+		assertEquals(bodyPublisher.contentLength(), 5);
+		assertEquals(getBody(bodyPublisher), "34567");
+		assertEquals(getBody(bodyPublisher), "34567");
+	}
+
+	@Test
+	public void testSetStreamOutputFromFileRangeToEndOfFile() throws Exception {
+		Path file = Files.writeString(Files.createTempFile("record", ".txt"), "0123456789");
+
+		httpHandler.setStreamOutput(file, 6, 4);
+
+		assertEquals(getBody(getSentBodyPublisher()), "6789");
+	}
+
+	@Test
+	public void testSetStreamOutputFromFileRangeOutsideFile() throws Exception {
+		Path file = Files.writeString(Files.createTempFile("record", ".txt"), "0123456789");
+
+		try {
+			httpHandler.setStreamOutput(file, 6, 5);
+			fail("Exception should have been thrown");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "Error writing output from file: ");
+			assertEquals(e.getCause().getMessage(),
+					"Range with offset: 6 and length: 5 is outside file of size: 10");
+		}
+		httpClientSpy.MCR.assertMethodNotCalled("send");
+	}
+
 	@Test
 	public void testSetRequestMethodAndSetOutput() {
 		httpHandler.setRequestMethod("PUT");
@@ -194,6 +594,108 @@ public class HttpHandlerTest {
 		responseSpy.MCR.assertReturn("statusCode", 0, responseCode);
 	}
 
+	@Test
+	public void testSetOutputFromBytes() {
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setOutput("some body".getBytes(StandardCharsets.UTF_8));
+
+		assertRequestMethodHasBeenSetInBuilder("PUT");
+		assertSendOnHttpClientReturnResponseSpy();
+		HttpRequest.BodyPublisher bodyPublisher = getSentBodyPublisher();
+		assertEquals(bodyPublisher.contentLength(), 9);
+		assertEquals(getBody(bodyPublisher), "some body");
+	}
+
+	@Test
+	public void testSetOutputFromByteBuffers() {
+		ByteBuffer first = ByteBuffer.wrap("some ".getBytes(StandardCharsets.UTF_8));
+		ByteBuffer second = ByteBuffer.allocateDirect(4).put("body".getBytes()).flip();
+
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setOutput(first, second);
+
+		assertSendOnHttpClientReturnResponseSpy();
+		HttpRequest.BodyPublisher bodyPublisher = getSentBodyPublisher();
+		assertEquals(bodyPublisher.contentLength(), 9);
+		assertEquals(getBody(bodyPublisher), "some body");
+		assertEquals(getBody(bodyPublisher), "some body");
+	}
+
+	@Test
+	public void testSetOutputFromByteBuffersWithRequestCompression() throws Exception {
+		httpHandler = createHandlerWithRequestCompression(100);
+
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setOutput(ByteBuffer.wrap(LARGE_OUTPUT.getBytes(StandardCharsets.UTF_8)));
+
+		builderSpy.MCR.assertParameters("setHeader", 0, "Content-Encoding", "gzip");
+		assertEquals(getSentBodyAsGunzippedString(), LARGE_OUTPUT);
+	}
+
+	@Test
+	public void testSetOutputFromBytesThrowsException() {
+		RuntimeException sendException = new RuntimeException("someMessage");
+		httpClientSpy.MRV.setAlwaysThrowException("send", sendException);
+
+		try {
+			httpHandler.setOutput("some body".getBytes(StandardCharsets.UTF_8));
+			fail("Exception should have been thrown");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "Error setting output: someMessage");
+			assertEquals(e.getCause(), sendException);
+		}
+	}
+
+	@Test
+	public void testGetResponseBytes() {
+		createSetAndReturnResponseSpyWithBody("åäö body");
+
+		byte[] responseBytes = httpHandler.getResponseBytes();
+
+		assertSendOnHttpClientReturnResponseSpy();
+		assertEquals(responseBytes, "åäö body".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testGetResponseBytesThrowsException() {
+		RuntimeException sendException = new RuntimeException("someMessage");
+		httpClientSpy.MRV.setAlwaysThrowException("send", sendException);
+
+		try {
+			httpHandler.getResponseBytes();
+			fail("Exception should have been thrown");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "Error getting response bytes: ");
+			assertEquals(e.getCause(), sendException);
+		}
+	}
+
+	@Test
+	public void testGetResponseByteBuffers() {
+		createSetAndReturnResponseSpyWithBody(LARGE_OUTPUT);
+
+		List<ByteBuffer> buffers = httpHandler.getResponseByteBuffers();
+
+		assertSendOnHttpClientReturnResponseSpy();
+		StringBuilder body = new StringBuilder();
+		buffers.forEach(buffer -> body.append(StandardCharsets.UTF_8.decode(buffer)));
+		assertEquals(body.toString(), LARGE_OUTPUT);
+	}
+
+	@Test
+	public void testGetResponseByteBuffersThrowsException() {
+		RuntimeException sendException = new RuntimeException("someMessage");
+		httpClientSpy.MRV.setAlwaysThrowException("send", sendException);
+
+		try {
+			httpHandler.getResponseByteBuffers();
+			fail("Exception should have been thrown");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "Error getting response byte buffers: ");
+			assertEquals(e.getCause(), sendException);
+		}
+	}
+
 	@Test
 	public void testSetRequestMethodAndSetOutputThrowsException() {
 		RuntimeException sendException = new RuntimeException("someMessage");
@@ -210,6 +712,91 @@ public class HttpHandlerTest {
 		}
 	}
 
+	private HttpHandler createHandlerWithRequestCompression(int minimumSize) {
+		return HttpHandlerImp.usingBuilderAndRequestSenderAndRequestBodyCompressor(builderSpy,
+				new HttpClientSender(httpClientSpy), new RequestBodyCompressor(minimumSize));
+	}
+
+	private String getSentBodyAsGunzippedString() throws IOException {
+		HttpRequest.BodyPublisher bodyPublisher = (HttpRequest.BodyPublisher) builderSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("method", 0, "bodyPublisher");
+		BodyPublisherSubscriber subscriber = new BodyPublisherSubscriber();
+		bodyPublisher.subscribe(subscriber);
+		try (InputStream in = new GZIPInputStream(
+				new ByteArrayInputStream(subscriber.getReceivedBytes()))) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	public void testSetOutputWithRequestCompression() throws Exception {
+		httpHandler = createHandlerWithRequestCompression(100);
+
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setOutput(LARGE_OUTPUT);
+
+		builderSpy.MCR.assertParameters("setHeader", 0, "Content-Encoding", "gzip");
+		assertCreatedBodyPublisherIs(PUBLISHER_INPUTSTREAM);
+		assertEquals(getSentBodyAsGunzippedString(), LARGE_OUTPUT);
+	}
+
+	@Test
+	public void testSetOutputWithRequestCompressionSmallerThanMinimumSize() {
+		httpHandler = createHandlerWithRequestCompression(100);
+
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setOutput("x".repeat(99));
+
+		builderSpy.MCR.assertMethodNotCalled("setHeader");
+		assertCreatedBodyPublisherIs(PUBLISHER_BYTE_ARRAY);
+	}
+
+	@Test
+	public void testSetStreamOutputWithRequestCompression() throws Exception {
+		httpHandler = createHandlerWithRequestCompression(100);
+
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setStreamOutput(new ByteArrayInputStream(LARGE_OUTPUT.getBytes()));
+
+		builderSpy.MCR.assertParameters("setHeader", 0, "Content-Encoding", "gzip");
+		assertCreatedBodyPublisherIs(PUBLISHER_INPUTSTREAM);
+		assertEquals(getSentBodyAsGunzippedString(), LARGE_OUTPUT);
+	}
+
+	@Test
+	public void testSetStreamOutputWithRequestCompressionSmallerThanMinimumSize() {
+		httpHandler = createHandlerWithRequestCompression(100);
+
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setStreamOutput(new ByteArrayInputStream("x".repeat(99).getBytes()));
+
+		builderSpy.MCR.assertMethodNotCalled("setHeader");
+		assertCreatedBodyPublisherIs(PUBLISHER_BYTE_ARRAY);
+	}
+
+	@Test
+	public void testEmptyOutputIsNotCompressed() {
+		httpHandler = createHandlerWithRequestCompression(0);
+
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setOutput("");
+
+		builderSpy.MCR.assertMethodNotCalled("setHeader");
+		assertCreatedBodyPublisherIs(PUBLISHER_BYTE_ARRAY);
+	}
+
+	@Test
+	public void testOutputIsNotCompressedWhenContentEncodingSetByCaller() {
+		httpHandler = createHandlerWithRequestCompression(100);
+
+		httpHandler.setRequestProperty("content-encoding", "br");
+		httpHandler.setRequestMethod("PUT");
+		httpHandler.setOutput(LARGE_OUTPUT);
+
+		builderSpy.MCR.assertNumberOfCallsToMethod("setHeader", 1);
+		assertCreatedBodyPublisherIs(PUBLISHER_STRING);
+	}
+
 	@Test
 	public void testSetRequestMethodBadRequestMethodThrowsRuntimeException() {
 		RuntimeException sendException = new RuntimeException("someMessage");
@@ -270,6 +857,57 @@ public class HttpHandlerTest {
 		assertEquals(headers.get("someOtherHeader"), "someOtherHeaderValue");
 	}
 
+	@Test
+	public void testGetHeadersIsSameCaseInsensitiveView() {
+		HttpResponseSpy<InputStream> inputStreamResponse = new HttpResponseSpy<>();
+		createHttpResponseUsingBodyAndHeaders(inputStreamResponse, "someHeader", "someHeaderValue");
+		httpClientSpy.MRV.setDefaultReturnValuesSupplier("send", () -> inputStreamResponse);
+		httpHandler.getResponseCode();
+
+		Map<String, String> headers = httpHandler.getResponseHeaders();
+
+		assertEquals(headers.get("SOMEHEADER"), "someHeaderValue");
+		assertSame(httpHandler.getResponseHeaders(), headers);
+		inputStreamResponse.MCR.assertNumberOfCallsToMethod("headers", 1);
+	}
+
+	@Test
+	public void testGetHeaderFieldReturnsFirstValue() {
+		HttpResponseSpy<InputStream> inputStreamResponse = new HttpResponseSpy<>();
+		createHttpResponseUsingBodyAndHeaders(inputStreamResponse, "someHeader", "someHeaderValue",
+				"someHeader", "someOtherHeaderValue");
+		httpClientSpy.MRV.setDefaultReturnValuesSupplier("send", () -> inputStreamResponse);
+		httpHandler.getResponseCode();
+
+		assertEquals(httpHandler.getHeaderField("someheader"), "someHeaderValue");
+		assertEquals(httpHandler.getHeaderField("missingHeader"), null);
+	}
+
+	@Test
+	public void testGetHeaderFieldBeforeRequestReturnsNull() {
+		assertEquals(httpHandler.getHeaderField("someHeader"), null);
+		httpClientSpy.MCR.assertMethodNotCalled("send");
+	}
+
+	@Test
+	public void testGetHeaderFields() {
+		HttpResponseSpy<InputStream> inputStreamResponse = new HttpResponseSpy<>();
+		createHttpResponseUsingBodyAndHeaders(inputStreamResponse, "someHeader", "someHeaderValue",
+				"someHeader", "someOtherHeaderValue");
+		httpClientSpy.MRV.setDefaultReturnValuesSupplier("send", () -> inputStreamResponse);
+		httpHandler.getResponseCode();
+
+		assertEquals(httpHandler.getHeaderFields("SomeHeader"),
+				List.of("someHeaderValue", "someOtherHeaderValue"));
+		assertEquals(httpHandler.getHeaderFields("missingHeader"), List.of());
+	}
+
+	@Test
+	public void testGetHeaderFieldsBeforeRequestReturnsEmptyList() {
+		assertEquals(httpHandler.getHeaderFields("someHeader"), List.of());
+		httpClientSpy.MCR.assertMethodNotCalled("send");
+	}
+
 	private void createHttpResponseUsingBodyAndHeaders(HttpResponseSpy<InputStream> body,
 			String... headerToBeIncluded) {
 		body.MRV.setDefaultReturnValuesSupplier("body", InputStreamSpy::new);
@@ -365,6 +1003,200 @@ public class HttpHandlerTest {
 		assertEquals(httpHandler.getResponseCode(), 500);
 	}
 
+	@Test
+	public void testNoTimeoutIsSetByDefault() {
+		httpHandler.getResponseCode();
+
+		BuilderSpy methodBuilder = (BuilderSpy) builderSpy.MCR.getReturnValue("method", 0);
+		methodBuilder.MCR.assertMethodNotCalled("timeout");
+	}
+
+	@Test
+	public void testTimeToFirstByteTimeoutIsSetOnRequest() {
+		httpHandler.setTimeToFirstByteTimeout(Duration.ofSeconds(2));
+
+		httpHandler.getResponseCode();
+
+		assertTimeoutSetOnRequest(Duration.ofSeconds(2));
+	}
+
+	private void assertTimeoutSetOnRequest(Duration timeout) {
+		BuilderSpy methodBuilder = (BuilderSpy) builderSpy.MCR.getReturnValue("method", 0);
+		methodBuilder.MCR.assertParameter("timeout", 0, "duration", timeout);
+	}
+
+	@Test
+	public void testShortestTimeoutIsSetOnRequest() {
+		httpHandler.setTimeToFirstByteTimeout(Duration.ofSeconds(2));
+		httpHandler.setRequestTimeout(Duration.ofSeconds(1));
+
+		httpHandler.getResponseCode();
+
+		assertTimeLeftOfRequestTimeoutSetOnRequest(Duration.ofSeconds(1));
+	}
+
+	private void assertTimeLeftOfRequestTimeoutSetOnRequest(Duration requestTimeout) {
+		BuilderSpy methodBuilder = (BuilderSpy) builderSpy.MCR.getReturnValue("method", 0);
+		Duration timeout = (Duration) methodBuilder.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("timeout", 0, "duration");
+		assertTrue(timeout.compareTo(requestTimeout) <= 0);
+		assertTrue(timeout.compareTo(requestTimeout.minusMillis(500)) > 0);
+	}
+
+	@Test
+	public void testRequestTimeoutClosesBodyAfterDeadline() throws Exception {
+		createSetAndReturnResponseSpyWithBody("a stream");
+		httpHandler.setRequestTimeout(Duration.ofMillis(50));
+
+		InputStream body = httpHandler.getResponseBinary();
+		Thread.sleep(200);
+
+		try {
+			body.read();
+			fail("Exception should have been thrown");
+		} catch (HttpTimeoutException e) {
+			assertEquals(e.getMessage(), "Request timed out after PT0.05S");
+		}
+	}
+
+	@Test
+	public void testRequestTimeoutBodyCanBeReadBeforeDeadline() throws Exception {
+		createSetAndReturnResponseSpyWithBody("a stream");
+		httpHandler.setRequestTimeout(Duration.ofSeconds(10));
+
+		assertEquals(httpHandler.getResponseText(), "a stream");
+	}
+
+	@Test
+	public void testRequestTimeoutDeadlineIncludesTimeBeforeHeadersAreReceived()
+			throws Exception {
+		HttpResponseSpy<InputStream> slowResponse = new HttpResponseSpy<>();
+		slowResponse.MRV.setDefaultReturnValuesSupplier("body",
+				() -> new ByteArrayInputStream("a stream".getBytes()));
+		httpHandler = HttpHandlerImp.usingBuilderAndRequestSender(
+				HttpRequest.newBuilder(URI.create("http://localhost:8080/")), request -> {
+					sleep(300);
+					return slowResponse;
+				});
+		httpHandler.setRequestTimeout(Duration.ofMillis(200));
+
+		try {
+			httpHandler.getResponseText();
+			fail("Exception should have been thrown");
+		} catch (RequestTimeoutException e) {
+			assertEquals(e.getCause().getMessage(), "Request timed out after PT0.2S");
+		}
+	}
+
+	@Test
+	public void testTimeToFirstByteTimeoutDoesNotLimitBody() throws Exception {
+		createSetAndReturnResponseSpyWithBody("a stream");
+		httpHandler.setTimeToFirstByteTimeout(Duration.ofMillis(50));
+
+		InputStream body = httpHandler.getResponseBinary();
+		Thread.sleep(100);
+
+		assertEquals(new String(body.readAllBytes()), "a stream");
+	}
+
+	private void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void testRequestTimeoutEqualToTimeToFirstByteTimeoutThrowsRequestTimeoutException() {
+		HttpTimeoutException timeout = new HttpTimeoutException("request timed out");
+		httpHandler = createHandlerFailingWith(timeout);
+		httpHandler.setTimeToFirstByteTimeout(Duration.ofSeconds(1));
+		httpHandler.setRequestTimeout(Duration.ofMillis(1000));
+
+		try {
+			httpHandler.getResponseCode();
+			fail("Exception should have been thrown");
+		} catch (RequestTimeoutException e) {
+			assertEquals(e.getCause(), timeout);
+		}
+	}
+
+	@Test
+	public void testConnectTimeoutThrowsConnectTimeoutException() {
+		HttpConnectTimeoutException timeout = new HttpConnectTimeoutException("timed out");
+		httpHandler = createHandlerFailingWith(timeout);
+
+		try {
+			httpHandler.getResponseText();
+			fail("Exception should have been thrown");
+		} catch (ConnectTimeoutException e) {
+			assertEquals(e.getMessage(), "Error getting response text: ");
+			assertEquals(e.getCause(), timeout);
+		}
+	}
+
+	private HttpHandler createHandlerFailingWith(IOException failure) {
+		RequestSender failingSender = request -> {
+			throw failure;
+		};
+		return HttpHandlerImp.usingBuilderAndRequestSender(
+				HttpRequest.newBuilder(URI.create("http://localhost:8080/")), failingSender);
+	}
+
+	@Test
+	public void testWrappedConnectTimeoutThrowsConnectTimeoutExceptionFromGetResponseCode() {
+		ConnectException failure = new ConnectException("timed out");
+		failure.initCause(new HttpConnectTimeoutException("timed out"));
+		httpHandler = createHandlerFailingWith(failure);
+
+		try {
+			httpHandler.getResponseCode();
+			fail("Exception should have been thrown");
+		} catch (ConnectTimeoutException e) {
+			assertEquals(e.getMessage(), "Error getting response code: ");
+			assertEquals(e.getCause(), failure);
+		}
+	}
+
+	@Test
+	public void testTimeToFirstByteTimeoutThrowsFirstByteTimeoutException() {
+		HttpTimeoutException timeout = new HttpTimeoutException("request timed out");
+		httpHandler = createHandlerFailingWith(timeout);
+		httpHandler.setTimeToFirstByteTimeout(Duration.ofSeconds(1));
+		httpHandler.setRequestTimeout(Duration.ofSeconds(5));
+
+		try {
+			httpHandler.getResponseCode();
+			fail("Exception should have been thrown");
+		} catch (FirstByteTimeoutException e) {
+			assertEquals(e.getCause(), timeout);
+		}
+	}
+
+	@Test
+	public void testShorterRequestTimeoutThrowsRequestTimeoutException() {
+		HttpTimeoutException timeout = new HttpTimeoutException("request timed out");
+		httpHandler = createHandlerFailingWith(timeout);
+		httpHandler.setTimeToFirstByteTimeout(Duration.ofSeconds(5));
+		httpHandler.setRequestTimeout(Duration.ofSeconds(1));
+
+		try {
+			httpHandler.setOutput("some output");
+			fail("Exception should have been thrown");
+		} catch (RequestTimeoutException e) {
+			assertEquals(e.getMessage(), "Error setting output: request timed out");
+			assertEquals(e.getCause(), timeout);
+		}
+	}
+
+	@Test
+	public void testOtherIOExceptionGivesResponseCode500() {
+		httpHandler = createHandlerFailingWith(new IOException("connection reset"));
+
+		assertEquals(httpHandler.getResponseCode(), 500);
+	}
+
 	private HttpResponseSpy<?> assertSendOnHttpClientReturnResponseSpy() {
 		BuilderSpy builder2Spy = (BuilderSpy) builderSpy.MCR.getReturnValue("method", 0);
 		HttpRequestSpy httpRequestSpy = (HttpRequestSpy) builder2Spy.MCR.getReturnValue("build", 0);
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016, 2018 Uppsala University Library
+ * Copyright 2016, 2018, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -21,204 +21,401 @@ package se.uu.ub.cora.httphandler;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletionException;
+import java.util.function.LongSupplier;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import se.uu.ub.cora.httphandler.internal.HttpMultiPartUploaderImp;
-import se.uu.ub.cora.httphandler.urlconnection.HttpURLConnectionErrorSpy;
-import se.uu.ub.cora.httphandler.urlconnection.HttpURLConnectionPartlyErrorSpy;
-import se.uu.ub.cora.httphandler.urlconnection.HttpURLConnectionSpy;
+import se.uu.ub.cora.httphandler.spy.BodyPublisherSubscriber;
+import se.uu.ub.cora.httphandler.spy.BuilderSpy;
+import se.uu.ub.cora.httphandler.spy.HttpClientSpy;
+import se.uu.ub.cora.httphandler.spy.HttpRequestSpy;
+import se.uu.ub.cora.httphandler.spy.HttpResponseSpy;
 
 public class HttpMultiPartUploaderTest {
-	private URL url;
+	private BuilderSpy builderSpy;
+	private HttpClientSpy httpClientSpy;
+	private HttpMultiPartUploader uploader;
 
 	@BeforeMethod
-	public void setUp() throws MalformedURLException {
-		url = new URL("http://google.se");
+	public void setUp() {
+		builderSpy = new BuilderSpy();
+		httpClientSpy = new HttpClientSpy();
+		uploader = HttpMultiPartUploaderImp.usingBuilderAndHttpClient(builderSpy, httpClientSpy);
 	}
 
 	@Test
 	public void testSetStreamOutput() throws IOException {
-		HttpURLConnectionSpy urlConnection = new HttpURLConnectionSpy(url);
-		HttpMultiPartUploader httpHandler = HttpMultiPartUploaderImp
-				.usingURLConnection(urlConnection);
-		httpHandler.addHeaderField("Accept", "application/vnd.cora.record+json");
-		httpHandler.addFormField("some", "value");
-		InputStream fakeStream = new ByteArrayInputStream(
-				"a string".getBytes(StandardCharsets.UTF_8));
-		httpHandler.addFilePart("file", "adele.png", fakeStream);
-		httpHandler.done();
-		// String expected = "Accept: application/vnd.cora.record+json2\n";
-		String expected = "";
+		uploader.addHeaderField("Accept", "application/vnd.cora.record+json");
+		uploader.addFormField("some", "value");
+		uploader.addFilePart("file", "adele.png", createStream("a string"));
+		uploader.done();
 
-		expected += "--xxxYYYxxx\n";
-		expected += "Content-Disposition: form-data; name=\"some\"\n";
-		expected += "Content-Type: text/plain; charset=UTF-8\n";
-		expected += "\n";
-		expected += "value\n";
-		expected += "--xxxYYYxxx\n";
-		expected += "Content-Disposition: form-data; name=\"file\"; filename=\"adele.png\"\n";
-		expected += "Content-Type: image/png\n";
-		expected += "Content-Transfer-Encoding: binary\n";
-		expected += "\n";
-		expected += "a string\n";
-		expected += "--xxxYYYxxx--\n";
-
-		assertEquals(urlConnection.getOutputStreamAsString(), expected);
-
-		assertEquals(urlConnection.requestProperties.get("Accept"),
+		String boundary = getBoundaryFromContentTypeHeader(1);
+		String expected = "";
+		expected += "--" + boundary + "\r\n";
+		expected += "Content-Disposition: form-data; name=\"some\"\r\n";
+		expected += "Content-Type: text/plain; charset=UTF-8\r\n";
+		expected += "\r\n";
+		expected += "value\r\n";
+		expected += "--" + boundary + "\r\n";
+		expected += "Content-Disposition: form-data; name=\"file\"; filename=\"adele.png\"\r\n";
+		expected += "Content-Type: image/png\r\n";
+		expected += "Content-Transfer-Encoding: binary\r\n";
+		expected += "\r\n";
+		expected += "a string\r\n";
+		expected += "--" + boundary + "--\r\n";
+
+		assertEquals(readSentBody(), expected);
+		builderSpy.MCR.assertParameters("setHeader", 0, "Accept",
 				"application/vnd.cora.record+json");
 	}
 
+	private String getBoundaryFromContentTypeHeader(int setHeaderCallNumber) {
+		builderSpy.MCR.assertParameter("setHeader", setHeaderCallNumber, "name", "Content-Type");
+		String contentType = (String) builderSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("setHeader",
+						setHeaderCallNumber, "value");
+		return contentType.substring("multipart/form-data; boundary=".length());
+	}
+
+	private InputStream createStream(String content) {
+		return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private String readSentBody() {
+		BodyPublisherSubscriber subscriber = new BodyPublisherSubscriber();
+		getSentBodyPublisher().subscribe(subscriber);
+		return subscriber.getReceivedAsString();
+	}
+
+	private BodyPublisher getSentBodyPublisher() {
+		return (BodyPublisher) builderSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("method", 0, "bodyPublisher");
+	}
+
 	@Test
-	public void testUrlConnectionSetUpCorrectly() throws IOException {
-		HttpURLConnectionSpy urlConnection = new HttpURLConnectionSpy(url);
-		HttpMultiPartUploader httpHandler = HttpMultiPartUploaderImp
-				.usingURLConnection(urlConnection);
-		httpHandler.addHeaderField("Accept", "application/vnd.cora.record+json");
-		httpHandler.addFormField("some", "value");
-		InputStream fakeStream = new ByteArrayInputStream(
-				"a string".getBytes(StandardCharsets.UTF_8));
-		httpHandler.addFilePart("file", "adele.png", fakeStream);
-		httpHandler.done();
-
-		assertFalse(urlConnection.usecaches.get(0));
-		urlConnection.MCR.assertParameters("setDoOutput", 0, true);
-		assertTrue(urlConnection.doinput.get(0));
-		assertEquals(urlConnection.requestProperties.get("Content-Type"),
-				"multipart/form-data; boundary=xxxYYYxxx");
-		assertEquals(urlConnection.requestProperties.get("User-Agent"),
+	public void testRequestSetUpCorrectly() throws IOException {
+		uploader.addFormField("some", "value");
+		uploader.done();
+
+		String boundary = getBoundaryFromContentTypeHeader(0);
+		assertTrue(boundary.matches("----CoraFormBoundary[0-9a-f]{32}"));
+		builderSpy.MCR.assertParameters("setHeader", 1, "User-Agent",
 				"HttpMultipartUploader Agent");
+		builderSpy.MCR.assertParameter("method", 0, "method", "POST");
+		BuilderSpy builder2Spy = (BuilderSpy) builderSpy.MCR.getReturnValue("method", 0);
+		HttpRequestSpy httpRequestSpy = (HttpRequestSpy) builder2Spy.MCR.getReturnValue("build", 0);
+		httpClientSpy.MCR.assertParameter("send", 0, "request", httpRequestSpy);
 	}
 
 	@Test
-	public void testUrlConnectionOnlySetUpOnce() throws IOException {
-		HttpURLConnectionSpy urlConnection = new HttpURLConnectionSpy(url);
-		HttpMultiPartUploader httpHandler = HttpMultiPartUploaderImp
-				.usingURLConnection(urlConnection);
-		httpHandler.addFormField("some", "value");
-		InputStream fakeStream = new ByteArrayInputStream(
-				"a string".getBytes(StandardCharsets.UTF_8));
-		httpHandler.addFilePart("file", "adele.png", fakeStream);
-		httpHandler.done();
+	public void testEachUploaderUsesItsOwnBoundary() throws IOException {
+		BuilderSpy otherBuilderSpy = new BuilderSpy();
+		HttpMultiPartUploader otherUploader = HttpMultiPartUploaderImp
+				.usingBuilderAndHttpClient(otherBuilderSpy, httpClientSpy);
+		uploader.done();
+		otherUploader.done();
+
+		String otherContentType = (String) otherBuilderSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("setHeader", 0, "value");
+		assertNotEquals(otherContentType,
+				"multipart/form-data; boundary=" + getBoundaryFromContentTypeHeader(0));
+	}
 
-		assertEquals(urlConnection.usecaches.size(), 1);
-		urlConnection.MCR.assertParameters("setDoOutput", 0, true);
-		assertEquals(urlConnection.doinput.size(), 1);
-		assertEquals(urlConnection.setRequestPropertiesCalledNoTimes, 2);
-		urlConnection.MCR.assertNumberOfCallsToMethod("getOutputStream", 1);
+	@Test
+	public void testBoundaryInPartContentDoesNotBreakBody() throws IOException {
+		uploader.addFilePart("file", "data.bin", createStream("--xxxYYYxxx\r\n"));
+		uploader.done();
+
+		String boundary = getBoundaryFromContentTypeHeader(0);
+		String body = readSentBody();
+		assertEquals(body.split("--" + boundary, -1).length, 3);
+		assertTrue(body.contains("\r\n\r\n--xxxYYYxxx\r\n\r\n--" + boundary + "--\r\n"));
 	}
 
 	@Test
-	public void testSetStreamOutputError() throws IOException {
-		try {
-			HttpURLConnectionSpy urlConnection = new HttpURLConnectionErrorSpy(url);
-			HttpMultiPartUploader httpHandler = HttpMultiPartUploaderImp
-					.usingURLConnection(urlConnection);
-			httpHandler.addFormField("some", "value");
+	public void testNothingIsSentBeforeDone() throws IOException {
+		uploader.addFormField("some", "value");
+		uploader.addFilePart("file", "adele.png", createStream("a string"));
 
-		} catch (Exception e) {
-			assertTrue(e instanceof RuntimeException);
-			assertEquals(e.getMessage(), "Failed to upload multipart");
-			assertEquals(e.getCause().getMessage(),
-					"this is an ioException getting outputStream from HttpURLConnectionErrorSpy");
-		}
+		builderSpy.MCR.assertMethodNotCalled("method");
+		httpClientSpy.MCR.assertMethodNotCalled("send");
 	}
 
 	@Test(expectedExceptions = RuntimeException.class, expectedExceptionsMessageRegExp = ""
 			+ "Headers can not be set after connection is setup on multipart requests, "
 			+ "headerName: SomeHeader headerValue: someHeaderValue")
-	public void testSetHeaderAfterSendingDataHasStarted() throws IOException {
-		HttpURLConnectionSpy urlConnection = new HttpURLConnectionSpy(url);
-		HttpMultiPartUploader httpHandler = HttpMultiPartUploaderImp
-				.usingURLConnection(urlConnection);
-		httpHandler.addHeaderField("Accept", "application/vnd.cora.record+json");
-		httpHandler.addFormField("some", "value");
-		InputStream fakeStream = new ByteArrayInputStream(
-				"a string".getBytes(StandardCharsets.UTF_8));
-		httpHandler.addFilePart("file", "adele.png", fakeStream);
-
-		httpHandler.addHeaderField("SomeHeader", "someHeaderValue");
+	public void testSetHeaderAfterPartsHaveBeenAdded() throws IOException {
+		uploader.addHeaderField("Accept", "application/vnd.cora.record+json");
+		uploader.addFormField("some", "value");
+		uploader.addFilePart("file", "adele.png", createStream("a string"));
 
+		uploader.addHeaderField("SomeHeader", "someHeaderValue");
 	}
 
 	@Test
-	public void testGetResponseCode() {
-		HttpURLConnectionSpy urlConnection = new HttpURLConnectionSpy(url);
-		HttpMultiPartUploader httpHandler = HttpMultiPartUploaderImp
-				.usingURLConnection(urlConnection);
+	public void testBodyHasUnknownLengthWhenSizeOfFilePartIsUnknown() throws IOException {
+		uploader.addFormField("some", "value");
+		uploader.addFilePart("file", "adele.png", createStream("a string"), 8);
+		uploader.addFilePart("file2", "adele2.png", createStream("another string"));
+		uploader.done();
 
-		urlConnection.setResponseCode(200);
-		assertEquals(httpHandler.getResponseCode(), 200);
+		assertEquals(getSentBodyPublisher().contentLength(), -1);
 	}
 
 	@Test
-	public void testGetBrokenResponseCode() {
-		HttpURLConnectionSpy urlConnection = new HttpURLConnectionPartlyErrorSpy(url);
-		HttpMultiPartUploader httpHandler = HttpMultiPartUploaderImp
-				.usingURLConnection(urlConnection);
-		assertEquals(httpHandler.getResponseCode(), 500);
+	public void testBodyHasKnownLengthWhenSizeOfAllFilePartsIsKnown() throws IOException {
+		uploader.addFormField("some", "value åäö");
+		uploader.addFilePart("file", "adele.png", createStream("a string"), 8);
+		uploader.addFilePart("file2", "adele2.png", createStream("another string"), 14);
+		uploader.done();
+
+		long sentLength = readSentBody().getBytes(StandardCharsets.UTF_8).length;
+		assertEquals(getSentBodyPublisher().contentLength(), sentLength);
 	}
 
 	@Test
-	public void testGetResponseText() {
-		HttpURLConnectionSpy urlConnection = new HttpURLConnectionSpy(url);
-		HttpMultiPartUploader httpHandler = HttpMultiPartUploaderImp
-				.usingURLConnection(urlConnection);
+	public void testEmptyFilePartOfKnownSizeKeepsKnownLength() throws IOException {
+		uploader.addFilePart("file", "empty.png", createStream(""), 0);
+		uploader.done();
 
-		urlConnection.setResponseText("some text");
-		assertEquals(httpHandler.getResponseText(), "some text");
+		long sentLength = readSentBody().getBytes(StandardCharsets.UTF_8).length;
+		assertEquals(getSentBodyPublisher().contentLength(), sentLength);
 	}
 
-	@Test()
-	public void testGetBrokenResponseText() {
-		try {
+	@Test
+	public void testStreamFilePartCanNotBeSentTwice() throws IOException {
+		uploader.addFilePart("file", "adele.png", createStream("a string"), 8);
+		uploader.done();
+		readSentBody();
 
-			HttpURLConnectionSpy urlConnection = new HttpURLConnectionPartlyErrorSpy(url);
-			HttpMultiPartUploader httpHandler = HttpMultiPartUploaderImp
-					.usingURLConnection(urlConnection);
+		BodyPublisherSubscriber secondSubscriber = new BodyPublisherSubscriber();
+		getSentBodyPublisher().subscribe(secondSubscriber);
 
-			httpHandler.getResponseText();
-		} catch (Exception e) {
-			assertTrue(e instanceof RuntimeException);
-			assertEquals(e.getMessage(), "Error getting response text: ");
+		try {
+			secondSubscriber.waitForComplete();
+			fail("Exception should have been thrown");
+		} catch (CompletionException e) {
 			assertEquals(e.getCause().getMessage(),
-					"this is an ioException getting inputStream from HttpURLConnectionPartlyErrorSpy");
+					"Stream output can only be sent once, use a stream supplier to send it again");
 		}
 	}
 
 	@Test
-	public void testGetErrorText() {
-		HttpURLConnectionSpy urlConnection = new HttpURLConnectionSpy(url);
-		HttpMultiPartUploader httpHandler = HttpMultiPartUploaderImp
-				.usingURLConnection(urlConnection);
+	public void testFilePartsAreSeparatedByLineFeed() throws IOException {
+		uploader.addFilePart("file", "adele.png", createStream("a string"));
+		uploader.addFilePart("file2", "adele2.png", createStream("another string"));
+		uploader.done();
+
+		String body = readSentBody();
+		String boundary = getBoundaryFromContentTypeHeader(0);
+		assertTrue(body.contains("a string\r\n--" + boundary + "\r\n"));
+		assertTrue(body.endsWith("another string\r\n--" + boundary + "--\r\n"));
+	}
+
+	@Test
+	public void testAddFilePartFromPath() throws IOException {
+		Path file = createTempFileWithContent("adele", ".png", "some file content");
+		uploader.addFilePart("file", file);
+		uploader.done();
+
+		String boundary = getBoundaryFromContentTypeHeader(0);
+		String expected = "";
+		expected += "--" + boundary + "\r\n";
+		expected += "Content-Disposition: form-data; name=\"file\"; filename=\""
+				+ file.getFileName() + "\"\r\n";
+		expected += "Content-Type: image/png\r\n";
+		expected += "Content-Transfer-Encoding: binary\r\n";
+		expected += "\r\n";
+		expected += "some file content\r\n";
+		expected += "--" + boundary + "--\r\n";
+		assertEquals(readSentBody(), expected);
+		assertEquals(getSentBodyPublisher().contentLength(), expected.length());
+	}
+
+	private Path createTempFileWithContent(String prefix, String suffix, String content)
+			throws IOException {
+		Path file = Files.createTempFile(prefix, suffix);
+		file.toFile().deleteOnExit();
+		Files.writeString(file, content);
+		return file;
+	}
+
+	@Test
+	public void testAddFilePartFromPathWithUnknownContentType() throws IOException {
+		Path file = createTempFileWithContent("adele", ".unknownextension", "some file content");
+		uploader.addFilePart("file", file);
+		uploader.done();
+
+		assertTrue(readSentBody().contains("Content-Type: application/octet-stream\r\n"));
+	}
+
+	@Test
+	public void testAddFilePartFromStreamWithUnknownContentType() throws IOException {
+		uploader.addFilePart("file", "adele.unknownextension", createStream("a string"));
+		uploader.done();
 
-		urlConnection.setErrorText("some text");
-		assertEquals(httpHandler.getErrorText(), "some text");
+		String body = readSentBody();
+		assertTrue(body.contains("Content-Type: application/octet-stream\r\n"));
+		assertFalse(body.contains("Content-Type: null"));
 	}
 
-	@Test()
-	public void testGetErrorTextBroken() {
+	@Test
+	public void testAddFilePartFromFileChannelStartsAtPositionAndClosesChannel()
+			throws IOException {
+		Path file = createTempFileWithContent("adele", ".png", "skipped some file content");
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		channel.position(8);
+		uploader.addFormField("some", "value");
+		uploader.addFilePart("file", "adele.png", channel);
+		uploader.done();
+
+		String body = readSentBody();
+		String boundary = getBoundaryFromContentTypeHeader(0);
+		assertTrue(body.endsWith("Content-Type: image/png\r\n"
+				+ "Content-Transfer-Encoding: binary\r\n\r\nsome file content\r\n--" + boundary
+				+ "--\r\n"));
+		assertEquals(getSentBodyPublisher().contentLength(), body.length());
+		assertFalse(channel.isOpen());
+	}
+
+	@Test
+	public void testFilePartIsStreamedWithBoundedMemoryRegardlessOfSize() throws IOException {
+		long maxBytesReadAheadForSmallFile = uploadGeneratedFileAndGetMaxBytesReadAhead(
+				1024L * 1024);
+		long maxBytesReadAheadForLargeFile = uploadGeneratedFileAndGetMaxBytesReadAhead(
+				256L * 1024 * 1024);
+
+		assertEquals(maxBytesReadAheadForLargeFile, maxBytesReadAheadForSmallFile);
+		assertTrue(maxBytesReadAheadForLargeFile <= 64 * 1024);
+	}
+
+	private long uploadGeneratedFileAndGetMaxBytesReadAhead(long size) throws IOException {
+		setUp();
+		BodyPublisherSubscriber subscriber = new BodyPublisherSubscriber(false);
+		GeneratedInputStream fileStream = new GeneratedInputStream(size,
+				subscriber::getBytesReceived);
+		uploader.addFilePart("file", "large.bin", fileStream);
+		uploader.done();
+
+		getSentBodyPublisher().subscribe(subscriber);
+		subscriber.waitForComplete();
+
+		assertTrue(subscriber.getBytesReceived() > size);
+		return fileStream.maxBytesReadAhead;
+	}
+
+	private static class GeneratedInputStream extends InputStream {
+		private long bytesLeft;
+		private long bytesRead = 0;
+		private long maxBytesReadAhead = 0;
+		private LongSupplier bytesSent;
+
+		GeneratedInputStream(long size, LongSupplier bytesSent) {
+			this.bytesLeft = size;
+			this.bytesSent = bytesSent;
+		}
+
+		@Override
+		public int read() {
+			byte[] oneByte = new byte[1];
+			return read(oneByte, 0, 1) == -1 ? -1 : oneByte[0];
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (bytesLeft == 0) {
+				return -1;
+			}
+			int toRead = (int) Math.min(len, bytesLeft);
+			bytesLeft -= toRead;
+			bytesRead += toRead;
+			maxBytesReadAhead = Math.max(maxBytesReadAhead, bytesRead - bytesSent.getAsLong());
+			return toRead;
+		}
+	}
+
+	@Test
+	public void testGetResponseCode() throws IOException {
+		HttpResponseSpy<InputStream> responseSpy = createResponseSpyReturnedFromSend();
+		responseSpy.MRV.setDefaultReturnValuesSupplier("statusCode", () -> 201);
+		uploader.addFormField("some", "value");
+		uploader.done();
+
+		assertEquals(uploader.getResponseCode(), 201);
+	}
+
+	private HttpResponseSpy<InputStream> createResponseSpyReturnedFromSend() {
+		HttpResponseSpy<InputStream> responseSpy = new HttpResponseSpy<>();
+		responseSpy.MRV.setDefaultReturnValuesSupplier("body",
+				() -> createStream("a stream"));
+		httpClientSpy.MRV.setDefaultReturnValuesSupplier("send", () -> responseSpy);
+		return responseSpy;
+	}
+
+	@Test
+	public void testGetResponseCodeBeforeDoneIs500() {
+		assertEquals(uploader.getResponseCode(), 500);
+	}
+
+	@Test
+	public void testDoneThrowsErrorFromSend() throws IOException {
+		RuntimeException sendException = new RuntimeException("someMessage");
+		httpClientSpy.MRV.setAlwaysThrowException("send", sendException);
+		uploader.addFormField("some", "value");
 		try {
-			HttpURLConnectionSpy urlConnection = new HttpURLConnectionPartlyErrorSpy(url);
-			HttpMultiPartUploader httpHandler = HttpMultiPartUploaderImp
-					.usingURLConnection(urlConnection);
+			uploader.done();
+			fail("Exception should have been thrown");
+		} catch (Exception e) {
+			assertEquals(e, sendException);
+		}
+		assertEquals(uploader.getResponseCode(), 500);
+	}
 
-			assertEquals(httpHandler.getErrorText(), "some text");
+	@Test
+	public void testGetResponseText() throws IOException {
+		createResponseSpyReturnedFromSend();
+		uploader.addFormField("some", "value");
+		uploader.done();
 
+		assertEquals(uploader.getResponseText(), "a stream");
+	}
+
+	@Test
+	public void testGetBrokenResponseText() {
+		try {
+			uploader.getResponseText();
+			fail("Exception should have been thrown");
 		} catch (Exception e) {
 			assertTrue(e instanceof RuntimeException);
 			assertEquals(e.getMessage(), "Error getting response text: ");
 		}
 	}
 
+	@Test
+	public void testGetErrorText() throws IOException {
+		HttpResponseSpy<InputStream> responseSpy = createResponseSpyReturnedFromSend();
+		responseSpy.MRV.setDefaultReturnValuesSupplier("statusCode", () -> 400);
+		uploader.addFormField("some", "value");
+		uploader.done();
+
+		assertEquals(uploader.getErrorText(), "a stream");
+		assertEquals(uploader.getResponseCode(), 400);
+	}
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient.Version;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class InMemoryHttpMetricsTest {
+	private InMemoryHttpMetrics metrics;
+
+	@BeforeMethod
+	public void setUp() {
+		metrics = new InMemoryHttpMetrics();
+	}
+
+	private HttpRequestEvent createEvent(String method, String url, int statusCode) {
+		return createEvent(method, url, statusCode, Version.HTTP_2, 1);
+	}
+
+	private HttpRequestEvent createEvent(String method, String url, int statusCode,
+			Version version, int concurrentRequests) {
+		return new HttpRequestEvent(method, URI.create(url), statusCode, version, 1_000, 5_000,
+				10, 100, concurrentRequests, null);
+	}
+
+	@Test
+	public void testNoRequestsNoSnapshots() {
+		assertTrue(metrics.snapshot().isEmpty());
+	}
+
+	@Test
+	public void testOneRequest() {
+		metrics.requestCompleted(createEvent("GET", "http://solr:8983/select", 200));
+
+		List<HttpMetricsSnapshot> snapshots = metrics.snapshot();
+
+		assertEquals(snapshots.size(), 1);
+		HttpMetricsSnapshot snapshot = snapshots.get(0);
+		assertEquals(snapshot.authority(), "solr:8983");
+		assertEquals(snapshot.method(), "GET");
+		assertEquals(snapshot.requests(), 1);
+		assertEquals(snapshot.failures(), 0);
+		assertEquals(snapshot.retries(), 0);
+		assertEquals(snapshot.statusCodes(), Map.of(200, 1L));
+		assertEquals(snapshot.versions(), Map.of(Version.HTTP_2, 1L));
+		assertEquals(snapshot.maxConcurrentRequests(), 1);
+		assertEquals(snapshot.requestBytes(), 10);
+		assertEquals(snapshot.responseBytes(), 100);
+		assertEquals(snapshot.timeToFirstByte().count(), 1);
+		assertEquals(snapshot.timeToFirstByte().maxNanos(), 1_000);
+		assertEquals(snapshot.totalTime().maxNanos(), 5_000);
+		assertEquals(snapshot.totalTime().p99Nanos(), 5_000);
+	}
+
+	@Test
+	public void testRequestsAreGroupedPerAuthorityAndMethod() {
+		metrics.requestCompleted(createEvent("GET", "http://solr:8983/select", 200));
+		metrics.requestCompleted(createEvent("GET", "http://solr:8983/other", 404));
+		metrics.requestCompleted(createEvent("POST", "http://solr:8983/update", 200));
+		metrics.requestCompleted(createEvent("GET", "http://fedora:8080/rest", 200));
+
+		List<HttpMetricsSnapshot> snapshots = metrics.snapshot();
+
+		assertEquals(snapshots.size(), 3);
+		HttpMetricsSnapshot solrGet = findSnapshot(snapshots, "solr:8983", "GET");
+		assertEquals(solrGet.requests(), 2);
+		assertEquals(solrGet.statusCodes(), Map.of(200, 1L, 404, 1L));
+		assertEquals(solrGet.responseBytes(), 200);
+	}
+
+	private HttpMetricsSnapshot findSnapshot(List<HttpMetricsSnapshot> snapshots,
+			String authority, String method) {
+		return snapshots.stream()
+				.filter(s -> s.authority().equals(authority) && s.method().equals(method))
+				.findFirst().orElseThrow();
+	}
+
+	@Test
+	public void testFailedRequest() {
+		metrics.requestCompleted(new HttpRequestEvent("GET", URI.create("http://solr:8983/"), -1,
+				null, -1, 3_000, -1, 0, 1, new IOException()));
+
+		HttpMetricsSnapshot snapshot = metrics.snapshot().get(0);
+
+		assertEquals(snapshot.requests(), 1);
+		assertEquals(snapshot.failures(), 1);
+		assertTrue(snapshot.statusCodes().isEmpty());
+		assertTrue(snapshot.versions().isEmpty());
+		assertEquals(snapshot.requestBytes(), 0);
+		assertEquals(snapshot.timeToFirstByte().count(), 0);
+		assertEquals(snapshot.totalTime().count(), 1);
+	}
+
+	@Test
+	public void testRetriesAreCountedPerAuthorityAndMethod() {
+		URI uri = URI.create("http://solr:8983/select");
+		metrics.requestRetried(new HttpRetryEvent("GET", uri, 1, 503, null, 100));
+		metrics.requestRetried(new HttpRetryEvent("GET", uri, 2, -1, new IOException(), 200));
+		metrics.requestCompleted(createEvent("GET", "http://solr:8983/select", 200));
+
+		HttpMetricsSnapshot snapshot = metrics.snapshot().get(0);
+
+		assertEquals(snapshot.requests(), 1);
+		assertEquals(snapshot.retries(), 2);
+	}
+
+	@Test
+	public void testVersionsAndMaxConcurrentRequests() {
+		metrics.requestCompleted(createEvent("GET", "http://solr:8983/a", 200, Version.HTTP_2, 3));
+		metrics.requestCompleted(createEvent("GET", "http://solr:8983/b", 200, Version.HTTP_2, 12));
+		metrics.requestCompleted(
+				createEvent("GET", "http://solr:8983/c", 200, Version.HTTP_1_1, 5));
+
+		HttpMetricsSnapshot snapshot = metrics.snapshot().get(0);
+
+		assertEquals(snapshot.versions(), Map.of(Version.HTTP_1_1, 1L, Version.HTTP_2, 2L));
+		assertEquals(snapshot.maxConcurrentRequests(), 12);
+	}
+
+	@Test
+	public void testConcurrentRecording() throws Exception {
+		int threads = 8;
+		int requestsPerThread = 1000;
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = Thread.ofVirtual().start(() -> {
+				for (int j = 0; j < requestsPerThread; j++) {
+					metrics.requestCompleted(createEvent("GET", "http://solr:8983/select", 200));
+				}
+			});
+		}
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		HttpMetricsSnapshot snapshot = metrics.snapshot().get(0);
+		assertEquals(snapshot.requests(), threads * requestsPerThread);
+		assertEquals(snapshot.totalTime().count(), threads * requestsPerThread);
+	}
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * InterfaceDefaultMethodsTest checks that implementations written against the original
+ * interfaces, implementing only their original methods, still compile and get working defaults.
+ */
+public class InterfaceDefaultMethodsTest {
+	private OriginalHttpHandler httpHandler;
+
+	@BeforeMethod
+	public void setUp() {
+		httpHandler = new OriginalHttpHandler();
+	}
+
+	@Test
+	public void testResponseBytesAreReadFromResponseBinary() {
+		httpHandler.responseBody = "åäö body";
+
+		assertEquals(httpHandler.getResponseBytes(), "åäö body".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testResponseByteBuffers() {
+		httpHandler.responseBody = "some body";
+		List<ByteBuffer> buffers = httpHandler.getResponseByteBuffers();
+
+		assertEquals(buffers.size(), 1);
+		assertEquals(StandardCharsets.UTF_8.decode(buffers.get(0)).toString(), "some body");
+	}
+
+	@Test
+	public void testResponseByteBuffersForEmptyBody() {
+		httpHandler.responseBody = "";
+
+		assertTrue(httpHandler.getResponseByteBuffers().isEmpty());
+	}
+
+	@Test
+	public void testResponseReader() throws IOException {
+		httpHandler.responseBody = "åäö body";
+
+		try (Reader reader = httpHandler.getResponseReader()) {
+			char[] text = new char[20];
+			assertEquals(new String(text, 0, reader.read(text)), "åäö body");
+		}
+	}
+
+	@Test
+	public void testDownloadToChannel() {
+		httpHandler.responseBody = "some body";
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		long written = httpHandler.downloadTo(Channels.newChannel(out));
+
+		assertEquals(written, 9);
+		assertEquals(out.toString(StandardCharsets.UTF_8), "some body");
+	}
+
+	@Test
+	public void testHeaderFields() {
+		assertEquals(httpHandler.getHeaderFields("someHeader"), List.of("someValue"));
+		assertEquals(httpHandler.getHeaderFields("otherHeader"), List.of());
+	}
+
+	@Test
+	public void testOutputFromBytesAndBuffersIsSentAsStream() {
+		httpHandler.setOutput("some body".getBytes(StandardCharsets.UTF_8));
+		assertEquals(httpHandler.sentBody, "some body");
+
+		ByteBuffer first = ByteBuffer.wrap("xxsome ".getBytes(StandardCharsets.UTF_8));
+		first.position(2);
+		httpHandler.setOutput(first, ByteBuffer.wrap("body".getBytes(StandardCharsets.UTF_8)));
+		assertEquals(httpHandler.sentBody, "some body");
+		assertEquals(first.position(), 2);
+	}
+
+	@Test
+	public void testStreamOutputFromSupplierAndFile() throws IOException {
+		httpHandler.setStreamOutput(() -> new ByteArrayInputStream("some body".getBytes()), 9);
+		assertEquals(httpHandler.sentBody, "some body");
+
+		Path file = Files.writeString(Files.createTempFile("record", ".xml"), "file body");
+		httpHandler.setStreamOutput(file);
+		assertEquals(httpHandler.sentBody, "file body");
+	}
+
+	@Test
+	public void testDownloadToFile() throws IOException {
+		httpHandler.responseBody = "some body";
+		Path directory = Files.createTempDirectory("download");
+		Path file = directory.resolve("some.bin");
+		Files.writeString(file, "old content");
+
+		long written = httpHandler.downloadTo(file);
+
+		assertEquals(written, 9);
+		assertEquals(Files.readString(file), "some body");
+		assertEquals(listFileNames(directory), List.of("some.bin"));
+	}
+
+	private List<String> listFileNames(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(path -> path.getFileName().toString()).toList();
+		}
+	}
+
+	@Test
+	public void testDownloadToFileWithErrorResponseCodeLeavesFileUntouched() throws IOException {
+		httpHandler.responseCode = 404;
+		httpHandler.responseBody = "not found";
+		Path directory = Files.createTempDirectory("download");
+		Path file = directory.resolve("some.bin");
+		Files.writeString(file, "old content");
+
+		try {
+			httpHandler.downloadTo(file);
+			fail("Exception should have been thrown");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "Error downloading response to file: ");
+			assertEquals(e.getCause().getMessage(), "Not a successful response code: 404");
+		}
+		assertEquals(Files.readString(file), "old content");
+		assertEquals(listFileNames(directory), List.of("some.bin"));
+	}
+
+	@Test
+	public void testSegmentedDownloadUsesDownloadTo() throws IOException {
+		httpHandler.responseBody = "some body";
+		Path file = Files.createTempDirectory("download").resolve("some.bin");
+
+		assertEquals(httpHandler.downloadTo(file, 4), 9);
+		assertEquals(Files.readString(file), "some body");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Segments must be 1 or more: 0")
+	public void testSegmentedDownloadInZeroSegments() {
+		httpHandler.downloadTo(Path.of("some.bin"), 0);
+	}
+
+	@Test
+	public void testStreamOutputFromFileRange() throws IOException {
+		Path file = Files.writeString(Files.createTempFile("record", ".xml"), "some file body");
+
+		httpHandler.setStreamOutput(file, 5, 4);
+
+		assertEquals(httpHandler.sentBody, "file");
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Range with offset: 10 and length: 5 is outside file of size: 14")
+	public void testStreamOutputFromFileRangeOutsideFile() throws IOException {
+		Path file = Files.writeString(Files.createTempFile("record", ".xml"), "some file body");
+
+		httpHandler.setStreamOutput(file, 10, 5);
+	}
+
+	@Test(expectedExceptions = UnsupportedOperationException.class)
+	public void testTimeToFirstByteTimeoutIsNotSupported() {
+		httpHandler.setTimeToFirstByteTimeout(Duration.ofSeconds(1));
+	}
+
+	@Test(expectedExceptions = UnsupportedOperationException.class)
+	public void testRequestTimeoutIsNotSupported() {
+		httpHandler.setRequestTimeout(Duration.ofSeconds(1));
+	}
+
+	@Test
+	public void testFactoryAsyncMethodsAreNotSupported() {
+		HttpHandlerFactory factory = new OriginalHttpHandlerFactory();
+		try {
+			factory.factorAsync("http://localhost");
+			fail("Exception should have been thrown");
+		} catch (UnsupportedOperationException e) {
+			assertEquals(e.getMessage(), "factorAsync is not supported by: "
+					+ OriginalHttpHandlerFactory.class.getName());
+		}
+		try {
+			factory.factorAsyncHttpMultiPartUploader("http://localhost");
+			fail("Exception should have been thrown");
+		} catch (UnsupportedOperationException e) {
+			assertEquals(e.getMessage(), "factorAsyncHttpMultiPartUploader is not supported by: "
+					+ OriginalHttpHandlerFactory.class.getName());
+		}
+	}
+
+	@Test
+	public void testMultiPartUploaderFilePartWithSizeIsAddedWithoutSize() throws IOException {
+		OriginalHttpMultiPartUploader uploader = new OriginalHttpMultiPartUploader();
+		InputStream stream = new ByteArrayInputStream(new byte[3]);
+
+		uploader.addFilePart("someField", "some.bin", stream, 3);
+
+		assertEquals(uploader.addedStream, stream);
+	}
+
+	@Test(expectedExceptions = UnsupportedOperationException.class)
+	public void testMultiPartUploaderPathPartIsNotSupported() throws IOException {
+		new OriginalHttpMultiPartUploader().addFilePart("someField", Path.of("some.bin"));
+	}
+
+	@Test(expectedExceptions = UnsupportedOperationException.class)
+	public void testMultiPartUploaderChannelPartIsNotSupported() throws IOException {
+		new OriginalHttpMultiPartUploader().addFilePart("someField", "some.bin", (FileChannel) null);
+	}
+
+	private static class OriginalHttpHandler implements HttpHandler {
+		int responseCode = 200;
+		String responseBody = "";
+		String sentBody;
+
+		@Override
+		public void setRequestMethod(String requestMethod) {
+		}
+
+		@Override
+		public int getResponseCode() {
+			return responseCode;
+		}
+
+		@Override
+		public String getResponseText() {
+			return responseBody;
+		}
+
+		@Override
+		public InputStream getResponseBinary() {
+			return new ByteArrayInputStream(responseBody.getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void setRequestProperty(String key, String value) {
+		}
+
+		@Override
+		public Map<String, String> getResponseHeaders() {
+			return Map.of("someHeader", "someValue");
+		}
+
+		@Override
+		public String getHeaderField(String name) {
+			return getResponseHeaders().get(name);
+		}
+
+		@Override
+		public String getErrorText() {
+			return responseBody;
+		}
+
+		@Override
+		public void setOutput(String outputString) {
+			sentBody = outputString;
+		}
+
+		@Override
+		public void setStreamOutput(InputStream stream) {
+			try {
+				sentBody = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void setBasicAuthorization(String username, String password) {
+		}
+	}
+
+	private static class OriginalHttpHandlerFactory implements HttpHandlerFactory {
+		@Override
+		public HttpHandler factor(String url) {
+			return new OriginalHttpHandler();
+		}
+
+		@Override
+		public HttpMultiPartUploader factorHttpMultiPartUploader(String url) {
+			return new OriginalHttpMultiPartUploader();
+		}
+	}
+
+	private static class OriginalHttpMultiPartUploader implements HttpMultiPartUploader {
+		InputStream addedStream;
+
+		@Override
+		public String getResponseText() {
+			return "";
+		}
+
+		@Override
+		public int getResponseCode() {
+			return 200;
+		}
+
+		@Override
+		public String getErrorText() {
+			return "";
+		}
+
+		@Override
+		public void addFormField(String name, String value) {
+		}
+
+		@Override
+		public void addFilePart(String fieldName, String fileName, InputStream stream) {
+			addedStream = stream;
+		}
+
+		@Override
+		public void addHeaderField(String name, String value) {
+		}
+
+		@Override
+		public void done() {
+		}
+	}
+}
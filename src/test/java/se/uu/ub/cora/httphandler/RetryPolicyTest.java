@@ -0,0 +1,86 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+
+import java.time.Duration;
+
+import org.testng.annotations.Test;
+
+public class RetryPolicyTest {
+
+	@Test
+	public void testDefaults() {
+		RetryPolicy policy = RetryPolicy.defaults();
+
+		assertEquals(policy.getMaxAttempts(), 3);
+		assertEquals(policy.getInitialBackoff(), Duration.ofMillis(100));
+		assertEquals(policy.getMaxBackoff(), Duration.ofSeconds(10));
+	}
+
+	@Test
+	public void testWithMaxAttemptsReturnsNewPolicy() {
+		RetryPolicy defaults = RetryPolicy.defaults();
+
+		RetryPolicy policy = defaults.withMaxAttempts(5);
+
+		assertNotSame(policy, defaults);
+		assertEquals(policy.getMaxAttempts(), 5);
+		assertEquals(defaults.getMaxAttempts(), 3);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Max attempts must be at least 1: 0")
+	public void testWithMaxAttemptsLessThanOne() {
+		RetryPolicy.defaults().withMaxAttempts(0);
+	}
+
+	@Test
+	public void testWithBackoffKeepsMaxAttempts() {
+		RetryPolicy policy = RetryPolicy.defaults().withMaxAttempts(2)
+				.withBackoff(Duration.ofMillis(50), Duration.ofSeconds(1));
+
+		assertEquals(policy.getMaxAttempts(), 2);
+		assertEquals(policy.getInitialBackoff(), Duration.ofMillis(50));
+		assertEquals(policy.getMaxBackoff(), Duration.ofSeconds(1));
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Backoff must not be negative and initial not longer than max: PT2S, PT1S")
+	public void testWithBackoffInitialLongerThanMax() {
+		RetryPolicy.defaults().withBackoff(Duration.ofSeconds(2), Duration.ofSeconds(1));
+	}
+
+	@Test
+	public void testWithBackoffOfZero() {
+		RetryPolicy policy = RetryPolicy.defaults().withBackoff(Duration.ZERO, Duration.ZERO);
+
+		assertEquals(policy.getInitialBackoff(), Duration.ZERO);
+		assertEquals(policy.getMaxBackoff(), Duration.ZERO);
+	}
+
+	@Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ""
+			+ "Backoff must not be negative and initial not longer than max: PT-0.001S, PT1S")
+	public void testWithBackoffNegative() {
+		RetryPolicy.defaults().withBackoff(Duration.ofMillis(-1), Duration.ofSeconds(1));
+	}
+}
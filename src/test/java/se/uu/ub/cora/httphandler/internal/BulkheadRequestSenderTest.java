@@ -0,0 +1,151 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.HttpRequestRejectedException;
+import se.uu.ub.cora.httphandler.spy.RequestSenderSpy;
+
+public class BulkheadRequestSenderTest {
+	private static final String AUTHORITY = "localhost:8080";
+	private RequestSenderSpy requestSender;
+	private BulkheadRequestSender bulkheadSender;
+
+	@BeforeMethod
+	public void setUp() {
+		requestSender = new RequestSenderSpy();
+		bulkheadSender = new BulkheadRequestSender(requestSender, 2);
+	}
+
+	private HttpRequest createRequest(String authority) {
+		return HttpRequest.newBuilder(URI.create("http://" + authority + "/record/someId"))
+				.build();
+	}
+
+	@Test
+	public void testResponseIsReturnedAndRequestReleased() throws Exception {
+		HttpResponse<InputStream> response = bulkheadSender.send(createRequest(AUTHORITY));
+
+		assertSame(response, requestSender.MCR.getReturnValue("send", 0));
+		assertEquals(bulkheadSender.onlyForTestGetConcurrentRequests(AUTHORITY), 0);
+	}
+
+	@Test
+	public void testRequestIsReleasedWhenSendFails() throws Exception {
+		requestSender.MRV.setAlwaysThrowException("send", new RuntimeException("some error"));
+
+		try {
+			bulkheadSender.send(createRequest(AUTHORITY));
+			fail("A RuntimeException should have been thrown");
+		} catch (RuntimeException e) {
+			assertEquals(e.getMessage(), "some error");
+		}
+		assertEquals(bulkheadSender.onlyForTestGetConcurrentRequests(AUTHORITY), 0);
+	}
+
+	@Test
+	public void testRequestAboveMaxIsRejected() throws Exception {
+		requestSender.MRV.setDefaultReturnValuesSupplier("send", () -> {
+			sendNested(AUTHORITY);
+			return null;
+		});
+
+		bulkheadSender.send(createRequest(AUTHORITY));
+
+		requestSender.MCR.assertNumberOfCallsToMethod("send", 2);
+		assertEquals(bulkheadSender.onlyForTestGetConcurrentRequests(AUTHORITY), 0);
+	}
+
+	private void sendNested(String authority) {
+		requestSender.MRV.setDefaultReturnValuesSupplier("send", () -> {
+			assertRejected(authority);
+			return null;
+		});
+		try {
+			bulkheadSender.send(createRequest(authority));
+		} catch (Exception e) {
+			fail("The second request should not fail: " + e);
+		}
+		assertEquals(bulkheadSender.onlyForTestGetConcurrentRequests(authority), 1);
+	}
+
+	private void assertRejected(String authority) {
+		assertEquals(bulkheadSender.onlyForTestGetConcurrentRequests(authority), 2);
+		try {
+			bulkheadSender.send(createRequest(authority));
+			fail("The request should have been rejected");
+		} catch (HttpRequestRejectedException e) {
+			assertEquals(e.getMessage(),
+					"Too many concurrent requests to: " + authority + ", max is 2");
+			assertEquals(e.getAuthority(), authority);
+		} catch (Exception e) {
+			fail("Wrong exception: " + e);
+		}
+	}
+
+	@Test
+	public void testEachAuthorityHasItsOwnLimit() throws Exception {
+		requestSender.MRV.setDefaultReturnValuesSupplier("send", () -> {
+			requestSender.MRV.setDefaultReturnValuesSupplier("send", () -> {
+				requestSender.MRV.setDefaultReturnValuesSupplier("send", () -> null);
+				sendOrFail("otherhost:8080");
+				return null;
+			});
+			sendOrFail(AUTHORITY);
+			return null;
+		});
+
+		bulkheadSender.send(createRequest(AUTHORITY));
+
+		requestSender.MCR.assertNumberOfCallsToMethod("send", 3);
+		assertEquals(getSentAuthority(2), "otherhost:8080");
+	}
+
+	private String getSentAuthority(int callNumber) {
+		HttpRequest request = (HttpRequest) requestSender.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("send", callNumber, "request");
+		return request.uri().getAuthority();
+	}
+
+	private void sendOrFail(String authority) {
+		try {
+			bulkheadSender.send(createRequest(authority));
+		} catch (Exception e) {
+			fail("The request should not fail: " + e);
+		}
+	}
+
+	@Test
+	public void testOnlyForTestGetters() {
+		assertSame(bulkheadSender.onlyForTestGetRequestSender(), requestSender);
+		assertEquals(bulkheadSender.onlyForTestGetMaxConcurrentRequests(), 2);
+	}
+}
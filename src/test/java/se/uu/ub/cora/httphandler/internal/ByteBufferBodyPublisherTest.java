@@ -0,0 +1,177 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.spy.BodyPublisherSubscriber;
+
+public class ByteBufferBodyPublisherTest {
+
+	private ByteBuffer createBuffer(String content) {
+		return ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private String publish(ByteBufferBodyPublisher publisher) {
+		BodyPublisherSubscriber subscriber = new BodyPublisherSubscriber();
+		publisher.subscribe(subscriber);
+		return subscriber.getReceivedAsString();
+	}
+
+	@Test
+	public void testRemainingBytesOfAllBuffersArePublished() {
+		ByteBuffer first = createBuffer("xxsome ");
+		first.position(2);
+		ByteBuffer second = createBuffer("body");
+
+		ByteBufferBodyPublisher publisher = new ByteBufferBodyPublisher(first, second);
+
+		assertEquals(publisher.contentLength(), 9);
+		assertEquals(publish(publisher), "some body");
+		assertEquals(first.position(), 2);
+		assertEquals(second.position(), 0);
+	}
+
+	@Test
+	public void testBodyCanBePublishedAgain() {
+		ByteBufferBodyPublisher publisher = new ByteBufferBodyPublisher(createBuffer("some body"));
+
+		assertEquals(publish(publisher), "some body");
+		assertEquals(publish(publisher), "some body");
+	}
+
+	@Test
+	public void testBuffersArePublishedAsReadOnlyViewsWithoutCopying() {
+		byte[] content = "some body".getBytes(StandardCharsets.UTF_8);
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+
+		new ByteBufferBodyPublisher(ByteBuffer.wrap(content)).subscribe(subscriber);
+		subscriber.subscription.request(1);
+
+		ByteBuffer published = subscriber.items.get(0);
+		assertTrue(published.isReadOnly());
+		content[0] = 'S';
+		assertEquals(published.get(0), 'S');
+	}
+
+	@Test
+	public void testOnlyRequestedBuffersArePublished() {
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		new ByteBufferBodyPublisher(createBuffer("a"), createBuffer("b"), createBuffer("c"))
+				.subscribe(subscriber);
+
+		subscriber.subscription.request(2);
+		assertEquals(subscriber.items.size(), 2);
+		assertEquals(subscriber.completed, 0);
+
+		subscriber.subscription.request(Long.MAX_VALUE);
+		subscriber.subscription.request(Long.MAX_VALUE);
+		assertEquals(subscriber.items.size(), 3);
+		assertEquals(subscriber.completed, 1);
+	}
+
+	@Test
+	public void testNoBuffersCompletesOnFirstRequest() {
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		ByteBufferBodyPublisher publisher = new ByteBufferBodyPublisher();
+		publisher.subscribe(subscriber);
+
+		subscriber.subscription.request(1);
+
+		assertEquals(publisher.contentLength(), 0);
+		assertEquals(subscriber.items.size(), 0);
+		assertEquals(subscriber.completed, 1);
+	}
+
+	@Test
+	public void testCancelStopsPublishing() {
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		new ByteBufferBodyPublisher(createBuffer("a"), createBuffer("b")).subscribe(subscriber);
+
+		subscriber.subscription.request(1);
+		subscriber.subscription.cancel();
+		subscriber.subscription.request(1);
+
+		assertEquals(subscriber.items.size(), 1);
+		assertEquals(subscriber.completed, 0);
+	}
+
+	@Test
+	public void testRequestingNoItemsIsAnError() {
+		RecordingSubscriber subscriber = new RecordingSubscriber();
+		new ByteBufferBodyPublisher(createBuffer("a")).subscribe(subscriber);
+
+		subscriber.subscription.request(0);
+
+		assertEquals(subscriber.error.getMessage(), "Requested items must be positive: 0");
+		subscriber.subscription.request(1);
+		assertEquals(subscriber.items.size(), 0);
+	}
+
+	@Test
+	public void testOpenStreamReadsRemainingBytesOfAllBuffers() throws IOException {
+		ByteBuffer first = createBuffer("some ");
+		ByteBufferBodyPublisher publisher = new ByteBufferBodyPublisher(first, createBuffer("body"));
+
+		assertEquals(new String(publisher.openStream().readAllBytes(), StandardCharsets.UTF_8),
+				"some body");
+		assertEquals(new String(publisher.openStream().readAllBytes(), StandardCharsets.UTF_8),
+				"some body");
+		assertEquals(first.position(), 0);
+	}
+
+	private static class RecordingSubscriber implements Subscriber<ByteBuffer> {
+		Subscription subscription;
+		List<ByteBuffer> items = new ArrayList<>();
+		int completed = 0;
+		Throwable error;
+
+		@Override
+		public void onSubscribe(Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(ByteBuffer item) {
+			items.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+			completed++;
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.testng.annotations.Test;
+
+public class ByteBufferInputStreamTest {
+
+	private InputStream createStream(String content) {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(content.length());
+		buffer.put(content.getBytes()).flip();
+		return new ByteBufferInputStream(buffer);
+	}
+
+	@Test
+	public void testReadAll() throws Exception {
+		InputStream stream = createStream("some content");
+
+		assertEquals(stream.available(), 12);
+		assertEquals(new String(stream.readAllBytes()), "some content");
+		assertEquals(stream.read(), -1);
+		assertEquals(stream.read(new byte[4], 0, 4), -1);
+	}
+
+	@Test
+	public void testReadSingleBytesAndSkip() throws Exception {
+		InputStream stream = createStream("abcdef");
+
+		assertEquals(stream.read(), 'a');
+		assertEquals(stream.skip(2), 2);
+		assertEquals(stream.read(), 'd');
+		assertEquals(stream.skip(10), 2);
+		assertEquals(stream.read(), -1);
+	}
+
+	@Test
+	public void testReadZeroBytes() throws Exception {
+		InputStream stream = createStream("");
+
+		assertEquals(stream.read(new byte[4], 0, 0), 0);
+	}
+
+	@Test
+	public void testHighBytesAreUnsigned() throws Exception {
+		InputStream stream = new ByteBufferInputStream(ByteBuffer.wrap(new byte[] { (byte) 0xff }));
+
+		assertEquals(stream.read(), 255);
+	}
+}
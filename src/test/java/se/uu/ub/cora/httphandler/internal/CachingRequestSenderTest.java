@@ -0,0 +1,453 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.spy.HttpResponseSpy;
+import se.uu.ub.cora.httphandler.spy.RequestSenderSpy;
+
+public class CachingRequestSenderTest {
+	private static final String URL = "http://localhost:8080/metadata/someId";
+	private RequestSenderSpy requestSender;
+	private CachingRequestSender cachingSender;
+	private Deque<HttpResponseSpy<InputStream>> responses;
+
+	@BeforeMethod
+	public void setUp() {
+		requestSender = new RequestSenderSpy();
+		responses = new ArrayDeque<>();
+		requestSender.MRV.setDefaultReturnValuesSupplier("send", () -> responses.poll());
+		cachingSender = new CachingRequestSender(requestSender, 4000);
+	}
+
+	private HttpResponseSpy<InputStream> addResponse(int statusCode, String body,
+			String... headerNamesAndValues) {
+		Map<String, List<String>> headers = new HashMap<>();
+		for (int i = 0; i < headerNamesAndValues.length; i += 2) {
+			headers.put(headerNamesAndValues[i], List.of(headerNamesAndValues[i + 1]));
+		}
+		HttpResponseSpy<InputStream> response = new HttpResponseSpy<>();
+		response.MRV.setDefaultReturnValuesSupplier("statusCode", () -> statusCode);
+		response.MRV.setDefaultReturnValuesSupplier("headers",
+				() -> HttpHeaders.of(headers, (name, value) -> true));
+		response.MRV.setDefaultReturnValuesSupplier("body",
+				() -> new ByteArrayInputStream(body.getBytes()));
+		responses.add(response);
+		return response;
+	}
+
+	private HttpRequest createGet(String... headerNamesAndValues) {
+		HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(URL));
+		if (headerNamesAndValues.length > 0) {
+			builder.headers(headerNamesAndValues);
+		}
+		return builder.build();
+	}
+
+	private String send(HttpRequest request) throws Exception {
+		HttpResponse<InputStream> response = cachingSender.send(request);
+		try (InputStream body = response.body()) {
+			return response.statusCode() + ":" + new String(body.readAllBytes());
+		}
+	}
+
+	private HttpRequest getSentRequest(int callNumber) {
+		return (HttpRequest) requestSender.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("send", callNumber, "request");
+	}
+
+	@Test
+	public void testResponseWithEtagIsRevalidated() throws Exception {
+		addResponse(200, "some metadata", "ETag", "\"v1\"");
+		addResponse(304, "", "ETag", "\"v1\"");
+
+		assertEquals(send(createGet()), "200:some metadata");
+		assertEquals(send(createGet()), "200:some metadata");
+
+		requestSender.MCR.assertNumberOfCallsToMethod("send", 2);
+		assertTrue(getSentRequest(0).headers().firstValue("If-None-Match").isEmpty());
+		assertEquals(getSentRequest(1).headers().firstValue("If-None-Match").get(), "\"v1\"");
+		assertEquals(getSentRequest(1).uri().toString(), URL);
+	}
+
+	@Test
+	public void testResponseWithLastModifiedIsRevalidated() throws Exception {
+		String lastModified = "Wed, 21 Oct 2026 07:28:00 GMT";
+		addResponse(200, "some metadata", "Last-Modified", lastModified);
+		addResponse(304, "");
+
+		send(createGet());
+		assertEquals(send(createGet()), "200:some metadata");
+
+		assertEquals(getSentRequest(1).headers().firstValue("If-Modified-Since").get(),
+				lastModified);
+	}
+
+	@Test
+	public void testFreshResponseIsServedWithoutRequest() throws Exception {
+		addResponse(200, "some metadata", "Cache-Control", "max-age=3600");
+
+		send(createGet());
+		HttpResponse<InputStream> response = cachingSender.send(createGet());
+
+		requestSender.MCR.assertNumberOfCallsToMethod("send", 1);
+		assertEquals(response.statusCode(), 200);
+		assertEquals(response.uri().toString(), URL);
+		assertEquals(response.headers().firstValue("Cache-Control").get(), "max-age=3600");
+		assertEquals(new String(response.body().readAllBytes()), "some metadata");
+	}
+
+	@Test
+	public void testNoCacheResponseIsRevalidated() throws Exception {
+		addResponse(200, "some metadata", "Cache-Control", "max-age=3600, no-cache", "ETag",
+				"\"v1\"");
+		addResponse(304, "");
+
+		send(createGet());
+		send(createGet());
+
+		requestSender.MCR.assertNumberOfCallsToMethod("send", 2);
+	}
+
+	@Test
+	public void testStaleResponseIsRevalidatedWhenAgeIsUsedUp() throws Exception {
+		addResponse(200, "some metadata", "Cache-Control", "max-age=60", "Age", "60", "ETag",
+				"\"v1\"");
+		addResponse(304, "");
+
+		send(createGet());
+		send(createGet());
+
+		requestSender.MCR.assertNumberOfCallsToMethod("send", 2);
+	}
+
+	@Test
+	public void testNotModifiedResponseUpdatesStoredHeaders() throws Exception {
+		addResponse(200, "some metadata", "ETag", "\"v1\"", "Content-Type", "text/xml",
+				"Content-Length", "13");
+		addResponse(304, "", "ETag", "\"v2\"", "Cache-Control", "max-age=3600",
+				"Content-Length", "0");
+
+		send(createGet());
+		HttpResponse<InputStream> response = cachingSender.send(createGet());
+		assertEquals(send(createGet()), "200:some metadata");
+
+		requestSender.MCR.assertNumberOfCallsToMethod("send", 2);
+		HttpHeaders headers = response.headers();
+		assertEquals(headers.firstValue("ETag").get(), "\"v2\"");
+		assertEquals(headers.firstValue("Cache-Control").get(), "max-age=3600");
+		assertEquals(headers.firstValue("Content-Type").get(), "text/xml");
+		assertEquals(headers.firstValue("Content-Length").get(), "13");
+	}
+
+	@Test
+	public void testLaterRevalidationSendsValidatorFromNotModifiedResponse() throws Exception {
+		addResponse(200, "some metadata", "ETag", "\"v1\"");
+		addResponse(304, "", "ETag", "\"v2\"");
+		addResponse(304, "");
+
+		send(createGet());
+		send(createGet());
+		assertEquals(send(createGet()), "200:some metadata");
+
+		assertEquals(getSentRequest(1).headers().firstValue("If-None-Match").get(), "\"v1\"");
+		assertEquals(getSentRequest(2).headers().firstValue("If-None-Match").get(), "\"v2\"");
+	}
+
+	@Test
+	public void testAgeOfStoredResponseIsNotKeptAfterRevalidation() throws Exception {
+		addResponse(200, "some metadata", "Cache-Control", "max-age=60", "Age", "60", "ETag",
+				"\"v1\"");
+		addResponse(304, "");
+
+		send(createGet());
+		send(createGet());
+		send(createGet());
+
+		requestSender.MCR.assertNumberOfCallsToMethod("send", 2);
+	}
+
+	@Test
+	public void testChangedResponseReplacesCachedResponse() throws Exception {
+		addResponse(200, "first", "ETag", "\"v1\"");
+		addResponse(200, "second", "ETag", "\"v2\"");
+		addResponse(304, "");
+
+		send(createGet());
+		assertEquals(send(createGet()), "200:second");
+		assertEquals(send(createGet()), "200:second");
+
+		assertEquals(getSentRequest(2).headers().firstValue("If-None-Match").get(), "\"v2\"");
+	}
+
+	@Test
+	public void testRemovedResponseIsRemovedFromCache() throws Exception {
+		addResponse(200, "first", "ETag", "\"v1\"");
+		addResponse(404, "not found");
+		addResponse(200, "again");
+
+		send(createGet());
+		assertEquals(send(createGet()), "404:not found");
+		send(createGet());
+
+		assertTrue(getSentRequest(2).headers().firstValue("If-None-Match").isEmpty());
+		assertEquals(cachingSender.onlyForTestGetCache().getNumberOfResponses(), 0);
+	}
+
+	@Test
+	public void testNotStoredWithoutValidatorOrMaxAge() throws Exception {
+		HttpResponseSpy<InputStream> response = addResponse(200, "some metadata");
+
+		assertSame(cachingSender.send(createGet()), response);
+		assertEquals(cachingSender.onlyForTestGetCache().getNumberOfResponses(), 0);
+	}
+
+	@Test
+	public void testNoStoreResponseIsNotStored() throws Exception {
+		addResponse(200, "some metadata", "ETag", "\"v1\"", "Cache-Control", "no-store");
+
+		send(createGet());
+
+		assertEquals(cachingSender.onlyForTestGetCache().getNumberOfResponses(), 0);
+	}
+
+	@Test
+	public void testErrorResponseIsNotStored() throws Exception {
+		addResponse(500, "error", "ETag", "\"v1\"");
+
+		assertEquals(send(createGet()), "500:error");
+
+		assertEquals(cachingSender.onlyForTestGetCache().getNumberOfResponses(), 0);
+	}
+
+	@Test
+	public void testRequestsWithDifferentHeadersAreCachedSeparately() throws Exception {
+		addResponse(200, "for user one", "Cache-Control", "max-age=3600");
+		addResponse(200, "for user two", "Cache-Control", "max-age=3600");
+
+		assertEquals(send(createGet("authToken", "one")), "200:for user one");
+		assertEquals(send(createGet("authToken", "two")), "200:for user two");
+		assertEquals(send(createGet("AUTHTOKEN", "one")), "200:for user one");
+
+		requestSender.MCR.assertNumberOfCallsToMethod("send", 2);
+	}
+
+	@Test
+	public void testRequestWithNoStoreBypassesCache() throws Exception {
+		addResponse(200, "some metadata", "Cache-Control", "max-age=3600");
+		HttpResponseSpy<InputStream> response = addResponse(200, "some metadata");
+		send(createGet());
+
+		HttpRequest request = createGet("Cache-Control", "no-store");
+
+		assertSame(cachingSender.send(request), response);
+		requestSender.MCR.assertParameters("send", 1, request);
+	}
+
+	@Test
+	public void testRequestWithNoCacheRevalidatesFreshResponse() throws Exception {
+		addResponse(200, "some metadata", "Cache-Control", "max-age=3600", "ETag", "\"v1\"");
+		addResponse(304, "", "Cache-Control", "max-age=3600");
+		send(createGet());
+
+		assertEquals(send(createGet("Cache-Control", "no-cache")), "200:some metadata");
+
+		requestSender.MCR.assertNumberOfCallsToMethod("send", 2);
+		HttpRequest revalidation = getSentRequest(1);
+		assertEquals(revalidation.headers().firstValue("If-None-Match").get(), "\"v1\"");
+		assertEquals(revalidation.headers().firstValue("Cache-Control").get(), "no-cache");
+	}
+
+	@Test
+	public void testRequestWithMaxAgeZeroRevalidatesFreshResponse() throws Exception {
+		addResponse(200, "some metadata", "Cache-Control", "max-age=3600", "ETag", "\"v1\"");
+		addResponse(200, "changed metadata", "Cache-Control", "max-age=3600", "ETag",
+				"\"v2\"");
+		send(createGet());
+
+		assertEquals(send(createGet("Cache-Control", "max-age=0")), "200:changed metadata");
+		assertEquals(send(createGet()), "200:changed metadata");
+
+		requestSender.MCR.assertNumberOfCallsToMethod("send", 2);
+	}
+
+	@Test
+	public void testRequestWithConditionalHeaderFromCallerBypassesCache() throws Exception {
+		HttpResponseSpy<InputStream> response = addResponse(304, "", "ETag", "\"v1\"");
+		HttpRequest request = createGet("If-None-Match", "\"v1\"");
+
+		assertSame(cachingSender.send(request), response);
+		requestSender.MCR.assertParameters("send", 0, request);
+	}
+
+	@Test
+	public void testUpdateRemovesCachedResponses() throws Exception {
+		addResponse(200, "some metadata", "Cache-Control", "max-age=3600");
+		addResponse(200, "some metadata", "Cache-Control", "max-age=3600");
+		addResponse(200, "updated");
+		addResponse(200, "new metadata", "Cache-Control", "max-age=3600");
+		send(createGet());
+		send(createGet("Accept", "application/xml"));
+
+		cachingSender.send(HttpRequest.newBuilder(URI.create(URL))
+				.POST(BodyPublishers.ofString("update")).build());
+
+		assertEquals(cachingSender.onlyForTestGetCache().getNumberOfResponses(), 0);
+		assertEquals(send(createGet()), "200:new metadata");
+	}
+
+	@Test
+	public void testHeadDoesNotRemoveCachedResponses() throws Exception {
+		addResponse(200, "some metadata", "Cache-Control", "max-age=3600");
+		addResponse(200, "");
+		send(createGet());
+
+		cachingSender.send(HttpRequest.newBuilder(URI.create(URL))
+				.method("HEAD", BodyPublishers.noBody()).build());
+
+		assertEquals(cachingSender.onlyForTestGetCache().getNumberOfResponses(), 1);
+	}
+
+	@Test
+	public void testWithoutOffHeapSizeThereIsNoOffHeapCache() {
+		assertNull(cachingSender.onlyForTestGetOffHeapCache());
+	}
+
+	@Test
+	public void testBinaryResponseIsStoredOffHeap() throws Exception {
+		cachingSender = new CachingRequestSender(requestSender, 4000, 8000);
+		addResponse(200, "some image", "Content-Type", "image/jpeg", "Cache-Control",
+				"max-age=3600");
+		addResponse(200, "some xml", "Content-Type", "application/vnd.uub.record+xml",
+				"Cache-Control", "max-age=3600");
+		HttpRequest textRequest = HttpRequest.newBuilder(URI.create(URL + "/text")).build();
+
+		send(createGet());
+		send(textRequest);
+
+		ResponseCache offHeapCache = cachingSender.onlyForTestGetOffHeapCache();
+		assertTrue(offHeapCache.isOffHeap());
+		assertEquals(offHeapCache.getMaxEntrySize(), 2000);
+		assertEquals(offHeapCache.getSizeInBytes(), 10);
+		assertEquals(cachingSender.onlyForTestGetCache().getSizeInBytes(), 8);
+		assertEquals(send(createGet()), "200:some image");
+		assertEquals(send(createGet()), "200:some image");
+		assertEquals(send(textRequest), "200:some xml");
+		requestSender.MCR.assertNumberOfCallsToMethod("send", 2);
+	}
+
+	@Test
+	public void testBinaryResponseIsRevalidatedFromOffHeap() throws Exception {
+		cachingSender = new CachingRequestSender(requestSender, 0, 8000);
+		addResponse(200, "some image", "ETag", "\"v1\"");
+		addResponse(304, "");
+
+		send(createGet());
+		assertEquals(send(createGet()), "200:some image");
+
+		assertEquals(getSentRequest(1).headers().firstValue("If-None-Match").get(), "\"v1\"");
+		assertEquals(cachingSender.onlyForTestGetOffHeapCache().getNumberOfResponses(), 1);
+	}
+
+	@Test
+	public void testUpdateRemovesOffHeapResponses() throws Exception {
+		cachingSender = new CachingRequestSender(requestSender, 0, 8000);
+		addResponse(200, "some image", "Cache-Control", "max-age=3600");
+		addResponse(200, "updated");
+		send(createGet());
+
+		cachingSender.send(HttpRequest.newBuilder(URI.create(URL))
+				.PUT(BodyPublishers.ofString("new image")).build());
+
+		assertEquals(cachingSender.onlyForTestGetOffHeapCache().getNumberOfResponses(), 0);
+	}
+
+	@Test
+	public void testLargeResponseIsNotStoredAndIsReturnedWhole() throws Exception {
+		String largeBody = "x".repeat(1001);
+		addResponse(200, largeBody, "ETag", "\"v1\"");
+
+		assertEquals(send(createGet()), "200:" + largeBody);
+
+		assertEquals(cachingSender.onlyForTestGetCache().getNumberOfResponses(), 0);
+	}
+
+	@Test
+	public void testLargeResponseWithContentLengthIsNotRead() throws Exception {
+		HttpResponseSpy<InputStream> response = addResponse(200, "x", "ETag", "\"v1\"",
+				"Content-Length", "1001");
+
+		assertSame(cachingSender.send(createGet()), response);
+		response.MCR.assertMethodNotCalled("body");
+	}
+
+	@Test
+	public void testStoredBodyIsReadWithinTimeoutOfRequest() throws Exception {
+		HttpResponseSpy<InputStream> response = addResponse(200, "", "ETag", "\"v1\"");
+		InputStream stalledBody = new StalledInputStream();
+		response.MRV.setDefaultReturnValuesSupplier("body", () -> stalledBody);
+
+		try {
+			cachingSender.send(createGetWithTimeout(Duration.ofMillis(100)));
+			fail("Exception should have been thrown");
+		} catch (RequestTimeoutIOException e) {
+			assertEquals(e.getMessage(), "Request timed out after PT0.1S");
+		}
+		assertEquals(cachingSender.onlyForTestGetCache().getNumberOfResponses(), 0);
+	}
+
+	private HttpRequest createGetWithTimeout(Duration timeout) {
+		return HttpRequest.newBuilder(URI.create(URL)).timeout(timeout).build();
+	}
+
+	@Test
+	public void testLargeResponseIsReturnedWithoutTimeoutOfRequest() throws Exception {
+		String largeBody = "x".repeat(1001);
+		addResponse(200, largeBody, "ETag", "\"v1\"");
+
+		HttpResponse<InputStream> response = cachingSender
+				.send(createGetWithTimeout(Duration.ofMillis(50)));
+		Thread.sleep(100);
+
+		assertEquals(new String(response.body().readAllBytes()), largeBody);
+	}
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.CircuitBreakerPolicy;
+import se.uu.ub.cora.httphandler.HttpRequestRejectedException;
+import se.uu.ub.cora.httphandler.spy.HttpResponseSpy;
+import se.uu.ub.cora.httphandler.spy.RequestSenderSpy;
+
+public class CircuitBreakingRequestSenderTest {
+	private static final String AUTHORITY = "localhost:8080";
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+	private RequestSenderSpy requestSender;
+	private CircuitBreakerPolicy policy;
+	private long now;
+	private long requestDuration;
+	private CircuitBreakingRequestSender circuitBreakingSender;
+
+	@BeforeMethod
+	public void setUp() {
+		requestSender = new RequestSenderSpy();
+		policy = CircuitBreakerPolicy.defaults().withWindowSize(4).withFailureRateThreshold(50)
+				.withSlowCallThreshold(Duration.ofSeconds(2), 75)
+				.withOpenDuration(Duration.ofSeconds(30));
+		now = 0;
+		requestDuration = 0;
+		circuitBreakingSender = new CircuitBreakingRequestSender(requestSender, policy,
+				this::readClock);
+	}
+
+	private long readClock() {
+		long time = now;
+		now += requestDuration;
+		return time;
+	}
+
+	private HttpRequest createRequest(String authority) {
+		return HttpRequest.newBuilder(URI.create("http://" + authority + "/record/someId"))
+				.build();
+	}
+
+	private void setStatusCode(int statusCode) {
+		HttpResponseSpy<InputStream> response = createResponse(statusCode);
+		requestSender.MRV.setDefaultReturnValuesSupplier("send", () -> response);
+	}
+
+	private HttpResponseSpy<InputStream> createResponse(int statusCode) {
+		HttpResponseSpy<InputStream> response = new HttpResponseSpy<>();
+		response.MRV.setDefaultReturnValuesSupplier("statusCode", () -> statusCode);
+		return response;
+	}
+
+	private void sendRequests(int statusCode, int requests) throws Exception {
+		setStatusCode(statusCode);
+		for (int i = 0; i < requests; i++) {
+			circuitBreakingSender.send(createRequest(AUTHORITY));
+		}
+	}
+
+	private void assertRejected() {
+		try {
+			circuitBreakingSender.send(createRequest(AUTHORITY));
+			fail("The request should have been rejected");
+		} catch (HttpRequestRejectedException e) {
+			assertEquals(e.getMessage(), "Circuit breaker is open for: " + AUTHORITY);
+			assertEquals(e.getAuthority(), AUTHORITY);
+		} catch (IOException | InterruptedException e) {
+			fail("Wrong exception: " + e);
+		}
+	}
+
+	@Test
+	public void testResponseIsReturned() throws Exception {
+		setStatusCode(200);
+
+		HttpResponse<InputStream> response = circuitBreakingSender
+				.send(createRequest(AUTHORITY));
+
+		assertSame(response, requestSender.MCR.getReturnValue("send", 0));
+		assertFalse(circuitBreakingSender.onlyForTestIsOpen(AUTHORITY));
+	}
+
+	@Test
+	public void testCircuitOpensWhenFailureRateIsReachedInFullWindow() throws Exception {
+		sendRequests(200, 2);
+		sendRequests(503, 1);
+		assertFalse(circuitBreakingSender.onlyForTestIsOpen(AUTHORITY));
+
+		sendRequests(500, 1);
+
+		assertTrue(circuitBreakingSender.onlyForTestIsOpen(AUTHORITY));
+		assertRejected();
+		requestSender.MCR.assertNumberOfCallsToMethod("send", 4);
+	}
+
+	@Test
+	public void testCircuitDoesNotOpenBeforeWindowIsFull() throws Exception {
+		sendRequests(500, 3);
+
+		assertFalse(circuitBreakingSender.onlyForTestIsOpen(AUTHORITY));
+	}
+
+	@Test
+	public void testOldOutcomesLeaveTheWindow() throws Exception {
+		sendRequests(500, 1);
+		sendRequests(200, 4);
+		sendRequests(500, 1);
+
+		assertFalse(circuitBreakingSender.onlyForTestIsOpen(AUTHORITY));
+	}
+
+	@Test
+	public void testExceptionsCountAsFailures() throws Exception {
+		sendRequests(200, 2);
+		requestSender.MRV.setAlwaysThrowException("send", new RuntimeException("not counted"));
+		sendFailing(RuntimeException.class);
+		assertFalse(circuitBreakingSender.onlyForTestIsOpen(AUTHORITY));
+
+		circuitBreakingSender = new CircuitBreakingRequestSender(new FailingSender(), policy,
+				this::readClock);
+		for (int i = 0; i < 4; i++) {
+			sendFailing(IOException.class);
+		}
+
+		assertTrue(circuitBreakingSender.onlyForTestIsOpen(AUTHORITY));
+	}
+
+	private void sendFailing(Class<? extends Exception> expected) {
+		try {
+			circuitBreakingSender.send(createRequest(AUTHORITY));
+			fail("An exception should have been thrown");
+		} catch (Exception e) {
+			assertTrue(expected.isInstance(e), "Wrong exception: " + e);
+		}
+	}
+
+	private static class FailingSender implements RequestSender {
+		@Override
+		public HttpResponse<InputStream> send(HttpRequest request) throws IOException {
+			throw new IOException("connection reset");
+		}
+	}
+
+	@Test
+	public void testCircuitOpensWhenSlowCallRateIsReached() throws Exception {
+		requestDuration = 3 * SECOND;
+		sendRequests(200, 3);
+		assertFalse(circuitBreakingSender.onlyForTestIsOpen(AUTHORITY));
+
+		requestDuration = 0;
+		sendRequests(200, 1);
+
+		assertTrue(circuitBreakingSender.onlyForTestIsOpen(AUTHORITY));
+	}
+
+	@Test
+	public void testSuccessfulProbeClosesCircuitAfterOpenDuration() throws Exception {
+		sendRequests(500, 4);
+		now += 29 * SECOND;
+		assertRejected();
+
+		now += SECOND;
+		sendRequests(200, 1);
+
+		assertFalse(circuitBreakingSender.onlyForTestIsOpen(AUTHORITY));
+		sendRequests(500, 3);
+		assertFalse(circuitBreakingSender.onlyForTestIsOpen(AUTHORITY));
+	}
+
+	@Test
+	public void testOnlyOneProbeIsLetThrough() throws Exception {
+		sendRequests(500, 4);
+		now += 30 * SECOND;
+		HttpResponseSpy<InputStream> response = createResponse(200);
+		requestSender.MRV.setDefaultReturnValuesSupplier("send", () -> {
+			assertRejected();
+			return response;
+		});
+
+		circuitBreakingSender.send(createRequest(AUTHORITY));
+
+		requestSender.MCR.assertNumberOfCallsToMethod("send", 5);
+		assertFalse(circuitBreakingSender.onlyForTestIsOpen(AUTHORITY));
+	}
+
+	@Test
+	public void testNewProbeIsLetThroughIfProbeHasNotFinishedWithinOpenDuration()
+			throws Exception {
+		sendRequests(500, 4);
+		now += 30 * SECOND;
+		HttpResponseSpy<InputStream> response = createResponse(200);
+		AtomicBoolean probing = new AtomicBoolean();
+		requestSender.MRV.setDefaultReturnValuesSupplier("send", () -> {
+			if (probing.compareAndSet(false, true)) {
+				now += 29 * SECOND;
+				assertRejected();
+				now += SECOND;
+				sendNewProbe();
+			}
+			return response;
+		});
+
+		circuitBreakingSender.send(createRequest(AUTHORITY));
+
+		requestSender.MCR.assertNumberOfCallsToMethod("send", 6);
+		assertFalse(circuitBreakingSender.onlyForTestIsOpen(AUTHORITY));
+	}
+
+	private void sendNewProbe() {
+		try {
+			circuitBreakingSender.send(createRequest(AUTHORITY));
+		} catch (IOException | InterruptedException e) {
+			fail("Wrong exception: " + e);
+		}
+	}
+
+	@Test
+	public void testFailedProbeOpensCircuitAgain() throws Exception {
+		sendRequests(500, 4);
+		now += 30 * SECOND;
+
+		sendRequests(503, 1);
+
+		assertTrue(circuitBreakingSender.onlyForTestIsOpen(AUTHORITY));
+		now += 29 * SECOND;
+		assertRejected();
+	}
+
+	@Test
+	public void testCancelledProbeLetsNextRequestProbe() throws Exception {
+		sendRequests(500, 4);
+		now += 30 * SECOND;
+		requestSender.MRV.setDefaultReturnValuesSupplier("send", () -> {
+			throw new RuntimeException("some error");
+		});
+		sendFailing(RuntimeException.class);
+
+		sendRequests(200, 1);
+
+		assertFalse(circuitBreakingSender.onlyForTestIsOpen(AUTHORITY));
+	}
+
+	@Test
+	public void testEachAuthorityHasItsOwnCircuit() throws Exception {
+		sendRequests(500, 4);
+
+		setStatusCode(200);
+		circuitBreakingSender.send(createRequest("otherhost:8080"));
+
+		assertTrue(circuitBreakingSender.onlyForTestIsOpen(AUTHORITY));
+		assertFalse(circuitBreakingSender.onlyForTestIsOpen("otherhost:8080"));
+	}
+
+	@Test
+	public void testOnlyForTestGetters() {
+		CircuitBreakingRequestSender sender = new CircuitBreakingRequestSender(requestSender,
+				policy);
+
+		assertSame(sender.onlyForTestGetRequestSender(), requestSender);
+		assertSame(sender.onlyForTestGetPolicy(), policy);
+	}
+}
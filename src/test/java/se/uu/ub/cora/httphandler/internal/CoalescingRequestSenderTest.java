@@ -0,0 +1,409 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.spy.HttpResponseSpy;
+import se.uu.ub.cora.httphandler.spy.RequestSenderSpy;
+
+public class CoalescingRequestSenderTest {
+	private static final String URL = "http://localhost:8080/record/someId";
+	private static final long MAX_BODY_SIZE = 100;
+	private RequestSenderSpy requestSender;
+	private CoalescingRequestSender coalescingSender;
+	private HttpResponseSpy<InputStream> responseSpy;
+
+	@BeforeMethod
+	public void setUp() {
+		requestSender = new RequestSenderSpy();
+		responseSpy = new HttpResponseSpy<>();
+		responseSpy.MRV.setDefaultReturnValuesSupplier("body",
+				() -> new ByteArrayInputStream("some record".getBytes()));
+		setResponseHeaders(Map.of("Content-Type", List.of("application/xml"), "Content-Length",
+				List.of("11")));
+		requestSender.MRV.setDefaultReturnValuesSupplier("send", () -> responseSpy);
+		coalescingSender = new CoalescingRequestSender(requestSender, MAX_BODY_SIZE);
+	}
+
+	private void setResponseHeaders(Map<String, List<String>> headers) {
+		responseSpy.MRV.setDefaultReturnValuesSupplier("headers",
+				() -> HttpHeaders.of(headers, (name, value) -> true));
+	}
+
+	private HttpRequest createGet() {
+		return HttpRequest.newBuilder(URI.create(URL)).header("authToken", "someToken").build();
+	}
+
+	private String readBody(HttpResponse<InputStream> response) throws IOException {
+		try (InputStream body = response.body()) {
+			return new String(body.readAllBytes());
+		}
+	}
+
+	@Test
+	public void testPostIsNotCoalesced() throws Exception {
+		HttpRequest request = HttpRequest.newBuilder(URI.create(URL))
+				.POST(BodyPublishers.ofString("some body")).build();
+
+		HttpResponse<InputStream> response = coalescingSender.send(request);
+
+		assertSame(response, responseSpy);
+		requestSender.MCR.assertParameters("send", 0, request);
+	}
+
+	@Test
+	public void testGetResponseIsReadIntoMemory() throws Exception {
+		HttpRequest request = createGet();
+
+		HttpResponse<InputStream> response = coalescingSender.send(request);
+
+		requestSender.MCR.assertParameters("send", 0, request);
+		assertEquals(response.statusCode(), 200);
+		assertEquals(response.headers().firstValue("Content-Type").get(), "application/xml");
+		assertEquals(response.version(), responseSpy.version());
+		assertSame(response.request(), request);
+		assertEquals(readBody(response), "some record");
+		assertEquals(coalescingSender.onlyForTestGetNumberOfRequestsInFlight(), 0);
+	}
+
+	@Test
+	public void testSharedBodyIsReadWithinTimeoutOfRequest() throws Exception {
+		InputStream stalledBody = new StalledInputStream();
+		responseSpy.MRV.setDefaultReturnValuesSupplier("body", () -> stalledBody);
+		HttpRequest request = HttpRequest.newBuilder(URI.create(URL))
+				.timeout(Duration.ofMillis(100)).build();
+
+		try {
+			coalescingSender.send(request);
+			fail("Exception should have been thrown");
+		} catch (RequestTimeoutIOException e) {
+			assertEquals(e.getMessage(), "Request timed out after PT0.1S");
+		}
+		assertEquals(coalescingSender.onlyForTestGetNumberOfRequestsInFlight(), 0);
+	}
+
+	@Test
+	public void testGetResponseWithUnknownLengthIsStreamed() throws Exception {
+		setResponseHeaders(Map.of("Content-Type", List.of("application/xml")));
+
+		HttpResponse<InputStream> response = coalescingSender.send(createGet());
+
+		assertSame(response, responseSpy);
+		responseSpy.MCR.assertMethodNotCalled("body");
+		assertEquals(coalescingSender.onlyForTestGetNumberOfRequestsInFlight(), 0);
+	}
+
+	@Test
+	public void testGetResponseLargerThanMaxBodySizeIsStreamed() throws Exception {
+		setResponseHeaders(Map.of("Content-Length", List.of("101")));
+
+		HttpResponse<InputStream> response = coalescingSender.send(createGet());
+
+		assertSame(response, responseSpy);
+		responseSpy.MCR.assertMethodNotCalled("body");
+	}
+
+	@Test
+	public void testGetResponseOfMaxBodySizeIsReadIntoMemory() throws Exception {
+		setResponseHeaders(Map.of("Content-Length", List.of("100")));
+
+		HttpResponse<InputStream> response = coalescingSender.send(createGet());
+
+		assertEquals(readBody(response), "some record");
+	}
+
+	@Test
+	public void testHeadResponseWithUnknownLengthIsShared() throws Exception {
+		setResponseHeaders(Map.of());
+		responseSpy.MRV.setDefaultReturnValuesSupplier("body",
+				() -> new ByteArrayInputStream(new byte[0]));
+		HttpRequest request = HttpRequest.newBuilder(URI.create(URL))
+				.method("HEAD", BodyPublishers.noBody()).build();
+
+		HttpResponse<InputStream> response = coalescingSender.send(request);
+
+		assertNotSame(response, responseSpy);
+		assertEquals(readBody(response), "");
+	}
+
+	@Test
+	public void testRequestAfterCompletedRequestIsSentAgain() throws Exception {
+		coalescingSender.send(createGet());
+		coalescingSender.send(createGet());
+
+		requestSender.MCR.assertNumberOfCallsToMethod("send", 2);
+	}
+
+	@Test
+	public void testFailureIsThrownAndNextRequestIsSent() throws Exception {
+		RuntimeException failure = new RuntimeException("connection refused");
+		requestSender.MRV.setAlwaysThrowException("send", failure);
+
+		try {
+			coalescingSender.send(createGet());
+			fail("Exception should have been thrown");
+		} catch (RuntimeException e) {
+			assertSame(e, failure);
+		}
+		assertEquals(coalescingSender.onlyForTestGetNumberOfRequestsInFlight(), 0);
+	}
+
+	@Test
+	public void testConcurrentIdenticalRequestsAreSentOnce() throws Exception {
+		BlockingRequestSender blockingSender = new BlockingRequestSender();
+		coalescingSender = new CoalescingRequestSender(blockingSender, MAX_BODY_SIZE);
+		ConcurrentLinkedQueue<String> bodies = new ConcurrentLinkedQueue<>();
+
+		List<Thread> callers = startCallers(5, () -> bodies.add(readBody(coalescingSender
+				.send(createGet()))));
+		blockingSender.waitUntilSent();
+		waitUntilWaiting(callers);
+		blockingSender.respond();
+		joinAll(callers);
+
+		assertEquals(blockingSender.requests.get(), 1);
+		assertEquals(new ArrayList<>(bodies), List.of("some record", "some record",
+				"some record", "some record", "some record"));
+	}
+
+	@Test
+	public void testConcurrentRequestsSendOwnRequestsIfResponseIsStreamed() throws Exception {
+		setResponseHeaders(Map.of());
+		BlockingRequestSender blockingSender = new BlockingRequestSender();
+		coalescingSender = new CoalescingRequestSender(blockingSender, MAX_BODY_SIZE);
+		ConcurrentLinkedQueue<HttpResponse<InputStream>> responses = new ConcurrentLinkedQueue<>();
+
+		List<Thread> callers = startCallers(3, () -> responses.add(coalescingSender
+				.send(createGet())));
+		blockingSender.waitUntilSent();
+		waitUntilWaiting(callers);
+		blockingSender.respond();
+		joinAll(callers);
+
+		assertEquals(blockingSender.requests.get(), 3);
+		responses.forEach(response -> assertSame(response, responseSpy));
+	}
+
+	@Test
+	public void testWaitingCallerTimesOutAfterRequestTimeout() throws Exception {
+		BlockingRequestSender blockingSender = new BlockingRequestSender();
+		coalescingSender = new CoalescingRequestSender(blockingSender, MAX_BODY_SIZE);
+		List<Thread> callers = startCallers(1, () -> coalescingSender.send(createGet()));
+		blockingSender.waitUntilSent();
+		HttpRequest request = HttpRequest.newBuilder(URI.create(URL))
+				.header("authToken", "someToken").timeout(Duration.ofMillis(50)).build();
+
+		try {
+			coalescingSender.send(request);
+			fail("Exception should have been thrown");
+		} catch (HttpTimeoutException e) {
+			assertEquals(e.getMessage(), "request timed out");
+		} finally {
+			blockingSender.respond();
+			joinAll(callers);
+		}
+		assertEquals(blockingSender.requests.get(), 1);
+	}
+
+	@Test
+	public void testConcurrentRequestsWithDifferentHeadersAreNotCoalesced() throws Exception {
+		BlockingRequestSender blockingSender = new BlockingRequestSender();
+		coalescingSender = new CoalescingRequestSender(blockingSender, MAX_BODY_SIZE);
+		AtomicInteger token = new AtomicInteger();
+
+		List<Thread> callers = startCallers(2,
+				() -> readBody(coalescingSender.send(HttpRequest.newBuilder(URI.create(URL))
+						.header("authToken", "token" + token.incrementAndGet()).build())));
+		waitUntilWaiting(callers);
+		blockingSender.respond();
+		joinAll(callers);
+
+		assertEquals(blockingSender.requests.get(), 2);
+	}
+
+	@Test
+	public void testFailureIsThrownToAllWaitingCallers() throws Exception {
+		BlockingRequestSender blockingSender = new BlockingRequestSender();
+		IOException failure = new IOException("connection reset");
+		blockingSender.failure = failure;
+		coalescingSender = new CoalescingRequestSender(blockingSender, MAX_BODY_SIZE);
+		ConcurrentLinkedQueue<Exception> failures = new ConcurrentLinkedQueue<>();
+
+		List<Thread> callers = startCallers(3, () -> {
+			try {
+				coalescingSender.send(createGet());
+			} catch (IOException e) {
+				failures.add(e);
+			}
+		});
+		blockingSender.waitUntilSent();
+		waitUntilWaiting(callers);
+		blockingSender.respond();
+		joinAll(callers);
+
+		assertEquals(blockingSender.requests.get(), 1);
+		assertEquals(failures.size(), 3);
+		failures.forEach(e -> assertSame(e, failure));
+	}
+
+	@Test
+	public void testWaitingCallersSendOwnRequestsIfSentRequestTimedOut() throws Exception {
+		BlockingRequestSender blockingSender = new BlockingRequestSender();
+		blockingSender.failure = new HttpTimeoutException("request timed out");
+		coalescingSender = new CoalescingRequestSender(blockingSender, MAX_BODY_SIZE);
+		ConcurrentLinkedQueue<String> bodies = new ConcurrentLinkedQueue<>();
+		List<Thread> sender = startCallers(1, () -> sendExpectingTimeout());
+		blockingSender.waitUntilSent();
+
+		List<Thread> callers = startCallers(2, () -> bodies.add(readBody(coalescingSender
+				.send(createGet()))));
+		waitUntilWaiting(callers);
+		blockingSender.respond();
+		joinAll(sender);
+		joinAll(callers);
+
+		assertEquals(blockingSender.requests.get(), 3);
+		assertEquals(new ArrayList<>(bodies), List.of("some record", "some record"));
+	}
+
+	private void sendExpectingTimeout() throws Exception {
+		try {
+			coalescingSender.send(createGet());
+			fail("Exception should have been thrown");
+		} catch (HttpTimeoutException e) {
+			assertEquals(e.getMessage(), "request timed out");
+		}
+	}
+
+	@Test
+	public void testWaitingCallerSendsOwnRequestIfSendingCallerIsInterrupted()
+			throws Exception {
+		BlockingRequestSender blockingSender = new BlockingRequestSender();
+		coalescingSender = new CoalescingRequestSender(blockingSender, MAX_BODY_SIZE);
+		ConcurrentLinkedQueue<String> bodies = new ConcurrentLinkedQueue<>();
+		List<Thread> sender = startCallers(1, () -> sendExpectingInterrupt());
+		blockingSender.waitUntilSent();
+		List<Thread> callers = startCallers(1, () -> bodies.add(readBody(coalescingSender
+				.send(createGet()))));
+		waitUntilWaiting(callers);
+
+		sender.get(0).interrupt();
+		joinAll(sender);
+		while (blockingSender.requests.get() < 2) {
+			Thread.sleep(1);
+		}
+		blockingSender.respond();
+		joinAll(callers);
+
+		assertEquals(new ArrayList<>(bodies), List.of("some record"));
+	}
+
+	private void sendExpectingInterrupt() throws Exception {
+		try {
+			coalescingSender.send(createGet());
+			fail("Exception should have been thrown");
+		} catch (InterruptedException e) {
+			// expected
+		}
+	}
+
+	private interface Caller {
+		void call() throws Exception;
+	}
+
+	private List<Thread> startCallers(int numberOfCallers, Caller caller) {
+		List<Thread> callers = new ArrayList<>();
+		for (int i = 0; i < numberOfCallers; i++) {
+			callers.add(Thread.ofPlatform().start(() -> {
+				try {
+					caller.call();
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}));
+		}
+		return callers;
+	}
+
+	private void waitUntilWaiting(List<Thread> callers) throws InterruptedException {
+		for (Thread caller : callers) {
+			while (caller.getState() != Thread.State.WAITING) {
+				Thread.sleep(1);
+			}
+		}
+	}
+
+	private void joinAll(List<Thread> callers) throws InterruptedException {
+		for (Thread caller : callers) {
+			caller.join();
+		}
+	}
+
+	private class BlockingRequestSender implements RequestSender {
+		AtomicInteger requests = new AtomicInteger();
+		CountDownLatch sent = new CountDownLatch(1);
+		CountDownLatch response = new CountDownLatch(1);
+		IOException failure;
+
+		@Override
+		public HttpResponse<InputStream> send(HttpRequest request)
+				throws IOException, InterruptedException {
+			int requestNumber = requests.incrementAndGet();
+			sent.countDown();
+			response.await();
+			if (failure != null && requestNumber == 1) {
+				throw failure;
+			}
+			return responseSpy;
+		}
+
+		void waitUntilSent() throws InterruptedException {
+			sent.await();
+		}
+
+		void respond() {
+			response.countDown();
+		}
+	}
+}
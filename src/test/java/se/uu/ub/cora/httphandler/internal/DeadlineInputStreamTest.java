@@ -0,0 +1,159 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class DeadlineInputStreamTest {
+	private static final Duration TIMEOUT = Duration.ofSeconds(1);
+	private ScheduledThreadPoolExecutor scheduler;
+
+	@BeforeMethod
+	public void setUp() {
+		scheduler = new ScheduledThreadPoolExecutor(1);
+		scheduler.setRemoveOnCancelPolicy(true);
+	}
+
+	@AfterMethod
+	public void tearDown() {
+		scheduler.shutdownNow();
+	}
+
+	private InputStream createDeadlineStream(InputStream in, long remainingNanos) {
+		return new DeadlineInputStream(in, in, TIMEOUT, remainingNanos, scheduler);
+	}
+
+	@Test
+	public void testReadBeforeDeadlineCancelsDeadlineAtEnd() throws Exception {
+		InputStream in = createDeadlineStream(
+				new ByteArrayInputStream("some text".getBytes()), TIMEOUT.toNanos());
+
+		assertEquals(new String(in.readAllBytes()), "some text");
+
+		assertTrue(scheduler.getQueue().isEmpty());
+	}
+
+	@Test
+	public void testDeadlineIsCancelledWhenStreamIsClosed() throws Exception {
+		InputStream in = createDeadlineStream(new ByteArrayInputStream(new byte[0]),
+				TIMEOUT.toNanos());
+
+		in.close();
+
+		assertTrue(scheduler.getQueue().isEmpty());
+	}
+
+	@Test
+	public void testBlockedReadIsEndedAtDeadline() throws Exception {
+		BlockingInputStream blocking = new BlockingInputStream();
+		InputStream in = createDeadlineStream(blocking,
+				TimeUnit.MILLISECONDS.toNanos(50));
+
+		try {
+			in.read(new byte[10]);
+			fail("Exception should have been thrown");
+		} catch (RequestTimeoutIOException e) {
+			assertEquals(e.getMessage(), "Request timed out after PT1S");
+			assertEquals(e.getCause().getMessage(), "closed");
+		}
+		assertEquals(blocking.closed.getCount(), 0);
+	}
+
+	@Test
+	public void testReadAfterDeadline() throws Exception {
+		InputStream in = createDeadlineStream(new ByteArrayInputStream(new byte[10]), 0);
+		Thread.sleep(100);
+
+		try {
+			in.read();
+			fail("Exception should have been thrown");
+		} catch (RequestTimeoutIOException e) {
+			assertEquals(e.getMessage(), "Request timed out after PT1S");
+		}
+	}
+
+	@Test
+	public void testOnlyConnectionIsClosedAtDeadline() throws Exception {
+		BlockingInputStream connection = new BlockingInputStream();
+		CloseRecordingInputStream wrapped = new CloseRecordingInputStream(connection);
+		InputStream in = new DeadlineInputStream(wrapped, connection, TIMEOUT,
+				TimeUnit.MILLISECONDS.toNanos(50), scheduler);
+
+		try {
+			in.read(new byte[10]);
+			fail("Exception should have been thrown");
+		} catch (RequestTimeoutIOException e) {
+			assertEquals(connection.closed.getCount(), 0);
+			assertFalse(wrapped.closed);
+		}
+		in.close();
+
+		assertTrue(wrapped.closed);
+	}
+
+	private static class CloseRecordingInputStream extends FilterInputStream {
+		private boolean closed = false;
+
+		CloseRecordingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			super.close();
+		}
+	}
+
+	private static class BlockingInputStream extends InputStream {
+		private final CountDownLatch closed = new CountDownLatch(1);
+
+		@Override
+		public int read() throws IOException {
+			try {
+				closed.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			throw new IOException("closed");
+		}
+
+		@Override
+		public void close() {
+			closed.countDown();
+		}
+	}
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.spy.HttpResponseSpy;
+import se.uu.ub.cora.httphandler.spy.InputStreamSpy;
+import se.uu.ub.cora.httphandler.spy.RequestSenderSpy;
+
+public class DecompressingRequestSenderTest {
+	private static final String CONTENT = "<record>\n  <id>some id</id>\n</record>\n".repeat(1000);
+	private RequestSenderSpy requestSender;
+	private HttpResponseSpy<InputStream> responseSpy;
+	private DecompressingRequestSender decompressingSender;
+	private HttpRequest request;
+
+	@BeforeMethod
+	public void setUp() {
+		requestSender = new RequestSenderSpy();
+		responseSpy = new HttpResponseSpy<>();
+		requestSender.MRV.setDefaultReturnValuesSupplier("send", () -> responseSpy);
+		decompressingSender = new DecompressingRequestSender(requestSender);
+		request = HttpRequest.newBuilder(URI.create("http://localhost:8080/some"))
+				.header("someHeader", "someValue").POST(HttpRequest.BodyPublishers.ofString("x"))
+				.build();
+	}
+
+	private void setResponse(byte[] body, String contentEncoding) {
+		responseSpy.MRV.setDefaultReturnValuesSupplier("body",
+				() -> new ByteArrayInputStream(body));
+		Map<String, List<String>> headers = new LinkedHashMap<>();
+		headers.put("Content-Type", List.of("application/xml"));
+		headers.put("Content-Length", List.of(String.valueOf(body.length)));
+		if (contentEncoding != null) {
+			headers.put("Content-Encoding", List.of(contentEncoding));
+		}
+		responseSpy.MRV.setDefaultReturnValuesSupplier("headers",
+				() -> HttpHeaders.of(headers, (name, value) -> true));
+	}
+
+	private byte[] gzip(String content) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(content.getBytes(StandardCharsets.UTF_8));
+		}
+		return bytes.toByteArray();
+	}
+
+	private byte[] deflate(String content, boolean nowrap) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = new DeflaterOutputStream(bytes,
+				new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap))) {
+			out.write(content.getBytes(StandardCharsets.UTF_8));
+		}
+		return bytes.toByteArray();
+	}
+
+	private String readBody(HttpResponse<InputStream> response) throws IOException {
+		try (InputStream body = response.body()) {
+			return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	@Test
+	public void testConnectionBodyIsBodyOfCompressedResponse() throws Exception {
+		InputStream compressed = new ByteArrayInputStream(gzip(CONTENT));
+		setResponse(new byte[0], "gzip");
+		responseSpy.MRV.setDefaultReturnValuesSupplier("body", () -> compressed);
+
+		HttpResponse<InputStream> response = decompressingSender.send(request);
+
+		assertNotSame(response.body(), compressed);
+		assertSame(ResponseWithBody.getConnectionBody(response), compressed);
+	}
+
+	@Test
+	public void testAcceptEncodingIsAddedToRequest() throws Exception {
+		setResponse(CONTENT.getBytes(), null);
+
+		decompressingSender.send(request);
+
+		HttpRequest sentRequest = (HttpRequest) requestSender.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("send", 0, "request");
+		assertEquals(sentRequest.headers().firstValue("Accept-Encoding").get(), "gzip, deflate");
+		assertEquals(sentRequest.headers().firstValue("someHeader").get(), "someValue");
+		assertEquals(sentRequest.method(), "POST");
+		assertEquals(sentRequest.uri(), request.uri());
+		assertSame(sentRequest.bodyPublisher().get(), request.bodyPublisher().get());
+	}
+
+	@Test
+	public void testUncompressedResponseIsReturnedAsIs() throws Exception {
+		setResponse(CONTENT.getBytes(), null);
+
+		HttpResponse<InputStream> response = decompressingSender.send(request);
+
+		assertSame(response, responseSpy);
+	}
+
+	@Test
+	public void testUnknownEncodingIsReturnedAsIs() throws Exception {
+		setResponse(CONTENT.getBytes(), "br");
+
+		HttpResponse<InputStream> response = decompressingSender.send(request);
+
+		assertSame(response, responseSpy);
+	}
+
+	@Test
+	public void testGzipResponseIsDecompressed() throws Exception {
+		setResponse(gzip(CONTENT), "gzip");
+
+		HttpResponse<InputStream> response = decompressingSender.send(request);
+
+		assertEquals(readBody(response), CONTENT);
+		assertEquals(response.statusCode(), 200);
+	}
+
+	@Test
+	public void testEncodingAndLengthHeadersAreRemovedFromDecompressedResponse()
+			throws Exception {
+		setResponse(gzip(CONTENT), "GZIP");
+
+		HttpHeaders headers = decompressingSender.send(request).headers();
+
+		assertTrue(headers.firstValue("Content-Encoding").isEmpty());
+		assertTrue(headers.firstValue("Content-Length").isEmpty());
+		assertEquals(headers.firstValue("Content-Type").get(), "application/xml");
+	}
+
+	@Test
+	public void testGzipWithOptionalHeaderFieldsIsDecompressed() throws Exception {
+		byte[] gzip = gzip(CONTENT);
+		ByteArrayOutputStream withFields = new ByteArrayOutputStream();
+		withFields.write(gzip, 0, 3);
+		withFields.write(4 | 8 | 16 | 2);
+		withFields.write(gzip, 4, 6);
+		withFields.write(new byte[] { 3, 0, 'a', 'b', 'c' });
+		withFields.write("name.xml\0".getBytes());
+		withFields.write("a comment\0".getBytes());
+		withFields.write(new byte[] { 0, 0 });
+		withFields.write(gzip, 10, gzip.length - 10);
+		setResponse(withFields.toByteArray(), "gzip");
+
+		assertEquals(readBody(decompressingSender.send(request)), CONTENT);
+	}
+
+	@Test
+	public void testZlibDeflateResponseIsDecompressed() throws Exception {
+		setResponse(deflate(CONTENT, false), "deflate");
+
+		assertEquals(readBody(decompressingSender.send(request)), CONTENT);
+	}
+
+	@Test
+	public void testRawDeflateResponseIsDecompressed() throws Exception {
+		setResponse(deflate(CONTENT, true), "deflate");
+
+		assertEquals(readBody(decompressingSender.send(request)), CONTENT);
+	}
+
+	@Test
+	public void testEmptyCompressedBodyIsEmpty() throws Exception {
+		setResponse(new byte[0], "gzip");
+
+		assertEquals(readBody(decompressingSender.send(request)), "");
+	}
+
+	@Test
+	public void testBodyIsNotReadBeforeFirstRead() throws Exception {
+		InputStreamSpy bodySpy = new InputStreamSpy();
+		setResponse(new byte[0], "gzip");
+		responseSpy.MRV.setDefaultReturnValuesSupplier("body", () -> bodySpy);
+
+		decompressingSender.send(request).body().close();
+
+		bodySpy.MCR.assertMethodNotCalled("read");
+	}
+
+	@Test
+	public void testCorruptGzipTrailerFails() throws Exception {
+		byte[] gzip = gzip(CONTENT);
+		gzip[gzip.length - 5]++;
+		setResponse(gzip, "gzip");
+
+		try {
+			readBody(decompressingSender.send(request));
+			fail("Exception should have been thrown");
+		} catch (ZipException e) {
+			assertEquals(e.getMessage(), "Corrupt gzip trailer");
+		}
+	}
+
+	@Test
+	public void testNotGzipFails() throws Exception {
+		setResponse(CONTENT.getBytes(), "gzip");
+
+		try {
+			readBody(decompressingSender.send(request));
+			fail("Exception should have been thrown");
+		} catch (ZipException e) {
+			assertEquals(e.getMessage(), "Not in GZIP format");
+		}
+	}
+
+	@Test
+	public void testRequestWithAcceptEncodingFromCallerIsLeftAsIs() throws Exception {
+		setResponse(gzip(CONTENT), "gzip");
+		HttpRequest requestWithAcceptEncoding = HttpRequest
+				.newBuilder(URI.create("http://localhost:8080/some"))
+				.header("Accept-Encoding", "gzip").build();
+
+		HttpResponse<InputStream> response = decompressingSender.send(requestWithAcceptEncoding);
+
+		requestSender.MCR.assertParameters("send", 0, requestWithAcceptEncoding);
+		assertSame(response, responseSpy);
+	}
+
+	@Test
+	public void testInflatersAreReturnedToPoolAndReused() throws Exception {
+		setResponse(gzip(CONTENT), "gzip");
+		InflaterPool pool = decompressingSender.onlyForTestGetRawInflaterPool();
+
+		InputStream firstBody = decompressingSender.send(request).body();
+		firstBody.readAllBytes();
+		assertEquals(pool.getNumberOfPooled(), 0);
+		firstBody.close();
+		firstBody.close();
+		assertEquals(pool.getNumberOfPooled(), 1);
+
+		readBody(decompressingSender.send(request));
+		assertEquals(pool.getNumberOfPooled(), 1);
+	}
+
+	@Test
+	public void testInflaterPool() {
+		InflaterPool pool = new InflaterPool(true, 1);
+
+		var first = pool.acquire();
+		var second = pool.acquire();
+		assertNotSame(first, second);
+		pool.release(first);
+		pool.release(second);
+
+		assertEquals(pool.getNumberOfPooled(), 1);
+		assertSame(pool.acquire(), first);
+		assertEquals(pool.getNumberOfPooled(), 0);
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.spy.BodyPublisherSubscriber;
+
+public class FileChannelBodyPublisherTest {
+	private byte[] content;
+	private Path file;
+
+	@BeforeMethod
+	public void setUp() throws IOException {
+		content = new byte[200_000];
+		new Random(1).nextBytes(content);
+		file = Files.write(Files.createTempFile("part", ".bin"), content);
+	}
+
+	@Test
+	public void testContentFromPositionIsPublishedInHeapBuffers() throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		channel.position(1000);
+		FileChannelBodyPublisher publisher = new FileChannelBodyPublisher(channel);
+		FirstBufferSubscriber subscriber = new FirstBufferSubscriber();
+
+		publisher.subscribe(subscriber);
+
+		assertEquals(publisher.contentLength(), content.length - 1000);
+		assertFalse(subscriber.receivedDirectBuffer);
+		assertEquals(subscriber.getReceivedBytes(),
+				Arrays.copyOfRange(content, 1000, content.length));
+		assertFalse(channel.isOpen());
+	}
+
+	@Test
+	public void testChannelAtEndPublishesNothing() throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		channel.position(content.length);
+		FileChannelBodyPublisher publisher = new FileChannelBodyPublisher(channel);
+		BodyPublisherSubscriber subscriber = new BodyPublisherSubscriber();
+
+		publisher.subscribe(subscriber);
+
+		assertEquals(publisher.contentLength(), 0);
+		assertEquals(subscriber.getReceivedBytes().length, 0);
+		assertFalse(channel.isOpen());
+	}
+
+	@Test
+	public void testCancelClosesChannel() throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		Subscription[] subscription = new Subscription[1];
+
+		new FileChannelBodyPublisher(channel).subscribe(new Subscriber<ByteBuffer>() {
+			@Override
+			public void onSubscribe(Subscription s) {
+				subscription[0] = s;
+			}
+
+			@Override
+			public void onNext(ByteBuffer item) {
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+			}
+
+			@Override
+			public void onComplete() {
+			}
+		});
+		subscription[0].request(1);
+		subscription[0].cancel();
+
+		assertFalse(channel.isOpen());
+	}
+
+	@Test
+	public void testFileShorterThanAnnouncedFailsAndClosesChannel() throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		FileChannelBodyPublisher publisher = new FileChannelBodyPublisher(channel);
+		channel.truncate(1000);
+		BodyPublisherSubscriber subscriber = new BodyPublisherSubscriber();
+
+		publisher.subscribe(subscriber);
+
+		try {
+			subscriber.waitForComplete();
+			fail("Exception should have been thrown");
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof EOFException);
+		}
+		assertFalse(channel.isOpen());
+	}
+
+	private static class FirstBufferSubscriber extends BodyPublisherSubscriber {
+		boolean receivedDirectBuffer;
+
+		@Override
+		public void onNext(ByteBuffer item) {
+			receivedDirectBuffer |= item.isDirect();
+			super.onNext(item);
+		}
+	}
+}
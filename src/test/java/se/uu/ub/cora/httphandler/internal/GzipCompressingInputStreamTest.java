@@ -0,0 +1,117 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.testng.annotations.Test;
+
+public class GzipCompressingInputStreamTest {
+
+	private byte[] gunzip(byte[] compressed) throws IOException {
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+			return in.readAllBytes();
+		}
+	}
+
+	private byte[] compress(byte[] content) throws IOException {
+		try (InputStream in = new GzipCompressingInputStream(new ByteArrayInputStream(content))) {
+			return in.readAllBytes();
+		}
+	}
+
+	@Test
+	public void testCompressedContentCanBeDecompressed() throws Exception {
+		byte[] content = "<record><id>some id</id></record>\n".repeat(10000).getBytes();
+
+		byte[] compressed = compress(content);
+
+		assertTrue(compressed.length < content.length / 10);
+		assertEquals(gunzip(compressed), content);
+	}
+
+	@Test
+	public void testIncompressibleContent() throws Exception {
+		byte[] content = new byte[100000];
+		new Random(17).nextBytes(content);
+
+		assertEquals(gunzip(compress(content)), content);
+	}
+
+	@Test
+	public void testEmptyContent() throws Exception {
+		assertEquals(gunzip(compress(new byte[0])), new byte[0]);
+	}
+
+	@Test
+	public void testReadOneByteAtATime() throws Exception {
+		byte[] content = "some content to compress".repeat(100).getBytes();
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+		try (InputStream in = new GzipCompressingInputStream(new ByteArrayInputStream(content))) {
+			int read;
+			while ((read = in.read()) != -1) {
+				compressed.write(read);
+			}
+		}
+
+		assertEquals(gunzip(compressed.toByteArray()), content);
+	}
+
+	@Test
+	public void testCloseClosesSource() throws Exception {
+		AtomicInteger closeCalls = new AtomicInteger();
+		InputStream source = new ByteArrayInputStream(new byte[0]) {
+			@Override
+			public void close() {
+				closeCalls.incrementAndGet();
+			}
+		};
+		InputStream in = new GzipCompressingInputStream(source);
+
+		in.close();
+		in.close();
+
+		assertEquals(closeCalls.get(), 1);
+	}
+
+	@Test
+	public void testReadAfterCloseFails() throws Exception {
+		InputStream in = new GzipCompressingInputStream(new ByteArrayInputStream(new byte[0]));
+		in.close();
+
+		try {
+			in.read();
+			fail("Exception should have been thrown");
+		} catch (IOException e) {
+			assertEquals(e.getMessage(), "Stream closed");
+		}
+	}
+}
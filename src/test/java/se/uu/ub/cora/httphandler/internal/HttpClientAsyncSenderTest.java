@@ -0,0 +1,223 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscriber;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow.Subscription;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.HttpRequestEvent;
+import se.uu.ub.cora.httphandler.spy.HttpClientSpy;
+import se.uu.ub.cora.httphandler.spy.HttpRequestListenerSpy;
+
+public class HttpClientAsyncSenderTest {
+	private HttpClientSpy httpClientSpy;
+	private HttpRequestListenerSpy listener;
+	private HttpRequest request;
+
+	@BeforeMethod
+	public void setUp() {
+		httpClientSpy = new HttpClientSpy();
+		listener = new HttpRequestListenerSpy();
+		request = HttpRequest.newBuilder(URI.create("http://localhost:8080/")).build();
+	}
+
+	@Test
+	public void testSendAsyncUsesHttpClient() {
+		HttpClientAsyncSender sender = new HttpClientAsyncSender(httpClientSpy, null,
+				HttpClientAsyncSender.UNLIMITED);
+
+		CompletableFuture<HttpResponse<String>> response = sender.sendAsync(request);
+
+		httpClientSpy.MCR.assertParameter("sendAsync", 0, "request", request);
+		httpClientSpy.MCR.assertReturn("sendAsync", 0, response);
+	}
+
+	@Test
+	public void testBodyIsDecodedAsText() throws Exception {
+		HttpClientAsyncSender sender = new HttpClientAsyncSender(httpClientSpy, null,
+				HttpClientAsyncSender.UNLIMITED);
+		sender.sendAsync(request);
+
+		BodySubscriber<String> subscriber = getBodyHandler().apply(createResponseInfo(200));
+		publishBody(subscriber, "some body");
+
+		assertEquals(subscriber.getBody().toCompletableFuture().get(), "some body");
+	}
+
+	@Test
+	public void testBodyIsDecodedUsingCharsetFromResponse() throws Exception {
+		HttpClientAsyncSender sender = new HttpClientAsyncSender(httpClientSpy, null,
+				HttpClientAsyncSender.UNLIMITED);
+		sender.sendAsync(request);
+		HttpHeaders headers = HttpHeaders.of(
+				Map.of("Content-Type", List.of("text/plain; charset=ISO-8859-1")),
+				(name, value) -> true);
+
+		BodySubscriber<String> subscriber = getBodyHandler()
+				.apply(createResponseInfo(200, headers));
+		subscriber.onSubscribe(new SubscriptionSpy());
+		subscriber.onNext(List.of(ByteBuffer.wrap("åäö".getBytes(StandardCharsets.ISO_8859_1))));
+		subscriber.onComplete();
+
+		assertEquals(subscriber.getBody().toCompletableFuture().get(), "åäö");
+	}
+
+	@Test
+	public void testListenerIsCalledWhenBodyIsReceived() throws Exception {
+		HttpClientAsyncSender sender = new HttpClientAsyncSender(httpClientSpy, listener,
+				HttpClientAsyncSender.UNLIMITED);
+		sender.sendAsync(request).join();
+		listener.MCR.assertMethodNotCalled("requestCompleted");
+
+		BodySubscriber<String> subscriber = getBodyHandler().apply(createResponseInfo(201));
+		publishBody(subscriber, "some body");
+
+		assertEquals(subscriber.getBody().toCompletableFuture().get(), "some body");
+		HttpRequestEvent event = listener.getEvent(0);
+		assertEquals(event.statusCode(), 201);
+		assertEquals(event.version(), Version.HTTP_1_1);
+		assertEquals(event.concurrentRequests(), 1);
+		assertEquals(event.responseBytes(), 9);
+		assertTrue(event.timeToFirstByteNanos() >= 0);
+	}
+
+	@Test
+	public void testListenerIsCalledOnFailure() {
+		HttpClientAsyncSender sender = new HttpClientAsyncSender(httpClientSpy, listener,
+				HttpClientAsyncSender.UNLIMITED);
+		RuntimeException sendException = new RuntimeException("someMessage");
+		httpClientSpy.MRV.setDefaultReturnValuesSupplier("sendAsync",
+				() -> CompletableFuture.failedFuture(sendException));
+
+		try {
+			sender.sendAsync(request).join();
+			fail("Exception should have been thrown");
+		} catch (CompletionException e) {
+			assertSame(listener.getEvent(0).failure(), sendException);
+		}
+	}
+
+	@Test
+	public void testBodyWithinMaxResponseSize() throws Exception {
+		HttpClientAsyncSender sender = new HttpClientAsyncSender(httpClientSpy, null, 9);
+		sender.sendAsync(request);
+
+		BodySubscriber<String> subscriber = getBodyHandler().apply(createResponseInfo(200));
+		publishBody(subscriber, "some body");
+
+		assertEquals(subscriber.getBody().toCompletableFuture().get(), "some body");
+	}
+
+	@Test
+	public void testBodyLargerThanMaxResponseSizeFails() throws Exception {
+		HttpClientAsyncSender sender = new HttpClientAsyncSender(httpClientSpy, null, 8);
+		sender.sendAsync(request);
+
+		BodySubscriber<String> subscriber = getBodyHandler().apply(createResponseInfo(200));
+		SubscriptionSpy subscription = publishBody(subscriber, "some body");
+
+		assertTrue(subscription.cancelled);
+		try {
+			subscriber.getBody().toCompletableFuture().get();
+			fail("Exception should have been thrown");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+			assertEquals(e.getCause().getMessage(),
+					"Response body is larger than the maximum response size of 8 bytes");
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private BodyHandler<String> getBodyHandler() {
+		return (BodyHandler<String>) httpClientSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("sendAsync", 0,
+						"responseBodyHandler");
+	}
+
+	private SubscriptionSpy publishBody(BodySubscriber<String> subscriber, String body) {
+		SubscriptionSpy subscription = new SubscriptionSpy();
+		subscriber.onSubscribe(subscription);
+		subscriber.onNext(List.of(ByteBuffer.wrap(body.getBytes())));
+		subscriber.onComplete();
+		return subscription;
+	}
+
+	private ResponseInfo createResponseInfo(int statusCode) {
+		return createResponseInfo(statusCode,
+				HttpHeaders.of(Collections.emptyMap(), (name, value) -> true));
+	}
+
+	private ResponseInfo createResponseInfo(int statusCode, HttpHeaders headers) {
+		return new ResponseInfo() {
+			@Override
+			public int statusCode() {
+				return statusCode;
+			}
+
+			@Override
+			public HttpHeaders headers() {
+				return headers;
+			}
+
+			@Override
+			public Version version() {
+				return Version.HTTP_1_1;
+			}
+		};
+	}
+
+	private static class SubscriptionSpy implements Subscription {
+		boolean cancelled = false;
+
+		@Override
+		public void request(long n) {
+			// data is pushed directly by the test
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+	}
+}
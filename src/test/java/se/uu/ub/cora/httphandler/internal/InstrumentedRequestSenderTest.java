@@ -0,0 +1,254 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.HttpRequestEvent;
+import se.uu.ub.cora.httphandler.spy.HttpRequestListenerSpy;
+import se.uu.ub.cora.httphandler.spy.HttpResponseSpy;
+import se.uu.ub.cora.httphandler.spy.RequestSenderSpy;
+
+public class InstrumentedRequestSenderTest {
+	private static final String URL = "http://localhost:8080/some/path";
+	private RequestSenderSpy requestSender;
+	private HttpRequestListenerSpy listener;
+	private InstrumentedRequestSender instrumentedSender;
+	private HttpResponseSpy<InputStream> responseSpy;
+
+	@BeforeMethod
+	public void setUp() {
+		requestSender = new RequestSenderSpy();
+		listener = new HttpRequestListenerSpy();
+		instrumentedSender = new InstrumentedRequestSender(requestSender, listener);
+		responseSpy = new HttpResponseSpy<>();
+		responseSpy.MRV.setDefaultReturnValuesSupplier("body",
+				() -> new ByteArrayInputStream("some response".getBytes()));
+		requestSender.MRV.setDefaultReturnValuesSupplier("send", () -> responseSpy);
+	}
+
+	private HttpRequest createRequest(String method) {
+		return HttpRequest.newBuilder(URI.create(URL))
+				.method(method, BodyPublishers.ofString("some body")).build();
+	}
+
+	@Test
+	public void testSendUsesWrappedSender() throws Exception {
+		HttpRequest request = createRequest("POST");
+
+		HttpResponse<InputStream> response = instrumentedSender.send(request);
+
+		requestSender.MCR.assertParameters("send", 0, request);
+		assertEquals(response.statusCode(), 200);
+		assertSame(response.headers(), responseSpy.MCR.getReturnValue("headers", 0));
+	}
+
+	@Test
+	public void testNothingReportedBeforeBodyIsRead() throws Exception {
+		HttpResponse<InputStream> response = instrumentedSender.send(createRequest("GET"));
+
+		assertEquals(response.statusCode(), 200);
+
+		listener.MCR.assertMethodNotCalled("requestCompleted");
+		assertEquals(inFlightRequests().getInFlight("localhost:8080"), 0);
+	}
+
+	@Test
+	public void testReportedWhenBodyIsReadToEnd() throws Exception {
+		HttpResponse<InputStream> response = instrumentedSender.send(createRequest("POST"));
+
+		String body = new String(response.body().readAllBytes());
+
+		assertEquals(body, "some response");
+		listener.MCR.assertNumberOfCallsToMethod("requestCompleted", 1);
+		HttpRequestEvent event = listener.getEvent(0);
+		assertEquals(event.method(), "POST");
+		assertEquals(event.uri().toString(), URL);
+		assertEquals(event.authority(), "localhost:8080");
+		assertEquals(event.statusCode(), 200);
+		assertEquals(event.version(), Version.HTTP_1_1);
+		assertEquals(event.concurrentRequests(), 1);
+		assertEquals(event.requestBytes(), 9);
+		assertEquals(event.responseBytes(), 13);
+		assertTrue(event.timeToFirstByteNanos() >= 0);
+		assertTrue(event.totalTimeNanos() >= event.timeToFirstByteNanos());
+		assertNull(event.failure());
+	}
+
+	private void setContentLength(String contentLength) {
+		responseSpy.MRV.setDefaultReturnValuesSupplier("headers", () -> HttpHeaders
+				.of(Map.of("Content-Length", List.of(contentLength)), (name, value) -> true));
+	}
+
+	@Test
+	public void testBytesReadAreReportedNotContentLength() throws Exception {
+		setContentLength("5");
+
+		HttpResponse<InputStream> response = instrumentedSender.send(createRequest("GET"));
+		response.body().readAllBytes();
+
+		assertEquals(listener.getEvent(0).responseBytes(), 13);
+	}
+
+	@Test
+	public void testTotalTimeIncludesReadingBody() throws Exception {
+		HttpResponse<InputStream> response = instrumentedSender.send(createRequest("GET"));
+		Thread.sleep(50);
+		response.body().readAllBytes();
+
+		HttpRequestEvent event = listener.getEvent(0);
+		assertTrue(event.totalTimeNanos() - event.timeToFirstByteNanos() >= 50_000_000);
+	}
+
+	@Test
+	public void testReportedOnceWhenBodyIsClosedBeforeEnd() throws Exception {
+		HttpResponse<InputStream> response = instrumentedSender.send(createRequest("GET"));
+
+		InputStream body = response.body();
+		body.read(new byte[4]);
+		body.close();
+		body.close();
+
+		listener.MCR.assertNumberOfCallsToMethod("requestCompleted", 1);
+		assertEquals(listener.getEvent(0).responseBytes(), 4);
+	}
+
+	@Test
+	public void testReportedOnceWhenBodyIsReadToEndAndClosed() throws Exception {
+		HttpResponse<InputStream> response = instrumentedSender.send(createRequest("GET"));
+
+		try (InputStream body = response.body()) {
+			body.readAllBytes();
+		}
+
+		listener.MCR.assertNumberOfCallsToMethod("requestCompleted", 1);
+	}
+
+	@Test
+	public void testHeadIsReportedDirectly() throws Exception {
+		HttpResponse<InputStream> response = instrumentedSender.send(createRequest("HEAD"));
+
+		assertSame(response, responseSpy);
+		listener.MCR.assertNumberOfCallsToMethod("requestCompleted", 1);
+		assertEquals(listener.getEvent(0).responseBytes(), 0);
+	}
+
+	@Test
+	public void testNoContentIsReportedDirectly() throws Exception {
+		responseSpy.MRV.setDefaultReturnValuesSupplier("statusCode", () -> 204);
+
+		instrumentedSender.send(createRequest("DELETE"));
+
+		assertEquals(listener.getEvent(0).statusCode(), 204);
+	}
+
+	@Test
+	public void testZeroContentLengthIsReportedDirectly() throws Exception {
+		setContentLength("0");
+
+		instrumentedSender.send(createRequest("PUT"));
+
+		listener.MCR.assertNumberOfCallsToMethod("requestCompleted", 1);
+		assertEquals(listener.getEvent(0).responseBytes(), 0);
+	}
+
+	@Test
+	public void testFailureIsReportedAndRethrown() throws Exception {
+		RuntimeException exception = new RuntimeException("connection refused");
+		requestSender.MRV.setAlwaysThrowException("send", exception);
+
+		try {
+			instrumentedSender.send(createRequest("GET"));
+			fail();
+		} catch (RuntimeException e) {
+			assertSame(e, exception);
+		}
+
+		HttpRequestEvent event = listener.getEvent(0);
+		assertTrue(event.failed());
+		assertSame(event.failure(), exception);
+		assertEquals(event.statusCode(), -1);
+		assertNull(event.version());
+		assertEquals(event.timeToFirstByteNanos(), -1);
+		assertEquals(inFlightRequests().getInFlight("localhost:8080"), 0);
+	}
+
+	private InFlightRequests inFlightRequests() {
+		return instrumentedSender.onlyForTestGetInFlightRequests();
+	}
+
+	@Test
+	public void testConcurrentRequestsAreCountedUntilHeadersAreReceived() throws Exception {
+		responseSpy.MRV.setDefaultReturnValuesSupplier("version", () -> Version.HTTP_2);
+		List<Integer> inFlightWhileSending = new ArrayList<>();
+		instrumentedSender = new InstrumentedRequestSender(request -> {
+			inFlightWhileSending.add(inFlightRequests().getInFlight("localhost:8080"));
+			if (inFlightWhileSending.size() == 1) {
+				instrumentedSender.send(createRequest("HEAD"));
+			}
+			return responseSpy;
+		}, listener);
+
+		instrumentedSender.send(createRequest("GET")).body().close();
+
+		assertEquals(inFlightWhileSending, List.of(1, 2));
+		assertEquals(inFlightRequests().getInFlight("localhost:8080"), 0);
+		assertEquals(listener.getEvent(0).method(), "HEAD");
+		assertEquals(listener.getEvent(0).concurrentRequests(), 2);
+		assertEquals(listener.getEvent(1).concurrentRequests(), 1);
+		assertEquals(listener.getEvent(1).version(), Version.HTTP_2);
+	}
+
+	@Test
+	public void testSendersSharingInFlightRequestsCountTogether() throws Exception {
+		InFlightRequests shared = new InFlightRequests();
+		InstrumentedRequestSender second = new InstrumentedRequestSender(requestSender,
+				listener, shared);
+		InstrumentedRequestSender first = new InstrumentedRequestSender(request -> {
+			second.send(createRequest("GET")).body().close();
+			return responseSpy;
+		}, listener, shared);
+
+		first.send(createRequest("GET"));
+
+		assertSame(first.onlyForTestGetInFlightRequests(), shared);
+		assertEquals(listener.getEvent(0).concurrentRequests(), 2);
+		assertEquals(shared.getInFlight("localhost:8080"), 0);
+	}
+}
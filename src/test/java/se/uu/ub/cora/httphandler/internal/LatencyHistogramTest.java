@@ -0,0 +1,84 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.Test;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void testEmptyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		assertEquals(histogram.count(), 0);
+		assertEquals(histogram.max(), 0);
+		assertEquals(histogram.percentile(0.99), 0);
+	}
+
+	@Test
+	public void testSmallValuesHaveOwnBuckets() {
+		for (int value = 0; value < 8; value++) {
+			assertEquals(LatencyHistogram.indexOf(value), value);
+			assertEquals(LatencyHistogram.highestValueInBucket(value), value);
+		}
+	}
+
+	@Test
+	public void testValueIsWithinItsBucket() {
+		long[] values = { 8, 9, 15, 16, 17, 1000, 1_000_000, 123_456_789, Long.MAX_VALUE };
+		for (long value : values) {
+			long highest = LatencyHistogram.highestValueInBucket(LatencyHistogram.indexOf(value));
+			assertEquals(highest >= value, true);
+			assertEquals(highest - value <= value / 8, true);
+		}
+	}
+
+	@Test
+	public void testNegativeValuesAreRecordedAsZero() {
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		histogram.record(-5);
+
+		assertEquals(histogram.count(), 1);
+		assertEquals(histogram.percentile(1), 0);
+	}
+
+	@Test
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i * 1000L);
+		}
+
+		assertEquals(histogram.count(), 100);
+		assertEquals(histogram.max(), 100_000);
+		assertWithinEighth(histogram.percentile(0.5), 50_000);
+		assertWithinEighth(histogram.percentile(0.9), 90_000);
+		assertWithinEighth(histogram.percentile(0.99), 99_000);
+		assertEquals(histogram.percentile(1), 100_000);
+	}
+
+	private void assertWithinEighth(long actual, long expected) {
+		assertEquals(actual >= expected && actual <= expected + expected / 8, true,
+				"actual: " + actual + " expected: " + expected);
+	}
+}
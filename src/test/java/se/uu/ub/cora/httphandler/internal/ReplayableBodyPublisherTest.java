@@ -0,0 +1,167 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.testng.annotations.Test;
+
+public class ReplayableBodyPublisherTest {
+
+	@Test
+	public void testOpenRangeReadsOnlyTheRange() throws IOException {
+		Path file = Files.writeString(Files.createTempFile("body", ".txt"), "0123456789");
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+
+		try (InputStream range = ReplayableBodyPublisher.openRange(channel, 2, 5)) {
+			assertEquals(new String(range.readAllBytes()), "23456");
+		}
+		assertFalse(channel.isOpen());
+	}
+
+	@Test
+	public void testChannelIsClosedIfPositioningFails() throws IOException {
+		Path file = Files.createTempFile("body", ".txt");
+		IOException failure = new IOException("seek failed");
+		FileChannel channel = new FailingPositionFileChannel(
+				FileChannel.open(file, StandardOpenOption.READ), failure);
+
+		try {
+			ReplayableBodyPublisher.openRange(channel, 2, 5);
+			fail("Exception should have been thrown");
+		} catch (IOException e) {
+			assertSame(e, failure);
+		}
+		assertFalse(channel.isOpen());
+	}
+
+	private static class FailingPositionFileChannel extends FileChannel {
+		private final FileChannel channel;
+		private final IOException failure;
+
+		FailingPositionFileChannel(FileChannel channel, IOException failure) {
+			this.channel = channel;
+			this.failure = failure;
+		}
+
+		@Override
+		public FileChannel position(long newPosition) throws IOException {
+			throw failure;
+		}
+
+		@Override
+		public long position() throws IOException {
+			return channel.position();
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			return channel.read(dst);
+		}
+
+		@Override
+		public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+			return channel.read(dsts, offset, length);
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			return channel.write(src);
+		}
+
+		@Override
+		public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+			return channel.write(srcs, offset, length);
+		}
+
+		@Override
+		public long size() throws IOException {
+			return channel.size();
+		}
+
+		@Override
+		public FileChannel truncate(long size) throws IOException {
+			return channel.truncate(size);
+		}
+
+		@Override
+		public void force(boolean metaData) throws IOException {
+			channel.force(metaData);
+		}
+
+		@Override
+		public long transferTo(long position, long count, WritableByteChannel target)
+				throws IOException {
+			return channel.transferTo(position, count, target);
+		}
+
+		@Override
+		public long transferFrom(ReadableByteChannel src, long position, long count)
+				throws IOException {
+			return channel.transferFrom(src, position, count);
+		}
+
+		@Override
+		public int read(ByteBuffer dst, long position) throws IOException {
+			return channel.read(dst, position);
+		}
+
+		@Override
+		public int write(ByteBuffer src, long position) throws IOException {
+			return channel.write(src, position);
+		}
+
+		@Override
+		public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+			return channel.map(mode, position, size);
+		}
+
+		@Override
+		public FileLock lock(long position, long size, boolean shared) throws IOException {
+			return channel.lock(position, size, shared);
+		}
+
+		@Override
+		public FileLock tryLock(long position, long size, boolean shared)
+				throws IOException {
+			return channel.tryLock(position, size, shared);
+		}
+
+		@Override
+		protected void implCloseChannel() throws IOException {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.spy.HttpResponseSpy;
+
+public class ResponseBytesTest {
+
+	private byte[] createContent(int size) {
+		byte[] content = new byte[size];
+		new Random(size).nextBytes(content);
+		return content;
+	}
+
+	private HttpResponseSpy<InputStream> createResponse(InputStream body, long contentLength) {
+		HttpResponseSpy<InputStream> response = new HttpResponseSpy<>();
+		response.MRV.setDefaultReturnValuesSupplier("body", () -> body);
+		if (contentLength >= 0) {
+			response.MRV.setDefaultReturnValuesSupplier("headers",
+					() -> HttpHeaders.of(
+							Map.of("Content-Length", List.of(String.valueOf(contentLength))),
+							(name, value) -> true));
+		}
+		return response;
+	}
+
+	private HttpResponseSpy<InputStream> createResponse(byte[] content, long contentLength) {
+		return createResponse(new ByteArrayInputStream(content), contentLength);
+	}
+
+	@Test
+	public void testReadWithContentLength() throws IOException {
+		byte[] content = createContent(100_000);
+
+		assertEquals(ResponseBytes.read(createResponse(content, content.length)), content);
+	}
+
+	@Test
+	public void testReadWithoutContentLength() throws IOException {
+		byte[] content = createContent(200_000);
+
+		assertEquals(ResponseBytes.read(createResponse(content, -1)), content);
+	}
+
+	@Test
+	public void testReadBodyLongerAndShorterThanContentLength() throws IOException {
+		byte[] content = createContent(1000);
+
+		assertEquals(ResponseBytes.read(createResponse(content, 10)), content);
+		assertEquals(ResponseBytes.read(createResponse(content, 5000)), content);
+	}
+
+	@Test
+	public void testReadEmptyBody() throws IOException {
+		assertEquals(ResponseBytes.read(createResponse(new byte[0], 0)).length, 0);
+		assertEquals(ResponseBytes.read(createResponse(new byte[0], -1)).length, 0);
+	}
+
+	@Test
+	public void testReadOneByteWithContentLengthZero() throws IOException {
+		assertEquals(ResponseBytes.read(createResponse(new byte[] { 7 }, 0)), new byte[] { 7 });
+		assertEquals(toBytes(ResponseBytes.readBuffers(createResponse(new byte[] { 7 }, 0))),
+				new byte[] { 7 });
+	}
+
+	@Test
+	public void testReadBodyLargerThanMaxResponseSizeFailsBeforePresizing() throws Exception {
+		assertFailsOnSizeLimit(ResponseBytes::read);
+	}
+
+	@Test
+	public void testReadBuffersBodyLargerThanMaxResponseSizeFailsBeforePresizing()
+			throws Exception {
+		assertFailsOnSizeLimit(ResponseBytes::readBuffers);
+	}
+
+	private void assertFailsOnSizeLimit(ResponseReader reader) throws Exception {
+		HttpResponseSpy<InputStream> response = createResponse(createContent(10), 1 << 24);
+		SizeLimitingRequestSender sizeLimitingSender = new SizeLimitingRequestSender(
+				request -> response, 1000);
+
+		try {
+			reader.read(sizeLimitingSender.send(null));
+			fail("Exception should have been thrown");
+		} catch (IOException e) {
+			assertEquals(e.getMessage(),
+					"Response body is larger than the maximum response size of 1000 bytes");
+		}
+	}
+
+	private interface ResponseReader {
+		Object read(HttpResponse<InputStream> response) throws IOException;
+	}
+
+	@Test
+	public void testReadClosesBody() throws IOException {
+		boolean[] closed = new boolean[1];
+		InputStream body = new ByteArrayInputStream(new byte[10]) {
+			@Override
+			public void close() {
+				closed[0] = true;
+			}
+		};
+
+		ResponseBytes.read(createResponse(body, -1));
+
+		assertTrue(closed[0]);
+	}
+
+	@Test
+	public void testReadBuffersWithContentLengthIsOneBuffer() throws IOException {
+		byte[] content = createContent(100_000);
+
+		List<ByteBuffer> buffers = ResponseBytes
+				.readBuffers(createResponse(content, content.length));
+
+		assertEquals(buffers.size(), 1);
+		assertEquals(toBytes(buffers), content);
+		assertTrue(buffers.get(0).isReadOnly());
+	}
+
+	private byte[] toBytes(List<ByteBuffer> buffers) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (ByteBuffer buffer : buffers) {
+			byte[] bytes = new byte[buffer.remaining()];
+			buffer.duplicate().get(bytes);
+			out.writeBytes(bytes);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testReadBuffersWithoutContentLengthIsReadInChunks() throws IOException {
+		byte[] content = createContent(200_000);
+
+		List<ByteBuffer> buffers = ResponseBytes.readBuffers(createResponse(content, -1));
+
+		assertEquals(buffers.size(), 4);
+		assertEquals(toBytes(buffers), content);
+	}
+
+	@Test
+	public void testReadBuffersBodyLongerThanContentLength() throws IOException {
+		byte[] content = createContent(1000);
+
+		List<ByteBuffer> buffers = ResponseBytes.readBuffers(createResponse(content, 10));
+
+		assertEquals(buffers.size(), 2);
+		assertEquals(toBytes(buffers), content);
+	}
+
+	@Test
+	public void testReadBuffersEmptyBody() throws IOException {
+		assertEquals(ResponseBytes.readBuffers(createResponse(new byte[0], 0)).size(), 0);
+		assertEquals(ResponseBytes.readBuffers(createResponse(new byte[0], -1)).size(), 0);
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+public class ResponseCacheTest {
+
+	@Test
+	public void testLeastRecentlyUsedResponsesAreEvicted() {
+		ResponseCache cache = new ResponseCache(1000, false);
+		RequestKey first = createKey("first");
+		RequestKey second = createKey("second");
+		RequestKey third = createKey("third");
+
+		cache.put(first, createCachedResponse(250));
+		cache.put(second, createCachedResponse(250));
+		cache.get(first);
+		cache.put(third, createCachedResponse(250));
+		cache.put(createKey("fourth"), createCachedResponse(250));
+		cache.put(createKey("fifth"), createCachedResponse(250));
+
+		assertEquals(cache.getSizeInBytes(), 1000);
+		assertNull(cache.get(second));
+		assertNotNull(cache.get(first));
+		assertNotNull(cache.get(third));
+	}
+
+	@Test
+	public void testReplacedResponseIsOnlyCountedOnce() {
+		ResponseCache cache = new ResponseCache(1000, false);
+
+		cache.put(createKey("first"), createCachedResponse(200));
+		cache.put(createKey("first"), createCachedResponse(100));
+		cache.put(createKey("second"), createCachedResponse(251));
+
+		assertEquals(cache.getSizeInBytes(), 100);
+		assertEquals(cache.getNumberOfResponses(), 1);
+	}
+
+	@Test
+	public void testHeapCacheCreatesReadOnlyHeapBody() {
+		ResponseCache cache = new ResponseCache(1000, false);
+
+		ByteBuffer body = cache.createBody("some body".getBytes());
+
+		assertFalse(cache.isOffHeap());
+		assertFalse(body.isDirect());
+		assertTrue(body.isReadOnly());
+		assertEquals(body.remaining(), 9);
+	}
+
+	@Test
+	public void testOffHeapCacheCreatesReadOnlyDirectBody() {
+		ResponseCache cache = new ResponseCache(1000, true);
+
+		ByteBuffer body = cache.createBody("some body".getBytes());
+
+		assertTrue(cache.isOffHeap());
+		assertTrue(body.isDirect());
+		assertTrue(body.isReadOnly());
+		byte[] bytes = new byte[body.remaining()];
+		body.get(bytes);
+		assertEquals(new String(bytes), "some body");
+	}
+
+	private RequestKey createKey(String path) {
+		return new RequestKey("GET", URI.create("http://localhost/" + path), Map.of());
+	}
+
+	private CachedResponse createCachedResponse(int size) {
+		return new CachedResponse(200, HttpHeaders.of(Map.of(), (name, value) -> true), null,
+				ByteBuffer.allocate(size), 0);
+	}
+
+	@Test
+	public void testRemoveAllForUri() {
+		ResponseCache cache = new ResponseCache(1000, false);
+		cache.put(createKey("first"), createCachedResponse(100));
+		cache.put(new RequestKey("GET", URI.create("http://localhost/first"), Map.of("accept",
+				List.of("application/xml"))), createCachedResponse(100));
+		cache.put(createKey("second"), createCachedResponse(100));
+
+		cache.removeAllFor(URI.create("http://localhost/first"));
+
+		assertEquals(cache.getNumberOfResponses(), 1);
+		assertEquals(cache.getSizeInBytes(), 100);
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.net.http.HttpHeaders;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ResponseHeadersTest {
+	private Map<String, String> headers;
+
+	@BeforeMethod
+	public void setUp() {
+		HttpHeaders httpHeaders = HttpHeaders.of(
+				Map.of("Content-Type", List.of("text/xml"), "Vary",
+						List.of("Accept", "Accept-Encoding")),
+				(name, value) -> true);
+		headers = ResponseHeaders.toCommaSeparatedMap(httpHeaders);
+	}
+
+	@Test
+	public void testGetSingleValue() {
+		assertEquals(headers.get("Content-Type"), "text/xml");
+	}
+
+	@Test
+	public void testGetManyValuesAreJoinedOnce() {
+		String joined = headers.get("Vary");
+
+		assertEquals(joined, "Accept, Accept-Encoding");
+		assertSame(headers.get("Vary"), joined);
+	}
+
+	@Test
+	public void testManyValuesAreJoinedOnceForAllCasings() {
+		String joined = headers.get("Vary");
+
+		assertSame(headers.get("vary"), joined);
+		assertSame(headers.get("VARY"), joined);
+	}
+
+	@Test
+	public void testNamesAreCaseInsensitive() {
+		assertEquals(headers.get("content-type"), "text/xml");
+		assertEquals(headers.get("VARY"), "Accept, Accept-Encoding");
+		assertTrue(headers.containsKey("CONTENT-TYPE"));
+	}
+
+	@Test
+	public void testMissingOrNotStringName() {
+		assertNull(headers.get("Missing"));
+		assertNull(headers.get(42));
+		assertFalse(headers.containsKey("Missing"));
+		assertFalse(headers.containsKey(42));
+	}
+
+	@Test
+	public void testSizeAndEntries() {
+		assertEquals(headers.size(), 2);
+		assertFalse(headers.isEmpty());
+		assertEquals(headers,
+				Map.of("Content-Type", "text/xml", "Vary", "Accept, Accept-Encoding"));
+		for (Entry<String, String> entry : headers.entrySet()) {
+			assertEquals(entry.getValue(), headers.get(entry.getKey()));
+		}
+	}
+
+	@Test
+	public void testEmptyHeaders() {
+		Map<String, String> emptyHeaders = ResponseHeaders
+				.toCommaSeparatedMap(HttpHeaders.of(Map.of(), (name, value) -> true));
+
+		assertTrue(emptyHeaders.isEmpty());
+		assertEquals(emptyHeaders.size(), 0);
+	}
+
+	@Test
+	public void testIsReadOnly() {
+		try {
+			headers.put("Some", "value");
+			fail("Exception should have been thrown");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			headers.entrySet().iterator().next().setValue("other");
+			fail("Exception should have been thrown");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		try {
+			headers.clear();
+			fail("Exception should have been thrown");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.spy.HttpResponseSpy;
+
+public class ResponseTextTest {
+
+	private HttpHeaders createHeaders(String contentType) {
+		return HttpHeaders.of(Map.of("Content-Type", List.of(contentType)),
+				(name, value) -> true);
+	}
+
+	private HttpResponseSpy<InputStream> createResponse(byte[] body, String contentType) {
+		HttpResponseSpy<InputStream> response = new HttpResponseSpy<>();
+		response.MRV.setDefaultReturnValuesSupplier("body", () -> new ByteArrayInputStream(body));
+		response.MRV.setDefaultReturnValuesSupplier("headers", () -> createHeaders(contentType));
+		return response;
+	}
+
+	@Test
+	public void testCharsetDefaultsToUtf8() {
+		HttpHeaders noHeaders = HttpHeaders.of(Map.of(), (name, value) -> true);
+
+		assertEquals(ResponseText.getCharset(noHeaders), StandardCharsets.UTF_8);
+		assertEquals(ResponseText.getCharset(createHeaders("application/xml")),
+				StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testCharsetFromContentType() {
+		assertCharset("text/plain; charset=ISO-8859-1", StandardCharsets.ISO_8859_1);
+		assertCharset("text/plain;charset=utf-16", StandardCharsets.UTF_16);
+		assertCharset("application/xml; CHARSET=\"iso-8859-1\"", StandardCharsets.ISO_8859_1);
+		assertCharset("multipart/mixed; boundary=abc; charset=US-ASCII", StandardCharsets.US_ASCII);
+	}
+
+	@Test
+	public void testUnknownOrBrokenCharsetDefaultsToUtf8() {
+		assertCharset("text/plain; charset=not-a-charset", StandardCharsets.UTF_8);
+		assertCharset("text/plain; charset=", StandardCharsets.UTF_8);
+		assertCharset("text/plain; charset=???", StandardCharsets.UTF_8);
+	}
+
+	private void assertCharset(String contentType, Charset expected) {
+		assertEquals(ResponseText.getCharset(createHeaders(contentType)), expected);
+	}
+
+	@Test
+	public void testReadUsesCharsetFromResponse() throws Exception {
+		String text = "åäö\r\nÅÄÖ\n";
+		HttpResponseSpy<InputStream> response = createResponse(
+				text.getBytes(StandardCharsets.ISO_8859_1), "text/plain; charset=ISO-8859-1");
+
+		assertEquals(ResponseText.read(response), text);
+	}
+
+	@Test
+	public void testReadEmptyBodyWithContentLength() throws Exception {
+		HttpResponseSpy<InputStream> response = createResponse(new byte[0], "text/plain");
+		response.MRV.setDefaultReturnValuesSupplier("headers", () -> HttpHeaders
+				.of(Map.of("Content-Length", List.of("1000000")), (name, value) -> true));
+
+		assertEquals(ResponseText.read(response), "");
+	}
+
+	@Test
+	public void testReadBodyLargerThanMaxResponseSizeFailsBeforePresizing() throws Exception {
+		HttpResponseSpy<InputStream> response = createResponse("some text".getBytes(),
+				"text/plain");
+		response.MRV.setDefaultReturnValuesSupplier("headers", () -> HttpHeaders
+				.of(Map.of("Content-Length", List.of("16777216")), (name, value) -> true));
+		SizeLimitingRequestSender sizeLimitingSender = new SizeLimitingRequestSender(
+				request -> response, 1000);
+
+		try {
+			ResponseText.read(sizeLimitingSender.send(null));
+			fail("Exception should have been thrown");
+		} catch (IOException e) {
+			assertEquals(e.getMessage(),
+					"Response body is larger than the maximum response size of 1000 bytes");
+		}
+	}
+
+	@Test
+	public void testReadKeepsLineBreaksOfLargeBody() throws Exception {
+		String text = "<record>\n\t<id>1</id>\r\n</record>\n".repeat(10000);
+		HttpResponseSpy<InputStream> response = createResponse(
+				text.getBytes(StandardCharsets.UTF_8), "application/xml");
+
+		assertEquals(ResponseText.read(response), text);
+	}
+
+	@Test
+	public void testReaderUsesCharsetFromResponse() throws Exception {
+		HttpResponseSpy<InputStream> response = createResponse(
+				"åäö".getBytes(StandardCharsets.ISO_8859_1), "text/plain; charset=ISO-8859-1");
+
+		char[] chars = new char[3];
+		ResponseText.createReader(response).read(chars);
+
+		assertEquals(new String(chars), "åäö");
+	}
+}
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.HttpRetryEvent;
+import se.uu.ub.cora.httphandler.RetryPolicy;
+import se.uu.ub.cora.httphandler.spy.HttpRequestListenerSpy;
+import se.uu.ub.cora.httphandler.spy.HttpResponseSpy;
+
+public class RetryingRequestSenderTest {
+	private static final URI URI_TO_CALL = URI.create("http://localhost:8080/record/someId");
+	private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+	private Deque<Object> outcomes;
+	private List<HttpRequest> sentRequests;
+	private List<Long> sleeps;
+	private HttpRequestListenerSpy listener;
+	private RetryingRequestSender retryingSender;
+
+	@BeforeMethod
+	public void setUp() {
+		outcomes = new ArrayDeque<>();
+		sentRequests = new ArrayList<>();
+		sleeps = new ArrayList<>();
+		listener = new HttpRequestListenerSpy();
+		RetryPolicy policy = RetryPolicy.defaults().withBackoff(Duration.ofMillis(100),
+				Duration.ofSeconds(10));
+		retryingSender = createRetryingSender(policy);
+	}
+
+	private RetryingRequestSender createRetryingSender(RetryPolicy policy) {
+		return new RetryingRequestSender(this::sendNextOutcome, policy, listener, sleeps::add);
+	}
+
+	@SuppressWarnings("unchecked")
+	private HttpResponse<InputStream> sendNextOutcome(HttpRequest request) throws IOException {
+		sentRequests.add(request);
+		Object outcome = outcomes.poll();
+		if (outcome instanceof IOException ioException) {
+			throw ioException;
+		}
+		if (outcome instanceof RuntimeException runtimeException) {
+			throw runtimeException;
+		}
+		return (HttpResponse<InputStream>) outcome;
+	}
+
+	private HttpResponseSpy<InputStream> addResponse(int statusCode, String... headers) {
+		HttpResponseSpy<InputStream> response = new HttpResponseSpy<>();
+		response.MRV.setDefaultReturnValuesSupplier("statusCode", () -> statusCode);
+		Map<String, List<String>> headerMap = headers.length == 0 ? Map.of()
+				: Map.of(headers[0], List.of(headers[1]));
+		response.MRV.setDefaultReturnValuesSupplier("headers",
+				() -> HttpHeaders.of(headerMap, (name, value) -> true));
+		InputStream body = new CloseCountingInputStream();
+		response.MRV.setDefaultReturnValuesSupplier("body", () -> body);
+		outcomes.add(response);
+		return response;
+	}
+
+	private HttpRequest createRequest(String method) {
+		return HttpRequest.newBuilder(URI_TO_CALL)
+				.method(method, BodyPublishers.ofString("some body")).build();
+	}
+
+	private HttpRequest createStreamRequest(String method) {
+		return HttpRequest.newBuilder(URI_TO_CALL).method(method,
+				BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(new byte[10])))
+				.build();
+	}
+
+	@Test
+	public void testSuccessfulRequestIsSentOnce() throws Exception {
+		HttpResponseSpy<InputStream> response = addResponse(200);
+
+		assertSame(retryingSender.send(createRequest("GET")), response);
+
+		assertEquals(sentRequests.size(), 1);
+		assertTrue(sleeps.isEmpty());
+		listener.MCR.assertMethodNotCalled("requestRetried");
+	}
+
+	@Test
+	public void testIOExceptionIsRetriedForIdempotentMethod() throws Exception {
+		IOException failure = new IOException("connection reset");
+		outcomes.add(failure);
+		HttpResponseSpy<InputStream> response = addResponse(200);
+		HttpRequest request = createRequest("PUT");
+
+		assertSame(retryingSender.send(request), response);
+
+		assertEquals(sentRequests.size(), 2);
+		assertSame(sentRequests.get(1), request);
+		HttpRetryEvent event = listener.getRetryEvent(0);
+		assertEquals(event.method(), "PUT");
+		assertEquals(event.uri(), URI_TO_CALL);
+		assertEquals(event.attempt(), 1);
+		assertEquals(event.statusCode(), -1);
+		assertSame(event.failure(), failure);
+		assertEquals(sleeps, List.of(event.delayNanos()));
+	}
+
+	@Test
+	public void testRetryIsSentWithTimeLeftOfRequestTimeout() throws Exception {
+		outcomes.add(new IOException("connection reset"));
+		addResponse(200);
+		HttpRequest request = HttpRequest.newBuilder(URI_TO_CALL)
+				.timeout(Duration.ofSeconds(30)).build();
+
+		retryingSender.send(request);
+
+		assertEquals(sentRequests.size(), 2);
+		assertSame(sentRequests.get(0), request);
+		Duration retryTimeout = sentRequests.get(1).timeout().get();
+		assertTrue(retryTimeout.compareTo(Duration.ofSeconds(30)) < 0);
+		assertTrue(retryTimeout.compareTo(Duration.ofSeconds(29)) > 0);
+		assertEquals(sentRequests.get(1).uri(), URI_TO_CALL);
+		assertEquals(sentRequests.get(1).method(), "GET");
+	}
+
+	@Test
+	public void testFailureIsNotRetriedIfBackoffIsLongerThanTimeLeft() throws Exception {
+		IOException failure = new IOException("connection reset");
+		outcomes.add(failure);
+		HttpRequest request = HttpRequest.newBuilder(URI_TO_CALL)
+				.timeout(Duration.ofMillis(50)).build();
+
+		try {
+			retryingSender.send(request);
+			fail("An IOException should have been thrown");
+		} catch (IOException e) {
+			assertSame(e, failure);
+		}
+		assertEquals(sentRequests.size(), 1);
+		assertTrue(sleeps.isEmpty());
+	}
+
+	@Test
+	public void testServiceUnavailableIsReturnedIfRetryAfterIsLongerThanTimeLeft()
+			throws Exception {
+		HttpResponseSpy<InputStream> response = addResponse(503, "Retry-After", "5");
+		HttpRequest request = HttpRequest.newBuilder(URI_TO_CALL)
+				.timeout(Duration.ofSeconds(1)).build();
+
+		assertSame(retryingSender.send(request), response);
+
+		assertEquals(sentRequests.size(), 1);
+		assertTrue(sleeps.isEmpty());
+	}
+
+	@Test
+	public void testResponseTimeoutIsNotRetried() throws Exception {
+		HttpTimeoutException timeout = new HttpTimeoutException("request timed out");
+		outcomes.add(timeout);
+
+		try {
+			retryingSender.send(createRequest("GET"));
+			fail("An IOException should have been thrown");
+		} catch (IOException e) {
+			assertSame(e, timeout);
+		}
+		assertEquals(sentRequests.size(), 1);
+	}
+
+	@Test
+	public void testConnectTimeoutIsRetried() throws Exception {
+		outcomes.add(new HttpConnectTimeoutException("timed out"));
+		HttpResponseSpy<InputStream> response = addResponse(201);
+
+		assertSame(retryingSender.send(createRequest("POST")), response);
+
+		assertEquals(sentRequests.size(), 2);
+	}
+
+	@Test
+	public void testIOExceptionIsNotRetriedForPost() throws Exception {
+		IOException failure = new IOException("connection reset");
+		outcomes.add(failure);
+
+		try {
+			retryingSender.send(createRequest("POST"));
+			fail("An IOException should have been thrown");
+		} catch (IOException e) {
+			assertSame(e, failure);
+		}
+		assertEquals(sentRequests.size(), 1);
+		listener.MCR.assertMethodNotCalled("requestRetried");
+	}
+
+	@Test
+	public void testConnectFailureIsRetriedForPost() throws Exception {
+		outcomes.add(new IOException("wrapped", new ConnectException("refused")));
+		addResponse(201);
+
+		assertEquals(retryingSender.send(createRequest("POST")).statusCode(), 201);
+
+		assertEquals(sentRequests.size(), 2);
+	}
+
+	@Test
+	public void testStreamBodyIsNotRetried() throws Exception {
+		IOException failure = new IOException("connection reset");
+		outcomes.add(failure);
+
+		try {
+			retryingSender.send(createStreamRequest("PUT"));
+			fail("An IOException should have been thrown");
+		} catch (IOException e) {
+			assertSame(e, failure);
+		}
+		assertEquals(sentRequests.size(), 1);
+	}
+
+	@Test
+	public void testReplayableStreamBodyOfUnknownLengthIsRetried() throws Exception {
+		outcomes.add(new IOException("connection reset"));
+		addResponse(200);
+		HttpRequest request = HttpRequest.newBuilder(URI_TO_CALL)
+				.method("PUT", ReplayableBodyPublisher.ofSupplier(
+						() -> new ByteArrayInputStream(new byte[10]),
+						ReplayableBodyPublisher.UNKNOWN_LENGTH))
+				.build();
+
+		retryingSender.send(request);
+
+		assertEquals(sentRequests.size(), 2);
+	}
+
+	@Test
+	public void testRuntimeExceptionIsNotRetried() throws Exception {
+		RuntimeException failure = new RuntimeException("some error");
+		outcomes.add(failure);
+
+		try {
+			retryingSender.send(createRequest("GET"));
+			fail("A RuntimeException should have been thrown");
+		} catch (RuntimeException e) {
+			assertSame(e, failure);
+		}
+		assertEquals(sentRequests.size(), 1);
+	}
+
+	@Test
+	public void testLastFailureIsThrownWithEarlierFailuresSuppressed() throws Exception {
+		IOException first = new IOException("first");
+		IOException second = new IOException("second");
+		IOException third = new IOException("third");
+		outcomes.add(first);
+		outcomes.add(second);
+		outcomes.add(third);
+
+		try {
+			retryingSender.send(createRequest("GET"));
+			fail("An IOException should have been thrown");
+		} catch (IOException e) {
+			assertSame(e, third);
+			assertEquals(List.of(e.getSuppressed()), List.of(first, second));
+		}
+		assertEquals(sentRequests.size(), 3);
+		assertEquals(sleeps.size(), 2);
+	}
+
+	@Test
+	public void testServiceUnavailableIsRetriedAndBodyClosed() throws Exception {
+		HttpResponseSpy<InputStream> unavailable = addResponse(503);
+		HttpResponseSpy<InputStream> tooMany = addResponse(429);
+		HttpResponseSpy<InputStream> ok = addResponse(200);
+
+		assertSame(retryingSender.send(createRequest("GET")), ok);
+
+		assertEquals(sentRequests.size(), 3);
+		assertEquals(listener.getRetryEvent(0).statusCode(), 503);
+		assertNull(listener.getRetryEvent(0).failure());
+		assertEquals(listener.getRetryEvent(1).statusCode(), 429);
+		assertEquals(listener.getRetryEvent(1).attempt(), 2);
+		assertEquals(((CloseCountingInputStream) unavailable.body()).closed, 1);
+		assertEquals(((CloseCountingInputStream) tooMany.body()).closed, 1);
+		assertEquals(((CloseCountingInputStream) ok.body()).closed, 0);
+	}
+
+	@Test
+	public void testServiceUnavailableIsNotRetriedForPost() throws Exception {
+		HttpResponseSpy<InputStream> unavailable = addResponse(503);
+
+		assertSame(retryingSender.send(createRequest("POST")), unavailable);
+
+		assertEquals(sentRequests.size(), 1);
+	}
+
+	@Test
+	public void testOtherServerErrorIsNotRetried() throws Exception {
+		HttpResponseSpy<InputStream> serverError = addResponse(500);
+
+		assertSame(retryingSender.send(createRequest("GET")), serverError);
+
+		assertEquals(sentRequests.size(), 1);
+	}
+
+	@Test
+	public void testLastServiceUnavailableResponseIsReturned() throws Exception {
+		addResponse(503);
+		addResponse(503);
+		HttpResponseSpy<InputStream> last = addResponse(503);
+
+		assertSame(retryingSender.send(createRequest("GET")), last);
+
+		assertEquals(sentRequests.size(), 3);
+	}
+
+	@Test
+	public void testRetryAfterSecondsIsUsedAsDelay() throws Exception {
+		addResponse(503, "Retry-After", "2");
+		addResponse(200);
+
+		retryingSender.send(createRequest("GET"));
+
+		assertEquals(sleeps, List.of(TimeUnit.SECONDS.toNanos(2)));
+		assertEquals(listener.getRetryEvent(0).delayNanos(), TimeUnit.SECONDS.toNanos(2));
+	}
+
+	@Test
+	public void testRetryAfterDateIsUsedAsDelay() throws Exception {
+		String inFiveSeconds = DateTimeFormatter.RFC_1123_DATE_TIME
+				.format(ZonedDateTime.now().plusSeconds(5));
+		addResponse(429, "Retry-After", inFiveSeconds);
+		addResponse(200);
+
+		retryingSender.send(createRequest("GET"));
+
+		long delay = sleeps.get(0);
+		assertTrue(delay > TimeUnit.SECONDS.toNanos(3) && delay <= TimeUnit.SECONDS.toNanos(5),
+				"delay was " + delay);
+	}
+
+	@Test
+	public void testRetryAfterLongerThanMaxBackoffReturnsResponse() throws Exception {
+		HttpResponseSpy<InputStream> unavailable = addResponse(503, "Retry-After", "3600");
+
+		assertSame(retryingSender.send(createRequest("GET")), unavailable);
+
+		assertEquals(sentRequests.size(), 1);
+		assertTrue(sleeps.isEmpty());
+	}
+
+	@Test
+	public void testBackoffGrowsExponentiallyWithJitterUpToMax() throws Exception {
+		retryingSender = createRetryingSender(RetryPolicy.defaults().withMaxAttempts(6)
+				.withBackoff(Duration.ofMillis(100), Duration.ofMillis(500)));
+		for (int i = 0; i < 5; i++) {
+			outcomes.add(new IOException());
+		}
+		addResponse(200);
+
+		retryingSender.send(createRequest("GET"));
+
+		long[] expectedMax = { 100 * MILLI, 200 * MILLI, 400 * MILLI, 500 * MILLI, 500 * MILLI };
+		assertEquals(sleeps.size(), 5);
+		for (int i = 0; i < expectedMax.length; i++) {
+			long sleep = sleeps.get(i);
+			assertTrue(sleep >= expectedMax[i] / 2 && sleep <= expectedMax[i],
+					"attempt " + (i + 1) + " slept " + sleep);
+		}
+	}
+
+	@Test
+	public void testNoListener() throws Exception {
+		retryingSender = new RetryingRequestSender(this::sendNextOutcome, RetryPolicy.defaults(),
+				null, sleeps::add);
+		outcomes.add(new IOException());
+		addResponse(200);
+
+		assertEquals(retryingSender.send(createRequest("GET")).statusCode(), 200);
+
+		assertEquals(sleeps.size(), 1);
+	}
+
+	private static class CloseCountingInputStream extends ByteArrayInputStream {
+		private int closed = 0;
+
+		CloseCountingInputStream() {
+			super(new byte[0]);
+		}
+
+		@Override
+		public void close() {
+			closed++;
+		}
+	}
+
+	@Test
+	public void testOnlyForTestGetters() {
+		RetryPolicy policy = RetryPolicy.defaults();
+		RequestSender sender = this::sendNextOutcome;
+
+		RetryingRequestSender sender2 = new RetryingRequestSender(sender, policy, listener);
+
+		assertSame(sender2.onlyForTestGetRequestSender(), sender);
+		assertSame(sender2.onlyForTestGetRetryPolicy(), policy);
+		assertSame(sender2.onlyForTestGetListener(), listener);
+	}
+}
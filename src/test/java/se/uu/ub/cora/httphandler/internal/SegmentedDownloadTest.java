@@ -0,0 +1,368 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.spy.HttpResponseSpy;
+
+public class SegmentedDownloadTest {
+	private static final int SEGMENT = SegmentedDownload.MIN_SEGMENT_SIZE;
+	private byte[] content;
+	private List<HttpRequest> rangeRequests;
+	private int failingRangeRequests;
+	private int rangeStatusCode;
+	private String contentRange;
+	private RequestSender rangeSender;
+	private Path directory;
+	private Path file;
+	private RequestDeadline deadline;
+
+	@BeforeMethod
+	public void setUp() throws IOException {
+		content = new byte[3 * SEGMENT + 10];
+		new Random(1).nextBytes(content);
+		rangeRequests = Collections.synchronizedList(new ArrayList<>());
+		failingRangeRequests = 0;
+		rangeStatusCode = 206;
+		contentRange = null;
+		rangeSender = this::sendRange;
+		directory = Files.createTempDirectory("download");
+		file = directory.resolve("some.bin");
+		deadline = RequestDeadline.NONE;
+	}
+
+	private HttpResponse<InputStream> sendRange(HttpRequest request) {
+		rangeRequests.add(request);
+		String range = request.headers().firstValue("Range").get();
+		String[] startAndEnd = range.substring("bytes=".length()).split("-");
+		int start = Integer.parseInt(startAndEnd[0]);
+		int end = Integer.parseInt(startAndEnd[1]) + 1;
+		InputStream body = new ByteArrayInputStream(content, start, end - start);
+		if (shouldFail()) {
+			body = new FailingInputStream(body, (end - start) / 2);
+		}
+		return createResponse(rangeStatusCode, body, "Content-Range", contentRange != null
+				? contentRange
+				: "bytes " + start + "-" + (end - 1) + "/" + content.length);
+	}
+
+	private synchronized boolean shouldFail() {
+		if (failingRangeRequests > 0) {
+			failingRangeRequests--;
+			return true;
+		}
+		return false;
+	}
+
+	private HttpResponseSpy<InputStream> createResponse(int statusCode, InputStream body,
+			String... headerNamesAndValues) {
+		Map<String, List<String>> headers = new HashMap<>();
+		for (int i = 0; i < headerNamesAndValues.length; i += 2) {
+			headers.put(headerNamesAndValues[i], List.of(headerNamesAndValues[i + 1]));
+		}
+		HttpResponseSpy<InputStream> response = new HttpResponseSpy<>();
+		response.MRV.setDefaultReturnValuesSupplier("statusCode", () -> statusCode);
+		response.MRV.setDefaultReturnValuesSupplier("headers",
+				() -> HttpHeaders.of(headers, (name, value) -> true));
+		response.MRV.setDefaultReturnValuesSupplier("body", () -> body);
+		return response;
+	}
+
+	private HttpResponse<InputStream> createRangedResponse(InputStream body) {
+		return createResponse(200, body, "Content-Length", String.valueOf(content.length),
+				"Accept-Ranges", "bytes", "ETag", "\"v1\"");
+	}
+
+	private long download(HttpResponse<InputStream> response, int segments) throws Exception {
+		return SegmentedDownload.toFile(rangeSender,
+				() -> HttpRequest.newBuilder(URI.create("http://localhost:8080/some.bin")),
+				deadline, response, file, segments);
+	}
+
+	private void assertFileHasContent() throws IOException {
+		assertEquals(Files.readAllBytes(file), content);
+		try (var files = Files.list(directory)) {
+			assertEquals(files.toList(), List.of(file));
+		}
+	}
+
+	@Test
+	public void testWithoutAcceptRangesBodyIsWrittenAsIs() throws Exception {
+		HttpResponse<InputStream> response = createResponse(200,
+				new ByteArrayInputStream(content), "Content-Length",
+				String.valueOf(content.length), "ETag", "\"v1\"");
+
+		long written = download(response, 4);
+
+		assertEquals(written, content.length);
+		assertFileHasContent();
+		assertTrue(rangeRequests.isEmpty());
+	}
+
+	@Test
+	public void testWeakEtagIsNotUsedAsValidator() throws Exception {
+		HttpResponse<InputStream> response = createResponse(200,
+				new ByteArrayInputStream(content), "Content-Length",
+				String.valueOf(content.length), "Accept-Ranges", "bytes", "ETag", "W/\"v1\"");
+
+		download(response, 4);
+
+		assertFileHasContent();
+		assertTrue(rangeRequests.isEmpty());
+	}
+
+	@Test
+	public void testBodyIsFetchedInSegments() throws Exception {
+		long written = download(createRangedResponse(new ByteArrayInputStream(content)), 3);
+
+		assertEquals(written, content.length);
+		assertFileHasContent();
+		assertEquals(rangeRequests.size(), 2);
+		List<String> ranges = rangeRequests.stream()
+				.map(request -> request.headers().firstValue("Range").get()).sorted().toList();
+		assertEquals(ranges, List.of("bytes=" + (content.length / 3) + "-" + (2 * content.length / 3 - 1),
+				"bytes=" + (2 * content.length / 3) + "-" + (content.length - 1)));
+		assertEquals(rangeRequests.get(0).headers().firstValue("If-Range").get(), "\"v1\"");
+		assertEquals(rangeRequests.get(0).headers().allValues("Accept-Encoding"),
+				List.of("identity"));
+	}
+
+	@Test
+	public void testSegmentsAreAtLeastMinSegmentSize() throws Exception {
+		content = new byte[2 * SEGMENT - 1];
+
+		download(createRangedResponse(new ByteArrayInputStream(content)), 8);
+
+		assertFileHasContent();
+		assertTrue(rangeRequests.isEmpty());
+	}
+
+	@Test
+	public void testFailedTransferIsResumedFromWhereItFailed() throws Exception {
+		InputStream failingBody = new FailingInputStream(new ByteArrayInputStream(content), 1000);
+
+		download(createRangedResponse(failingBody), 1);
+
+		assertFileHasContent();
+		assertEquals(rangeRequests.size(), 1);
+		assertEquals(rangeRequests.get(0).headers().firstValue("Range").get(),
+				"bytes=1000-" + (content.length - 1));
+	}
+
+	@Test
+	public void testFailedSegmentIsResumed() throws Exception {
+		failingRangeRequests = 2;
+
+		download(createRangedResponse(new ByteArrayInputStream(content)), 3);
+
+		assertFileHasContent();
+		assertEquals(rangeRequests.size(), 4);
+	}
+
+	@Test
+	public void testTooManyFailuresFailsDownload() throws Exception {
+		failingRangeRequests = 100;
+		InputStream failingBody = new FailingInputStream(new ByteArrayInputStream(content), 0);
+
+		try {
+			download(createRangedResponse(failingBody), 1);
+			fail("Exception should have been thrown");
+		} catch (IOException e) {
+			assertEquals(e.getMessage(), "connection reset");
+			assertEquals(e.getSuppressed().length, 5);
+		}
+		assertEquals(rangeRequests.size(), 5);
+		assertDirectoryIsEmpty();
+	}
+
+	private void assertDirectoryIsEmpty() throws IOException {
+		try (var files = Files.list(directory)) {
+			assertEquals(files.count(), 0);
+		}
+	}
+
+	@Test
+	public void testChangedResourceFailsDownload() throws Exception {
+		rangeStatusCode = 200;
+		InputStream failingBody = new FailingInputStream(new ByteArrayInputStream(content), 1000);
+
+		try {
+			download(createRangedResponse(failingBody), 1);
+			fail("Exception should have been thrown");
+		} catch (IOException e) {
+			assertEquals(e.getMessage(), "Requested bytes=1000-" + (content.length - 1)
+					+ " but got response code: 200 with Content-Range: bytes 1000-"
+					+ (content.length - 1) + "/" + content.length);
+		}
+		assertEquals(rangeRequests.size(), 1);
+		assertDirectoryIsEmpty();
+	}
+
+	@Test
+	public void testContentRangeOfOtherLengthFailsDownload() throws Exception {
+		contentRange = "bytes 1000-" + (content.length - 1) + "/" + (content.length + 1);
+		InputStream failingBody = new FailingInputStream(new ByteArrayInputStream(content), 1000);
+
+		try {
+			download(createRangedResponse(failingBody), 1);
+			fail("Exception should have been thrown");
+		} catch (IOException e) {
+			assertEquals(e.getMessage(), "Requested bytes=1000-" + (content.length - 1)
+					+ " but got response code: 206 with Content-Range: " + contentRange);
+		}
+		assertDirectoryIsEmpty();
+	}
+
+	@Test
+	public void testContentRangeEndingAfterRequestedRangeFailsDownload() throws Exception {
+		contentRange = "bytes 1000-" + content.length + "/" + content.length;
+		InputStream failingBody = new FailingInputStream(new ByteArrayInputStream(content), 1000);
+
+		try {
+			download(createRangedResponse(failingBody), 1);
+			fail("Exception should have been thrown");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().endsWith("with Content-Range: " + contentRange));
+		}
+		assertDirectoryIsEmpty();
+	}
+
+	@Test
+	public void testFailedSegmentCancelsAndAwaitsOtherSegments() throws Exception {
+		AtomicBoolean blockedSegmentStopped = new AtomicBoolean();
+		String blockedRange = "bytes=" + (content.length / 3) + "-";
+		rangeSender = request -> {
+			if (request.headers().firstValue("Range").get().startsWith(blockedRange)) {
+				return createResponse(206, new BlockingInputStream(blockedSegmentStopped),
+						"Content-Range", "bytes " + (content.length / 3) + "-"
+								+ (2 * content.length / 3 - 1) + "/" + content.length);
+			}
+			return createResponse(200, new ByteArrayInputStream(new byte[0]));
+		};
+
+		try {
+			download(createRangedResponse(new ByteArrayInputStream(content)), 3);
+			fail("Exception should have been thrown");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("but got response code: 200"));
+		}
+		assertTrue(blockedSegmentStopped.get());
+		assertDirectoryIsEmpty();
+	}
+
+	@Test
+	public void testStalledRangeBodyIsClosedAtDeadline() throws Exception {
+		deadline = RequestDeadline.after(Duration.ofMillis(200));
+		rangeSender = request -> createResponse(206, new StalledInputStream(), "Content-Range",
+				"bytes " + (content.length / 2) + "-" + (content.length - 1) + "/"
+						+ content.length);
+
+		try {
+			download(createRangedResponse(new ByteArrayInputStream(content)), 2);
+			fail("Exception should have been thrown");
+		} catch (RequestTimeoutIOException e) {
+			assertEquals(e.getMessage(), "Request timed out after PT0.2S");
+		}
+		assertDirectoryIsEmpty();
+	}
+
+	@Test
+	public void testNotSuccessfulResponseWritesNothing() throws Exception {
+		try {
+			download(createResponse(404, new ByteArrayInputStream(new byte[0])), 4);
+			fail("Exception should have been thrown");
+		} catch (IOException e) {
+			assertEquals(e.getMessage(), "Not a successful response code: 404");
+		}
+		assertFalse(Files.exists(file));
+	}
+
+	private static class BlockingInputStream extends InputStream {
+		private final AtomicBoolean stopped;
+
+		BlockingInputStream(AtomicBoolean stopped) {
+			this.stopped = stopped;
+		}
+
+		@Override
+		public int read() throws IOException {
+			try {
+				Thread.sleep(Long.MAX_VALUE);
+				return -1;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				stopped.set(true);
+				throw new InterruptedIOException("interrupted");
+			}
+		}
+	}
+
+	private static class FailingInputStream extends InputStream {
+		private final InputStream in;
+		private int remainingBeforeFailure;
+
+		FailingInputStream(InputStream in, int bytesBeforeFailure) {
+			this.in = in;
+			remainingBeforeFailure = bytesBeforeFailure;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remainingBeforeFailure == 0) {
+				throw new IOException("connection reset");
+			}
+			int read = in.read(b, off, Math.min(len, remainingBeforeFailure));
+			remainingBeforeFailure -= read;
+			return read;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.spy.HttpResponseSpy;
+import se.uu.ub.cora.httphandler.spy.InputStreamSpy;
+import se.uu.ub.cora.httphandler.spy.RequestSenderSpy;
+
+public class SizeLimitingRequestSenderTest {
+	private static final String TOO_LARGE = "Response body is larger than the maximum response "
+			+ "size of 8 bytes";
+	private RequestSenderSpy requestSender;
+	private HttpResponseSpy<InputStream> responseSpy;
+	private SizeLimitingRequestSender sizeLimitingSender;
+	private HttpRequest request;
+
+	@BeforeMethod
+	public void setUp() {
+		requestSender = new RequestSenderSpy();
+		responseSpy = new HttpResponseSpy<>();
+		requestSender.MRV.setDefaultReturnValuesSupplier("send", () -> responseSpy);
+		sizeLimitingSender = new SizeLimitingRequestSender(requestSender, 8);
+		request = HttpRequest.newBuilder(URI.create("http://localhost:8080/")).build();
+	}
+
+	private void setBody(String body) {
+		responseSpy.MRV.setDefaultReturnValuesSupplier("body",
+				() -> new ByteArrayInputStream(body.getBytes()));
+	}
+
+	@Test
+	public void testSendUsesWrappedSender() throws Exception {
+		setBody("a body");
+
+		HttpResponse<InputStream> response = sizeLimitingSender.send(request);
+
+		requestSender.MCR.assertParameters("send", 0, request);
+		assertEquals(response.statusCode(), 200);
+	}
+
+	@Test
+	public void testBodyWithinLimitCanBeRead() throws Exception {
+		setBody("12345678");
+
+		HttpResponse<InputStream> response = sizeLimitingSender.send(request);
+
+		assertEquals(new String(response.body().readAllBytes()), "12345678");
+	}
+
+	@Test
+	public void testBodyLargerThanLimitFailsWhenRead() throws Exception {
+		setBody("123456789");
+
+		HttpResponse<InputStream> response = sizeLimitingSender.send(request);
+
+		try {
+			response.body().readAllBytes();
+			fail("Exception should have been thrown");
+		} catch (IOException e) {
+			assertEquals(e.getMessage(), TOO_LARGE);
+		}
+	}
+
+	@Test
+	public void testBodyLargerThanLimitFailsWhenReadByteByByte() throws Exception {
+		setBody("123456789");
+		InputStream body = sizeLimitingSender.send(request).body();
+		for (int i = 0; i < 8; i++) {
+			body.read();
+		}
+
+		try {
+			body.read();
+			fail("Exception should have been thrown");
+		} catch (IOException e) {
+			assertEquals(e.getMessage(), TOO_LARGE);
+		}
+	}
+
+	@Test
+	public void testDeclaredSizeLargerThanLimitFailsBeforeRead() throws Exception {
+		InputStreamSpy bodySpy = new InputStreamSpy();
+		responseSpy.MRV.setDefaultReturnValuesSupplier("body", () -> bodySpy);
+		responseSpy.MRV.setDefaultReturnValuesSupplier("headers", () -> HttpHeaders
+				.of(Map.of("Content-Length", List.of("9")), (name, value) -> true));
+
+		HttpResponse<InputStream> response = sizeLimitingSender.send(request);
+
+		try {
+			response.body().read(new byte[100]);
+			fail("Exception should have been thrown");
+		} catch (IOException e) {
+			assertEquals(e.getMessage(), TOO_LARGE);
+			bodySpy.MCR.assertMethodNotCalled("read");
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * StalledInputStream is a response body from a server that has stopped sending, reads block until
+ * the stream is closed.
+ */
+class StalledInputStream extends InputStream {
+	private final CountDownLatch closed = new CountDownLatch(1);
+
+	@Override
+	public int read() throws IOException {
+		try {
+			closed.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		throw new IOException("closed");
+	}
+
+	@Override
+	public void close() {
+		closed.countDown();
+	}
+}
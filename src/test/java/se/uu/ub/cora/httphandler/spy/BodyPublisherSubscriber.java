@@ -0,0 +1,92 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.httphandler.spy;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BodyPublisherSubscriber subscribes to a request body publisher the way the http client does,
+ * requesting one buffer at a time, and records what it receives.
+ */
+public class BodyPublisherSubscriber implements Subscriber<ByteBuffer> {
+	private ByteArrayOutputStream received = new ByteArrayOutputStream();
+	private boolean keepReceivedBytes;
+	private AtomicLong bytesReceived = new AtomicLong();
+	private CompletableFuture<Void> completed = new CompletableFuture<>();
+	private Subscription subscription;
+
+	public BodyPublisherSubscriber() {
+		this(true);
+	}
+
+	public BodyPublisherSubscriber(boolean keepReceivedBytes) {
+		this.keepReceivedBytes = keepReceivedBytes;
+	}
+
+	@Override
+	public void onSubscribe(Subscription subscription) {
+		this.subscription = subscription;
+		subscription.request(1);
+	}
+
+	@Override
+	public void onNext(ByteBuffer item) {
+		bytesReceived.addAndGet(item.remaining());
+		if (keepReceivedBytes) {
+			byte[] bytes = new byte[item.remaining()];
+			item.get(bytes);
+			received.writeBytes(bytes);
+		}
+		subscription.request(1);
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		completed.completeExceptionally(throwable);
+	}
+
+	@Override
+	public void onComplete() {
+		completed.complete(null);
+	}
+
+	public void waitForComplete() {
+		completed.join();
+	}
+
+	public long getBytesReceived() {
+		return bytesReceived.get();
+	}
+
+	public byte[] getReceivedBytes() {
+		waitForComplete();
+		return received.toByteArray();
+	}
+
+	public String getReceivedAsString() {
+		waitForComplete();
+		return received.toString(StandardCharsets.UTF_8);
+	}
+}
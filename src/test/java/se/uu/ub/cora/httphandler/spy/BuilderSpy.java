@@ -36,6 +36,7 @@ public class BuilderSpy implements Builder {
 		MCR.useMRV(MRV);
 		MRV.setDefaultReturnValuesSupplier("method", BuilderSpy::new);
 		MRV.setDefaultReturnValuesSupplier("build", HttpRequestSpy::new);
+		MRV.setDefaultReturnValuesSupplier("timeout", BuilderSpy::new);
 		MRV.setDefaultReturnValuesSupplier("setHeader", BuilderSpy::new);
 	}
 
@@ -71,8 +72,7 @@ public class BuilderSpy implements Builder {
 
 	@Override
 	public Builder timeout(Duration duration) {
-		// TODO Auto-generated method stub
-		return null;
+		return (Builder) MCR.addCallAndReturnFromMRV("duration", duration);
 	}
 
 	@Override
@@ -1,5 +1,5 @@
 /*
- * Copyright 2023 Uppsala University Library
+ * Copyright 2023, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -48,6 +48,13 @@ public class HttpClientSpy extends HttpClient {
 		HttpResponseSpy<InputStream> inputStreamresponseSpy = new HttpResponseSpy<>();
 		inputStreamresponseSpy.MRV.setDefaultReturnValuesSupplier("body", InputStreamSpy::new);
 		MRV.setDefaultReturnValuesSupplier("send", () -> inputStreamresponseSpy);
+		MRV.setDefaultReturnValuesSupplier("sendAsync", this::createCompletedStringResponse);
+	}
+
+	private CompletableFuture<HttpResponse<String>> createCompletedStringResponse() {
+		HttpResponseSpy<String> stringResponseSpy = new HttpResponseSpy<>();
+		stringResponseSpy.MRV.setDefaultReturnValuesSupplier("body", () -> "a response body");
+		return CompletableFuture.completedFuture(stringResponseSpy);
 	}
 
 	@Override
@@ -114,8 +121,8 @@ public class HttpClientSpy extends HttpClient {
 	@Override
 	public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request,
 			BodyHandler<T> responseBodyHandler) {
-		// TODO Auto-generated method stub
-		return null;
+		return (CompletableFuture<HttpResponse<T>>) MCR.addCallAndReturnFromMRV("request", request,
+				"responseBodyHandler", responseBodyHandler);
 	}
 
 	@Override
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package se.uu.ub.cora.httphandler.spy;
+
+import se.uu.ub.cora.httphandler.HttpRequestEvent;
+import se.uu.ub.cora.httphandler.HttpRequestListener;
+import se.uu.ub.cora.httphandler.HttpRetryEvent;
+import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
+
+public class HttpRequestListenerSpy implements HttpRequestListener {
+	public MethodCallRecorder MCR = new MethodCallRecorder();
+
+	@Override
+	public void requestCompleted(HttpRequestEvent event) {
+		MCR.addCall("event", event);
+	}
+
+	@Override
+	public void requestRetried(HttpRetryEvent event) {
+		MCR.addCall("event", event);
+	}
+
+	public HttpRetryEvent getRetryEvent(int callNumber) {
+		return (HttpRetryEvent) MCR.getValueForMethodNameAndCallNumberAndParameterName(
+				"requestRetried", callNumber, "event");
+	}
+
+	public HttpRequestEvent getEvent(int callNumber) {
+		return (HttpRequestEvent) MCR.getValueForMethodNameAndCallNumberAndParameterName(
+				"requestCompleted", callNumber, "event");
+	}
+}
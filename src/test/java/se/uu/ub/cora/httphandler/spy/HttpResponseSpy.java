@@ -1,5 +1,5 @@
 /*
- * Copyright 2023 Uppsala University Library
+ * Copyright 2023, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -23,6 +23,7 @@ import java.net.http.HttpClient.Version;
 import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.Collections;
 import java.util.Optional;
 
 import javax.net.ssl.SSLSession;
@@ -38,6 +39,9 @@ public class HttpResponseSpy<T> implements HttpResponse<T> {
 		MCR.useMRV(MRV);
 		MRV.setDefaultReturnValuesSupplier("body", () -> "a stream".getBytes());
 		MRV.setDefaultReturnValuesSupplier("statusCode", () -> 200);
+		MRV.setDefaultReturnValuesSupplier("headers",
+				() -> HttpHeaders.of(Collections.emptyMap(), (name, value) -> true));
+		MRV.setDefaultReturnValuesSupplier("version", () -> Version.HTTP_1_1);
 	}
 
 	@Override
@@ -79,8 +83,7 @@ public class HttpResponseSpy<T> implements HttpResponse<T> {
 
 	@Override
 	public Version version() {
-		// TODO Auto-generated method stub
-		return null;
+		return (Version) MCR.addCallAndReturnFromMRV();
 	}
 
 }
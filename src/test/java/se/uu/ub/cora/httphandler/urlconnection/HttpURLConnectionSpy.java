@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 Uppsala University Library
+ * Copyright 2016, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -177,4 +177,9 @@ public class HttpURLConnectionSpy extends HttpURLConnection {
 		MCR.addCall("chunklen", chunklen);
 	}
 
+	@Override
+	public void setFixedLengthStreamingMode(long contentLength) {
+		MCR.addCall("contentLength", contentLength);
+	}
+
 }